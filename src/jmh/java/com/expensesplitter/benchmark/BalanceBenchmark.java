@@ -0,0 +1,43 @@
+package com.expensesplitter.benchmark;
+
+import com.expensesplitter.model.BalanceMap;
+import com.expensesplitter.model.Money;
+import com.expensesplitter.service.BalanceService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BalanceBenchmark {
+    private BalanceService balanceService;
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkDatabase database) {
+        balanceService = new BalanceService(database.connection);
+    }
+
+    @Benchmark
+    public BalanceMap getUserBalances(BenchmarkDatabase database) {
+        return balanceService.getUserBalances(database.randomUserId());
+    }
+
+    @Benchmark
+    public boolean settleDebt(BenchmarkDatabase database) {
+        return balanceService.settleDebt(database.randomUserId(), database.randomUserId(), Money.ofCents(1000));
+    }
+}
@@ -0,0 +1,111 @@
+package com.expensesplitter.benchmark;
+
+import com.expensesplitter.db.StatementCache;
+import com.expensesplitter.events.EventLog;
+import com.expensesplitter.tools.DataGenerator;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+/**
+ * A seeded SQLite database shared by all benchmarks. Each size is seeded once
+ * into target/benchmark-data and copied to a scratch file per trial, so
+ * benchmarks that write never change the seed.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkDatabase {
+    private static final Path DATA_DIR = Paths.get("target", "benchmark-data");
+    private static final int SPLITS_PER_EXPENSE = 4;
+    private static final int SPLITS_PER_USER = 100;
+
+    /** Number of split rows in the seeded database */
+    @Param({"1000", "100000", "10000000"})
+    public int splits;
+
+    /** Whether connections reuse prepared statements through StatementCache */
+    @Param({"true", "false"})
+    public boolean statementCache;
+
+    public Connection connection;
+    public int userCount;
+    public int expenseCount;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        userCount = Math.max(10, splits / SPLITS_PER_USER);
+        expenseCount = splits / SPLITS_PER_EXPENSE;
+
+        Files.createDirectories(DATA_DIR);
+        Path seed = DATA_DIR.resolve("seed-" + splits + ".db");
+        if (!Files.exists(seed)) {
+            seed(seed);
+        }
+
+        Path work = DATA_DIR.resolve("work-" + splits + ".db");
+        Files.deleteIfExists(Paths.get(work + "-wal"));
+        Files.deleteIfExists(Paths.get(work + "-shm"));
+        // The copy starts a new history, so an event log left by an earlier trial no longer applies
+        Path events = EventLog.directoryFor(work.toAbsolutePath());
+        if (Files.exists(events)) {
+            try (Stream<Path> files = Files.walk(events)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(file);
+                }
+            }
+        }
+        Files.copy(seed, work, StandardCopyOption.REPLACE_EXISTING);
+
+        connection = DriverManager.getConnection("jdbc:sqlite:" + work);
+        if (statementCache) {
+            connection = StatementCache.wrap(connection);
+        }
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA foreign_keys = ON");
+            stmt.execute("PRAGMA journal_mode = WAL");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    public int randomUserId() {
+        return 1 + ThreadLocalRandom.current().nextInt(userCount);
+    }
+
+    public int randomExpenseId() {
+        return 1 + ThreadLocalRandom.current().nextInt(Math.max(1, expenseCount));
+    }
+
+    public String randomUsername() {
+        return "user" + randomUserId();
+    }
+
+    private void seed(Path file) throws SQLException {
+        Path partial = Paths.get(file + ".partial");
+        new DataGenerator(userCount, expenseCount, SPLITS_PER_EXPENSE, 42).seed("jdbc:sqlite:" + partial);
+
+        try {
+            Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new SQLException("Could not store seeded database: " + e.getMessage(), e);
+        }
+    }
+}
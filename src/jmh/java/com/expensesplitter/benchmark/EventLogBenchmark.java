@@ -0,0 +1,105 @@
+package com.expensesplitter.benchmark;
+
+import com.expensesplitter.db.BalanceLedger;
+import com.expensesplitter.events.BalanceSnapshot;
+import com.expensesplitter.events.EventBatch;
+import com.expensesplitter.events.EventLog;
+import com.expensesplitter.events.EventLogReader;
+import com.expensesplitter.events.LedgerReplay;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Restart cost with the event log: replaying a tail of tailEvents events onto a
+ * snapshot of the seeded ledger, and merging the two into the full ledger,
+ * against scanning every split as a restart without a snapshot would.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventLogBenchmark {
+    private static final int SPLITS_PER_EXPENSE = 4;
+
+    /** Number of events logged after the snapshot */
+    @Param({"100000", "1000000"})
+    public int tailEvents;
+
+    private Path directory;
+    private BalanceSnapshot snapshot;
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkDatabase database) throws SQLException, IOException {
+        // Only the snapshot taken here, so the tail is exactly what the benchmark appends
+        System.setProperty(EventLog.SNAPSHOT_INTERVAL_PROPERTY, Long.toString(Long.MAX_VALUE));
+        EventLog eventLog = EventLog.forConnection(database.connection);
+        directory = eventLog.getDirectory();
+        eventLog.rebase();
+
+        Random random = new Random(42);
+        EventBatch events = eventLog.newBatch();
+        int expenseId = database.expenseCount;
+        int written = 0;
+        while (written < tailEvents) {
+            int creatorId = database.randomUserId();
+            long share = 100 + random.nextInt(10_000);
+            events.expenseAdded(++expenseId, creatorId, share * SPLITS_PER_EXPENSE, "Benchmark expense");
+            for (int i = 0; i < SPLITS_PER_EXPENSE; i++) {
+                events.splitAdded(expenseId, database.randomUserId(), creatorId, share, false);
+            }
+            written += 1 + SPLITS_PER_EXPENSE;
+            if (expenseId % 20 == 0) {
+                events.debtSettled(database.randomUserId(), creatorId, share);
+                written++;
+            }
+            if (events.size() >= 1_000) {
+                eventLog.append(events);
+            }
+        }
+        eventLog.append(events);
+        eventLog.close();
+
+        List<BalanceSnapshot> snapshots = BalanceSnapshot.list(directory);
+        snapshot = snapshots.get(snapshots.size() - 1);
+    }
+
+    @Benchmark
+    public int replayTail() throws IOException {
+        LedgerReplay replay = new LedgerReplay(snapshot);
+        replay.replayTail(new EventLogReader(directory));
+        return replay.getChangedPairCount();
+    }
+
+    @Benchmark
+    public long recoverLedger() throws IOException {
+        LedgerReplay replay = new LedgerReplay(snapshot);
+        replay.replayTail(new EventLogReader(directory));
+        return replay.forEachBalance((debtorId, creditorId, amountInCents) -> {});
+    }
+
+    @Benchmark
+    public long scanSplits(BenchmarkDatabase database) throws SQLException {
+        long[] rows = new long[1];
+        BalanceLedger.forEachNetBalance(database.connection, (debtorId, creditorId, amountInCents) -> rows[0]++);
+        return rows[0];
+    }
+}
@@ -0,0 +1,49 @@
+package com.expensesplitter.benchmark;
+
+import com.expensesplitter.model.Expense;
+import com.expensesplitter.model.Money;
+import com.expensesplitter.service.ExpenseService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExpenseBenchmark {
+    private ExpenseService expenseService;
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkDatabase database) {
+        expenseService = new ExpenseService(database.connection);
+    }
+
+    @Benchmark
+    public int addExpense(BenchmarkDatabase database) {
+        return expenseService.addExpense("Benchmark expense", Money.ofCents(4250), database.randomUserId());
+    }
+
+    @Benchmark
+    public boolean addSplit(BenchmarkDatabase database) {
+        return expenseService.addSplit(database.randomExpenseId(), database.randomUserId(), Money.ofCents(1025));
+    }
+
+    @Benchmark
+    public List<Expense> getUserExpenses(BenchmarkDatabase database) {
+        return expenseService.getUserExpenses(database.randomUserId());
+    }
+}
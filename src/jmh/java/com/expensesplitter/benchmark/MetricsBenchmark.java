@@ -0,0 +1,92 @@
+package com.expensesplitter.benchmark;
+
+import com.expensesplitter.memory.ColumnarStorage;
+import com.expensesplitter.metrics.OperationMetrics;
+import com.expensesplitter.metrics.OperationStats;
+import com.expensesplitter.model.User;
+import com.expensesplitter.service.UserService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the per-operation metrics: taking the two timestamps alone, recording
+ * into one operation from one thread and from four, with and without the
+ * check for a JFR recording, and a user lookup served by the cache with its
+ * instrumentation against the same cache lookup bare. Needs no seeded database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricsBenchmark {
+    private static final int USERS = 100;
+
+    private OperationStats stats;
+    private UserService userService;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        stats = OperationMetrics.operation("MetricsBenchmark", "record");
+        userService = new UserService(new ColumnarStorage());
+        for (int i = 0; i < USERS; i++) {
+            userService.registerUser("user" + i, "secret", null);
+        }
+        for (int id = 1; id <= USERS; id++) {
+            userService.getUserById(id);
+        }
+    }
+
+    @Benchmark
+    public long timestamps() {
+        long start = System.nanoTime();
+        return System.nanoTime() - start;
+    }
+
+    @Benchmark
+    public void record() {
+        stats.record(System.nanoTime(), 1);
+    }
+
+    /** With the JFR event check; no recording runs, so no event is created */
+    @Benchmark
+    public void recordWithEvent() {
+        stats.record(System.nanoTime(), 1, stats.begin(1));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordContended() {
+        stats.record(System.nanoTime(), 1);
+    }
+
+    @Benchmark
+    public User cachedLookupInstrumented() {
+        return userService.getUserById(nextId());
+    }
+
+    @Benchmark
+    public User cachedLookupBare() {
+        return userService.getUserCache().getById(nextId());
+    }
+
+    private int nextId() {
+        next = next == USERS ? 1 : next + 1;
+        return next;
+    }
+}
@@ -0,0 +1,37 @@
+package com.expensesplitter.benchmark;
+
+import com.expensesplitter.model.User;
+import com.expensesplitter.service.UserService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserBenchmark {
+    private UserService userService;
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkDatabase database) {
+        userService = new UserService(database.connection);
+    }
+
+    @Benchmark
+    public User getUserByUsername(BenchmarkDatabase database) {
+        return userService.getUserByUsername(database.randomUsername());
+    }
+}
@@ -1,15 +1,52 @@
 package com.expensesplitter;
 
+import com.expensesplitter.db.DatabaseHelper;
 import com.expensesplitter.db.DatabaseManager;
+import com.expensesplitter.http.ApiServer;
+import com.expensesplitter.io.DataExporter;
+import com.expensesplitter.io.ExpenseImporter;
+import com.expensesplitter.repository.Storage;
 import com.expensesplitter.ui.ConsoleUI;
 
 public class Main {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
 
-        DatabaseManager dbManager = new DatabaseManager();
-        dbManager.initializeDatabase();
+        // Serve the HTTP API instead of the console; the server runs its own migrations
+        if (args.length > 0 && args[0].equals("--serve")) {
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : ApiServer.DEFAULT_PORT;
+            ApiServer.serve(DatabaseHelper.getDatabaseUrl(), port);
+            return;
+        }
+
+        // Bulk import: --import <file> [--format csv|jsonl] [--commit-rows N] [--restart]
+        if (args.length > 1 && args[0].equals("--import")) {
+            String[] importArgs = args.clone();
+            importArgs[0] = "--file";
+            ExpenseImporter.main(importArgs);
+            return;
+        }
+
+        // Export: --export <directory> [--format csv|jsonl] [--gzip] [--tables ...]
+        if (args.length > 1 && args[0].equals("--export")) {
+            String[] exportArgs = args.clone();
+            exportArgs[0] = "--out";
+            DataExporter.main(exportArgs);
+            return;
+        }
+
+        // Maintenance command: regenerate the balance ledger from the raw splits
+        if (args.length > 0 && args[0].equals("--rebuild-ledger")) {
+            DatabaseManager dbManager = new DatabaseManager();
+            dbManager.initializeDatabase();
+            boolean success = dbManager.rebuildBalanceLedger();
+            System.out.println(success ? "Balance ledger rebuilt." : "Balance ledger rebuild failed.");
+            dbManager.closeConnection();
+            System.exit(success ? 0 : 1);
+        }
         
-        ConsoleUI ui = new ConsoleUI(dbManager);
+        // -Dexpensesplitter.storage=memory runs the console on an empty in-memory store
+        Storage storage = Storage.open();
+        ConsoleUI ui = new ConsoleUI(storage);
         ui.start();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,203 @@
+package com.expensesplitter.db;
+
+import com.expensesplitter.model.BalanceMap;
+import com.expensesplitter.model.Expense;
+
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through cache of per-user balance results. Every service working on the
+ * same database file shares one cache, obtained with forConnection(), so a
+ * write made through any of them evicts what the others cached.
+ *
+ * Writers call invalidate() with the users whose balances changed once their
+ * transaction has committed. A read that overlaps an invalidation is returned
+ * but not cached, so a result loaded from a snapshot taken before the commit
+ * can never be stored after it. Writes made outside this process are not seen.
+ *
+ * The cache is bounded by the total number of balance entries it holds, each
+ * user counting as one more entry; least recently read users are evicted first.
+ */
+public final class BalanceCache {
+    public static final int DEFAULT_MAX_ENTRIES = 100_000;
+    // System property overriding the entry bound; 0 disables caching
+    public static final String SIZE_PROPERTY = "expensesplitter.balanceCache.entries";
+
+    private static final Map<String, BalanceCache> SHARED = new ConcurrentHashMap<>();
+    // In-memory databases are private to their connection
+    private static final Map<Connection, BalanceCache> IN_MEMORY = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Loads the balances of one user from the database on a miss
+     */
+    @FunctionalInterface
+    public interface Loader {
+        BalanceMap load(int userId) throws SQLException;
+    }
+
+    private final int maxEntries;
+    private final LinkedHashMap<Integer, BalanceMap> balances = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private long generation;
+    private int entryCount;
+
+    public BalanceCache() {
+        this(Integer.getInteger(SIZE_PROPERTY, DEFAULT_MAX_ENTRIES));
+    }
+
+    /**
+     * @param maxEntries Maximum number of balance entries kept; 0 disables caching
+     */
+    public BalanceCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @return The cache shared by every connection to the same database file
+     */
+    public static BalanceCache forConnection(Connection connection) {
+        if (connection == null) {
+            return new BalanceCache(0);
+        }
+        String url;
+        try {
+            url = connection.getMetaData().getURL();
+        } catch (SQLException e) {
+            return new BalanceCache(0);
+        }
+        String path = url.startsWith("jdbc:sqlite:") ? url.substring("jdbc:sqlite:".length()) : url;
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        if (path.isEmpty() || path.contains(":memory:") || url.contains("mode=memory")) {
+            return IN_MEMORY.computeIfAbsent(connection, c -> new BalanceCache());
+        }
+        String key = path.startsWith("file:") ? path : Paths.get(path).toAbsolutePath().normalize().toString();
+        return SHARED.computeIfAbsent(key, k -> new BalanceCache());
+    }
+
+    /**
+     * Returns the cached balances of a user, loading and caching them on a miss
+     * @return Read-only balances keyed by counterparty id
+     */
+    public BalanceMap get(int userId, Loader loader) throws SQLException {
+        long startGeneration;
+        synchronized (this) {
+            BalanceMap cached = balances.get(userId);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+            startGeneration = generation;
+        }
+        misses.incrementAndGet();
+
+        BalanceMap loaded = loader.load(userId).freeze();
+        synchronized (this) {
+            if (startGeneration == generation && maxEntries > 0) {
+                BalanceMap previous = balances.put(userId, loaded);
+                if (previous != null) {
+                    entryCount -= weight(previous);
+                }
+                entryCount += weight(loaded);
+                evictOverflow();
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Drops the cached balances of users affected by a committed write
+     */
+    public synchronized void invalidate(int... userIds) {
+        generation++;
+        invalidations.incrementAndGet();
+        for (int userId : userIds) {
+            BalanceMap removed = balances.remove(userId);
+            if (removed != null) {
+                entryCount -= weight(removed);
+            }
+        }
+    }
+
+    /**
+     * Drops the cached balances of an expense's creator and participants
+     */
+    public void invalidate(Expense expense) {
+        int[] userIds = new int[expense.getSplits().size() + 1];
+        userIds[0] = expense.getCreatedById();
+        for (int i = 0; i < expense.getSplits().size(); i++) {
+            userIds[i + 1] = expense.getSplits().get(i).getUserId();
+        }
+        invalidate(userIds);
+    }
+
+    /**
+     * Drops every cached balance, for writes that touch an unknown set of users
+     */
+    public synchronized void invalidateAll() {
+        generation++;
+        invalidations.incrementAndGet();
+        balances.clear();
+        entryCount = 0;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    /**
+     * @return Fraction of reads served from the cache, 0 before the first read
+     */
+    public double getHitRate() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    public synchronized int size() {
+        return balances.size();
+    }
+
+    public synchronized int getEntryCount() {
+        return entryCount;
+    }
+
+    private void evictOverflow() {
+        Iterator<BalanceMap> eldest = balances.values().iterator();
+        while (entryCount > maxEntries && eldest.hasNext()) {
+            entryCount -= weight(eldest.next());
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private static int weight(BalanceMap userBalances) {
+        return userBalances.size() + 1;
+    }
+}
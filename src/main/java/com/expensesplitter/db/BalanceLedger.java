@@ -0,0 +1,215 @@
+package com.expensesplitter.db;
+
+import com.expensesplitter.model.BalanceMap;
+import com.expensesplitter.model.Expense;
+import com.expensesplitter.model.Money;
+import com.expensesplitter.model.Split;
+import com.expensesplitter.repository.NetBalanceConsumer;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maintains the balance_ledger table, which holds the outstanding unpaid amount
+ * each debtor owes each creditor. Every method runs on the caller's connection
+ * and never commits, so ledger updates share the transaction of the write that
+ * caused them.
+ */
+public final class BalanceLedger {
+
+    private BalanceLedger() {}
+
+    /**
+     * Adds a new unpaid split to the ledger. Splits owed by the expense creator
+     * to themselves are ignored.
+     */
+    public static void recordSplit(Connection connection, int debtorId, int creditorId, Money amount) throws SQLException {
+        if (debtorId == creditorId) {
+            return;
+        }
+        String sql = "INSERT INTO balance_ledger (debtor_id, creditor_id, net_amount) VALUES (?, ?, ?) " +
+                     "ON CONFLICT (debtor_id, creditor_id) DO UPDATE SET net_amount = net_amount + excluded.net_amount";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, debtorId);
+            pstmt.setInt(2, creditorId);
+            pstmt.setLong(3, amount.getCents());
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Adds all splits of a newly inserted expense to the ledger with one batch,
+     * skipping the creator's own share.
+     */
+    public static void recordExpense(Connection connection, Expense expense) throws SQLException {
+        // Several splits may belong to the same participant; sum them first
+        BalanceMap owed = new BalanceMap(expense.getSplits().size());
+        for (Split split : expense.getSplits()) {
+            if (split.getUserId() != expense.getCreatedById()) {
+                owed.add(split.getUserId(), split.getAmount().getCents());
+            }
+        }
+        if (owed.isEmpty()) {
+            return;
+        }
+
+        String sql = "INSERT INTO balance_ledger (debtor_id, creditor_id, net_amount) VALUES (?, ?, ?) " +
+                     "ON CONFLICT (debtor_id, creditor_id) DO UPDATE SET net_amount = net_amount + excluded.net_amount";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            for (int debtorId : owed.getUserIds()) {
+                pstmt.setInt(1, debtorId);
+                pstmt.setInt(2, expense.getCreatedById());
+                pstmt.setLong(3, owed.getAmountInCents(debtorId));
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    /**
+     * Clears everything the payer owes the receiver, mirroring settleDebt which
+     * marks all of those splits as paid.
+     */
+    public static void clearDebt(Connection connection, int payerId, int receiverId) throws SQLException {
+        String sql = "DELETE FROM balance_ledger WHERE debtor_id = ? AND creditor_id = ?";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, payerId);
+            pstmt.setInt(2, receiverId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Subtracts the unpaid splits of an expense from the ledger. Must run before
+     * the splits themselves are deleted.
+     * @return Ids of the users whose balances changed: the creator and every unpaid participant
+     */
+    public static int[] removeExpense(Connection connection, int expenseId) throws SQLException {
+        String affected = "SELECT created_by FROM expenses WHERE id = ? " +
+                          "UNION SELECT user_id FROM splits WHERE expense_id = ? AND is_paid = 0";
+        List<Integer> userIds = new ArrayList<>();
+        try (PreparedStatement pstmt = connection.prepareStatement(affected)) {
+            pstmt.setInt(1, expenseId);
+            pstmt.setInt(2, expenseId);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                userIds.add(rs.getInt(1));
+            }
+        }
+
+        String update = "UPDATE balance_ledger SET net_amount = net_amount - " +
+                        "(SELECT SUM(s.amount) FROM splits s " +
+                        "WHERE s.expense_id = ? AND s.user_id = balance_ledger.debtor_id AND s.is_paid = 0) " +
+                        "WHERE creditor_id = (SELECT created_by FROM expenses WHERE id = ?) " +
+                        "AND debtor_id IN (SELECT user_id FROM splits WHERE expense_id = ? AND is_paid = 0)";
+        try (PreparedStatement pstmt = connection.prepareStatement(update)) {
+            pstmt.setInt(1, expenseId);
+            pstmt.setInt(2, expenseId);
+            pstmt.setInt(3, expenseId);
+            pstmt.executeUpdate();
+        }
+
+        // Only the creator's rows can have changed; avoid scanning the whole ledger
+        String prune = "DELETE FROM balance_ledger " +
+                       "WHERE creditor_id = (SELECT created_by FROM expenses WHERE id = ?) AND net_amount = 0";
+        try (PreparedStatement pstmt = connection.prepareStatement(prune)) {
+            pstmt.setInt(1, expenseId);
+            pstmt.executeUpdate();
+        }
+
+        return userIds.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Regenerates the whole ledger from the unpaid rows of the splits table.
+     */
+    public static void rebuild(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("DELETE FROM balance_ledger");
+            stmt.executeUpdate(
+                "INSERT INTO balance_ledger (debtor_id, creditor_id, net_amount) " +
+                "SELECT s.user_id, e.created_by, SUM(s.amount) " +
+                "FROM splits s JOIN expenses e ON s.expense_id = e.id " +
+                "WHERE s.is_paid = 0 AND s.user_id != e.created_by " +
+                "GROUP BY s.user_id, e.created_by"
+            );
+        }
+    }
+
+    /**
+     * Rebuilds the ledger if it is empty while unpaid splits exist, which is the
+     * case for databases created before the ledger was introduced.
+     */
+    public static void rebuildIfMissing(Connection connection) throws SQLException {
+        String sql = "SELECT EXISTS (SELECT 1 FROM balance_ledger) AS has_ledger, " +
+                     "EXISTS (SELECT 1 FROM splits s JOIN expenses e ON s.expense_id = e.id " +
+                     "WHERE s.is_paid = 0 AND s.user_id != e.created_by) AS has_debts";
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            if (rs.next() && !rs.getBoolean("has_ledger") && rs.getBoolean("has_debts")) {
+                rebuild(connection);
+            }
+        }
+    }
+
+    /**
+     * Reads the net balance between a user and each counterparty. Positive values
+     * are owed to the user, negative values are owed by the user.
+     * @return Net amounts in cents keyed by counterparty id
+     */
+    public static BalanceMap getBalances(Connection connection, int userId) throws SQLException {
+        // One statement, signed in SQL: each half is a single index range scan, and the
+        // rare counterparty owed in both directions is merged by the map. Grouping in
+        // SQL instead needs a temp b-tree and measured slower.
+        String sql = "SELECT debtor_id AS counterparty_id, net_amount AS amount " +
+                     "FROM balance_ledger WHERE creditor_id = ?1 " +
+                     "UNION ALL " +
+                     "SELECT creditor_id AS counterparty_id, -net_amount AS amount " +
+                     "FROM balance_ledger WHERE debtor_id = ?1";
+        BalanceMap balances = new BalanceMap();
+
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, userId);
+            ResultSet rs = pstmt.executeQuery();
+
+            while (rs.next()) {
+                balances.add(rs.getInt(1), rs.getLong(2));
+            }
+        }
+
+        return balances;
+    }
+
+    /**
+     * Computes the net debt between every pair of users from the unpaid splits
+     * in one scan, independently of the ledger, and streams it to the consumer.
+     * Debts in both directions between two users are netted into one tuple and
+     * pairs that cancel out are skipped.
+     */
+    public static void forEachNetBalance(Connection connection, NetBalanceConsumer consumer) throws SQLException {
+        // Pairs are keyed (low id, high id); a positive net means the low id owes the high id
+        String sql = "SELECT MIN(s.user_id, e.created_by) AS low_id, MAX(s.user_id, e.created_by) AS high_id, " +
+                     "SUM(CASE WHEN s.user_id < e.created_by THEN s.amount ELSE -s.amount END) AS net " +
+                     "FROM splits s JOIN expenses e ON s.expense_id = e.id " +
+                     "WHERE s.is_paid = 0 AND s.user_id != e.created_by " +
+                     "GROUP BY low_id, high_id HAVING net != 0";
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                int lowId = rs.getInt(1);
+                int highId = rs.getInt(2);
+                long net = rs.getLong(3);
+                if (net > 0) {
+                    consumer.accept(lowId, highId, net);
+                } else {
+                    consumer.accept(highId, lowId, -net);
+                }
+            }
+        }
+    }
+}
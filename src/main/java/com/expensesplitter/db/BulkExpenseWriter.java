@@ -0,0 +1,263 @@
+package com.expensesplitter.db;
+
+import com.expensesplitter.events.EventBatch;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Appends expenses and their splits for bulk imports with multi-row INSERTs of
+ * CHUNK_ROWS rows each. Expenses are written as their chunks fill up. Splits
+ * and the balance ledger changes, summed per (debtor, creditor) pair, are held
+ * until flush() and written in index order, which keeps SQLite's inserts into
+ * the per-user indexes sequential; so flush at least every few hundred
+ * thousand splits. Runs on the caller's connection and never commits.
+ *
+ * Expense ids are assigned here so splits can be buffered before their expense
+ * is written. Foreign key checks are deferred to commit for the same reason;
+ * SQLite resets that after every transaction, so call beginTransaction() after
+ * each commit.
+ *
+ * Every expense and split is also recorded into the event batch, which the
+ * caller appends to the event log when it commits.
+ */
+public final class BulkExpenseWriter implements AutoCloseable {
+    // Rows per INSERT; 5 parameters per row stays far below SQLite's variable limit
+    static final int CHUNK_ROWS = 200;
+
+    private static final String EXPENSE_INSERT = "INSERT INTO expenses (id, description, amount, created_by, created_at) VALUES ";
+    private static final String EXPENSE_ROW = "(?, ?, ?, ?, COALESCE(?, CURRENT_TIMESTAMP))";
+    private static final String SPLIT_INSERT = "INSERT INTO splits (expense_id, user_id, amount, is_paid) VALUES ";
+    private static final String SPLIT_ROW = "(?, ?, ?, ?)";
+    private static final String LEDGER_INSERT = "INSERT INTO balance_ledger (debtor_id, creditor_id, net_amount) VALUES ";
+    private static final String LEDGER_ROW = "(?, ?, ?)";
+    private static final String LEDGER_CONFLICT =
+        " ON CONFLICT (debtor_id, creditor_id) DO UPDATE SET net_amount = net_amount + excluded.net_amount";
+
+    private final Connection connection;
+    private final EventBatch events;
+    private final PreparedStatement expenseChunk;
+    private final PreparedStatement splitChunk;
+    private final PreparedStatement ledgerChunk;
+    private int nextExpenseId;
+
+    private final int[] expenseIds = new int[CHUNK_ROWS];
+    private final String[] descriptions = new String[CHUNK_ROWS];
+    private final long[] expenseAmounts = new long[CHUNK_ROWS];
+    private final int[] creatorIds = new int[CHUNK_ROWS];
+    private final String[] createdAts = new String[CHUNK_ROWS];
+    private int expenseCount;
+
+    // Splits are held until flush() and then written ordered by user
+    private int[] splitExpenseIds = new int[1024];
+    private int[] splitUserIds = new int[1024];
+    private long[] splitAmounts = new long[1024];
+    private boolean[] splitPaid = new boolean[1024];
+    private int splitCount;
+
+    // Unpaid amounts added since the last flush, keyed by debtor id << 32 | creditor id
+    private final Map<Long, Long> ledgerDeltas = new HashMap<>();
+
+    public BulkExpenseWriter(Connection connection, EventBatch events) throws SQLException {
+        this.connection = connection;
+        this.events = events;
+        this.expenseChunk = connection.prepareStatement(insertSql(EXPENSE_INSERT, EXPENSE_ROW, CHUNK_ROWS, ""));
+        this.splitChunk = connection.prepareStatement(insertSql(SPLIT_INSERT, SPLIT_ROW, CHUNK_ROWS, ""));
+        this.ledgerChunk = connection.prepareStatement(insertSql(LEDGER_INSERT, LEDGER_ROW, CHUNK_ROWS, LEDGER_CONFLICT));
+    }
+
+    /**
+     * Prepares a new transaction: defers foreign key checks and picks up the next
+     * free expense id. The id is read inside the transaction, so a concurrent
+     * writer makes this transaction fail to commit instead of reusing ids.
+     * Must be called with auto-commit off.
+     */
+    public void beginTransaction() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA defer_foreign_keys = ON");
+            // Continue after the AUTOINCREMENT counter so ids of deleted expenses are never reused
+            ResultSet rs = stmt.executeQuery(
+                "SELECT MAX(COALESCE((SELECT MAX(id) FROM expenses), 0), " +
+                "COALESCE((SELECT seq FROM sqlite_sequence WHERE name = 'expenses'), 0))");
+            nextExpenseId = (rs.next() ? rs.getInt(1) : 0) + 1;
+        }
+    }
+
+    /**
+     * Buffers one expense with its splits
+     * @param createdAt Creation timestamp, or null for the current time
+     * @param splitCount Number of leading entries of the split arrays to use
+     * @return The id assigned to the expense
+     */
+    public int add(String description, long amountInCents, int createdById, String createdAt,
+                   int[] userIds, long[] amountsInCents, boolean[] paid, int splitCount) throws SQLException {
+        int expenseId = nextExpenseId++;
+        expenseIds[expenseCount] = expenseId;
+        descriptions[expenseCount] = description;
+        expenseAmounts[expenseCount] = amountInCents;
+        creatorIds[expenseCount] = createdById;
+        createdAts[expenseCount] = createdAt;
+        events.expenseAdded(expenseId, createdById, amountInCents, description);
+        if (++expenseCount == CHUNK_ROWS) {
+            writeExpenses(expenseChunk, expenseCount);
+        }
+
+        if (this.splitCount + splitCount > splitUserIds.length) {
+            int capacity = Math.max(splitUserIds.length * 2, this.splitCount + splitCount);
+            splitExpenseIds = Arrays.copyOf(splitExpenseIds, capacity);
+            splitUserIds = Arrays.copyOf(splitUserIds, capacity);
+            splitAmounts = Arrays.copyOf(splitAmounts, capacity);
+            splitPaid = Arrays.copyOf(splitPaid, capacity);
+        }
+        for (int i = 0; i < splitCount; i++) {
+            splitExpenseIds[this.splitCount] = expenseId;
+            splitUserIds[this.splitCount] = userIds[i];
+            splitAmounts[this.splitCount] = amountsInCents[i];
+            splitPaid[this.splitCount] = paid[i];
+            this.splitCount++;
+            events.splitAdded(expenseId, userIds[i], createdById, amountsInCents[i], paid[i]);
+            if (!paid[i] && userIds[i] != createdById) {
+                ledgerDeltas.merge(((long) userIds[i] << 32) | createdById, amountsInCents[i], Long::sum);
+            }
+        }
+        return expenseId;
+    }
+
+    /**
+     * Writes every buffered row and the accumulated ledger changes
+     */
+    public void flush() throws SQLException {
+        if (expenseCount > 0) {
+            try (PreparedStatement pstmt = connection.prepareStatement(
+                    insertSql(EXPENSE_INSERT, EXPENSE_ROW, expenseCount, ""))) {
+                writeExpenses(pstmt, expenseCount);
+            }
+        }
+        flushSplits();
+        flushLedger();
+    }
+
+    /**
+     * Drops buffered rows and their events after the caller rolled back
+     */
+    public void discard() {
+        expenseCount = 0;
+        splitCount = 0;
+        ledgerDeltas.clear();
+        events.clear();
+    }
+
+    @Override
+    public void close() throws SQLException {
+        expenseChunk.close();
+        splitChunk.close();
+        ledgerChunk.close();
+    }
+
+    private void writeExpenses(PreparedStatement pstmt, int rows) throws SQLException {
+        int p = 1;
+        for (int i = 0; i < rows; i++) {
+            pstmt.setInt(p++, expenseIds[i]);
+            pstmt.setString(p++, descriptions[i]);
+            pstmt.setLong(p++, expenseAmounts[i]);
+            pstmt.setInt(p++, creatorIds[i]);
+            pstmt.setString(p++, createdAts[i]);
+            descriptions[i] = null;
+            createdAts[i] = null;
+        }
+        pstmt.executeUpdate();
+        expenseCount = 0;
+    }
+
+    private void flushSplits() throws SQLException {
+        // Insert in (user, expense) order so the per-user split index is appended
+        // to sequentially, like the ledger below
+        long[] order = new long[splitCount];
+        for (int i = 0; i < splitCount; i++) {
+            order[i] = ((long) splitUserIds[i] << 32) | i;
+        }
+        Arrays.sort(order);
+
+        int tailStart = splitCount - splitCount % CHUNK_ROWS;
+        PreparedStatement pstmt = splitChunk;
+        PreparedStatement tail = null;
+        try {
+            int p = 1;
+            for (int i = 0; i < splitCount; i++) {
+                if (i == tailStart) {
+                    tail = connection.prepareStatement(insertSql(SPLIT_INSERT, SPLIT_ROW, splitCount - tailStart, ""));
+                    pstmt = tail;
+                }
+                int row = (int) order[i];
+                pstmt.setInt(p++, splitExpenseIds[row]);
+                pstmt.setInt(p++, splitUserIds[row]);
+                pstmt.setLong(p++, splitAmounts[row]);
+                pstmt.setBoolean(p++, splitPaid[row]);
+                if ((i + 1) % CHUNK_ROWS == 0 || i + 1 == splitCount) {
+                    pstmt.executeUpdate();
+                    p = 1;
+                }
+            }
+        } finally {
+            if (tail != null) {
+                tail.close();
+            }
+        }
+        splitCount = 0;
+    }
+
+    private void flushLedger() throws SQLException {
+        // Upsert in primary key order so SQLite walks the ledger's B-tree
+        // sequentially instead of touching a random page per pair
+        long[] pairs = new long[ledgerDeltas.size()];
+        int total = 0;
+        for (long pair : ledgerDeltas.keySet()) {
+            pairs[total++] = pair;
+        }
+        Arrays.sort(pairs);
+
+        // Full chunks reuse the prepared statement; the remainder gets one sized for it
+        int tailStart = total - total % CHUNK_ROWS;
+        PreparedStatement pstmt = ledgerChunk;
+        PreparedStatement tail = null;
+        try {
+            int p = 1;
+            for (int i = 0; i < total; i++) {
+                if (i == tailStart) {
+                    tail = connection.prepareStatement(insertSql(LEDGER_INSERT, LEDGER_ROW, total - tailStart, LEDGER_CONFLICT));
+                    pstmt = tail;
+                }
+                pstmt.setInt(p++, (int) (pairs[i] >>> 32));
+                pstmt.setInt(p++, (int) pairs[i]);
+                pstmt.setLong(p++, ledgerDeltas.get(pairs[i]));
+                if ((i + 1) % CHUNK_ROWS == 0 || i + 1 == total) {
+                    pstmt.executeUpdate();
+                    p = 1;
+                }
+            }
+        } finally {
+            if (tail != null) {
+                tail.close();
+            }
+        }
+        ledgerDeltas.clear();
+    }
+
+    private static String insertSql(String insert, String row, int rows, String suffix) {
+        StringBuilder sql = new StringBuilder(insert.length() + rows * (row.length() + 2) + suffix.length());
+        sql.append(insert);
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(row);
+        }
+        return sql.append(suffix).toString();
+    }
+}
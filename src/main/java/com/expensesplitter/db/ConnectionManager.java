@@ -0,0 +1,269 @@
+package com.expensesplitter.db;
+
+import com.expensesplitter.events.EventBatch;
+import com.expensesplitter.events.EventLog;
+import com.expensesplitter.metrics.TransactionEvent;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * All the connections of one database, safe to share between threads. In WAL
+ * mode SQLite runs any number of readers next to one writer, so reads borrow
+ * a connection from a ReadConnectionPool and run in parallel, while writes
+ * take turns on a single write connection.
+ *
+ * A write is a transaction owned by the calling thread: write() holds the
+ * writer until the transaction has committed or rolled back, a write() nested
+ * inside it joins the outer transaction, and reads made inside it run on the
+ * writer so they see its uncommitted changes. A transaction that fails with
+ * SQLITE_BUSY or SQLITE_LOCKED, because another process holds the database,
+ * is rolled back and run again after a randomized, growing pause, for up to
+ * BUSY_TIMEOUT_MILLIS; reads are retried the same way.
+ *
+ * In-memory databases, and connections handed in with wrap(), have no read
+ * pool: reads and writes share the one connection and take turns on it.
+ *
+ * Each outermost write is reported as a JFR TransactionEvent while a
+ * recording has the event enabled.
+ */
+public final class ConnectionManager implements AutoCloseable {
+    public static final long BUSY_TIMEOUT_MILLIS = 5_000;
+    private static final long MIN_BACKOFF_MICROS = 500;
+    private static final long MAX_BACKOFF_MICROS = 50_000;
+    private static final int SQLITE_BUSY = 5;
+    private static final int SQLITE_LOCKED = 6;
+
+    /**
+     * The work of one transaction on the write connection. The events are
+     * appended to the event log when the transaction commits.
+     */
+    @FunctionalInterface
+    public interface WriteTask<T> {
+        T execute(Connection connection, EventBatch events) throws SQLException;
+    }
+
+    private final Connection writeConnection;
+    private final ReadConnectionPool readPool;
+    private final EventLog eventLog;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Batch of the transaction the lock holder is running, joined by nested writes
+    private EventBatch currentEvents;
+    private volatile boolean closed;
+
+    private ConnectionManager(Connection writeConnection, ReadConnectionPool readPool) {
+        this.writeConnection = writeConnection;
+        this.readPool = readPool;
+        this.eventLog = EventLog.forConnection(writeConnection);
+    }
+
+    /**
+     * Opens the write connection with foreign keys and WAL enabled, then the
+     * read pool; the caller applies migrations, e.g. with withWriter()
+     * @param readConnections Size of the read pool, which bounds concurrent reads
+     */
+    public static ConnectionManager open(String url, int readConnections) throws SQLException {
+        Connection writeConnection = SlowQueryLog.wrap(StatementCache.wrap(DriverManager.getConnection(url)));
+        try {
+            try (Statement stmt = writeConnection.createStatement()) {
+                stmt.execute("PRAGMA foreign_keys = ON");
+                stmt.execute("PRAGMA journal_mode = WAL");
+                // Waiting for other writers is done by retrying whole transactions
+                stmt.execute("PRAGMA busy_timeout = 0");
+            }
+
+            // Every connection to an in-memory database opens a database of its own
+            boolean inMemory = url.contains(":memory:") || url.contains("mode=memory");
+            ReadConnectionPool readPool = inMemory ? null : new ReadConnectionPool(url, readConnections);
+            return new ConnectionManager(writeConnection, readPool);
+        } catch (SQLException e) {
+            writeConnection.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Shares one existing connection for reads and writes; closing the manager closes it
+     */
+    public static ConnectionManager wrap(Connection connection) {
+        return new ConnectionManager(connection, null);
+    }
+
+    /**
+     * Runs a read, on a pooled connection unless the calling thread is inside a write
+     */
+    public <T> T read(ReadConnectionPool.ReadTask<T> task) throws SQLException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(BUSY_TIMEOUT_MILLIS);
+        for (int attempt = 0; ; attempt++) {
+            try {
+                if (readPool == null || writeLock.isHeldByCurrentThread()) {
+                    return withWriter(task);
+                }
+                return readPool.execute(task);
+            } catch (SQLException e) {
+                if (!isBusy(e) || !backOff(attempt, deadline)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the task in a transaction on the write connection and commits it
+     * together with its events, retrying it from the start while the database
+     * is busy. Inside another write, the task joins that transaction instead.
+     * @return The task's result
+     */
+    public <T> T write(WriteTask<T> task) throws SQLException {
+        return write("ConnectionManager", 1, task);
+    }
+
+    /**
+     * write() on behalf of another writer, reported as that writer with the
+     * number of commands it commits together
+     */
+    <T> T write(String writer, int commands, WriteTask<T> task) throws SQLException {
+        checkOpen();
+        writeLock.lock();
+        try {
+            if (currentEvents != null) {
+                return task.execute(writeConnection, currentEvents);
+            }
+
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(BUSY_TIMEOUT_MILLIS);
+            TransactionEvent transaction = TransactionEvent.begin(writer, commands);
+            for (int attempt = 0; ; attempt++) {
+                try {
+                    currentEvents = eventLog.newBatch();
+                    writeConnection.setAutoCommit(false);
+                    T result = task.execute(writeConnection, currentEvents);
+                    long committing = TransactionEvent.commitStarted(transaction);
+                    eventLog.commit(writeConnection, currentEvents);
+                    writeConnection.setAutoCommit(true);
+                    TransactionEvent.committed(transaction, attempt + 1, committing);
+                    return result;
+                } catch (SQLException e) {
+                    rollback(writeConnection);
+                    if (!isBusy(e) || !backOff(attempt, deadline)) {
+                        TransactionEvent.rolledBack(transaction, attempt + 1, e);
+                        throw e;
+                    }
+                } catch (RuntimeException | Error e) {
+                    // Left open, the transaction would be committed by the next write
+                    rollback(writeConnection);
+                    TransactionEvent.rolledBack(transaction, attempt + 1, e);
+                    throw e;
+                } finally {
+                    currentEvents = null;
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Runs a task on the write connection in auto-commit mode, with other
+     * writers held off, for work that manages its own transactions such as
+     * migrations
+     */
+    public <T> T withWriter(ReadConnectionPool.ReadTask<T> task) throws SQLException {
+        checkOpen();
+        writeLock.lock();
+        try {
+            return task.execute(writeConnection);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return The write connection, for looking up state shared per database
+     *         file such as the balance cache; run work on it with write()
+     */
+    public Connection getWriteConnection() {
+        return writeConnection;
+    }
+
+    /**
+     * @return The read pool, or null if reads share the write connection
+     */
+    public ReadConnectionPool getReadPool() {
+        return readPool;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (readPool != null) {
+            readPool.close();
+        }
+        writeLock.lock();
+        try {
+            if (!writeConnection.isClosed()) {
+                writeConnection.close();
+                System.out.println("Database connection closed.");
+            }
+        } catch (SQLException e) {
+            System.out.println("Error closing database connection: " + e.getMessage());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void checkOpen() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection manager is closed");
+        }
+    }
+
+    /**
+     * @return Whether the error means another connection holds the database,
+     *         including extended codes such as SQLITE_BUSY_SNAPSHOT
+     */
+    public static boolean isBusy(SQLException e) {
+        int code = e.getErrorCode() & 0xff;
+        return code == SQLITE_BUSY || code == SQLITE_LOCKED;
+    }
+
+    /**
+     * Sleeps for a random time up to an exponentially growing bound
+     * @return false if the pause would run past the deadline
+     */
+    private static boolean backOff(int attempt, long deadline) throws SQLException {
+        long bound = Math.min(MAX_BACKOFF_MICROS, MIN_BACKOFF_MICROS << Math.min(attempt, 16));
+        long pause = ThreadLocalRandom.current().nextLong(bound / 2, bound + 1);
+        if (System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(pause) > deadline) {
+            return false;
+        }
+        try {
+            TimeUnit.MICROSECONDS.sleep(pause);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a busy database", e);
+        }
+    }
+
+    /**
+     * Rolls back the failed transaction and restores auto-commit, reporting a
+     * failure of the rollback itself so the original error can be rethrown
+     */
+    private static void rollback(Connection connection) {
+        try {
+            connection.rollback();
+            connection.setAutoCommit(true);
+        } catch (SQLException ex) {
+            System.out.println("Error during rollback: " + ex.getMessage());
+        }
+    }
+}
@@ -1,51 +1,53 @@
 package com.expensesplitter.db;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.io.File;
 
 
+/**
+ * The database the application uses by default, and the connection manager
+ * shared by every service built without an explicit storage.
+ */
 public class DatabaseHelper {
-    private static final String DB_URL = "jdbc:sqlite:data/expensesplitter.db";
-    private static Connection connection;
+    private static final String DEFAULT_DB_URL = "jdbc:sqlite:data/expensesplitter.db";
+    // System property that points the application at a different database file
+    public static final String DB_URL_PROPERTY = "expensesplitter.db.url";
+    private static ConnectionManager connectionManager;
 
-    public static Connection getConnection() {
-        if (connection == null) {
+    public static String getDatabaseUrl() {
+        return System.getProperty(DB_URL_PROPERTY, DEFAULT_DB_URL);
+    }
+
+    /**
+     * @return The shared connection manager, opened with one read connection per
+     *         core on first use, or null if the database cannot be opened
+     */
+    public static synchronized ConnectionManager getConnectionManager() {
+        if (connectionManager == null || connectionManager.isClosed()) {
             try {
                 // Ensure the data directory exists
                 File dataDir = new File("data");
                 if (!dataDir.exists()) {
                     dataDir.mkdirs();
                 }
-                
-                connection = DriverManager.getConnection(DB_URL);
+
+                connectionManager = ConnectionManager.open(getDatabaseUrl(), Runtime.getRuntime().availableProcessors());
                 System.out.println("Connection to SQLite has been established.");
-                
-                Statement stmt = connection.createStatement();
-                stmt.execute("PRAGMA foreign_keys = ON");
-                stmt.execute("PRAGMA journal_mode = WAL");
-                stmt.close();
-                
-                return connection;
+
+                // Cheap when the schema is current: a single PRAGMA read
+                connectionManager.withWriter(SchemaMigrator::migrate);
             } catch (SQLException e) {
                 System.out.println("Error connecting to database: " + e.getMessage());
                 return null;
             }
         }
-        return connection;
+        return connectionManager;
     }
 
-    public static void closeConnection() {
-        try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
-                connection = null;
-                System.out.println("Database connection closed.");
-            }
-        } catch (SQLException e) {
-            System.out.println("Error closing database connection: " + e.getMessage());
+    public static synchronized void closeConnection() {
+        if (connectionManager != null) {
+            connectionManager.close();
+            connectionManager = null;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,167 @@
+package com.expensesplitter.db;
+
+import com.expensesplitter.events.EventBatch;
+import com.expensesplitter.model.Expense;
+import com.expensesplitter.model.Money;
+import com.expensesplitter.model.Split;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+/**
+ * Inserts an expense together with all of its splits using JDBC batching. Runs
+ * on the caller's connection and never commits, so the caller decides the
+ * transaction boundary. Every write is also recorded into the caller's event
+ * batch, to be appended to the event log when the transaction commits.
+ */
+public final class ExpenseWriter {
+
+    private ExpenseWriter() {}
+
+    /**
+     * Inserts the expense, its splits and the matching balance ledger entries
+     * @param expense Expense with description, amount, creator id and splits (user id and amount)
+     * @return The same expense with the generated expense and split ids filled in
+     */
+    public static Expense insert(Connection connection, Expense expense, EventBatch events) throws SQLException {
+        String insertExpense = "INSERT INTO expenses (description, amount, created_by) VALUES (?, ?, ?)";
+        try (PreparedStatement pstmt = connection.prepareStatement(insertExpense, Statement.RETURN_GENERATED_KEYS)) {
+            pstmt.setString(1, expense.getDescription());
+            pstmt.setLong(2, expense.getAmount().getCents());
+            pstmt.setInt(3, expense.getCreatedById());
+            pstmt.executeUpdate();
+
+            ResultSet rs = pstmt.getGeneratedKeys();
+            if (!rs.next()) {
+                throw new SQLException("No id generated for expense");
+            }
+            expense.setId(rs.getInt(1));
+        }
+        events.expenseAdded(expense.getId(), expense.getCreatedById(), expense.getAmount().getCents(),
+            expense.getDescription());
+
+        if (expense.getSplits().isEmpty()) {
+            return expense;
+        }
+
+        String insertSplit = "INSERT INTO splits (expense_id, user_id, amount) VALUES (?, ?, ?)";
+        try (PreparedStatement pstmt = connection.prepareStatement(insertSplit)) {
+            for (Split split : expense.getSplits()) {
+                pstmt.setInt(1, expense.getId());
+                pstmt.setInt(2, split.getUserId());
+                pstmt.setLong(3, split.getAmount().getCents());
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+
+        // Rows inserted by one writer inside one transaction get consecutive ids,
+        // so the split ids can be derived from the last one
+        int lastId;
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT last_insert_rowid()")) {
+            rs.next();
+            lastId = rs.getInt(1);
+        }
+        int splitId = lastId - expense.getSplits().size() + 1;
+        for (Split split : expense.getSplits()) {
+            split.setId(splitId++);
+            split.setExpenseId(expense.getId());
+            split.setPaid(false);
+            events.splitAdded(expense.getId(), split.getUserId(), expense.getCreatedById(),
+                split.getAmount().getCents(), false);
+        }
+
+        BalanceLedger.recordExpense(connection, expense);
+        return expense;
+    }
+
+    /**
+     * Inserts a single split and adds it to the balance ledger
+     * @return Id of the expense creator the split is owed to, or -1 if the expense does not exist
+     */
+    public static int insertSplit(Connection connection, int expenseId, int userId, Money amount, EventBatch events)
+            throws SQLException {
+        int creatorId = -1;
+        try (PreparedStatement pstmt = connection.prepareStatement("SELECT created_by FROM expenses WHERE id = ?")) {
+            pstmt.setInt(1, expenseId);
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next()) {
+                creatorId = rs.getInt(1);
+            }
+        }
+
+        String sql = "INSERT INTO splits (expense_id, user_id, amount) VALUES (?, ?, ?)";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, expenseId);
+            pstmt.setInt(2, userId);
+            pstmt.setLong(3, amount.getCents());
+            pstmt.executeUpdate();
+        }
+
+        // Keep the balance ledger in step with the new split
+        if (creatorId != -1) {
+            BalanceLedger.recordSplit(connection, userId, creatorId, amount);
+            events.splitAdded(expenseId, userId, creatorId, amount.getCents(), false);
+        }
+        return creatorId;
+    }
+
+    /**
+     * Deletes an expense and its splits, taking its unpaid splits out of the ledger first
+     * @return Ids of the users whose balances changed
+     */
+    public static int[] delete(Connection connection, int expenseId, EventBatch events) throws SQLException {
+        if (events.isEnabled()) {
+            recordDeletion(connection, expenseId, events);
+        }
+        int[] affectedUserIds = BalanceLedger.removeExpense(connection, expenseId);
+
+        try (PreparedStatement pstmt = connection.prepareStatement("DELETE FROM splits WHERE expense_id = ?")) {
+            pstmt.setInt(1, expenseId);
+            pstmt.executeUpdate();
+        }
+        try (PreparedStatement pstmt = connection.prepareStatement("DELETE FROM expenses WHERE id = ?")) {
+            pstmt.setInt(1, expenseId);
+            pstmt.executeUpdate();
+        }
+        return affectedUserIds;
+    }
+
+    /**
+     * Records the deletion with the unpaid amounts it is about to take out of the ledger
+     */
+    private static void recordDeletion(Connection connection, int expenseId, EventBatch events) throws SQLException {
+        String sql = "SELECT e.created_by, s.user_id, s.amount FROM expenses e " +
+                     "LEFT JOIN splits s ON s.expense_id = e.id AND s.is_paid = 0 WHERE e.id = ?";
+        int creatorId = -1;
+        int[] debtorIds = new int[8];
+        long[] amounts = new long[8];
+        int count = 0;
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, expenseId);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                creatorId = rs.getInt(1);
+                int debtorId = rs.getInt(2);
+                if (rs.wasNull()) {
+                    continue;
+                }
+                if (count == debtorIds.length) {
+                    debtorIds = Arrays.copyOf(debtorIds, count * 2);
+                    amounts = Arrays.copyOf(amounts, count * 2);
+                }
+                debtorIds[count] = debtorId;
+                amounts[count] = rs.getLong(3);
+                count++;
+            }
+        }
+        if (creatorId != -1) {
+            events.expenseDeleted(expenseId, creatorId, debtorIds, amounts, count);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.expensesplitter.db;
+
+import com.expensesplitter.events.EventBatch;
+import com.expensesplitter.model.SettlementPlan;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Reads and settles the debts inside a group of users using the balance ledger.
+ * Like BalanceLedger, every method runs on the caller's connection and leaves
+ * transaction handling to the caller.
+ */
+public final class GroupSettlement {
+
+    private GroupSettlement() {}
+
+    /**
+     * Computes the net position of every group member from the ledger rows whose
+     * debtor and creditor both belong to the group.
+     * @return Net position in cents indexed by user id; positive means the user is owed money
+     */
+    public static long[] netPositions(Connection connection, int[] userIds) throws SQLException {
+        Debts debts = loadDebts(connection, userIds);
+        long[] net = new long[debts.members.length];
+        for (int i = 0; i < debts.count; i++) {
+            net[debts.debtorIds[i]] -= debts.amountsInCents[i];
+            net[debts.creditorIds[i]] += debts.amountsInCents[i];
+        }
+        return net;
+    }
+
+    /**
+     * Records every transfer of the plan as a settlement and marks all debts
+     * inside the group as paid. Fails if the balances have changed since the
+     * plan was computed. Each ledger row it clears is recorded into the event
+     * batch as a settled debt of the row's amount.
+     */
+    public static void execute(Connection connection, int[] userIds, SettlementPlan plan, EventBatch events)
+            throws SQLException {
+        Debts debts = loadDebts(connection, userIds);
+
+        // The plan must bring the current positions exactly to zero
+        long[] net = new long[debts.members.length];
+        for (int i = 0; i < debts.count; i++) {
+            net[debts.debtorIds[i]] -= debts.amountsInCents[i];
+            net[debts.creditorIds[i]] += debts.amountsInCents[i];
+        }
+        for (int i = 0; i < plan.size(); i++) {
+            if (!debts.isMember(plan.getPayerId(i)) || !debts.isMember(plan.getReceiverId(i))) {
+                throw new SQLException("Settlement plan includes users outside the group");
+            }
+            net[plan.getPayerId(i)] += plan.getAmountInCents(i);
+            net[plan.getReceiverId(i)] -= plan.getAmountInCents(i);
+        }
+        for (long position : net) {
+            if (position != 0) {
+                throw new SQLException("Balances changed since the settlement plan was created");
+            }
+        }
+
+        String insertSettlement = "INSERT INTO settlements (payer_id, receiver_id, amount) VALUES (?, ?, ?)";
+        try (PreparedStatement pstmt = connection.prepareStatement(insertSettlement)) {
+            for (int i = 0; i < plan.size(); i++) {
+                pstmt.setInt(1, plan.getPayerId(i));
+                pstmt.setInt(2, plan.getReceiverId(i));
+                pstmt.setLong(3, plan.getAmountInCents(i));
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+
+        String markPaid = "UPDATE splits SET is_paid = 1 " +
+                          "WHERE user_id = ? AND expense_id IN (SELECT id FROM expenses WHERE created_by = ?) " +
+                          "AND is_paid = 0";
+        String clearLedger = "DELETE FROM balance_ledger WHERE debtor_id = ? AND creditor_id = ?";
+        try (PreparedStatement paid = connection.prepareStatement(markPaid);
+             PreparedStatement clear = connection.prepareStatement(clearLedger)) {
+            for (int i = 0; i < debts.count; i++) {
+                paid.setInt(1, debts.debtorIds[i]);
+                paid.setInt(2, debts.creditorIds[i]);
+                paid.addBatch();
+                clear.setInt(1, debts.debtorIds[i]);
+                clear.setInt(2, debts.creditorIds[i]);
+                clear.addBatch();
+            }
+            paid.executeBatch();
+            clear.executeBatch();
+        }
+        for (int i = 0; i < debts.count; i++) {
+            events.debtSettled(debts.debtorIds[i], debts.creditorIds[i], debts.amountsInCents[i]);
+        }
+    }
+
+    private static Debts loadDebts(Connection connection, int[] userIds) throws SQLException {
+        int maxId = 0;
+        for (int userId : userIds) {
+            maxId = Math.max(maxId, userId);
+        }
+        boolean[] members = new boolean[maxId + 1];
+        for (int userId : userIds) {
+            members[userId] = true;
+        }
+
+        // One pass over the ledger is cheaper than binding an IN list for large groups
+        Debts debts = new Debts(members);
+        String sql = "SELECT debtor_id, creditor_id, net_amount FROM balance_ledger";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql);
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                int debtorId = rs.getInt(1);
+                int creditorId = rs.getInt(2);
+                if (debts.isMember(debtorId) && debts.isMember(creditorId)) {
+                    debts.add(debtorId, creditorId, rs.getLong(3));
+                }
+            }
+        }
+        return debts;
+    }
+
+    /**
+     * Ledger rows inside a group, held in parallel primitive arrays.
+     */
+    private static final class Debts {
+        final boolean[] members;
+        int[] debtorIds = new int[16];
+        int[] creditorIds = new int[16];
+        long[] amountsInCents = new long[16];
+        int count;
+
+        Debts(boolean[] members) {
+            this.members = members;
+        }
+
+        boolean isMember(int userId) {
+            return userId >= 0 && userId < members.length && members[userId];
+        }
+
+        void add(int debtorId, int creditorId, long amountInCents) {
+            if (count == debtorIds.length) {
+                debtorIds = Arrays.copyOf(debtorIds, count * 2);
+                creditorIds = Arrays.copyOf(creditorIds, count * 2);
+                amountsInCents = Arrays.copyOf(amountsInCents, count * 2);
+            }
+            debtorIds[count] = debtorId;
+            creditorIds[count] = creditorId;
+            amountsInCents[count] = amountInCents;
+            count++;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.expensesplitter.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Reads and records how far a bulk import has progressed through its source.
+ * Runs on the caller's connection and never commits: saving the checkpoint in
+ * the same transaction as the imported rows keeps the two in step.
+ */
+public final class ImportCheckpoints {
+
+    private ImportCheckpoints() {}
+
+    /**
+     * Progress of one source
+     */
+    public static final class Checkpoint {
+        private final long position;
+        private final boolean completed;
+
+        Checkpoint(long position, boolean completed) {
+            this.position = position;
+            this.completed = completed;
+        }
+
+        /**
+         * @return Number of source records already imported or rejected
+         */
+        public long getPosition() {
+            return position;
+        }
+
+        public boolean isCompleted() {
+            return completed;
+        }
+    }
+
+    /**
+     * @return The saved checkpoint, or null if the source was never imported
+     */
+    public static Checkpoint find(Connection connection, String source) throws SQLException {
+        String sql = "SELECT position, completed FROM import_checkpoints WHERE source = ?";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, source);
+            ResultSet rs = pstmt.executeQuery();
+            return rs.next() ? new Checkpoint(rs.getLong("position"), rs.getBoolean("completed")) : null;
+        }
+    }
+
+    public static void save(Connection connection, String source, long position, boolean completed) throws SQLException {
+        String sql = "INSERT INTO import_checkpoints (source, position, completed) VALUES (?, ?, ?) " +
+                     "ON CONFLICT (source) DO UPDATE SET position = excluded.position, " +
+                     "completed = excluded.completed, updated_at = CURRENT_TIMESTAMP";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, source);
+            pstmt.setLong(2, position);
+            pstmt.setBoolean(3, completed);
+            pstmt.executeUpdate();
+        }
+    }
+
+    public static void clear(Connection connection, String source) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement("DELETE FROM import_checkpoints WHERE source = ?")) {
+            pstmt.setString(1, source);
+            pstmt.executeUpdate();
+        }
+    }
+}
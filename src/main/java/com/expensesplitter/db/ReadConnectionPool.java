@@ -0,0 +1,128 @@
+package com.expensesplitter.db;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed pool of read-only connections to one database. In WAL mode SQLite lets
+ * any number of readers run next to the single writer, each on its own snapshot,
+ * so queries borrowed from the pool proceed in parallel while writes go through
+ * one writer connection such as a WritePipeline.
+ *
+ * Connections are opened with PRAGMA query_only and wrapped with a statement
+ * cache and the slow query log. A borrowed connection must only be used by one
+ * thread until released.
+ */
+public class ReadConnectionPool implements AutoCloseable {
+    public static final long DEFAULT_ACQUIRE_TIMEOUT_MILLIS = 5_000;
+
+    /**
+     * A unit of read work executed on a borrowed connection
+     */
+    @FunctionalInterface
+    public interface ReadTask<T> {
+        T execute(Connection connection) throws SQLException;
+    }
+
+    private final List<Connection> connections;
+    private final BlockingQueue<Connection> idle;
+    private volatile boolean closed;
+
+    /**
+     * @param size Number of connections, which bounds the number of concurrent queries
+     */
+    public ReadConnectionPool(String url, int size) throws SQLException {
+        if (size < 1) {
+            throw new IllegalArgumentException("Pool size must be positive: " + size);
+        }
+        List<Connection> opened = new ArrayList<>(size);
+        try {
+            for (int i = 0; i < size; i++) {
+                Connection connection = SlowQueryLog.wrap(StatementCache.wrap(DriverManager.getConnection(url)));
+                opened.add(connection);
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute("PRAGMA query_only = ON");
+                    stmt.execute("PRAGMA busy_timeout = 5000");
+                }
+            }
+        } catch (SQLException e) {
+            for (Connection connection : opened) {
+                connection.close();
+            }
+            throw e;
+        }
+        this.connections = Collections.unmodifiableList(opened);
+        this.idle = new ArrayBlockingQueue<>(size, false, opened);
+    }
+
+    /**
+     * Borrows a connection, waiting up to the default timeout for one to be released
+     * @throws SQLException if none became available in time or the pool is closed
+     */
+    public Connection acquire() throws SQLException {
+        if (closed) {
+            throw new SQLException("Read connection pool is closed");
+        }
+        try {
+            Connection connection = idle.poll(DEFAULT_ACQUIRE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            if (connection == null) {
+                throw new SQLException("Timed out waiting for a read connection");
+            }
+            return connection;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a read connection", e);
+        }
+    }
+
+    public void release(Connection connection) {
+        idle.offer(connection);
+    }
+
+    /**
+     * Runs a task on a borrowed connection and releases it afterwards
+     */
+    public <T> T execute(ReadTask<T> task) throws SQLException {
+        Connection connection = acquire();
+        try {
+            return task.execute(connection);
+        } finally {
+            release(connection);
+        }
+    }
+
+    /**
+     * @return Every connection of the pool, for callers that attach per-connection state up front
+     */
+    public List<Connection> getConnections() {
+        return connections;
+    }
+
+    public int size() {
+        return connections.size();
+    }
+
+    public int getAvailableCount() {
+        return idle.size();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (Connection connection : connections) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                System.out.println("Error closing read connection: " + e.getMessage());
+            }
+        }
+    }
+}
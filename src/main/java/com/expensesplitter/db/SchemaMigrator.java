@@ -0,0 +1,314 @@
+package com.expensesplitter.db;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.stream.Collectors;
+
+/**
+ * Versioned schema migrations tracked through PRAGMA user_version. Each
+ * migration runs in its own transaction together with the version bump, so a
+ * failed migration leaves the database at the previous version. When the
+ * database is already at LATEST_VERSION no DDL is executed at all.
+ */
+public final class SchemaMigrator {
+    public static final int LATEST_VERSION = 4;
+
+    @FunctionalInterface
+    private interface Migration {
+        void apply(Connection connection) throws SQLException;
+    }
+
+    // MIGRATIONS[i] upgrades the schema from version i to version i + 1
+    private static final Migration[] MIGRATIONS = {
+        SchemaMigrator::createBaseSchema,
+        SchemaMigrator::createIndexes,
+        SchemaMigrator::convertAmountsToCents,
+        SchemaMigrator::createImportCheckpoints
+    };
+
+    private SchemaMigrator() {}
+
+    public static int currentVersion(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Applies every pending migration in order
+     * @return Number of migrations applied; 0 if the schema was already current
+     */
+    public static int migrate(Connection connection) throws SQLException {
+        int version = currentVersion(connection);
+        if (version > LATEST_VERSION) {
+            throw new SQLException("Database schema version " + version + " is newer than this application supports");
+        }
+
+        if (version == LATEST_VERSION) {
+            return 0;
+        }
+
+        // Rebuilding tables drops and renames them, which foreign key enforcement
+        // would reject. The pragma only takes effect outside a transaction.
+        boolean foreignKeys;
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA foreign_keys")) {
+            foreignKeys = rs.next() && rs.getBoolean(1);
+        }
+        setForeignKeys(connection, false);
+
+        int applied = 0;
+        try {
+            for (; version < LATEST_VERSION; version++) {
+                boolean autoCommit = connection.getAutoCommit();
+                try {
+                    connection.setAutoCommit(false);
+                    MIGRATIONS[version].apply(connection);
+                    try (Statement stmt = connection.createStatement()) {
+                        stmt.execute("PRAGMA user_version = " + (version + 1));
+                    }
+                    connection.commit();
+                    applied++;
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw new SQLException("Migration to schema version " + (version + 1) + " failed: " + e.getMessage(), e);
+                } finally {
+                    connection.setAutoCommit(autoCommit);
+                }
+            }
+        } finally {
+            setForeignKeys(connection, foreignKeys);
+        }
+        return applied;
+    }
+
+    private static void setForeignKeys(Connection connection, boolean enabled) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA foreign_keys = " + (enabled ? "ON" : "OFF"));
+        }
+    }
+
+    /**
+     * Version 1: the tables from schema.sql. Databases created before versioning
+     * already have some of these tables, so every statement is idempotent and
+     * the balance ledger is rebuilt from their splits.
+     */
+    private static void createBaseSchema(Connection connection) throws SQLException {
+        InputStream inputStream = SchemaMigrator.class.getResourceAsStream("/schema.sql");
+        String schema = null;
+        if (inputStream != null) {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+                schema = reader.lines().collect(Collectors.joining("\n"));
+            } catch (IOException e) {
+                System.out.println("Error reading schema file: " + e.getMessage());
+            }
+        }
+
+        try (Statement statement = connection.createStatement()) {
+            if (schema != null) {
+                statement.executeUpdate(schema);
+            } else {
+                createTablesDirectly(statement);
+            }
+        }
+        BalanceLedger.rebuildIfMissing(connection);
+    }
+
+    private static void createTablesDirectly(Statement statement) throws SQLException {
+        // Users table
+        statement.executeUpdate(
+            "CREATE TABLE IF NOT EXISTS users (" +
+            "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+            "username TEXT UNIQUE NOT NULL," +
+            "password TEXT NOT NULL," +
+            "email TEXT UNIQUE," +
+            "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+            ")"
+        );
+        
+        // Expenses table
+        statement.executeUpdate(
+            "CREATE TABLE IF NOT EXISTS expenses (" +
+            "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+            "description TEXT NOT NULL," +
+            "amount REAL NOT NULL," +
+            "created_by INTEGER NOT NULL," +
+            "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+            "FOREIGN KEY (created_by) REFERENCES users(id)" +
+            ")"
+        );
+        
+        // Splits table
+        statement.executeUpdate(
+            "CREATE TABLE IF NOT EXISTS splits (" +
+            "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+            "expense_id INTEGER NOT NULL," +
+            "user_id INTEGER NOT NULL," +
+            "amount REAL NOT NULL," +
+            "is_paid BOOLEAN DEFAULT 0," +
+            "FOREIGN KEY (expense_id) REFERENCES expenses(id)," +
+            "FOREIGN KEY (user_id) REFERENCES users(id)" +
+            ")"
+        );
+        
+        // Settlements table
+        statement.executeUpdate(
+            "CREATE TABLE IF NOT EXISTS settlements (" +
+            "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+            "payer_id INTEGER NOT NULL," +
+            "receiver_id INTEGER NOT NULL," +
+            "amount REAL NOT NULL," +
+            "settled_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+            "FOREIGN KEY (payer_id) REFERENCES users(id)," +
+            "FOREIGN KEY (receiver_id) REFERENCES users(id)" +
+            ")"
+        );
+        
+        // Balance ledger table
+        statement.executeUpdate(
+            "CREATE TABLE IF NOT EXISTS balance_ledger (" +
+            "debtor_id INTEGER NOT NULL," +
+            "creditor_id INTEGER NOT NULL," +
+            "net_amount REAL NOT NULL DEFAULT 0," +
+            "PRIMARY KEY (debtor_id, creditor_id)," +
+            "FOREIGN KEY (debtor_id) REFERENCES users(id)," +
+            "FOREIGN KEY (creditor_id) REFERENCES users(id)" +
+            ")"
+        );
+        statement.executeUpdate(
+            "CREATE INDEX IF NOT EXISTS idx_balance_ledger_creditor ON balance_ledger (creditor_id)"
+        );
+    }
+
+    /**
+     * Version 2: secondary indexes for the hot lookups. Partial indexes only
+     * cover unpaid splits, which is all that balance and settlement queries read.
+     */
+    private static void createIndexes(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            // Expense history by creator, newest first
+            statement.executeUpdate(
+                "CREATE INDEX IF NOT EXISTS idx_expenses_created_by ON expenses (created_by, created_at)"
+            );
+            // Loading and deleting the splits of an expense; covers the history columns
+            statement.executeUpdate(
+                "CREATE INDEX IF NOT EXISTS idx_splits_expense ON splits (expense_id, user_id, amount, is_paid)"
+            );
+            // Unpaid splits of a participant, used when settling and rebuilding balances
+            statement.executeUpdate(
+                "CREATE INDEX IF NOT EXISTS idx_splits_user_unpaid ON splits (user_id, expense_id, amount) " +
+                "WHERE is_paid = 0"
+            );
+            // Settlement history in both directions
+            statement.executeUpdate(
+                "CREATE INDEX IF NOT EXISTS idx_settlements_payer ON settlements (payer_id, settled_at)"
+            );
+            statement.executeUpdate(
+                "CREATE INDEX IF NOT EXISTS idx_settlements_receiver ON settlements (receiver_id, settled_at)"
+            );
+        }
+    }
+
+    /**
+     * Version 3: money columns hold INTEGER cents instead of REAL amounts.
+     * SQLite cannot change a column type in place, so each table is rebuilt and
+     * the existing amounts are rounded to the nearest cent. The ledger is then
+     * regenerated from the converted splits so it matches them exactly.
+     */
+    private static void convertAmountsToCents(Connection connection) throws SQLException {
+        rebuildTable(connection, "expenses",
+            "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+            "description TEXT NOT NULL," +
+            "amount INTEGER NOT NULL," +
+            "created_by INTEGER NOT NULL," +
+            "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+            "FOREIGN KEY (created_by) REFERENCES users(id)",
+            "id, description, CAST(ROUND(amount * 100) AS INTEGER), created_by, created_at");
+
+        rebuildTable(connection, "splits",
+            "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+            "expense_id INTEGER NOT NULL," +
+            "user_id INTEGER NOT NULL," +
+            "amount INTEGER NOT NULL," +
+            "is_paid BOOLEAN DEFAULT 0," +
+            "FOREIGN KEY (expense_id) REFERENCES expenses(id)," +
+            "FOREIGN KEY (user_id) REFERENCES users(id)",
+            "id, expense_id, user_id, CAST(ROUND(amount * 100) AS INTEGER), is_paid");
+
+        rebuildTable(connection, "settlements",
+            "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+            "payer_id INTEGER NOT NULL," +
+            "receiver_id INTEGER NOT NULL," +
+            "amount INTEGER NOT NULL," +
+            "settled_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP," +
+            "FOREIGN KEY (payer_id) REFERENCES users(id)," +
+            "FOREIGN KEY (receiver_id) REFERENCES users(id)",
+            "id, payer_id, receiver_id, CAST(ROUND(amount * 100) AS INTEGER), settled_at");
+
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DROP TABLE balance_ledger");
+            statement.executeUpdate(
+                "CREATE TABLE balance_ledger (" +
+                "debtor_id INTEGER NOT NULL," +
+                "creditor_id INTEGER NOT NULL," +
+                "net_amount INTEGER NOT NULL DEFAULT 0," +
+                "PRIMARY KEY (debtor_id, creditor_id)," +
+                "FOREIGN KEY (debtor_id) REFERENCES users(id)," +
+                "FOREIGN KEY (creditor_id) REFERENCES users(id)" +
+                ")"
+            );
+            statement.executeUpdate(
+                "CREATE INDEX idx_balance_ledger_creditor ON balance_ledger (creditor_id)"
+            );
+        }
+        BalanceLedger.rebuild(connection);
+
+        // Dropping the old tables dropped their indexes too
+        createIndexes(connection);
+    }
+
+    /**
+     * Version 4: progress of bulk imports, committed together with the imported
+     * rows so an interrupted import resumes exactly where it stopped.
+     */
+    private static void createImportCheckpoints(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(
+                "CREATE TABLE IF NOT EXISTS import_checkpoints (" +
+                "source TEXT PRIMARY KEY," +
+                "position INTEGER NOT NULL," +
+                "completed BOOLEAN NOT NULL DEFAULT 0," +
+                "updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+                ")"
+            );
+        }
+    }
+
+    /**
+     * Replaces a table with a new definition, copying every row and keeping the
+     * AUTOINCREMENT counter so ids of deleted rows are never reused.
+     */
+    private static void rebuildTable(Connection connection, String table, String columns, String select) throws SQLException {
+        String replacement = table + "_new";
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE " + replacement + " (" + columns + ")");
+            statement.executeUpdate("INSERT INTO " + replacement + " SELECT " + select + " FROM " + table);
+            statement.executeUpdate("DELETE FROM sqlite_sequence WHERE name = '" + replacement + "'");
+            statement.executeUpdate(
+                "INSERT INTO sqlite_sequence (name, seq) " +
+                "SELECT '" + replacement + "', seq FROM sqlite_sequence WHERE name = '" + table + "'"
+            );
+            statement.executeUpdate("DROP TABLE " + table);
+            statement.executeUpdate("ALTER TABLE " + replacement + " RENAME TO " + table);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.expensesplitter.db;
+
+import com.expensesplitter.model.Money;
+import com.expensesplitter.model.SettlementCursor;
+import com.expensesplitter.model.SettlementPage;
+import com.expensesplitter.model.Transaction;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads the settlements a user paid or received, newest first. Both directions
+ * come from one UNION ALL query whose branches each walk the payer or receiver
+ * index backwards, so SQLite merges them in order without sorting. Pages are
+ * keyset-based: the next page starts strictly after the cursor's (settled_at, id)
+ * and costs the same no matter how deep into the history it is.
+ */
+public final class SettlementHistory {
+    private static final String COLUMNS =
+        "SELECT s.id AS id, s.payer_id AS payer_id, p.username AS payer_name, s.receiver_id AS receiver_id, " +
+        "r.username AS receiver_name, s.amount AS amount, s.settled_at AS settled_at " +
+        "FROM settlements s JOIN users p ON s.payer_id = p.id JOIN users r ON s.receiver_id = r.id ";
+
+    private SettlementHistory() {}
+
+    /**
+     * @param after Cursor returned with the previous page, or null for the newest settlements
+     * @param limit Maximum number of settlements on the page
+     */
+    public static SettlementPage page(Connection connection, int userId, SettlementCursor after, int limit) throws SQLException {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Page size must be positive: " + limit);
+        }
+        List<Transaction> transactions = new ArrayList<>(Math.min(limit, 256));
+        // Read one row past the page to learn whether another page follows
+        try (PreparedStatement pstmt = connection.prepareStatement(query(after != null) + " LIMIT ?4")) {
+            bind(pstmt, userId, after);
+            pstmt.setInt(4, limit + 1);
+            ResultSet rs = pstmt.executeQuery();
+            boolean hasMore = false;
+            while (rs.next()) {
+                if (transactions.size() == limit) {
+                    hasMore = true;
+                    break;
+                }
+                transactions.add(readTransaction(rs));
+            }
+            SettlementCursor next = hasMore ? SettlementCursor.after(transactions.get(limit - 1)) : null;
+            return new SettlementPage(transactions, next);
+        }
+    }
+
+    /**
+     * Streams a user's whole settlement history, newest first, one row at a time
+     * so nothing but the current settlement is held in memory
+     */
+    public static void forEach(Connection connection, int userId, Consumer<Transaction> consumer) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(query(false))) {
+            bind(pstmt, userId, null);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                consumer.accept(readTransaction(rs));
+            }
+        }
+    }
+
+    private static String query(boolean hasCursor) {
+        String keyset = hasCursor ? "AND (s.settled_at, s.id) < (?2, ?3) " : "";
+        // A settlement with oneself is only reported once, as paid
+        return COLUMNS + "WHERE s.payer_id = ?1 " + keyset +
+               "UNION ALL " +
+               COLUMNS + "WHERE s.receiver_id = ?1 AND s.payer_id != ?1 " + keyset +
+               "ORDER BY settled_at DESC, id DESC";
+    }
+
+    private static void bind(PreparedStatement pstmt, int userId, SettlementCursor after) throws SQLException {
+        pstmt.setInt(1, userId);
+        if (after != null) {
+            pstmt.setString(2, after.getSettledAt());
+            pstmt.setInt(3, after.getId());
+        }
+    }
+
+    private static Transaction readTransaction(ResultSet rs) throws SQLException {
+        Transaction transaction = new Transaction(
+            rs.getInt("payer_id"), rs.getString("payer_name"),
+            rs.getInt("receiver_id"), rs.getString("receiver_name"),
+            Money.ofCents(rs.getLong("amount")));
+        transaction.setId(rs.getInt("id"));
+        transaction.setSettledAt(rs.getString("settled_at"));
+        return transaction;
+    }
+}
@@ -0,0 +1,47 @@
+package com.expensesplitter.db;
+
+import com.expensesplitter.events.EventBatch;
+import com.expensesplitter.model.Money;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Records a settlement between two users. Runs on the caller's connection and
+ * never commits, so the caller decides the transaction boundary; the settlement
+ * is recorded into the caller's event batch as well.
+ */
+public final class SettlementWriter {
+
+    private SettlementWriter() {}
+
+    /**
+     * Inserts the settlement, marks every unpaid split the payer owes on the
+     * receiver's expenses as paid and clears the matching ledger entry.
+     */
+    public static void settle(Connection connection, int payerId, int receiverId, Money amount, EventBatch events)
+            throws SQLException {
+        // Record the settlement
+        String sql1 = "INSERT INTO settlements (payer_id, receiver_id, amount) VALUES (?, ?, ?)";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql1)) {
+            pstmt.setInt(1, payerId);
+            pstmt.setInt(2, receiverId);
+            pstmt.setLong(3, amount.getCents());
+            pstmt.executeUpdate();
+        }
+
+        // Update splits where user owes to the receiver
+        String sql2 = "UPDATE splits SET is_paid = 1 " +
+                      "WHERE user_id = ? AND expense_id IN (SELECT id FROM expenses WHERE created_by = ?) " +
+                      "AND is_paid = 0";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql2)) {
+            pstmt.setInt(1, payerId);
+            pstmt.setInt(2, receiverId);
+            pstmt.executeUpdate();
+        }
+
+        BalanceLedger.clearDebt(connection, payerId, receiverId);
+        events.debtSettled(payerId, receiverId, amount.getCents());
+    }
+}
@@ -0,0 +1,542 @@
+package com.expensesplitter.db;
+
+import com.expensesplitter.metrics.StatementEvent;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Log of slow SQL statements. wrap() returns a connection whose statements are
+ * timed from execution until their results have been read; a statement slower
+ * than the threshold is appended to a rolling log file together with its bound
+ * parameters and the output of EXPLAIN QUERY PLAN, run on the same connection.
+ *
+ * Slow statements are aggregated by their normalized SQL, with literals and
+ * lists of placeholders replaced. The first slow execution of each shape is
+ * logged in full and after that at most one per interval, which reports how
+ * many executions were folded into it. String parameters of statements that
+ * mention a password are masked.
+ *
+ * The log is off unless -Dexpensesplitter.slowQueryLog.thresholdMillis is set.
+ * wrap() still returns a wrapped connection then, because every execution is
+ * also reported as a JFR StatementEvent while a recording has it enabled; with
+ * the log off nothing is timed and result sets are not wrapped.
+ */
+public final class SlowQueryLog {
+    public static final String THRESHOLD_PROPERTY = "expensesplitter.slowQueryLog.thresholdMillis";
+    public static final String FILE_PROPERTY = "expensesplitter.slowQueryLog.file";
+    // Minimum time between two full entries for the same shape
+    public static final String INTERVAL_PROPERTY = "expensesplitter.slowQueryLog.intervalSeconds";
+    // Size at which the file is rolled over, and the number of files kept
+    public static final String MAX_BYTES_PROPERTY = "expensesplitter.slowQueryLog.maxBytes";
+    public static final String FILES_PROPERTY = "expensesplitter.slowQueryLog.files";
+    public static final String DEFAULT_FILE = "data/slow-queries.log";
+
+    private static final int MAX_SHAPES = 1_000;
+    private static final int MAX_PARAMETER_LENGTH = 100;
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern PLACEHOLDER_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern EXPLAINABLE = Pattern.compile("\\s*(?i:SELECT|INSERT|UPDATE|DELETE|REPLACE|WITH)\\b");
+
+    // Wraps connections for the statement events alone when the log is off
+    private static final SlowQueryLog EVENTS_ONLY = new SlowQueryLog(null, Long.MAX_VALUE, 0, Long.MAX_VALUE, 1);
+
+    private static SlowQueryLog instance;
+    private static boolean configured;
+
+    private final Path file;
+    private final long thresholdNanos;
+    private final long intervalNanos;
+    private final long maxBytes;
+    private final int files;
+    private final Map<String, Shape> shapes = new ConcurrentHashMap<>();
+    private Writer writer;
+    private long bytes;
+
+    /**
+     * Slow executions of one normalized statement
+     */
+    public static final class Shape {
+        private final String sql;
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+        private long suppressed;
+        private long loggedAt;
+        private boolean logged;
+
+        private Shape(String sql) {
+            this.sql = sql;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        public synchronized double getTotalMillis() {
+            return totalNanos / 1e6;
+        }
+
+        public synchronized double getMaxMillis() {
+            return maxNanos / 1e6;
+        }
+    }
+
+    /**
+     * @param maxBytes Size at which the file is rolled over
+     * @param files Number of files kept, counting the one being written
+     */
+    public SlowQueryLog(Path file, long thresholdMillis, long intervalSeconds, long maxBytes, int files) {
+        this.file = file;
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(intervalSeconds);
+        this.maxBytes = maxBytes;
+        this.files = Math.max(1, files);
+    }
+
+    /**
+     * @return The process-wide log configured by the system properties, or null if it is off
+     */
+    public static synchronized SlowQueryLog getInstance() {
+        if (!configured) {
+            configured = true;
+            Long threshold = Long.getLong(THRESHOLD_PROPERTY);
+            if (threshold != null) {
+                instance = new SlowQueryLog(
+                    Paths.get(System.getProperty(FILE_PROPERTY, DEFAULT_FILE)),
+                    threshold,
+                    Long.getLong(INTERVAL_PROPERTY, 60),
+                    Long.getLong(MAX_BYTES_PROPERTY, 10L * 1024 * 1024),
+                    Integer.getInteger(FILES_PROPERTY, 5));
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Times the connection's statements with the process-wide log, and
+     * reports their executions as statement events
+     */
+    public static Connection wrap(Connection connection) {
+        SlowQueryLog log = getInstance();
+        return (log == null ? EVENTS_ONLY : log).wrapConnection(connection);
+    }
+
+    public Connection wrapConnection(Connection connection) {
+        if (connection == null || (Proxy.isProxyClass(connection.getClass())
+                && Proxy.getInvocationHandler(connection) instanceof ConnectionHandler)) {
+            return connection;
+        }
+        return (Connection) Proxy.newProxyInstance(
+            SlowQueryLog.class.getClassLoader(),
+            new Class<?>[] {Connection.class},
+            new ConnectionHandler(connection));
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public double getThresholdMillis() {
+        return thresholdNanos / 1e6;
+    }
+
+    /**
+     * @return Every shape logged so far, the most total time first
+     */
+    public List<Shape> getShapes() {
+        List<Shape> all = new ArrayList<>(shapes.values());
+        all.sort(Comparator.comparingDouble(Shape::getTotalMillis).reversed());
+        return all;
+    }
+
+    /**
+     * @return The statement with literals and placeholder lists replaced and whitespace collapsed
+     */
+    public static String normalize(String sql) {
+        String normalized = STRING_LITERAL.matcher(sql).replaceAll("?");
+        normalized = NUMBER_LITERAL.matcher(normalized).replaceAll("?");
+        normalized = PLACEHOLDER_LIST.matcher(normalized).replaceAll("(?...)");
+        return WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+    }
+
+    /**
+     * Counts a slow execution and, unless its shape was logged within the
+     * interval, writes an entry for it
+     */
+    private void slow(Connection connection, String sql, List<Object> parameters, int batchSize, long nanos) {
+        String normalized = normalize(sql);
+        Shape shape = shapes.get(normalized);
+        if (shape == null) {
+            shape = shapes.size() < MAX_SHAPES
+                ? shapes.computeIfAbsent(normalized, Shape::new)
+                : shapes.computeIfAbsent("(other statements)", Shape::new);
+        }
+
+        long now = System.nanoTime();
+        long count;
+        long totalNanos;
+        long maxNanos;
+        long suppressed;
+        synchronized (shape) {
+            shape.count++;
+            shape.totalNanos += nanos;
+            shape.maxNanos = Math.max(shape.maxNanos, nanos);
+            if (shape.logged && now - shape.loggedAt < intervalNanos) {
+                shape.suppressed++;
+                return;
+            }
+            shape.logged = true;
+            shape.loggedAt = now;
+            suppressed = shape.suppressed;
+            shape.suppressed = 0;
+            count = shape.count;
+            totalNanos = shape.totalNanos;
+            maxNanos = shape.maxNanos;
+        }
+
+        boolean mask = normalized.toLowerCase().contains("password");
+        StringBuilder entry = new StringBuilder();
+        entry.append(String.format("%s slow statement %.3f ms (threshold %.3f ms) on %s%n",
+            Instant.now(), nanos / 1e6, thresholdNanos / 1e6, Thread.currentThread().getName()));
+        entry.append("  SQL: ").append(WHITESPACE.matcher(sql).replaceAll(" ").trim()).append('\n');
+        if (batchSize > 0) {
+            entry.append("  Batch: ").append(batchSize).append(" rows, last ");
+        } else {
+            entry.append("  ");
+        }
+        entry.append("Parameters: ").append(format(parameters, mask)).append('\n');
+        entry.append(String.format("  Shape: %d slow executions, %.3f ms total, %.3f ms max, %d since the last entry%n",
+            count, totalNanos / 1e6, maxNanos / 1e6, suppressed));
+        entry.append("  Plan:\n");
+        explain(connection, sql, parameters, entry);
+        entry.append('\n');
+        append(entry.toString());
+    }
+
+    private static String format(List<Object> parameters, boolean mask) {
+        StringBuilder formatted = new StringBuilder("[");
+        for (int i = 0; i < parameters.size(); i++) {
+            if (i > 0) {
+                formatted.append(", ");
+            }
+            Object value = parameters.get(i);
+            if (value instanceof String) {
+                String text = (String) value;
+                if (mask) {
+                    text = "***";
+                } else if (text.length() > MAX_PARAMETER_LENGTH) {
+                    text = text.substring(0, MAX_PARAMETER_LENGTH) + "...";
+                }
+                formatted.append('\'').append(text).append('\'');
+            } else if (value instanceof byte[]) {
+                formatted.append('<').append(((byte[]) value).length).append(" bytes>");
+            } else {
+                formatted.append(value);
+            }
+        }
+        return formatted.append(']').toString();
+    }
+
+    /**
+     * Appends the query plan as an indented tree, using the connection the
+     * statement ran on so the plan reflects the same schema and statistics
+     */
+    private static void explain(Connection connection, String sql, List<Object> parameters, StringBuilder entry) {
+        if (!EXPLAINABLE.matcher(sql).lookingAt()) {
+            entry.append("    (no plan for this statement)\n");
+            return;
+        }
+        try (PreparedStatement stmt = connection.prepareStatement("EXPLAIN QUERY PLAN " + sql)) {
+            for (int i = 0; i < parameters.size(); i++) {
+                stmt.setObject(i + 1, parameters.get(i));
+            }
+            Map<Integer, Integer> depths = new HashMap<>();
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int depth = depths.getOrDefault(rs.getInt(2), -1) + 1;
+                    depths.put(rs.getInt(1), depth);
+                    entry.append("    ").append("  ".repeat(depth)).append(rs.getString(4)).append('\n');
+                }
+            }
+        } catch (SQLException e) {
+            entry.append("    (plan unavailable: ").append(e.getMessage()).append(")\n");
+        }
+    }
+
+    private synchronized void append(String entry) {
+        try {
+            if (writer == null) {
+                Path parent = file.toAbsolutePath().getParent();
+                if (parent != null) {
+                    Files.createDirectories(parent);
+                }
+                bytes = Files.exists(file) ? Files.size(file) : 0;
+                writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            writer.write(entry);
+            writer.flush();
+            bytes += entry.getBytes(StandardCharsets.UTF_8).length;
+            if (bytes >= maxBytes) {
+                roll();
+            }
+        } catch (IOException e) {
+            System.out.println("Error writing slow query log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Renames the file to .1, shifting older files up and dropping the oldest
+     */
+    private void roll() throws IOException {
+        writer.close();
+        writer = null;
+        if (files == 1) {
+            Files.delete(file);
+            return;
+        }
+        Files.deleteIfExists(rolled(files - 1));
+        for (int i = files - 2; i >= 1; i--) {
+            if (Files.exists(rolled(i))) {
+                Files.move(rolled(i), rolled(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(file, rolled(1), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Path rolled(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private final class ConnectionHandler implements InvocationHandler {
+        private final Connection connection;
+
+        ConnectionHandler(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "prepareStatement":
+                    return timed(SlowQueryLog.invoke(connection, method, args), (String) args[0]);
+                case "createStatement":
+                    return timed(SlowQueryLog.invoke(connection, method, args), null);
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return SlowQueryLog.invoke(connection, method, args);
+            }
+        }
+
+        private Object timed(Object statement, String sql) {
+            Class<?> type = statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+            return Proxy.newProxyInstance(
+                SlowQueryLog.class.getClassLoader(),
+                new Class<?>[] {type},
+                new StatementHandler(connection, (Statement) statement, sql));
+        }
+    }
+
+    /**
+     * Times one statement. A query is timed until its result set is exhausted
+     * or closed, or until the statement is reused or closed.
+     */
+    private final class StatementHandler implements InvocationHandler {
+        private final Connection connection;
+        private final Statement statement;
+        private final List<Object> parameters = new ArrayList<>();
+        private String sql;
+        private int batchSize;
+        private int executedBatchSize;
+        private long started;
+
+        StatementHandler(Connection connection, Statement statement, String sql) {
+            this.connection = connection;
+            this.statement = statement;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (file == null) {
+                return events(proxy, method, args);
+            }
+            if (name.startsWith("execute")) {
+                finish();
+                if (args != null && args.length > 0 && args[0] instanceof String) {
+                    sql = (String) args[0];
+                }
+                executedBatchSize = name.endsWith("Batch") ? batchSize : 0;
+                batchSize = 0;
+                started = System.nanoTime();
+                Object result;
+                try {
+                    result = execute(method, args);
+                } catch (Throwable e) {
+                    finish();
+                    throw e;
+                }
+                if (result instanceof ResultSet) {
+                    return Proxy.newProxyInstance(
+                        SlowQueryLog.class.getClassLoader(),
+                        new Class<?>[] {ResultSet.class},
+                        new ResultSetHandler(this, (ResultSet) result));
+                }
+                finish();
+                return result;
+            }
+
+            switch (name) {
+                case "close":
+                    finish();
+                    break;
+                case "clearParameters":
+                    finish();
+                    parameters.clear();
+                    break;
+                case "addBatch":
+                    batchSize++;
+                    break;
+                case "clearBatch":
+                    batchSize = 0;
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                        finish();
+                        bind((Integer) args[0], name.equals("setNull") ? null : args[1]);
+                    }
+                    break;
+            }
+            return SlowQueryLog.invoke(statement, method, args);
+        }
+
+        /**
+         * Passes every call through, reporting executions only
+         */
+        private Object events(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    if (method.getName().startsWith("execute") && args != null && args.length > 0
+                            && args[0] instanceof String) {
+                        sql = (String) args[0];
+                    }
+                    return execute(method, args);
+            }
+        }
+
+        private Object execute(Method method, Object[] args) throws Throwable {
+            StatementEvent event = StatementEvent.begin(method.getName(), sql);
+            Object result = null;
+            try {
+                result = SlowQueryLog.invoke(statement, method, args);
+            } finally {
+                StatementEvent.end(event, result);
+            }
+            return result;
+        }
+
+        private void bind(int index, Object value) {
+            while (parameters.size() < index) {
+                parameters.add(null);
+            }
+            parameters.set(index - 1, value);
+        }
+
+        /**
+         * Ends the execution being timed, if any, and logs it if it was slow
+         */
+        void finish() {
+            if (started == 0) {
+                return;
+            }
+            long nanos = System.nanoTime() - started;
+            started = 0;
+            if (nanos >= thresholdNanos && sql != null) {
+                slow(connection, sql, parameters, executedBatchSize, nanos);
+            }
+        }
+    }
+
+    private static final class ResultSetHandler implements InvocationHandler {
+        private final StatementHandler statement;
+        private final ResultSet resultSet;
+
+        ResultSetHandler(StatementHandler statement, ResultSet resultSet) {
+            this.statement = statement;
+            this.resultSet = resultSet;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "next":
+                    Object more = SlowQueryLog.invoke(resultSet, method, args);
+                    if (!(Boolean) more) {
+                        statement.finish();
+                    }
+                    return more;
+                case "close":
+                    statement.finish();
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            return SlowQueryLog.invoke(resultSet, method, args);
+        }
+    }
+}
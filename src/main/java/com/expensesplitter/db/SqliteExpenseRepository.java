@@ -0,0 +1,168 @@
+package com.expensesplitter.db;
+
+import com.expensesplitter.model.Expense;
+import com.expensesplitter.model.Money;
+import com.expensesplitter.model.Split;
+import com.expensesplitter.repository.ExpenseRepository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Expenses in the expenses table, with their splits. Writes keep the balance
+ * ledger, balance cache and event log in step.
+ */
+final class SqliteExpenseRepository implements ExpenseRepository {
+    private final ConnectionManager connections;
+    private final BalanceCache balanceCache;
+
+    SqliteExpenseRepository(ConnectionManager connections) {
+        this.connections = connections;
+        this.balanceCache = BalanceCache.forConnection(connections.getWriteConnection());
+    }
+
+    @Override
+    public int insert(String description, Money amount, int createdById) throws SQLException {
+        String sql = "INSERT INTO expenses (description, amount, created_by) VALUES (?, ?, ?)";
+        return connections.write((connection, events) -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                pstmt.setString(1, description);
+                pstmt.setLong(2, amount.getCents());
+                pstmt.setInt(3, createdById);
+                pstmt.executeUpdate();
+
+                ResultSet rs = pstmt.getGeneratedKeys();
+                if (!rs.next()) {
+                    throw new SQLException("No id generated for expense");
+                }
+                int expenseId = rs.getInt(1);
+                events.expenseAdded(expenseId, createdById, amount.getCents(), description);
+                return expenseId;
+            }
+        });
+    }
+
+    @Override
+    public Expense insert(Expense expense) throws SQLException {
+        connections.write((connection, events) -> {
+            ExpenseWriter.insert(connection, expense, events);
+            return null;
+        });
+        balanceCache.invalidate(expense);
+        return expense;
+    }
+
+    @Override
+    public Expense findById(int expenseId) throws SQLException {
+        String sql = "SELECT e.id, e.description, e.amount, e.created_at, e.created_by, u.username " +
+                     "FROM expenses e JOIN users u ON e.created_by = u.id " +
+                     "WHERE e.id = ?";
+        return connections.read(connection -> {
+            Expense expense = null;
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setInt(1, expenseId);
+                ResultSet rs = pstmt.executeQuery();
+                if (rs.next()) {
+                    expense = readExpense(rs);
+                }
+            }
+            if (expense != null) {
+                attachSplits(connection, Collections.singletonList(expense), "e.id = ?", expenseId);
+            }
+            return expense;
+        });
+    }
+
+    @Override
+    public List<Expense> findByCreator(int userId) throws SQLException {
+        String sql = "SELECT e.id, e.description, e.amount, e.created_at, e.created_by, u.username " +
+                     "FROM expenses e JOIN users u ON e.created_by = u.id " +
+                     "WHERE e.created_by = ? ORDER BY e.created_at DESC";
+        return connections.read(connection -> {
+            List<Expense> expenses = new ArrayList<>();
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setInt(1, userId);
+                ResultSet rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    expenses.add(readExpense(rs));
+                }
+            }
+
+            // Load the splits of every expense in one query instead of one per expense
+            attachSplits(connection, expenses, "e.created_by = ?", userId);
+            return expenses;
+        });
+    }
+
+    @Override
+    public int[] delete(int expenseId) throws SQLException {
+        int[] affectedUserIds = connections.write((connection, events) ->
+            ExpenseWriter.delete(connection, expenseId, events));
+        balanceCache.invalidate(affectedUserIds);
+        return affectedUserIds;
+    }
+
+    private static Expense readExpense(ResultSet rs) throws SQLException {
+        Expense expense = new Expense();
+        expense.setId(rs.getInt("id"));
+        expense.setDescription(rs.getString("description"));
+        expense.setAmount(Money.ofCents(rs.getLong("amount")));
+        expense.setCreatedAt(rs.getString("created_at"));
+        expense.setCreatedBy(rs.getString("username"));
+        expense.setCreatedById(rs.getInt("created_by"));
+        return expense;
+    }
+
+    /**
+     * Loads the splits of all the given expenses with a single set-based query
+     * and groups them onto their expenses in memory.
+     * @param expenses Expenses whose splits should be loaded
+     * @param condition Predicate on the expenses table (alias e) selecting the same expenses
+     * @param param Value bound to the single placeholder in the condition
+     */
+    private static void attachSplits(Connection connection, List<Expense> expenses, String condition, int param) throws SQLException {
+        if (expenses.isEmpty()) {
+            return;
+        }
+
+        Map<Integer, Expense> byId = new HashMap<>();
+        for (Expense expense : expenses) {
+            byId.put(expense.getId(), expense);
+        }
+
+        String sql = "SELECT s.id, s.expense_id, s.user_id, s.amount, s.is_paid, u.username " +
+                     "FROM splits s " +
+                     "JOIN expenses e ON s.expense_id = e.id " +
+                     "JOIN users u ON s.user_id = u.id " +
+                     "WHERE " + condition + " ORDER BY s.id";
+
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, param);
+            ResultSet rs = pstmt.executeQuery();
+
+            while (rs.next()) {
+                Expense expense = byId.get(rs.getInt("expense_id"));
+                if (expense == null) {
+                    continue;
+                }
+
+                Split split = new Split();
+                split.setId(rs.getInt("id"));
+                split.setExpenseId(expense.getId());
+                split.setUserId(rs.getInt("user_id"));
+                split.setUsername(rs.getString("username"));
+                split.setAmount(Money.ofCents(rs.getLong("amount")));
+                split.setPaid(rs.getBoolean("is_paid"));
+                expense.addSplit(split);
+            }
+        }
+    }
+}
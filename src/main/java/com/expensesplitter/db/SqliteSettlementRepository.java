@@ -0,0 +1,56 @@
+package com.expensesplitter.db;
+
+import com.expensesplitter.model.Money;
+import com.expensesplitter.model.SettlementCursor;
+import com.expensesplitter.model.SettlementPage;
+import com.expensesplitter.model.SettlementPlan;
+import com.expensesplitter.model.Transaction;
+import com.expensesplitter.repository.SettlementRepository;
+
+import java.sql.SQLException;
+import java.util.function.Consumer;
+
+/**
+ * Settlements in the settlements table. Settling clears the matching balance
+ * ledger entries and records the settled debts into the event log.
+ */
+final class SqliteSettlementRepository implements SettlementRepository {
+    private final ConnectionManager connections;
+    private final BalanceCache balanceCache;
+
+    SqliteSettlementRepository(ConnectionManager connections) {
+        this.connections = connections;
+        this.balanceCache = BalanceCache.forConnection(connections.getWriteConnection());
+    }
+
+    @Override
+    public void settle(int payerId, int receiverId, Money amount) throws SQLException {
+        connections.write((connection, events) -> {
+            SettlementWriter.settle(connection, payerId, receiverId, amount, events);
+            return null;
+        });
+        balanceCache.invalidate(payerId, receiverId);
+    }
+
+    @Override
+    public void executePlan(int[] userIds, SettlementPlan plan) throws SQLException {
+        connections.write((connection, events) -> {
+            GroupSettlement.execute(connection, userIds, plan, events);
+            return null;
+        });
+        balanceCache.invalidate(userIds);
+    }
+
+    @Override
+    public SettlementPage page(int userId, SettlementCursor after, int limit) throws SQLException {
+        return connections.read(connection -> SettlementHistory.page(connection, userId, after, limit));
+    }
+
+    @Override
+    public void forEach(int userId, Consumer<Transaction> consumer) throws SQLException {
+        connections.read(connection -> {
+            SettlementHistory.forEach(connection, userId, consumer);
+            return null;
+        });
+    }
+}
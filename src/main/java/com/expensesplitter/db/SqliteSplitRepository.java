@@ -0,0 +1,100 @@
+package com.expensesplitter.db;
+
+import com.expensesplitter.events.EventLog;
+import com.expensesplitter.model.BalanceMap;
+import com.expensesplitter.model.Money;
+import com.expensesplitter.model.Split;
+import com.expensesplitter.repository.NetBalanceConsumer;
+import com.expensesplitter.repository.SplitRepository;
+
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits in the splits table. Balances are read from the balance ledger
+ * through the shared balance cache.
+ */
+final class SqliteSplitRepository implements SplitRepository {
+    private final ConnectionManager connections;
+    private final BalanceCache balanceCache;
+    private final EventLog eventLog;
+
+    SqliteSplitRepository(ConnectionManager connections) {
+        this.connections = connections;
+        this.balanceCache = BalanceCache.forConnection(connections.getWriteConnection());
+        this.eventLog = EventLog.forConnection(connections.getWriteConnection());
+    }
+
+    @Override
+    public int insert(int expenseId, int userId, Money amount) throws SQLException {
+        int creatorId = connections.write((connection, events) ->
+            ExpenseWriter.insertSplit(connection, expenseId, userId, amount, events));
+        balanceCache.invalidate(userId, creatorId);
+        return creatorId;
+    }
+
+    @Override
+    public List<Split> findByExpense(int expenseId) throws SQLException {
+        String sql = "SELECT s.id, s.user_id, s.amount, s.is_paid, u.username " +
+                     "FROM splits s JOIN users u ON s.user_id = u.id " +
+                     "WHERE s.expense_id = ? ORDER BY s.id";
+        return connections.read(connection -> {
+            List<Split> splits = new ArrayList<>();
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setInt(1, expenseId);
+                ResultSet rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    Split split = new Split();
+                    split.setId(rs.getInt("id"));
+                    split.setExpenseId(expenseId);
+                    split.setUserId(rs.getInt("user_id"));
+                    split.setUsername(rs.getString("username"));
+                    split.setAmount(Money.ofCents(rs.getLong("amount")));
+                    split.setPaid(rs.getBoolean("is_paid"));
+                    splits.add(split);
+                }
+            }
+            return splits;
+        });
+    }
+
+    @Override
+    public BalanceMap getBalances(int userId) throws SQLException {
+        return balanceCache.get(userId, id -> connections.read(connection -> BalanceLedger.getBalances(connection, id)));
+    }
+
+    @Override
+    public long[] getGroupNetPositions(int[] userIds) throws SQLException {
+        return connections.read(connection -> GroupSettlement.netPositions(connection, userIds));
+    }
+
+    @Override
+    public void forEachNetBalance(NetBalanceConsumer consumer) throws SQLException {
+        connections.read(connection -> {
+            BalanceLedger.forEachNetBalance(connection, consumer);
+            return null;
+        });
+    }
+
+    /**
+     * Regenerates the balance ledger from the raw splits and starts the event
+     * log over from it, since the rebuilt ledger no longer follows from its events
+     */
+    @Override
+    public void rebuildBalances() throws SQLException {
+        connections.write((connection, events) -> {
+            BalanceLedger.rebuild(connection);
+            return null;
+        });
+        balanceCache.invalidateAll();
+        try {
+            eventLog.rebase();
+        } catch (SQLException | IOException e) {
+            System.out.println("Error snapshotting the event log: " + e.getMessage());
+        }
+    }
+}
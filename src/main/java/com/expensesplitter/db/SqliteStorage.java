@@ -0,0 +1,82 @@
+package com.expensesplitter.db;
+
+import com.expensesplitter.repository.ExpenseRepository;
+import com.expensesplitter.repository.SettlementRepository;
+import com.expensesplitter.repository.SplitRepository;
+import com.expensesplitter.repository.Storage;
+import com.expensesplitter.repository.UserRepository;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * The SQLite backend. The repositories share one ConnectionManager: reads run
+ * in parallel on its read pool and each write is a transaction on its single
+ * write connection. The balance cache and event log are the ones shared by
+ * every connection to the same database file in this process.
+ */
+public final class SqliteStorage implements Storage {
+    private final ConnectionManager connections;
+    private final SqliteUserRepository users;
+    private final SqliteExpenseRepository expenses;
+    private final SqliteSplitRepository splits;
+    private final SqliteSettlementRepository settlements;
+
+    public SqliteStorage(ConnectionManager connections) {
+        this.connections = connections;
+        this.users = new SqliteUserRepository(connections);
+        this.expenses = new SqliteExpenseRepository(connections);
+        this.splits = new SqliteSplitRepository(connections);
+        this.settlements = new SqliteSettlementRepository(connections);
+    }
+
+    /**
+     * Runs every read and write on the one connection, one at a time
+     */
+    public SqliteStorage(Connection connection) {
+        this(ConnectionManager.wrap(connection));
+    }
+
+    /**
+     * Opens a connection manager with one read connection per core and applies pending migrations
+     */
+    public static SqliteStorage open(String dbUrl) throws SQLException {
+        ConnectionManager connections = ConnectionManager.open(dbUrl, Runtime.getRuntime().availableProcessors());
+        try {
+            connections.withWriter(SchemaMigrator::migrate);
+        } catch (SQLException e) {
+            connections.close();
+            throw e;
+        }
+        return new SqliteStorage(connections);
+    }
+
+    public ConnectionManager getConnectionManager() {
+        return connections;
+    }
+
+    @Override
+    public UserRepository getUsers() {
+        return users;
+    }
+
+    @Override
+    public ExpenseRepository getExpenses() {
+        return expenses;
+    }
+
+    @Override
+    public SplitRepository getSplits() {
+        return splits;
+    }
+
+    @Override
+    public SettlementRepository getSettlements() {
+        return settlements;
+    }
+
+    @Override
+    public void close() {
+        connections.close();
+    }
+}
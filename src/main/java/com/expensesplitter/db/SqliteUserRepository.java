@@ -0,0 +1,89 @@
+package com.expensesplitter.db;
+
+import com.expensesplitter.model.User;
+import com.expensesplitter.repository.UserRepository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Users in the users table.
+ */
+final class SqliteUserRepository implements UserRepository {
+    // Never select the password column unless it is being checked
+    private static final String USER_COLUMNS = "id, username, email";
+
+    private final ConnectionManager connections;
+
+    SqliteUserRepository(ConnectionManager connections) {
+        this.connections = connections;
+    }
+
+    @Override
+    public int insert(String username, String password, String email) throws SQLException {
+        return connections.write((connection, events) -> UserWriter.insert(connection, username, password, email));
+    }
+
+    @Override
+    public User findById(int userId) throws SQLException {
+        String sql = "SELECT " + USER_COLUMNS + " FROM users WHERE id = ?";
+        return connections.read(connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setInt(1, userId);
+                ResultSet rs = pstmt.executeQuery();
+                return rs.next() ? readUser(rs) : null;
+            }
+        });
+    }
+
+    @Override
+    public User findByUsername(String username) throws SQLException {
+        String sql = "SELECT " + USER_COLUMNS + " FROM users WHERE username = ?";
+        return connections.read(connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setString(1, username);
+                ResultSet rs = pstmt.executeQuery();
+                return rs.next() ? readUser(rs) : null;
+            }
+        });
+    }
+
+    @Override
+    public User authenticate(String username, String password) throws SQLException {
+        String sql = "SELECT " + USER_COLUMNS + " FROM users WHERE username = ? AND password = ?";
+        return connections.read(connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setString(1, username);
+                pstmt.setString(2, password); // In a real app, verify against hashed password
+                ResultSet rs = pstmt.executeQuery();
+                return rs.next() ? readUser(rs) : null;
+            }
+        });
+    }
+
+    @Override
+    public List<User> findAll() throws SQLException {
+        String sql = "SELECT " + USER_COLUMNS + " FROM users ORDER BY id";
+        return connections.read(connection -> {
+            List<User> users = new ArrayList<>();
+            try (PreparedStatement pstmt = connection.prepareStatement(sql);
+                 ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    users.add(readUser(rs));
+                }
+            }
+            return users;
+        });
+    }
+
+    private static User readUser(ResultSet rs) throws SQLException {
+        User user = new User();
+        user.setId(rs.getInt("id"));
+        user.setUsername(rs.getString("username"));
+        user.setEmail(rs.getString("email"));
+        return user;
+    }
+}
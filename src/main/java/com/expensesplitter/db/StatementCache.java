@@ -0,0 +1,257 @@
+package com.expensesplitter.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prepared statement cache owned by a single connection. wrap() returns a
+ * connection whose prepareStatement reuses idle statements with the same SQL
+ * text instead of asking SQLite to parse and plan them again. Closing a
+ * statement obtained from it resets the statement and returns it to the cache;
+ * the least recently used statements are really closed once the cache exceeds
+ * its size, and all of them are closed with the connection.
+ *
+ * Callers keep using try-with-resources exactly as with an uncached connection.
+ * The cache itself is reachable through connection.unwrap(StatementCache.class).
+ */
+public final class StatementCache {
+    public static final int DEFAULT_MAX_SIZE = 64;
+    // System property overriding the cache size; 0 disables caching
+    public static final String SIZE_PROPERTY = "expensesplitter.statementCache.size";
+
+    private final Connection connection;
+    private final int maxSize;
+    private final Map<String, Deque<PreparedStatement>> idle = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private int idleCount;
+
+    private StatementCache(Connection connection, int maxSize) {
+        this.connection = connection;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Wraps a connection with a statement cache sized by the system property
+     * @return The caching connection, or the connection itself if caching is disabled
+     */
+    public static Connection wrap(Connection connection) {
+        return wrap(connection, Integer.getInteger(SIZE_PROPERTY, DEFAULT_MAX_SIZE));
+    }
+
+    /**
+     * @param maxSize Maximum number of idle statements kept open; 0 disables caching
+     */
+    public static Connection wrap(Connection connection, int maxSize) {
+        if (connection == null || maxSize <= 0 || Proxy.isProxyClass(connection.getClass())) {
+            return connection;
+        }
+        StatementCache cache = new StatementCache(connection, maxSize);
+        return (Connection) Proxy.newProxyInstance(
+            StatementCache.class.getClassLoader(),
+            new Class<?>[] {Connection.class},
+            cache.new ConnectionHandler());
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public synchronized int size() {
+        return idleCount;
+    }
+
+    private PreparedStatement checkout(String key, String sql, Integer autoGeneratedKeys) throws SQLException {
+        synchronized (this) {
+            Deque<PreparedStatement> statements = idle.get(key);
+            if (statements != null && !statements.isEmpty()) {
+                PreparedStatement statement = statements.pop();
+                idleCount--;
+                hits.incrementAndGet();
+                return statement;
+            }
+        }
+        misses.incrementAndGet();
+        return autoGeneratedKeys == null
+            ? connection.prepareStatement(sql)
+            : connection.prepareStatement(sql, autoGeneratedKeys);
+    }
+
+    private void checkin(String key, PreparedStatement statement) throws SQLException {
+        if (connection.isClosed() || statement.isClosed()) {
+            statement.close();
+            return;
+        }
+        statement.clearParameters();
+        statement.clearBatch();
+
+        PreparedStatement evicted = null;
+        synchronized (this) {
+            idle.computeIfAbsent(key, k -> new ArrayDeque<>()).push(statement);
+            idleCount++;
+            if (idleCount > maxSize) {
+                evicted = evictEldest();
+            }
+        }
+        if (evicted != null) {
+            evicted.close();
+        }
+    }
+
+    private PreparedStatement evictEldest() {
+        Iterator<Map.Entry<String, Deque<PreparedStatement>>> it = idle.entrySet().iterator();
+        while (it.hasNext()) {
+            Deque<PreparedStatement> statements = it.next().getValue();
+            if (!statements.isEmpty()) {
+                idleCount--;
+                PreparedStatement eldest = statements.removeLast();
+                if (statements.isEmpty()) {
+                    it.remove();
+                }
+                return eldest;
+            }
+            it.remove();
+        }
+        return null;
+    }
+
+    private void closeAll() throws SQLException {
+        SQLException failure = null;
+        synchronized (this) {
+            for (Deque<PreparedStatement> statements : idle.values()) {
+                for (PreparedStatement statement : statements) {
+                    try {
+                        statement.close();
+                    } catch (SQLException e) {
+                        failure = e;
+                    }
+                }
+            }
+            idle.clear();
+            idleCount = 0;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private final class ConnectionHandler implements InvocationHandler {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "prepareStatement":
+                    if (args.length == 1) {
+                        return borrow((String) args[0], null);
+                    }
+                    if (args.length == 2 && args[1] instanceof Integer) {
+                        return borrow((String) args[0], (Integer) args[1]);
+                    }
+                    break;
+                case "close":
+                    closeAll();
+                    break;
+                case "unwrap":
+                    if (args[0] == StatementCache.class) {
+                        return StatementCache.this;
+                    }
+                    break;
+                case "isWrapperFor":
+                    if (args[0] == StatementCache.class) {
+                        return true;
+                    }
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            return StatementCache.invoke(connection, method, args);
+        }
+
+        private PreparedStatement borrow(String sql, Integer autoGeneratedKeys) throws SQLException {
+            String key = autoGeneratedKeys == null ? sql : autoGeneratedKeys + ":" + sql;
+            PreparedStatement statement = checkout(key, sql, autoGeneratedKeys);
+            return (PreparedStatement) Proxy.newProxyInstance(
+                StatementCache.class.getClassLoader(),
+                new Class<?>[] {PreparedStatement.class},
+                new StatementHandler(key, sql, statement));
+        }
+    }
+
+    private final class StatementHandler implements InvocationHandler {
+        private final String key;
+        private final String sql;
+        private final PreparedStatement statement;
+        // The result set handed out last; executing again closes it, as JDBC does for a statement
+        private ResultSet current;
+        private boolean returned;
+
+        StatementHandler(String key, String sql, PreparedStatement statement) {
+            this.key = key;
+            this.sql = sql;
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        // An open result set would keep the read transaction alive
+                        if (current != null) {
+                            current.close();
+                            current = null;
+                        }
+                        checkin(key, statement);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || statement.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            if (returned) {
+                throw new SQLException("Statement is closed");
+            }
+            Object result = StatementCache.invoke(statement, method, args);
+            if (result instanceof ResultSet && result != current) {
+                if (current != null) {
+                    current.close();
+                }
+                current = (ResultSet) result;
+            }
+            return result;
+        }
+    }
+}
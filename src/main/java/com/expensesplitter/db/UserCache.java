@@ -0,0 +1,117 @@
+package com.expensesplitter.db;
+
+import com.expensesplitter.model.User;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded directory of users keyed both by username and by id. Both keys
+ * resolve to the same User instance, so repeated lookups of a participant
+ * return one shared object instead of a fresh row copy. The least recently
+ * used users are evicted once the cache exceeds its size.
+ *
+ * Cached users never carry a password. Usernames and ids are immutable in
+ * this schema, so entries only need to be dropped when a user is removed.
+ */
+public final class UserCache {
+    public static final int DEFAULT_MAX_SIZE = 1024;
+    // System property overriding the cache size; 0 disables caching
+    public static final String SIZE_PROPERTY = "expensesplitter.userCache.size";
+
+    private final int maxSize;
+    private final Map<Integer, User> byId = new HashMap<>();
+    private final LinkedHashMap<String, User> byUsername;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public UserCache() {
+        this(Integer.getInteger(SIZE_PROPERTY, DEFAULT_MAX_SIZE));
+    }
+
+    /**
+     * @param maxSize Maximum number of users kept; 0 disables caching
+     */
+    public UserCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.byUsername = new LinkedHashMap<String, User>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, User> eldest) {
+                if (size() > UserCache.this.maxSize) {
+                    byId.remove(eldest.getValue().getId());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return The cached user, or null on a miss
+     */
+    public synchronized User getByUsername(String username) {
+        User user = byUsername.get(username);
+        (user != null ? hits : misses).incrementAndGet();
+        return user;
+    }
+
+    /**
+     * @return The cached user, or null on a miss
+     */
+    public synchronized User getById(int id) {
+        User user = byId.get(id);
+        if (user != null) {
+            // Touch the username entry so id lookups count towards recency too
+            byUsername.get(user.getUsername());
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return user;
+    }
+
+    /**
+     * Adds a user loaded from the database, or returns the instance already
+     * cached under the same id so callers share one copy
+     */
+    public synchronized User put(User user) {
+        if (maxSize <= 0 || user == null) {
+            return user;
+        }
+        User existing = byId.get(user.getId());
+        if (existing != null) {
+            byUsername.get(existing.getUsername());
+            return existing;
+        }
+        user.setPassword(null);
+        byId.put(user.getId(), user);
+        byUsername.put(user.getUsername(), user);
+        return user;
+    }
+
+    public synchronized void remove(int id) {
+        User user = byId.remove(id);
+        if (user != null) {
+            byUsername.remove(user.getUsername());
+        }
+    }
+
+    public synchronized void clear() {
+        byId.clear();
+        byUsername.clear();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public synchronized int size() {
+        return byId.size();
+    }
+}
@@ -0,0 +1,35 @@
+package com.expensesplitter.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Inserts users. Runs on the caller's connection and never commits, so the
+ * caller decides the transaction boundary.
+ */
+public final class UserWriter {
+
+    private UserWriter() {}
+
+    /**
+     * @return The generated user id
+     */
+    public static int insert(Connection connection, String username, String password, String email) throws SQLException {
+        String sql = "INSERT INTO users (username, password, email) VALUES (?, ?, ?)";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            pstmt.setString(1, username);
+            pstmt.setString(2, password); // In a real app, hash this password
+            pstmt.setString(3, email);
+            pstmt.executeUpdate();
+
+            ResultSet rs = pstmt.getGeneratedKeys();
+            if (!rs.next()) {
+                throw new SQLException("No id generated for user");
+            }
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package com.expensesplitter.db;
+
+import com.expensesplitter.events.EventBatch;
+import com.expensesplitter.model.Expense;
+import com.expensesplitter.model.Money;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Single-writer group-commit pipeline. Callers submit write commands to a
+ * bounded queue; one writer thread drains up to maxBatchSize commands, waiting
+ * at most maxLingerMillis for more to arrive, runs them in one transaction and
+ * completes every caller's future once the commit succeeds. Each command runs
+ * inside its own savepoint, so a failing command is rolled back on its own
+ * without affecting the rest of the batch.
+ *
+ * SQLite only allows one writer at a time, so funnelling writes through one
+ * connection and sharing each fsync across a batch raises write throughput.
+ * Each batch is one ConnectionManager write, so it takes turns with every
+ * other writer of the manager and is run again from the start while another
+ * process holds the database.
+ *
+ * Cached balances are invalidated after the commit and before the futures
+ * complete: only the affected users for the built-in commands, everything for
+ * arbitrary submitted commands.
+ *
+ * Commands record their events into the batch of the transaction, which is
+ * appended to the event log as the transaction commits; the events of a
+ * command rolled back to its savepoint are dropped with it. Submitted commands
+ * that change balances pass getEventBatch() to the DAO helpers they call.
+ */
+public class WritePipeline implements AutoCloseable {
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 256;
+    public static final long DEFAULT_MAX_LINGER_MILLIS = 2;
+
+    /**
+     * A unit of work executed on the writer connection inside the batch transaction.
+     * Implementations must not commit or change the auto-commit mode.
+     */
+    @FunctionalInterface
+    public interface WriteCommand<T> {
+        T execute(Connection connection) throws SQLException;
+    }
+
+    private final ConnectionManager connections;
+    private final BalanceCache balanceCache;
+    // Batch of the transaction being written; only touched on the writer thread
+    private EventBatch events;
+    private final BlockingQueue<PendingWrite<?>> queue;
+    private final int maxBatchSize;
+    private final long maxLingerNanos;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * Writes on the manager's write connection, taking turns with its other writers
+     */
+    public WritePipeline(ConnectionManager connections) {
+        this(connections, DEFAULT_QUEUE_CAPACITY, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_LINGER_MILLIS);
+    }
+
+    /**
+     * @param connection Connection owned exclusively by the pipeline; it stays open when the pipeline closes
+     */
+    public WritePipeline(Connection connection) {
+        this(ConnectionManager.wrap(connection));
+    }
+
+    /**
+     * @param connections Manager whose write connection the batches are written on
+     * @param queueCapacity Maximum number of queued commands before submitters block
+     * @param maxBatchSize Maximum number of commands committed together
+     * @param maxLingerMillis Maximum time to wait for a batch to fill once the first command arrived
+     */
+    public WritePipeline(ConnectionManager connections, int queueCapacity, int maxBatchSize, long maxLingerMillis) {
+        if (queueCapacity < 1 || maxBatchSize < 1 || maxLingerMillis < 0) {
+            throw new IllegalArgumentException("Queue capacity and batch size must be positive and linger non-negative");
+        }
+        this.connections = connections;
+        this.balanceCache = BalanceCache.forConnection(connections.getWriteConnection());
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxBatchSize = maxBatchSize;
+        this.maxLingerNanos = TimeUnit.MILLISECONDS.toNanos(maxLingerMillis);
+        this.writer = new Thread(this::runWriter, "write-pipeline");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues a command, blocking while the queue is full
+     * @return Future completed with the command's result after its batch commits
+     */
+    public <T> CompletableFuture<T> submit(WriteCommand<T> command) throws InterruptedException {
+        return enqueue(new PendingWrite<>(command, result -> balanceCache.invalidateAll()));
+    }
+
+    /**
+     * Queues a command, waiting at most the given time for space in the queue
+     * @throws RejectedExecutionException if the queue stayed full
+     */
+    public <T> CompletableFuture<T> submit(WriteCommand<T> command, long timeout, TimeUnit unit) throws InterruptedException {
+        PendingWrite<T> pending = new PendingWrite<>(command, result -> balanceCache.invalidateAll());
+        ensureOpen();
+        if (!queue.offer(pending, timeout, unit)) {
+            throw new RejectedExecutionException("Write queue is full");
+        }
+        return pending.future;
+    }
+
+    /**
+     * Queues a command whose effect on balances is limited to the given users,
+     * so only their cached balances are invalidated after the commit
+     */
+    public <T> CompletableFuture<T> submit(WriteCommand<T> command, int[] affectedUserIds) throws InterruptedException {
+        return enqueue(new PendingWrite<>(command, result -> balanceCache.invalidate(affectedUserIds)));
+    }
+
+    /**
+     * @return Future completed with the new user's id
+     */
+    public CompletableFuture<Integer> registerUser(String username, String password, String email) throws InterruptedException {
+        return enqueue(new PendingWrite<>(
+            connection -> UserWriter.insert(connection, username, password, email),
+            userId -> {}));
+    }
+
+    public CompletableFuture<Expense> addExpenseWithSplits(Expense expense) throws InterruptedException {
+        return enqueue(new PendingWrite<>(
+            connection -> ExpenseWriter.insert(connection, expense, events),
+            balanceCache::invalidate));
+    }
+
+    public CompletableFuture<Boolean> addSplit(int expenseId, int userId, Money amount) throws InterruptedException {
+        return enqueue(new PendingWrite<>(
+            connection -> ExpenseWriter.insertSplit(connection, expenseId, userId, amount, events),
+            creatorId -> balanceCache.invalidate(userId, creatorId)))
+            .thenApply(creatorId -> true);
+    }
+
+    public CompletableFuture<Boolean> settleDebt(int payerId, int receiverId, Money amount) throws InterruptedException {
+        return enqueue(new PendingWrite<Boolean>(
+            connection -> {
+                SettlementWriter.settle(connection, payerId, receiverId, amount, events);
+                return true;
+            },
+            result -> balanceCache.invalidate(payerId, receiverId)));
+    }
+
+    public CompletableFuture<Boolean> deleteExpense(int expenseId) throws InterruptedException {
+        return enqueue(new PendingWrite<>(
+            connection -> ExpenseWriter.delete(connection, expenseId, events),
+            balanceCache::invalidate))
+            .thenApply(affectedUserIds -> true);
+    }
+
+    /**
+     * @return The event batch of the transaction being written. Only for use by
+     *         submitted commands, which run on the writer thread.
+     */
+    public EventBatch getEventBatch() {
+        return events;
+    }
+
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    /**
+     * Stops accepting commands, commits everything already queued and waits for
+     * the writer to finish. An interrupt does not cut the wait short, since the
+     * queued commands still hold the connection; the interrupt flag is restored
+     * before returning.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Reject commands that raced with shutdown
+        PendingWrite<?> pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future.completeExceptionally(new RejectedExecutionException("Write pipeline is closed"));
+        }
+    }
+
+    private <T> CompletableFuture<T> enqueue(PendingWrite<T> pending) throws InterruptedException {
+        ensureOpen();
+        queue.put(pending);
+        return pending.future;
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new RejectedExecutionException("Write pipeline is closed");
+        }
+    }
+
+    private void runWriter() {
+        List<PendingWrite<?>> batch = new ArrayList<>(maxBatchSize);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                PendingWrite<?> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Linger briefly so concurrent callers can share the commit
+                long deadline = System.nanoTime() + maxLingerNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingWrite<?> next = remaining > 0
+                        ? queue.poll(remaining, TimeUnit.NANOSECONDS)
+                        : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                commit(batch);
+            } catch (InterruptedException e) {
+                // The commands taken off the queue were never run; nothing else will complete them
+                for (PendingWrite<?> pending : batch) {
+                    pending.future.completeExceptionally(new RejectedExecutionException("Write pipeline was interrupted"));
+                }
+                Thread.currentThread().interrupt();
+                closed = true;
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+
+        // Anything left after an interrupt can no longer be written
+        PendingWrite<?> pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future.completeExceptionally(new RejectedExecutionException("Write pipeline is closed"));
+        }
+    }
+
+    private void commit(List<PendingWrite<?>> batch) {
+        try {
+            connections.write("WritePipeline", batch.size(), (connection, batchEvents) -> {
+                events = batchEvents;
+                for (PendingWrite<?> pending : batch) {
+                    pending.failure = null;
+                    Savepoint savepoint = connection.setSavepoint();
+                    long mark = events.mark();
+                    try {
+                        pending.execute(connection);
+                        connection.releaseSavepoint(savepoint);
+                    } catch (SQLException e) {
+                        // A busy database fails the whole attempt, which the manager runs again
+                        if (ConnectionManager.isBusy(e)) {
+                            throw e;
+                        }
+                        rollBack(connection, savepoint, mark, pending, e);
+                    } catch (RuntimeException e) {
+                        rollBack(connection, savepoint, mark, pending, e);
+                    }
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            for (PendingWrite<?> pending : batch) {
+                pending.future.completeExceptionally(e);
+            }
+            return;
+        } finally {
+            events = null;
+        }
+
+        for (PendingWrite<?> pending : batch) {
+            pending.committed();
+        }
+        for (PendingWrite<?> pending : batch) {
+            pending.complete();
+        }
+    }
+
+    private void rollBack(Connection connection, Savepoint savepoint, long mark, PendingWrite<?> pending,
+                          Exception failure) throws SQLException {
+        connection.rollback(savepoint);
+        connection.releaseSavepoint(savepoint);
+        events.truncate(mark);
+        pending.failure = failure;
+    }
+
+    private static final class PendingWrite<T> {
+        final WriteCommand<T> command;
+        final Consumer<T> onCommit;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        T result;
+        Exception failure;
+
+        PendingWrite(WriteCommand<T> command, Consumer<T> onCommit) {
+            this.command = command;
+            this.onCommit = onCommit;
+        }
+
+        void execute(Connection connection) throws SQLException {
+            result = command.execute(connection);
+        }
+
+        void committed() {
+            if (failure == null) {
+                onCommit.accept(result);
+            }
+        }
+
+        void complete() {
+            if (failure != null) {
+                future.completeExceptionally(failure);
+            } else {
+                future.complete(result);
+            }
+        }
+    }
+}
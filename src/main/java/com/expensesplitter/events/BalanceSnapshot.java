@@ -0,0 +1,217 @@
+package com.expensesplitter.events;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Snapshot files of the balance ledger. A snapshot holds every non-zero ledger
+ * row as it stood after a given event sequence number, ordered by (debtor,
+ * creditor), so it can be merged with a replayed log tail without sorting.
+ *
+ * Layout: a header of [int magic][int version][long seq][long expenseSeq],
+ * one [int debtor][int creditor][long cents] record per row, and a trailer of
+ * [long rowCount][int crc32c] covering everything before it. expenseSeq is the
+ * highest expense id the database had handed out at the snapshot.
+ */
+public final class BalanceSnapshot {
+    static final int MAGIC = 0x5153534e;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 24;
+    static final int ROW_BYTES = 16;
+    static final int TRAILER_BYTES = 12;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".bin";
+
+    /**
+     * Receives the ledger rows of a snapshot in (debtor, creditor) order
+     */
+    @FunctionalInterface
+    public interface RowConsumer {
+        void accept(int debtorId, int creditorId, long amountInCents);
+    }
+
+    private final Path file;
+    private final long seq;
+    private final long expenseSeq;
+
+    private BalanceSnapshot(Path file, long seq, long expenseSeq) {
+        this.file = file;
+        this.seq = seq;
+        this.expenseSeq = expenseSeq;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return Sequence number of the last event the snapshot includes
+     */
+    public long getSeq() {
+        return seq;
+    }
+
+    /**
+     * @return Highest expense id handed out when the snapshot was taken
+     */
+    public long getExpenseSeq() {
+        return expenseSeq;
+    }
+
+    /**
+     * @return The complete snapshots in the directory, oldest first
+     */
+    public static List<BalanceSnapshot> list(Path directory) throws IOException {
+        List<BalanceSnapshot> snapshots = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return snapshots;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                BalanceSnapshot snapshot = readHeader(file);
+                if (snapshot != null) {
+                    snapshots.add(snapshot);
+                }
+            }
+        }
+        snapshots.sort(Comparator.comparingLong(BalanceSnapshot::getSeq));
+        return snapshots;
+    }
+
+    static Path path(Path directory, long seq) {
+        return directory.resolve(String.format("%s%020d%s", PREFIX, seq, SUFFIX));
+    }
+
+    /**
+     * Streams the balance ledger into a new snapshot file. The reader connection
+     * should already be inside the read transaction the snapshot belongs to.
+     * @return Number of ledger rows written
+     */
+    static long write(Path file, long seq, long expenseSeq, Connection reader) throws IOException, SQLException {
+        String sql = "SELECT debtor_id, creditor_id, net_amount FROM balance_ledger " +
+                     "WHERE net_amount != 0 ORDER BY debtor_id, creditor_id";
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long rows = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                 StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             PreparedStatement pstmt = reader.prepareStatement(sql);
+             ResultSet rs = pstmt.executeQuery()) {
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(seq).putLong(expenseSeq);
+            while (rs.next()) {
+                if (buffer.remaining() < ROW_BYTES) {
+                    drain(channel, buffer, crc);
+                }
+                buffer.putInt(rs.getInt(1)).putInt(rs.getInt(2)).putLong(rs.getLong(3));
+                rows++;
+            }
+            if (buffer.remaining() < TRAILER_BYTES) {
+                drain(channel, buffer, crc);
+            }
+            buffer.putLong(rows);
+            buffer.flip();
+            crc.update(buffer);
+            buffer.limit(buffer.capacity()).putInt((int) crc.getValue()).flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        return rows;
+    }
+
+    /**
+     * Streams every row of the snapshot, checking its checksum at the end
+     * @return Number of rows read
+     * @throws IOException if the file is truncated or its checksum does not match
+     */
+    public long forEach(RowConsumer consumer) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long rows = (channel.size() - HEADER_BYTES - TRAILER_BYTES) / ROW_BYTES;
+            if (rows < 0 || HEADER_BYTES + rows * ROW_BYTES + TRAILER_BYTES != channel.size()) {
+                throw new IOException("Snapshot " + file + " is truncated");
+            }
+            fill(channel, buffer, HEADER_BYTES);
+            buffer.position(HEADER_BYTES);
+            for (long i = 0; i < rows; i++) {
+                if (buffer.remaining() < ROW_BYTES) {
+                    refill(channel, buffer, crc, ROW_BYTES);
+                }
+                consumer.accept(buffer.getInt(), buffer.getInt(), buffer.getLong());
+            }
+            refill(channel, buffer, crc, TRAILER_BYTES);
+            long recordedRows = buffer.getLong();
+            int end = buffer.position();
+            crc.update(buffer.duplicate().position(0).limit(end));
+            if (recordedRows != rows || buffer.getInt() != (int) crc.getValue()) {
+                throw new IOException("Snapshot " + file + " failed its checksum");
+            }
+            return rows;
+        }
+    }
+
+    private static BalanceSnapshot readHeader(Path file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES + TRAILER_BYTES) {
+                return null;
+            }
+            fill(channel, header, HEADER_BYTES);
+        }
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            return null;
+        }
+        return new BalanceSnapshot(file, header.getLong(8), header.getLong(16));
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer, CRC32C crc) throws IOException {
+        buffer.flip();
+        crc.update(buffer.duplicate());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Checksums what was consumed, keeps the unread bytes and reads until at least needed are available
+     */
+    private static void refill(FileChannel channel, ByteBuffer buffer, CRC32C crc, int needed) throws IOException {
+        int consumed = buffer.position();
+        crc.update(buffer.duplicate().position(0).limit(consumed));
+        buffer.compact();
+        while (buffer.position() < needed) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Snapshot ended early");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static void fill(FileChannel channel, ByteBuffer buffer, int needed) throws IOException {
+        buffer.clear();
+        while (buffer.position() < needed) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Snapshot ended early");
+            }
+        }
+        buffer.flip();
+    }
+}
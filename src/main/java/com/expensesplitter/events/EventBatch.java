@@ -0,0 +1,142 @@
+package com.expensesplitter.events;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The events of one transaction, encoded and waiting to be appended to the
+ * event log once the transaction commits. The DAO helpers record into the
+ * batch as they write; EventLog.commit() appends it after the database commit.
+ *
+ * Each event is held as [int length][byte type][payload], where length counts
+ * the type byte and payload. A batch from a disabled log records nothing.
+ */
+public final class EventBatch {
+    static final byte EXPENSE_ADDED = 1;
+    static final byte SPLIT_ADDED = 2;
+    static final byte DEBT_SETTLED = 3;
+    static final byte EXPENSE_DELETED = 4;
+
+    // Longer descriptions are cut; the database keeps the full text
+    static final int MAX_DESCRIPTION_BYTES = 1024;
+
+    private final boolean enabled;
+    private ByteBuffer buffer;
+    private int count;
+
+    EventBatch(boolean enabled) {
+        this.enabled = enabled;
+        this.buffer = ByteBuffer.allocate(enabled ? 256 : 0);
+    }
+
+    /**
+     * @return A batch that records nothing, for writes made without an event log
+     */
+    public static EventBatch disabled() {
+        return new EventBatch(false);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void expenseAdded(int expenseId, int creatorId, long amountInCents, String description) {
+        if (!enabled) {
+            return;
+        }
+        byte[] text = description == null ? new byte[0] : description.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(text.length, MAX_DESCRIPTION_BYTES);
+        begin(EXPENSE_ADDED, 4 + 4 + 8 + 2 + length);
+        buffer.putInt(expenseId).putInt(creatorId).putLong(amountInCents)
+            .putShort((short) length).put(text, 0, length);
+    }
+
+    /**
+     * @param creatorId Creator of the expense, whom an unpaid split is owed to
+     */
+    public void splitAdded(int expenseId, int userId, int creatorId, long amountInCents, boolean paid) {
+        if (!enabled) {
+            return;
+        }
+        begin(SPLIT_ADDED, 4 + 4 + 4 + 8 + 1);
+        buffer.putInt(expenseId).putInt(userId).putInt(creatorId).putLong(amountInCents).put((byte) (paid ? 1 : 0));
+    }
+
+    /**
+     * Records that everything the payer owed the receiver was marked as paid
+     * @param amountInCents Amount of the recorded settlement
+     */
+    public void debtSettled(int payerId, int receiverId, long amountInCents) {
+        if (!enabled) {
+            return;
+        }
+        begin(DEBT_SETTLED, 4 + 4 + 8);
+        buffer.putInt(payerId).putInt(receiverId).putLong(amountInCents);
+    }
+
+    /**
+     * Records a deleted expense with the unpaid amounts it took out of the ledger
+     * @param count Number of leading entries of the debtor and amount arrays to use
+     */
+    public void expenseDeleted(int expenseId, int creatorId, int[] debtorIds, long[] unpaidAmountsInCents, int count) {
+        if (!enabled) {
+            return;
+        }
+        begin(EXPENSE_DELETED, 4 + 4 + 4 + count * 12);
+        buffer.putInt(expenseId).putInt(creatorId).putInt(count);
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(debtorIds[i]).putLong(unpaidAmountsInCents[i]);
+        }
+    }
+
+    /**
+     * @return Number of events recorded
+     */
+    public int size() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * @return A position to truncate back to when the work after it is rolled back
+     */
+    public long mark() {
+        return ((long) count << 32) | buffer.position();
+    }
+
+    /**
+     * Drops every event recorded after the mark
+     */
+    public void truncate(long mark) {
+        count = (int) (mark >>> 32);
+        buffer.position((int) mark);
+    }
+
+    public void clear() {
+        count = 0;
+        buffer.clear();
+    }
+
+    /**
+     * @return The encoded events, read from position 0 to the current position
+     */
+    ByteBuffer encoded() {
+        return buffer;
+    }
+
+    private void begin(byte type, int payloadLength) {
+        int needed = 4 + 1 + payloadLength;
+        if (buffer.remaining() < needed) {
+            int capacity = Math.max(buffer.capacity() * 2, buffer.position() + needed);
+            ByteBuffer grown = ByteBuffer.allocate(capacity);
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+        buffer.putInt(1 + payloadLength).put(type);
+        count++;
+    }
+}
@@ -0,0 +1,24 @@
+package com.expensesplitter.events;
+
+/**
+ * Receives the events of the log in sequence order during a replay. Every
+ * method does nothing by default, so handlers only override what they use.
+ */
+public interface EventHandler {
+
+    default void expenseAdded(long seq, int expenseId, int creatorId, long amountInCents, String description) {}
+
+    default void splitAdded(long seq, int expenseId, int userId, int creatorId, long amountInCents, boolean paid) {}
+
+    /**
+     * Everything the payer owed the receiver was marked as paid
+     */
+    default void debtSettled(long seq, int payerId, int receiverId, long amountInCents) {}
+
+    /**
+     * The arrays are reused between calls and only valid until this method returns
+     * @param count Number of leading entries of the debtor and amount arrays in use
+     */
+    default void expenseDeleted(long seq, int expenseId, int creatorId,
+                                int[] debtorIds, long[] unpaidAmountsInCents, int count) {}
+}
@@ -0,0 +1,467 @@
+package com.expensesplitter.events;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of the balance-changing writes to one database file:
+ * ExpenseAdded, SplitAdded, DebtSettled and ExpenseDeleted. Every service on
+ * the same file shares one log, obtained with forConnection(), and it lives in
+ * a directory next to the database, e.g. data/expensesplitter.db.events.
+ *
+ * Writers record events into an EventBatch while they write and hand it to
+ * commit(), which commits the transaction and appends the batch under one lock,
+ * so the log has the order in which transactions committed. Events are copied
+ * into a memory-mapped segment file; they survive a crash of the process but
+ * are only forced to disk when a segment fills up, on snapshots and on close().
+ *
+ * Every snapshotInterval events a background thread writes a snapshot of the
+ * balance ledger. It pins a read transaction while holding the lock, so the
+ * snapshot shows exactly the events up to the current sequence number, and
+ * streams the ledger after releasing it. Segments older than the last
+ * KEEP_SNAPSHOTS snapshots are deleted. On startup LedgerReplay.recover()
+ * rebuilds the ledger from the latest snapshot and the events after it.
+ *
+ * The log opens with its first write. If it cannot describe the database, for
+ * example because expenses were written without it or a segment is damaged, it
+ * takes a new baseline snapshot and starts over from there. In-memory databases
+ * and a second process on the same file get a disabled log.
+ */
+public final class EventLog {
+    // System property; "false" disables the event log
+    public static final String ENABLED_PROPERTY = "expensesplitter.eventLog";
+    public static final String SEGMENT_BYTES_PROPERTY = "expensesplitter.eventLog.segmentBytes";
+    public static final String SNAPSHOT_INTERVAL_PROPERTY = "expensesplitter.eventLog.snapshotInterval";
+    public static final int DEFAULT_SEGMENT_BYTES = 64 << 20;
+    public static final long DEFAULT_SNAPSHOT_INTERVAL = 1_000_000;
+    public static final int KEEP_SNAPSHOTS = 2;
+
+    // Highest expense id handed out, including ids of deleted expenses
+    static final String EXPENSE_SEQ_SQL =
+        "SELECT MAX(COALESCE((SELECT MAX(id) FROM expenses), 0), " +
+        "COALESCE((SELECT seq FROM sqlite_sequence WHERE name = 'expenses'), 0))";
+
+    private static final Map<String, EventLog> SHARED = new ConcurrentHashMap<>();
+    private static final EventLog DISABLED = new EventLog(null, null, 0, 0);
+
+    private final String url;
+    private final Path directory;
+    private final int segmentBytes;
+    private final long snapshotInterval;
+    private final CRC32C crc = new CRC32C();
+
+    private boolean opened;
+    private boolean failed;
+    private FileChannel lockChannel;
+    private FileLock lock;
+    private MappedByteBuffer segment;
+    private int segmentPosition;
+    private long lastSeq;
+    private long lastSnapshotSeq;
+    private boolean snapshotRunning;
+
+    EventLog(String url, Path directory, int segmentBytes, long snapshotInterval) {
+        this.url = url;
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    /**
+     * @return The log shared by every connection to the same database file, or a
+     *         disabled log for in-memory databases
+     */
+    public static EventLog forConnection(Connection connection) {
+        if (connection == null || "false".equalsIgnoreCase(System.getProperty(ENABLED_PROPERTY))) {
+            return DISABLED;
+        }
+        String url;
+        try {
+            url = connection.getMetaData().getURL();
+        } catch (SQLException e) {
+            return DISABLED;
+        }
+        String path = url.startsWith("jdbc:sqlite:") ? url.substring("jdbc:sqlite:".length()) : url;
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        if (path.isEmpty() || path.contains(":memory:") || path.startsWith("file:") || url.contains("mode=memory")) {
+            return DISABLED;
+        }
+        Path database = Paths.get(path).toAbsolutePath().normalize();
+        return SHARED.computeIfAbsent(database.toString(), key -> new EventLog("jdbc:sqlite:" + key,
+            directoryFor(database),
+            Integer.getInteger(SEGMENT_BYTES_PROPERTY, DEFAULT_SEGMENT_BYTES),
+            Long.getLong(SNAPSHOT_INTERVAL_PROPERTY, DEFAULT_SNAPSHOT_INTERVAL)));
+    }
+
+    /**
+     * @return The directory holding the event log of a database file
+     */
+    public static Path directoryFor(Path databaseFile) {
+        return databaseFile.resolveSibling(databaseFile.getFileName() + ".events");
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return A batch to record the events of one transaction into
+     */
+    public EventBatch newBatch() {
+        if (!isEnabled()) {
+            return EventBatch.disabled();
+        }
+        // Open before the caller's transaction starts, as opening may need to read the database
+        synchronized (this) {
+            return new EventBatch(ensureOpen());
+        }
+    }
+
+    /**
+     * Commits the connection's transaction and appends the batch, then clears it.
+     * Failing to append is reported but does not fail the commit.
+     */
+    public void commit(Connection connection, EventBatch events) throws SQLException {
+        if (!isEnabled() || events.isEmpty()) {
+            connection.commit();
+            events.clear();
+            return;
+        }
+        synchronized (this) {
+            boolean open = ensureOpen();
+            connection.commit();
+            if (open) {
+                appendLocked(events);
+            }
+        }
+        events.clear();
+    }
+
+    /**
+     * Appends the events of a write that has already committed, such as one made
+     * in auto-commit mode, then clears the batch
+     */
+    public void append(EventBatch events) {
+        if (!isEnabled() || events.isEmpty()) {
+            events.clear();
+            return;
+        }
+        synchronized (this) {
+            if (ensureOpen()) {
+                appendLocked(events);
+            }
+        }
+        events.clear();
+    }
+
+    /**
+     * @return Sequence number of the last event appended
+     */
+    public synchronized long getLastSeq() {
+        return lastSeq;
+    }
+
+    /**
+     * Writes a snapshot of the balance ledger now and prunes older segments
+     * @return Sequence number the snapshot was taken at
+     */
+    public long snapshot() throws SQLException, IOException {
+        return snapshot(false);
+    }
+
+    /**
+     * Takes a snapshot that replaces all earlier history, for use after the
+     * balance ledger was changed without the log, e.g. rebuilt from the splits
+     * @return Sequence number the snapshot was taken at
+     */
+    public long rebase() throws SQLException, IOException {
+        return snapshot(true);
+    }
+
+    /**
+     * Forces the current segment to disk and releases the log for other processes
+     */
+    public synchronized void close() {
+        if (segment != null) {
+            segment.force();
+            segment = null;
+        }
+        try {
+            if (lock != null) {
+                lock.release();
+                lockChannel.close();
+            }
+        } catch (IOException e) {
+            System.out.println("Error closing event log: " + e.getMessage());
+        }
+        lock = null;
+        opened = false;
+        failed = false;
+    }
+
+    private long snapshot(boolean rebase) throws SQLException, IOException {
+        if (!isEnabled()) {
+            return 0;
+        }
+        synchronized (this) {
+            if (!ensureOpen()) {
+                throw new IOException("Event log " + directory + " is not available");
+            }
+        }
+        try (Connection reader = DriverManager.getConnection(url)) {
+            boolean wal;
+            try (Statement stmt = reader.createStatement();
+                 ResultSet rs = stmt.executeQuery("PRAGMA journal_mode")) {
+                wal = rs.next() && "wal".equalsIgnoreCase(rs.getString(1));
+            }
+            reader.setAutoCommit(false);
+            try {
+                long seq;
+                long expenseSeq;
+                synchronized (this) {
+                    // The first read starts the transaction, pinning the state of every commit so far
+                    expenseSeq = expenseSeq(reader);
+                    seq = lastSeq;
+                    lastSnapshotSeq = Math.max(lastSnapshotSeq, seq);
+                    if (!wal) {
+                        // Without WAL a long read would block commits; keep logged writers waiting instead
+                        return writeSnapshot(reader, seq, expenseSeq, rebase);
+                    }
+                }
+                return writeSnapshot(reader, seq, expenseSeq, rebase);
+            } finally {
+                reader.rollback();
+            }
+        }
+    }
+
+    private long writeSnapshot(Connection reader, long seq, long expenseSeq, boolean rebase)
+            throws SQLException, IOException {
+        Path file = BalanceSnapshot.path(directory, seq);
+        // Unique name, as a manual snapshot may run alongside the periodic one
+        Path partial = Files.createTempFile(directory, "snapshot-", ".partial");
+        BalanceSnapshot.write(partial, seq, expenseSeq, reader);
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        prune(seq, rebase);
+        return seq;
+    }
+
+    /**
+     * Deletes snapshots beyond the ones kept and the segments only they needed
+     */
+    private synchronized void prune(long seq, boolean rebase) throws IOException {
+        List<BalanceSnapshot> snapshots = BalanceSnapshot.list(directory);
+        int keep = rebase ? 1 : KEEP_SNAPSHOTS;
+        long oldestKept = seq;
+        int kept = 0;
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            BalanceSnapshot snapshot = snapshots.get(i);
+            if (snapshot.getSeq() > seq) {
+                // Taken meanwhile by another snapshot
+                continue;
+            }
+            if (kept < keep) {
+                kept++;
+                oldestKept = snapshot.getSeq();
+            } else {
+                Files.deleteIfExists(snapshot.getFile());
+            }
+        }
+
+        List<Long> segments = EventLogReader.segments(directory);
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            if (segments.get(i + 1) <= oldestKept + 1) {
+                Files.deleteIfExists(EventLogReader.path(directory, segments.get(i)));
+            }
+        }
+    }
+
+    /**
+     * Opens the log on first use. Called with the lock held.
+     * @return false if events cannot be recorded
+     */
+    private boolean ensureOpen() {
+        if (opened) {
+            return !failed;
+        }
+        opened = true;
+        try {
+            Files.createDirectories(directory);
+            lockChannel = FileChannel.open(directory.resolve("lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            lock = lockChannel.tryLock();
+            if (lock == null) {
+                System.out.println("Event log " + directory + " is in use by another process; events are not recorded.");
+                lockChannel.close();
+                failed = true;
+                return false;
+            }
+            recover();
+        } catch (IOException | SQLException e) {
+            System.out.println("Failed to open event log " + directory + ": " + e.getMessage());
+            failed = true;
+        }
+        return !failed;
+    }
+
+    /**
+     * Finds the last event after the latest snapshot and checks that the log and
+     * the database have seen the same expenses; takes a new baseline otherwise
+     */
+    private void recover() throws IOException, SQLException {
+        // Left behind by a snapshot that was cut short
+        try (DirectoryStream<Path> partials = Files.newDirectoryStream(directory, "snapshot-*.partial")) {
+            for (Path partial : partials) {
+                Files.deleteIfExists(partial);
+            }
+        }
+
+        List<BalanceSnapshot> snapshots = BalanceSnapshot.list(directory);
+        BalanceSnapshot latest = snapshots.isEmpty() ? null : snapshots.get(snapshots.size() - 1);
+        long afterSeq = latest == null ? 0 : latest.getSeq();
+
+        long[] loggedExpenseSeq = {latest == null ? 0 : latest.getExpenseSeq()};
+        String problem = null;
+        try {
+            lastSeq = new EventLogReader(directory).replay(afterSeq, new EventHandler() {
+                @Override
+                public void expenseAdded(long seq, int expenseId, int creatorId, long amountInCents, String description) {
+                    loggedExpenseSeq[0] = Math.max(loggedExpenseSeq[0], expenseId);
+                }
+            });
+        } catch (IOException e) {
+            problem = e.getMessage();
+        }
+        lastSnapshotSeq = afterSeq;
+
+        long databaseExpenseSeq;
+        try (Connection reader = DriverManager.getConnection(url)) {
+            databaseExpenseSeq = expenseSeq(reader);
+        }
+        if (problem == null && latest == null) {
+            problem = "no snapshot yet";
+        }
+        if (problem == null && loggedExpenseSeq[0] != databaseExpenseSeq) {
+            problem = "expenses were written without it";
+        }
+        if (problem != null) {
+            if (latest != null) {
+                System.out.println("Event log " + directory + " does not match the database (" + problem
+                    + "); starting over from a new snapshot.");
+            }
+            // Nothing after the snapshot can be trusted; drop every segment so sequence numbers stay unique
+            for (long firstSeq : EventLogReader.segments(directory)) {
+                Files.deleteIfExists(EventLogReader.path(directory, firstSeq));
+            }
+            lastSeq = Math.max(lastSeq, afterSeq);
+            snapshot(true);
+        }
+    }
+
+    private void appendLocked(EventBatch events) {
+        if (failed) {
+            return;
+        }
+        try {
+            ByteBuffer source = events.encoded();
+            int end = source.position();
+            int p = 0;
+            while (p < end) {
+                int length = source.getInt(p);
+                int recordBytes = EventLogReader.RECORD_HEADER_BYTES + length;
+                if (segment == null || segmentPosition + recordBytes > segmentBytes) {
+                    roll(recordBytes);
+                }
+                long seq = lastSeq + 1;
+                int at = segmentPosition;
+                segment.putLong(at + 8, seq);
+                segment.put(at + 16, source, p + 4, length);
+                crc.reset();
+                crc.update(segment.slice(at + 8, 8 + length));
+                segment.putInt(at + 4, (int) crc.getValue());
+                // The length goes last so a record cut short reads as the end of the segment
+                segment.putInt(at, length);
+                segmentPosition += recordBytes;
+                lastSeq = seq;
+                p += 4 + length;
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Failed to append to event log " + directory + ": " + e.getMessage()
+                + "; events are no longer recorded.");
+            failed = true;
+            return;
+        }
+
+        if (lastSeq - lastSnapshotSeq >= snapshotInterval && !snapshotRunning) {
+            snapshotRunning = true;
+            Thread snapshotter = new Thread(() -> {
+                try {
+                    snapshot(false);
+                } catch (SQLException | IOException e) {
+                    System.out.println("Failed to snapshot event log " + directory + ": " + e.getMessage());
+                } finally {
+                    synchronized (this) {
+                        snapshotRunning = false;
+                    }
+                }
+            }, "event-log-snapshot");
+            snapshotter.setDaemon(true);
+            snapshotter.start();
+        }
+    }
+
+    /**
+     * Starts a new segment after the last event; a new process always starts a
+     * new segment so it never writes after a record torn by a crash
+     */
+    private void roll(int recordBytes) throws IOException {
+        if (recordBytes > segmentBytes - EventLogReader.SEGMENT_HEADER_BYTES) {
+            throw new IOException("Event of " + recordBytes + " bytes does not fit in a segment");
+        }
+        if (segment != null) {
+            segment.force();
+        }
+        long firstSeq = lastSeq + 1;
+        try (FileChannel channel = FileChannel.open(EventLogReader.path(directory, firstSeq),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+        segment.putInt(0, EventLogReader.SEGMENT_MAGIC);
+        segment.putInt(4, EventLogReader.SEGMENT_VERSION);
+        segment.putLong(8, firstSeq);
+        segment.force(0, EventLogReader.SEGMENT_HEADER_BYTES);
+        segmentPosition = EventLogReader.SEGMENT_HEADER_BYTES;
+    }
+
+    private static long expenseSeq(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(EXPENSE_SEQ_SQL)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+}
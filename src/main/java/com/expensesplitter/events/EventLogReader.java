@@ -0,0 +1,179 @@
+package com.expensesplitter.events;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Reads the segment files of an event log directory in sequence order. A
+ * segment is named after the sequence number of its first event and starts
+ * with a header of [int magic][int version][long firstSeq]; then come records
+ * of [int length][int crc32c][long seq][byte type][payload], where length
+ * counts the type byte and payload and the checksum covers seq through payload.
+ *
+ * A segment ends at its first zero length, bad checksum or out-of-order
+ * sequence number, which is how a record torn by a crash is dropped. Events
+ * must continue without a gap from one segment to the next.
+ */
+public final class EventLogReader {
+    static final int SEGMENT_MAGIC = 0x51534547;
+    static final int SEGMENT_VERSION = 1;
+    static final int SEGMENT_HEADER_BYTES = 16;
+    static final int RECORD_HEADER_BYTES = 16;
+    private static final String SUFFIX = ".seg";
+
+    private final Path directory;
+    private final CRC32C crc = new CRC32C();
+    private int[] debtorIds = new int[16];
+    private long[] amounts = new long[16];
+    private byte[] text = new byte[64];
+    private long eventCount;
+
+    public EventLogReader(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Feeds every event after the given sequence number to the handler
+     * @return Sequence number of the last event read, or afterSeq if there was none
+     * @throws IOException if an event after afterSeq is missing or cannot be decoded
+     */
+    public long replay(long afterSeq, EventHandler handler) throws IOException {
+        List<Long> segments = segments(directory);
+        long expected = afterSeq + 1;
+        for (int i = 0; i < segments.size(); i++) {
+            long firstSeq = segments.get(i);
+            long nextFirstSeq = i + 1 < segments.size() ? segments.get(i + 1) : Long.MAX_VALUE;
+            if (nextFirstSeq <= expected) {
+                // Every event of this segment is covered by afterSeq
+                continue;
+            }
+            if (firstSeq > expected) {
+                throw new IOException("Event log is missing events " + expected + " to " + (firstSeq - 1));
+            }
+            expected = readSegment(path(directory, firstSeq), firstSeq, nextFirstSeq - 1, expected, handler);
+        }
+        return expected - 1;
+    }
+
+    /**
+     * @return Number of events passed to handlers so far
+     */
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * @return First sequence numbers of the segments in the directory, in order
+     */
+    static List<Long> segments(Path directory) throws IOException {
+        List<Long> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    segments.add(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // Not a segment
+                }
+            }
+        }
+        segments.sort(null);
+        return segments;
+    }
+
+    static Path path(Path directory, long firstSeq) {
+        return directory.resolve(String.format("%020d%s", firstSeq, SUFFIX));
+    }
+
+    /**
+     * @return The sequence number expected after the last event read
+     */
+    private long readSegment(Path file, long firstSeq, long lastSeq, long expected, EventHandler handler) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < SEGMENT_HEADER_BYTES) {
+                return expected;
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.getInt(0) != SEGMENT_MAGIC || buffer.getInt(4) != SEGMENT_VERSION || buffer.getLong(8) != firstSeq) {
+            return expected;
+        }
+
+        int limit = buffer.limit();
+        int position = SEGMENT_HEADER_BYTES;
+        long seq = firstSeq;
+        while (seq <= lastSeq && position + RECORD_HEADER_BYTES < limit) {
+            int length = buffer.getInt(position);
+            if (length < 1 || length > limit - position - RECORD_HEADER_BYTES
+                    || buffer.getLong(position + 8) != seq) {
+                break;
+            }
+            crc.reset();
+            crc.update(buffer.slice(position + 8, 8 + length));
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                break;
+            }
+            if (seq == expected) {
+                dispatch(buffer, position + RECORD_HEADER_BYTES, seq, handler);
+                expected++;
+            }
+            position += RECORD_HEADER_BYTES + length;
+            seq++;
+        }
+        return expected;
+    }
+
+    private void dispatch(MappedByteBuffer buffer, int p, long seq, EventHandler handler) throws IOException {
+        eventCount++;
+        byte type = buffer.get(p);
+        p++;
+        switch (type) {
+            case EventBatch.EXPENSE_ADDED: {
+                int length = buffer.getShort(p + 16) & 0xffff;
+                if (text.length < length) {
+                    text = new byte[Math.max(length, text.length * 2)];
+                }
+                buffer.get(p + 18, text, 0, length);
+                handler.expenseAdded(seq, buffer.getInt(p), buffer.getInt(p + 4), buffer.getLong(p + 8),
+                    new String(text, 0, length, StandardCharsets.UTF_8));
+                break;
+            }
+            case EventBatch.SPLIT_ADDED:
+                handler.splitAdded(seq, buffer.getInt(p), buffer.getInt(p + 4), buffer.getInt(p + 8),
+                    buffer.getLong(p + 12), buffer.get(p + 20) != 0);
+                break;
+            case EventBatch.DEBT_SETTLED:
+                handler.debtSettled(seq, buffer.getInt(p), buffer.getInt(p + 4), buffer.getLong(p + 8));
+                break;
+            case EventBatch.EXPENSE_DELETED: {
+                int count = buffer.getInt(p + 8);
+                if (debtorIds.length < count) {
+                    debtorIds = new int[count];
+                    amounts = new long[count];
+                }
+                int q = p + 12;
+                for (int i = 0; i < count; i++, q += 12) {
+                    debtorIds[i] = buffer.getInt(q);
+                    amounts[i] = buffer.getLong(q + 4);
+                }
+                handler.expenseDeleted(seq, buffer.getInt(p), buffer.getInt(p + 4), debtorIds, amounts, count);
+                break;
+            }
+            default:
+                throw new IOException("Unknown event type " + type + " at sequence number " + seq);
+        }
+    }
+}
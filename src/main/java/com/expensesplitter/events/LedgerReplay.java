@@ -0,0 +1,229 @@
+package com.expensesplitter.events;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Rebuilds the balance ledger from the latest snapshot and the events after it.
+ * Replaying folds the tail into one change per (debtor, creditor) pair: an
+ * amount to add, and whether the pair was settled, which wipes whatever the
+ * snapshot held. Memory therefore grows with the pairs the tail touches, not
+ * with the size of the ledger; forEachBalance() merges the changes into the
+ * snapshot's rows as it streams them.
+ *
+ * Pairs are keyed by debtor id << 32 | creditor id in an open-addressing
+ * table; user ids are positive, so key 0 marks a free slot and the numeric
+ * key order is the snapshot's (debtor, creditor) order.
+ */
+public final class LedgerReplay implements EventHandler {
+    private static final long FREE = 0;
+
+    private final BalanceSnapshot snapshot;
+    private long[] keys = new long[1024];
+    private long[] deltas = new long[1024];
+    private boolean[] settled = new boolean[1024];
+    private int size;
+    private long lastSeq;
+
+    /**
+     * @param snapshot Snapshot the tail is replayed onto, or null to replay from an empty ledger
+     */
+    public LedgerReplay(BalanceSnapshot snapshot) {
+        this.snapshot = snapshot;
+        this.lastSeq = snapshot == null ? 0 : snapshot.getSeq();
+    }
+
+    /**
+     * Loads the latest snapshot in the directory and replays every event after it
+     */
+    public static LedgerReplay recover(Path directory) throws IOException {
+        List<BalanceSnapshot> snapshots = BalanceSnapshot.list(directory);
+        LedgerReplay replay = new LedgerReplay(snapshots.isEmpty() ? null : snapshots.get(snapshots.size() - 1));
+        replay.replayTail(new EventLogReader(directory));
+        return replay;
+    }
+
+    /**
+     * Replays the events after the snapshot
+     * @return Sequence number of the last event replayed
+     */
+    public long replayTail(EventLogReader reader) throws IOException {
+        lastSeq = reader.replay(lastSeq, this);
+        return lastSeq;
+    }
+
+    public BalanceSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public long getLastSeq() {
+        return lastSeq;
+    }
+
+    /**
+     * @return Number of (debtor, creditor) pairs the replayed tail changed
+     */
+    public int getChangedPairCount() {
+        return size;
+    }
+
+    @Override
+    public void splitAdded(long seq, int expenseId, int userId, int creatorId, long amountInCents, boolean paid) {
+        if (!paid && userId != creatorId) {
+            add(userId, creatorId, amountInCents);
+        }
+    }
+
+    @Override
+    public void debtSettled(long seq, int payerId, int receiverId, long amountInCents) {
+        int slot = slotOf(key(payerId, receiverId));
+        deltas[slot] = 0;
+        settled[slot] = true;
+    }
+
+    @Override
+    public void expenseDeleted(long seq, int expenseId, int creatorId,
+                               int[] debtorIds, long[] unpaidAmountsInCents, int count) {
+        for (int i = 0; i < count; i++) {
+            if (debtorIds[i] != creatorId) {
+                add(debtorIds[i], creatorId, -unpaidAmountsInCents[i]);
+            }
+        }
+    }
+
+    /**
+     * Streams the replayed ledger, leaving out pairs that net to zero
+     * @return Number of rows streamed
+     */
+    public long forEachBalance(BalanceSnapshot.RowConsumer consumer) throws IOException {
+        long[] changed = new long[size];
+        int count = 0;
+        for (long key : keys) {
+            if (key != FREE) {
+                changed[count++] = key;
+            }
+        }
+        Arrays.sort(changed);
+
+        Merge merge = new Merge(changed, consumer);
+        if (snapshot != null) {
+            snapshot.forEach(merge);
+        }
+        merge.finish();
+        return merge.rows;
+    }
+
+    private void add(int debtorId, int creditorId, long amountInCents) {
+        // slotOf() may resize the table, so it must run before deltas is read
+        int slot = slotOf(key(debtorId, creditorId));
+        deltas[slot] += amountInCents;
+    }
+
+    /**
+     * @return The slot of the key, inserted with no change if it was missing
+     */
+    private int slotOf(long key) {
+        int mask = keys.length - 1;
+        int slot = (int) (mix(key) & mask);
+        while (keys[slot] != key) {
+            if (keys[slot] == FREE) {
+                keys[slot] = key;
+                if (++size * 2 > keys.length) {
+                    resize();
+                    return slotOf(key);
+                }
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        long[] oldDeltas = deltas;
+        boolean[] oldSettled = settled;
+        keys = new long[oldKeys.length * 2];
+        deltas = new long[keys.length];
+        settled = new boolean[keys.length];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int slot = (int) (mix(oldKeys[i]) & mask);
+                while (keys[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                deltas[slot] = oldDeltas[i];
+                settled[slot] = oldSettled[i];
+            }
+        }
+    }
+
+    private int find(long key) {
+        int mask = keys.length - 1;
+        int slot = (int) (mix(key) & mask);
+        while (keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static long key(int debtorId, int creditorId) {
+        return ((long) debtorId << 32) | creditorId;
+    }
+
+    private static long mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * Walks the sorted changed pairs alongside the snapshot rows
+     */
+    private final class Merge implements BalanceSnapshot.RowConsumer {
+        private final long[] changed;
+        private final BalanceSnapshot.RowConsumer consumer;
+        private int next;
+        long rows;
+
+        Merge(long[] changed, BalanceSnapshot.RowConsumer consumer) {
+            this.changed = changed;
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void accept(int debtorId, int creditorId, long amountInCents) {
+            long key = key(debtorId, creditorId);
+            while (next < changed.length && changed[next] < key) {
+                emit(changed[next++], 0);
+            }
+            if (next < changed.length && changed[next] == key) {
+                emit(changed[next++], amountInCents);
+            } else {
+                emitRow(debtorId, creditorId, amountInCents);
+            }
+        }
+
+        void finish() {
+            while (next < changed.length) {
+                emit(changed[next++], 0);
+            }
+        }
+
+        private void emit(long key, long snapshotAmount) {
+            int slot = find(key);
+            long amount = (settled[slot] ? 0 : snapshotAmount) + deltas[slot];
+            emitRow((int) (key >>> 32), (int) key, amount);
+        }
+
+        private void emitRow(int debtorId, int creditorId, long amountInCents) {
+            if (amountInCents != 0) {
+                consumer.accept(debtorId, creditorId, amountInCents);
+                rows++;
+            }
+        }
+    }
+}
@@ -0,0 +1,684 @@
+package com.expensesplitter.http;
+
+import com.expensesplitter.db.BalanceCache;
+import com.expensesplitter.db.ConnectionManager;
+import com.expensesplitter.db.DatabaseHelper;
+import com.expensesplitter.db.GroupSettlement;
+import com.expensesplitter.db.ReadConnectionPool;
+import com.expensesplitter.db.SchemaMigrator;
+import com.expensesplitter.db.SqliteStorage;
+import com.expensesplitter.db.WritePipeline;
+import com.expensesplitter.io.Json;
+import com.expensesplitter.metrics.LatencyHistogram;
+import com.expensesplitter.model.BalanceMap;
+import com.expensesplitter.model.Expense;
+import com.expensesplitter.model.Money;
+import com.expensesplitter.model.SettlementCursor;
+import com.expensesplitter.model.SettlementPage;
+import com.expensesplitter.model.SettlementPlan;
+import com.expensesplitter.model.Split;
+import com.expensesplitter.model.Transaction;
+import com.expensesplitter.model.User;
+import com.expensesplitter.repository.Storage;
+import com.expensesplitter.service.DebtSimplifier;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Embedded HTTP/JSON API over the user, expense and balance services, built on
+ * the JDK's com.sun.net.httpserver. Every request runs on its own virtual thread.
+ *
+ * Concurrency model: the database is opened through a ConnectionManager. Reads
+ * run on its read pool, through repositories bound to each pooled connection,
+ * so queries run in parallel on WAL snapshots and the pool size bounds how
+ * many run at once. A read that fails is answered with 500, or 503 while the
+ * database is busy, rather than with empty data. Every write is a command on a single WritePipeline, which
+ * commits them in groups as ConnectionManager writes, so a busy database is
+ * retried the same way as for any other writer and no request ever toggles
+ * auto-commit on a shared connection. All of them share one BalanceCache,
+ * which the pipeline invalidates on commit.
+ *
+ * Amounts are exchanged as decimal strings ("12.50"); numbers are accepted too.
+ */
+public class ApiServer implements AutoCloseable {
+    public static final int DEFAULT_PORT = 8080;
+    private static final int MAX_BODY_BYTES = 1 << 20;
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 1_000;
+
+    /**
+     * Handles one matched route; path holds the values of the {} segments
+     */
+    @FunctionalInterface
+    private interface Handler {
+        Response handle(Request request) throws Exception;
+    }
+
+    private static final class Route {
+        final String method;
+        final String[] segments;
+        final String name;
+        final Handler handler;
+
+        Route(String method, String pattern, Handler handler) {
+            this.method = method;
+            this.segments = pattern.substring(1).split("/");
+            this.name = method + " " + pattern;
+            this.handler = handler;
+        }
+
+        String[] match(String method, String[] path) {
+            if (!this.method.equals(method) || path.length != segments.length) {
+                return null;
+            }
+            List<String> values = new ArrayList<>();
+            for (int i = 0; i < segments.length; i++) {
+                if (segments[i].equals("{}")) {
+                    values.add(path[i]);
+                } else if (!segments[i].equals(path[i])) {
+                    return null;
+                }
+            }
+            return values.toArray(new String[0]);
+        }
+    }
+
+    private static final class Request {
+        final HttpExchange exchange;
+        final String[] path;
+        final Map<String, String> query;
+
+        Request(HttpExchange exchange, String[] path) {
+            this.exchange = exchange;
+            this.path = path;
+            this.query = parseQuery(exchange.getRequestURI().getRawQuery());
+        }
+
+        int pathInt(int index) {
+            return parseId(path[index]);
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> body() throws IOException {
+            try (InputStream in = exchange.getRequestBody()) {
+                byte[] bytes = in.readNBytes(MAX_BODY_BYTES + 1);
+                if (bytes.length > MAX_BODY_BYTES) {
+                    throw new ApiException(413, "Request body too large");
+                }
+                Object parsed = Json.parse(new String(bytes, StandardCharsets.UTF_8));
+                if (!(parsed instanceof Map)) {
+                    throw new ApiException(400, "Request body must be a JSON object");
+                }
+                return (Map<String, Object>) parsed;
+            }
+        }
+    }
+
+    private static final class Response {
+        final int status;
+        final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    static final class ApiException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    @FunctionalInterface
+    private interface ReadCall<T> {
+        T call(Storage storage) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface Submission<T> {
+        CompletableFuture<T> submit() throws InterruptedException;
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ConnectionManager connections;
+    private final WritePipeline pipeline;
+    private final Map<Connection, Storage> readStorage = new IdentityHashMap<>();
+    private final BalanceCache balanceCache;
+    private final RequestStats stats = new RequestStats();
+    private final List<Route> routes = new ArrayList<>();
+
+    /**
+     * Opens the database, applies pending migrations and binds the port; call start() to serve
+     * @param port Port to listen on, 0 for any free port
+     * @param readConnections Size of the read connection pool
+     */
+    public ApiServer(String dbUrl, int port, int readConnections) throws IOException, SQLException {
+        connections = ConnectionManager.open(dbUrl, readConnections);
+        try {
+            connections.withWriter(SchemaMigrator::migrate);
+        } catch (SQLException e) {
+            connections.close();
+            throw e;
+        }
+
+        // Without a pool, as for in-memory databases, reads share the write connection
+        ReadConnectionPool readPool = connections.getReadPool();
+        List<Connection> readers = readPool == null
+            ? List.of(connections.getWriteConnection())
+            : readPool.getConnections();
+        for (Connection connection : readers) {
+            readStorage.put(connection, new SqliteStorage(connection));
+        }
+        pipeline = new WritePipeline(connections);
+        balanceCache = BalanceCache.forConnection(connections.getWriteConnection());
+
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/", this::dispatch);
+        registerRoutes();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        String url = args.length > 1 ? args[1] : DatabaseHelper.getDatabaseUrl();
+        serve(url, port);
+    }
+
+    /**
+     * Starts a server with one read connection per core and blocks until the JVM shuts down
+     */
+    public static void serve(String dbUrl, int port) throws IOException, SQLException, InterruptedException {
+        ApiServer apiServer = new ApiServer(dbUrl, port, Runtime.getRuntime().availableProcessors());
+        Runtime.getRuntime().addShutdownHook(new Thread(apiServer::close, "api-server-shutdown"));
+        apiServer.start();
+        System.out.println("Expense Splitter API listening on port " + apiServer.getPort());
+        Thread.currentThread().join();
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public RequestStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Stops accepting requests, commits queued writes and closes every connection
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+        pipeline.close();
+        connections.close();
+    }
+
+    private void registerRoutes() {
+        // Users
+        routes.add(new Route("POST", "/users", this::registerUser));
+        routes.add(new Route("GET", "/users", this::findUsers));
+        routes.add(new Route("GET", "/users/{}", request -> {
+            User user = read(storage -> storage.getUsers().findById(request.pathInt(0)));
+            return user == null ? notFound("User not found") : ok(writeUser(new Json.Writer(), user));
+        }));
+        routes.add(new Route("POST", "/login", this::login));
+
+        // Expenses
+        routes.add(new Route("POST", "/expenses", this::addExpense));
+        routes.add(new Route("GET", "/expenses/{}", request -> {
+            Expense expense = read(storage -> storage.getExpenses().findById(request.pathInt(0)));
+            return expense == null ? notFound("Expense not found") : ok(writeExpense(new Json.Writer(), expense));
+        }));
+        routes.add(new Route("DELETE", "/expenses/{}", request -> {
+            int expenseId = request.pathInt(0);
+            await(() -> pipeline.deleteExpense(expenseId));
+            return new Response(204, "");
+        }));
+        routes.add(new Route("POST", "/expenses/{}/splits", this::addSplit));
+        routes.add(new Route("GET", "/users/{}/expenses", request -> {
+            List<Expense> expenses = read(storage -> storage.getExpenses().findByCreator(request.pathInt(0)));
+            Json.Writer json = new Json.Writer().beginArray();
+            for (Expense expense : expenses) {
+                writeExpense(json, expense);
+            }
+            return ok(json.endArray());
+        }));
+
+        // Balances and settlements
+        routes.add(new Route("GET", "/users/{}/balances", this::getBalances));
+        routes.add(new Route("GET", "/users/{}/settlements", this::getSettlements));
+        routes.add(new Route("POST", "/settlements", this::settleDebt));
+        routes.add(new Route("POST", "/groups/simplify", request -> {
+            int[] userIds = requireIds(request.body(), "userIds");
+            SettlementPlan plan = read(storage -> DebtSimplifier.simplify(storage.getSplits().getGroupNetPositions(userIds)));
+            return ok(writePlan(new Json.Writer(), plan));
+        }));
+        routes.add(new Route("POST", "/groups/settle", request -> {
+            int[] userIds = requireIds(request.body(), "userIds");
+            // Plan and execute inside one write command so no other write lands in between
+            SettlementPlan plan = await(() -> pipeline.submit(connection -> {
+                SettlementPlan computed = DebtSimplifier.simplify(GroupSettlement.netPositions(connection, userIds));
+                GroupSettlement.execute(connection, userIds, computed, pipeline.getEventBatch());
+                return computed;
+            }, userIds));
+            return ok(writePlan(new Json.Writer(), plan));
+        }));
+
+        routes.add(new Route("GET", "/stats", request -> ok(writeStats())));
+    }
+
+    private void dispatch(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        String routeName = "unmatched";
+        Response response;
+        try {
+            String[] path = splitPath(exchange.getRequestURI().getRawPath());
+            Route route = null;
+            String[] values = null;
+            for (Route candidate : routes) {
+                values = candidate.match(exchange.getRequestMethod(), path);
+                if (values != null) {
+                    route = candidate;
+                    break;
+                }
+            }
+            if (route == null) {
+                response = error(404, "No such endpoint");
+            } else {
+                routeName = route.name;
+                response = route.handler.handle(new Request(exchange, values));
+            }
+        } catch (ApiException e) {
+            response = error(e.status, e.getMessage());
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            response = error(400, e.getMessage());
+        } catch (Exception e) {
+            System.out.println("Request failed: " + e);
+            response = error(500, "Internal error");
+        }
+
+        try {
+            byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+            if (body.length > 0) {
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+            }
+            exchange.sendResponseHeaders(response.status, body.length == 0 ? -1 : body.length);
+            if (body.length > 0) {
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        } finally {
+            exchange.close();
+            stats.record(routeName, System.nanoTime() - start, response.status >= 500);
+        }
+    }
+
+    private Response registerUser(Request request) throws IOException {
+        Map<String, Object> body = request.body();
+        String username = requireString(body, "username");
+        String password = requireString(body, "password");
+        String email = optionalString(body, "email");
+        int userId = await(() -> pipeline.registerUser(username, password, email));
+        return new Response(201, writeUser(new Json.Writer(), new User(userId, username, email)).toString());
+    }
+
+    private Response findUsers(Request request) {
+        String username = request.query.get("username");
+        if (username != null) {
+            User user = read(storage -> storage.getUsers().findByUsername(username));
+            return user == null ? notFound("User not found") : ok(writeUser(new Json.Writer(), user));
+        }
+        List<User> users = read(storage -> storage.getUsers().findAll());
+        Json.Writer json = new Json.Writer().beginArray();
+        for (User user : users) {
+            writeUser(json, user);
+        }
+        return ok(json.endArray());
+    }
+
+    private Response login(Request request) throws IOException {
+        Map<String, Object> body = request.body();
+        String username = requireString(body, "username");
+        String password = requireString(body, "password");
+        User user = read(storage -> storage.getUsers().authenticate(username, password));
+        return user == null ? error(401, "Invalid username or password") : ok(writeUser(new Json.Writer(), user));
+    }
+
+    private Response addExpense(Request request) throws IOException {
+        Map<String, Object> body = request.body();
+        Expense expense = new Expense();
+        expense.setDescription(requireString(body, "description"));
+        expense.setAmount(requireMoney(body, "amount"));
+        expense.setCreatedById(requireInt(body, "createdBy"));
+
+        Object splits = body.get("splits");
+        if (!(splits instanceof List)) {
+            throw new ApiException(400, "splits must be an array");
+        }
+        for (Object item : (List<?>) splits) {
+            if (!(item instanceof Map)) {
+                throw new ApiException(400, "Each split must be an object");
+            }
+            @SuppressWarnings("unchecked")
+            Map<String, Object> split = (Map<String, Object>) item;
+            expense.addSplit(new Split(requireInt(split, "userId"), null, requireMoney(split, "amount")));
+        }
+        if (!expense.getSplits().isEmpty() && !expense.getTotalSplitAmount().equals(expense.getAmount())) {
+            throw new ApiException(400, "Splits total " + expense.getTotalSplitAmount()
+                + " but the expense amount is " + expense.getAmount());
+        }
+
+        Expense saved = await(() -> pipeline.addExpenseWithSplits(expense));
+        return new Response(201, writeExpense(new Json.Writer(), saved).toString());
+    }
+
+    private Response addSplit(Request request) throws IOException {
+        int expenseId = request.pathInt(0);
+        Map<String, Object> body = request.body();
+        int userId = requireInt(body, "userId");
+        Money amount = requireMoney(body, "amount");
+        await(() -> pipeline.addSplit(expenseId, userId, amount));
+        return new Response(201, "");
+    }
+
+    private Response getBalances(Request request) {
+        int userId = request.pathInt(0);
+        BalanceMap balances = read(storage -> storage.getSplits().getBalances(userId));
+        Json.Writer json = new Json.Writer().beginArray();
+        for (int counterpartyId : balances.getUserIds()) {
+            json.beginObject()
+                .field("userId", counterpartyId)
+                .field("amount", balances.getAmount(counterpartyId).toString())
+                .endObject();
+        }
+        return ok(json.endArray());
+    }
+
+    private Response getSettlements(Request request) {
+        int userId = request.pathInt(0);
+        int limit = request.query.containsKey("limit") ? parseId(request.query.get("limit")) : DEFAULT_PAGE_SIZE;
+        if (limit > MAX_PAGE_SIZE) {
+            throw new ApiException(400, "limit must be at most " + MAX_PAGE_SIZE);
+        }
+        SettlementCursor after = null;
+        if (request.query.containsKey("afterId")) {
+            String settledAt = request.query.get("after");
+            if (settledAt == null) {
+                throw new ApiException(400, "after and afterId must be given together");
+            }
+            after = new SettlementCursor(settledAt, parseId(request.query.get("afterId")));
+        }
+        SettlementCursor cursor = after;
+        SettlementPage page = read(storage -> storage.getSettlements().page(userId, cursor, limit));
+
+        Json.Writer json = new Json.Writer().beginObject().name("settlements").beginArray();
+        for (Transaction transaction : page.getTransactions()) {
+            json.beginObject()
+                .field("id", transaction.getId())
+                .field("payerId", transaction.getPayerId())
+                .field("payerName", transaction.getPayerName())
+                .field("receiverId", transaction.getReceiverId())
+                .field("receiverName", transaction.getReceiverName())
+                .field("amount", transaction.getAmount().toString())
+                .field("settledAt", transaction.getSettledAt())
+                .endObject();
+        }
+        json.endArray();
+        if (page.hasMore()) {
+            json.name("next").beginObject()
+                .field("after", page.getNextCursor().getSettledAt())
+                .field("afterId", page.getNextCursor().getId())
+                .endObject();
+        }
+        return ok(json.endObject());
+    }
+
+    private Response settleDebt(Request request) throws IOException {
+        Map<String, Object> body = request.body();
+        int payerId = requireInt(body, "payerId");
+        int receiverId = requireInt(body, "receiverId");
+        Money amount = requireMoney(body, "amount");
+        await(() -> pipeline.settleDebt(payerId, receiverId, amount));
+        return new Response(201, "");
+    }
+
+    private String writeStats() {
+        Json.Writer json = new Json.Writer().beginObject().name("routes").beginObject();
+        for (Map.Entry<String, RequestStats.RouteSnapshot> entry : stats.snapshot().entrySet()) {
+            LatencyHistogram histogram = entry.getValue().getHistogram();
+            json.name(entry.getKey()).beginObject()
+                .field("count", histogram.getTotalCount())
+                .field("errors", entry.getValue().getErrors())
+                .field("p50Micros", histogram.getValueAtPercentile(50) / 1_000)
+                .field("p99Micros", histogram.getValueAtPercentile(99) / 1_000)
+                .field("p999Micros", histogram.getValueAtPercentile(99.9) / 1_000)
+                .field("maxMicros", histogram.getMaxValue() / 1_000)
+                .endObject();
+        }
+        json.endObject();
+        json.name("balanceCache").beginObject()
+            .field("hits", balanceCache.getHits())
+            .field("misses", balanceCache.getMisses())
+            .field("entries", balanceCache.getEntryCount())
+            .endObject();
+        json.field("queuedWrites", pipeline.getQueuedCount());
+        ReadConnectionPool readPool = connections.getReadPool();
+        json.field("idleReadConnections", readPool == null ? 0 : readPool.getAvailableCount());
+        return json.endObject().toString();
+    }
+
+    /**
+     * Runs a read on the read pool, mapping failures to HTTP errors as await() does for writes
+     */
+    private <T> T read(ReadCall<T> call) {
+        try {
+            return connections.read(connection -> call.call(readStorage.get(connection)));
+        } catch (SQLException e) {
+            throw new ApiException(ConnectionManager.isBusy(e) ? 503 : 500, e.getMessage());
+        }
+    }
+
+    /**
+     * Submits a write and waits for its batch to commit, mapping failures to HTTP errors
+     */
+    private static <T> T await(Submission<T> submission) {
+        try {
+            return submission.submit().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiException(503, "Interrupted");
+        } catch (RejectedExecutionException e) {
+            throw new ApiException(503, e.getMessage());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                // SQLITE_CONSTRAINT: duplicate username, unknown user or expense, and the like
+                if (((SQLException) cause).getErrorCode() == 19) {
+                    throw new ApiException(409, cause.getMessage());
+                }
+                throw new ApiException(500, cause.getMessage());
+            }
+            if (cause instanceof RejectedExecutionException) {
+                throw new ApiException(503, cause.getMessage());
+            }
+            throw new ApiException(500, String.valueOf(cause));
+        }
+    }
+
+    private static Json.Writer writeUser(Json.Writer json, User user) {
+        return json.beginObject()
+            .field("id", user.getId())
+            .field("username", user.getUsername())
+            .field("email", user.getEmail())
+            .endObject();
+    }
+
+    private static Json.Writer writeExpense(Json.Writer json, Expense expense) {
+        json.beginObject()
+            .field("id", expense.getId())
+            .field("description", expense.getDescription())
+            .field("amount", expense.getAmount().toString())
+            .field("createdById", expense.getCreatedById())
+            .field("createdBy", expense.getCreatedBy())
+            .field("createdAt", expense.getCreatedAt())
+            .name("splits").beginArray();
+        for (Split split : expense.getSplits()) {
+            json.beginObject()
+                .field("id", split.getId())
+                .field("userId", split.getUserId())
+                .field("username", split.getUsername())
+                .field("amount", split.getAmount().toString())
+                .field("paid", split.isPaid())
+                .endObject();
+        }
+        return json.endArray().endObject();
+    }
+
+    private static Json.Writer writePlan(Json.Writer json, SettlementPlan plan) {
+        json.beginArray();
+        for (int i = 0; i < plan.size(); i++) {
+            json.beginObject()
+                .field("payerId", plan.getPayerId(i))
+                .field("receiverId", plan.getReceiverId(i))
+                .field("amount", plan.getAmount(i).toString())
+                .endObject();
+        }
+        return json.endArray();
+    }
+
+    private static Response ok(Object json) {
+        return new Response(200, json.toString());
+    }
+
+    private static Response notFound(String message) {
+        return error(404, message);
+    }
+
+    private static Response error(int status, String message) {
+        return new Response(status, new Json.Writer().beginObject().field("error", message).endObject().toString());
+    }
+
+    private static String requireString(Map<String, Object> body, String name) {
+        Object value = body.get(name);
+        if (!(value instanceof String) || ((String) value).isEmpty()) {
+            throw new ApiException(400, name + " is required");
+        }
+        return (String) value;
+    }
+
+    private static String optionalString(Map<String, Object> body, String name) {
+        Object value = body.get(name);
+        return value == null ? null : value.toString();
+    }
+
+    private static int requireInt(Map<String, Object> body, String name) {
+        Object value = body.get(name);
+        if (!(value instanceof BigDecimal)) {
+            throw new ApiException(400, name + " must be a number");
+        }
+        return ((BigDecimal) value).intValueExact();
+    }
+
+    private static Money requireMoney(Map<String, Object> body, String name) {
+        Object value = body.get(name);
+        if (!(value instanceof String) && !(value instanceof BigDecimal)) {
+            throw new ApiException(400, name + " must be an amount");
+        }
+        Money amount = Money.parse(value.toString());
+        if (amount.isNegative()) {
+            throw new ApiException(400, name + " must not be negative");
+        }
+        return amount;
+    }
+
+    private static int[] requireIds(Map<String, Object> body, String name) {
+        Object value = body.get(name);
+        if (!(value instanceof List) || ((List<?>) value).size() < 2) {
+            throw new ApiException(400, name + " must list at least two users");
+        }
+        List<?> items = (List<?>) value;
+        int[] ids = new int[items.size()];
+        for (int i = 0; i < ids.length; i++) {
+            if (!(items.get(i) instanceof BigDecimal)) {
+                throw new ApiException(400, name + " must only contain user ids");
+            }
+            ids[i] = ((BigDecimal) items.get(i)).intValueExact();
+            if (ids[i] < 1) {
+                throw new ApiException(400, name + " must only contain user ids");
+            }
+        }
+        return ids;
+    }
+
+    private static int parseId(String value) {
+        try {
+            int id = Integer.parseInt(value);
+            if (id < 1) {
+                throw new ApiException(400, "Expected a positive number: " + value);
+            }
+            return id;
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, "Expected a positive number: " + value);
+        }
+    }
+
+    private static String[] splitPath(String rawPath) {
+        String trimmed = rawPath.startsWith("/") ? rawPath.substring(1) : rawPath;
+        if (trimmed.endsWith("/")) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1);
+        }
+        String[] segments = trimmed.split("/");
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = URLDecoder.decode(segments[i], StandardCharsets.UTF_8);
+        }
+        return segments;
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            query.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+}
@@ -0,0 +1,69 @@
+package com.expensesplitter.http;
+
+import com.expensesplitter.metrics.LatencyHistogram;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Server-side latency histogram and error count per route. Recording takes a
+ * short per-route lock; requests on different routes never contend.
+ */
+public class RequestStats {
+
+    /**
+     * Snapshot of one route's counters
+     */
+    public static final class RouteSnapshot {
+        private final LatencyHistogram histogram;
+        private final long errors;
+
+        RouteSnapshot(LatencyHistogram histogram, long errors) {
+            this.histogram = histogram;
+            this.errors = errors;
+        }
+
+        public LatencyHistogram getHistogram() {
+            return histogram;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+    }
+
+    private static final class Route {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        long errors;
+    }
+
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+
+    public void record(String route, long nanos, boolean error) {
+        Route stats = routes.computeIfAbsent(route, key -> new Route());
+        synchronized (stats) {
+            stats.histogram.record(nanos);
+            if (error) {
+                stats.errors++;
+            }
+        }
+    }
+
+    /**
+     * @return Copies of every route's counters, sorted by route
+     */
+    public Map<String, RouteSnapshot> snapshot() {
+        Map<String, RouteSnapshot> snapshot = new TreeMap<>();
+        routes.forEach((route, stats) -> {
+            LatencyHistogram copy = new LatencyHistogram();
+            long errors;
+            synchronized (stats) {
+                copy.add(stats.histogram);
+                errors = stats.errors;
+            }
+            snapshot.put(route, new RouteSnapshot(copy, errors));
+        });
+        return snapshot;
+    }
+}
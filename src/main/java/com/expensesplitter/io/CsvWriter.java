@@ -0,0 +1,80 @@
+package com.expensesplitter.io;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes RFC 4180 records, quoting only the fields that need it.
+ * Null fields are written as empty ones.
+ */
+public final class CsvWriter implements AutoCloseable {
+    private final Writer writer;
+    private int fieldCount;
+
+    public CsvWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    public void writeRecord(String... fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writeQuoted(fields[i]);
+        }
+        writer.write('\n');
+    }
+
+    /**
+     * Appends one field to the current record; endRecord() terminates it
+     */
+    public void writeField(String value) throws IOException {
+        if (fieldCount++ > 0) {
+            writer.write(',');
+        }
+        writeQuoted(value);
+    }
+
+    public void endRecord() throws IOException {
+        writer.write('\n');
+        fieldCount = 0;
+    }
+
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    private void writeQuoted(String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (!needsQuotes(value)) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                writer.write('"');
+            }
+            writer.write(c);
+        }
+        writer.write('"');
+    }
+
+    private static boolean needsQuotes(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,266 @@
+package com.expensesplitter.io;
+
+import com.expensesplitter.db.DatabaseHelper;
+import com.expensesplitter.model.Money;
+import com.expensesplitter.tools.ToolOptions;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams users, expenses, splits, settlements and current net balances to CSV
+ * or JSON-lines files, one file per table, optionally gzipped. Each table is
+ * read with one forward-only query and every row is written as soon as it is
+ * read, so memory use does not grow with the database. All tables are read in
+ * one transaction, i.e. from one WAL snapshot, so the exported balances match
+ * the exported splits even while the application keeps writing.
+ *
+ * Rows reference users by id; users.csv maps ids to usernames. Amounts are
+ * decimal strings such as "12.50".
+ *
+ * Usage: java -cp expense-splitter.jar com.expensesplitter.io.DataExporter
+ *            --out directory [--format csv|jsonl] [--gzip]
+ *            [--tables users,expenses,splits,settlements,balances] [--db jdbc-url]
+ */
+public class DataExporter {
+    // A hint for drivers that prefetch; sqlite-jdbc steps one row at a time regardless
+    static final int FETCH_SIZE = 1_000;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    public enum Format {
+        CSV, JSONL
+    }
+
+    private enum Type {
+        INT, TEXT, MONEY, BOOLEAN
+    }
+
+    public enum Table {
+        USERS("SELECT id, username, email, created_at FROM users ORDER BY id",
+            new String[] {"id", "username", "email", "created_at"},
+            new Type[] {Type.INT, Type.TEXT, Type.TEXT, Type.TEXT}),
+        EXPENSES("SELECT id, description, amount, created_by, created_at FROM expenses ORDER BY id",
+            new String[] {"id", "description", "amount", "created_by_id", "created_at"},
+            new Type[] {Type.INT, Type.TEXT, Type.MONEY, Type.INT, Type.TEXT}),
+        SPLITS("SELECT id, expense_id, user_id, amount, is_paid FROM splits ORDER BY id",
+            new String[] {"id", "expense_id", "user_id", "amount", "paid"},
+            new Type[] {Type.INT, Type.INT, Type.INT, Type.MONEY, Type.BOOLEAN}),
+        SETTLEMENTS("SELECT id, payer_id, receiver_id, amount, settled_at FROM settlements ORDER BY id",
+            new String[] {"id", "payer_id", "receiver_id", "amount", "settled_at"},
+            new Type[] {Type.INT, Type.INT, Type.INT, Type.MONEY, Type.TEXT}),
+        // Debts in both directions between two users netted into one row, as the app shows them.
+        // Each ledger row is paired with its reverse through the primary key rather than
+        // grouped, so SQLite streams the result instead of building a temporary B-tree.
+        BALANCES("SELECT CASE WHEN net > 0 THEN debtor_id ELSE creditor_id END, " +
+                 "CASE WHEN net > 0 THEN creditor_id ELSE debtor_id END, ABS(net) FROM (" +
+                 "SELECT l.debtor_id, l.creditor_id, l.net_amount - COALESCE(r.net_amount, 0) AS net " +
+                 "FROM balance_ledger l LEFT JOIN balance_ledger r " +
+                 "ON r.debtor_id = l.creditor_id AND r.creditor_id = l.debtor_id " +
+                 "WHERE l.debtor_id < l.creditor_id OR r.debtor_id IS NULL) WHERE net != 0",
+            new String[] {"debtor_id", "creditor_id", "amount"},
+            new Type[] {Type.INT, Type.INT, Type.MONEY});
+
+        private final String sql;
+        private final String[] columns;
+        private final String[] jsonNames;
+        private final Type[] types;
+
+        Table(String sql, String[] columns, Type[] types) {
+            this.sql = sql;
+            this.columns = columns;
+            this.types = types;
+            this.jsonNames = new String[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                jsonNames[i] = camelCase(columns[i]);
+            }
+        }
+
+        public String fileName(Format format, boolean gzip) {
+            return name().toLowerCase(Locale.ROOT) + (format == Format.CSV ? ".csv" : ".jsonl") + (gzip ? ".gz" : "");
+        }
+    }
+
+    private final Connection connection;
+    private final Format format;
+    private final boolean gzip;
+
+    public DataExporter(Connection connection, Format format, boolean gzip) {
+        this.connection = connection;
+        this.format = format;
+        this.gzip = gzip;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = ToolOptions.parse(args);
+        if (!options.containsKey("out")) {
+            System.out.println("Usage: DataExporter --out directory [--format csv|jsonl] [--gzip] [--tables users,expenses,...] [--db jdbc-url]");
+            System.exit(2);
+        }
+        Format format = Format.valueOf(options.getOrDefault("format", "csv").toUpperCase(Locale.ROOT));
+        List<Table> tables = new ArrayList<>();
+        if (options.containsKey("tables")) {
+            for (String name : options.get("tables").split(",")) {
+                tables.add(Table.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+            }
+        } else {
+            tables.addAll(List.of(Table.values()));
+        }
+
+        try (Connection connection = DriverManager.getConnection(options.getOrDefault("db", DatabaseHelper.getDatabaseUrl()))) {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("PRAGMA query_only = ON");
+                stmt.execute("PRAGMA busy_timeout = 5000");
+            }
+            long start = System.nanoTime();
+            Map<Table, Long> counts = new DataExporter(connection, format, options.containsKey("gzip"))
+                .export(Paths.get(options.get("out")), tables);
+            for (Map.Entry<Table, Long> entry : counts.entrySet()) {
+                System.out.printf("%-12s %,14d rows%n", entry.getKey().name().toLowerCase(Locale.ROOT), entry.getValue());
+            }
+            System.out.printf("Exported to %s in %.1f s%n", options.get("out"), (System.nanoTime() - start) / 1e9);
+        }
+    }
+
+    /**
+     * Writes one file per table into the directory, all read from the same snapshot
+     * @return Number of rows written per table
+     */
+    public Map<Table, Long> export(Path directory, List<Table> tables) throws IOException, SQLException {
+        Files.createDirectories(directory);
+        Map<Table, Long> counts = new LinkedHashMap<>();
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            for (Table table : tables) {
+                try (Writer out = open(directory.resolve(table.fileName(format, gzip)))) {
+                    counts.put(table, export(table, out));
+                }
+            }
+        } finally {
+            // Nothing was written; ending the transaction just releases the snapshot
+            connection.rollback();
+            connection.setAutoCommit(autoCommit);
+        }
+        return counts;
+    }
+
+    /**
+     * Streams one table to out without closing it
+     * @return Number of rows written
+     */
+    public long export(Table table, Writer out) throws IOException, SQLException {
+        try (Statement stmt = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(FETCH_SIZE);
+            ResultSet rs = stmt.executeQuery(table.sql);
+            long rows = 0;
+            if (format == Format.CSV) {
+                CsvWriter csv = new CsvWriter(out);
+                csv.writeRecord(table.columns);
+                while (rs.next()) {
+                    for (int i = 0; i < table.types.length; i++) {
+                        csv.writeField(text(rs, i + 1, table.types[i]));
+                    }
+                    csv.endRecord();
+                    rows++;
+                }
+            } else {
+                Json.Writer json = new Json.Writer();
+                while (rs.next()) {
+                    json.reset().beginObject();
+                    for (int i = 0; i < table.types.length; i++) {
+                        json.name(table.jsonNames[i]);
+                        writeJson(json, rs, i + 1, table.types[i]);
+                    }
+                    json.endObject().writeTo(out);
+                    out.write('\n');
+                    rows++;
+                }
+            }
+            out.flush();
+            return rows;
+        }
+    }
+
+    private static String text(ResultSet rs, int column, Type type) throws SQLException {
+        switch (type) {
+            case INT: {
+                long value = rs.getLong(column);
+                return rs.wasNull() ? null : Long.toString(value);
+            }
+            case MONEY: {
+                long cents = rs.getLong(column);
+                return rs.wasNull() ? null : Money.ofCents(cents).toString();
+            }
+            case BOOLEAN:
+                return rs.getBoolean(column) ? "true" : "false";
+            default:
+                return rs.getString(column);
+        }
+    }
+
+    private static void writeJson(Json.Writer json, ResultSet rs, int column, Type type) throws SQLException {
+        switch (type) {
+            case INT: {
+                long value = rs.getLong(column);
+                if (rs.wasNull()) {
+                    json.value((String) null);
+                } else {
+                    json.value(value);
+                }
+                break;
+            }
+            case BOOLEAN:
+                json.value(rs.getBoolean(column));
+                break;
+            default:
+                json.value(text(rs, column, type));
+        }
+    }
+
+    /**
+     * Opens a buffered writer on a file channel, through gzip when requested
+     */
+    private Writer open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file,
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        if (gzip) {
+            return new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE), StandardCharsets.UTF_8), BUFFER_SIZE);
+        }
+        return Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE);
+    }
+
+    private static String camelCase(String column) {
+        StringBuilder sb = new StringBuilder(column.length());
+        boolean upper = false;
+        for (char c : column.toCharArray()) {
+            if (c == '_') {
+                upper = true;
+            } else {
+                sb.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            }
+        }
+        return sb.toString();
+    }
+}
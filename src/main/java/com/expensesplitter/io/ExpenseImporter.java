@@ -0,0 +1,688 @@
+package com.expensesplitter.io;
+
+import com.expensesplitter.db.BalanceCache;
+import com.expensesplitter.db.BulkExpenseWriter;
+import com.expensesplitter.db.DatabaseHelper;
+import com.expensesplitter.db.ImportCheckpoints;
+import com.expensesplitter.db.SchemaMigrator;
+import com.expensesplitter.db.UserCache;
+import com.expensesplitter.events.EventBatch;
+import com.expensesplitter.events.EventLog;
+import com.expensesplitter.model.Money;
+import com.expensesplitter.model.User;
+import com.expensesplitter.tools.ToolOptions;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streams expenses and their splits from a CSV or JSON-lines file into the
+ * database in constant memory. Usernames are resolved in batches, every
+ * expense is validated (amounts, split total, known users), and accepted rows
+ * are written with multi-row INSERTs through BulkExpenseWriter, committing
+ * every commitRows splits. The position in the file is committed with the
+ * rows, so an interrupted import resumes after the last commit. Rejected
+ * expenses go to a side file next to the input, in the input's format, with
+ * the reason added, so they can be fixed and imported again.
+ *
+ * CSV has one row per split and a header naming the columns
+ *   expense,description,amount,created_by,user,split_amount[,paid][,created_at]
+ * Consecutive rows with the same expense value form one expense and repeat
+ * its description, amount, creator and date. Unknown columns are ignored.
+ *
+ * JSON lines has one expense per line:
+ *   {"description": "Dinner", "amount": "30.00", "createdBy": "alice", "createdAt": "2024-05-01 20:00:00",
+ *    "splits": [{"user": "bob", "amount": "15.00", "paid": false}, {"user": "alice", "amount": "15.00"}]}
+ *
+ * Usage: java -cp expense-splitter.jar com.expensesplitter.io.ExpenseImporter
+ *            --file path [--format csv|jsonl] [--commit-rows N] [--restart] [--db jdbc-url]
+ */
+public class ExpenseImporter {
+    public static final int DEFAULT_COMMIT_ROWS = 100_000;
+    // Expenses whose usernames are looked up together
+    private static final int RESOLVE_BATCH = 1_000;
+    private static final int LOOKUP_CHUNK = 500;
+
+    public enum Format {
+        CSV, JSONL;
+
+        public static Format of(Path file) {
+            String name = file.getFileName().toString().toLowerCase();
+            return name.endsWith(".jsonl") || name.endsWith(".ndjson") || name.endsWith(".json") ? JSONL : CSV;
+        }
+    }
+
+    /**
+     * Counts of one import run
+     */
+    public static final class Result {
+        private final long expenses;
+        private final long splits;
+        private final long rejected;
+        private final long resumedFrom;
+        private final boolean alreadyCompleted;
+
+        Result(long expenses, long splits, long rejected, long resumedFrom, boolean alreadyCompleted) {
+            this.expenses = expenses;
+            this.splits = splits;
+            this.rejected = rejected;
+            this.resumedFrom = resumedFrom;
+            this.alreadyCompleted = alreadyCompleted;
+        }
+
+        public long getExpenses() {
+            return expenses;
+        }
+
+        public long getSplits() {
+            return splits;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * @return Number of source records skipped because an earlier run committed them
+         */
+        public long getResumedFrom() {
+            return resumedFrom;
+        }
+
+        public boolean isAlreadyCompleted() {
+            return alreadyCompleted;
+        }
+    }
+
+    /**
+     * One expense as read from the source, before validation
+     */
+    private static final class PendingExpense {
+        String description;
+        String amount;
+        String createdBy;
+        String createdAt;
+        String[] users = new String[4];
+        String[] amounts = new String[4];
+        boolean[] paid = new boolean[4];
+        int splitCount;
+        // Source records of this expense, kept to write rejects in the input format
+        Object raw;
+        // Whether the raw record parsed, so a reject can carry it over unchanged
+        boolean wellFormed = true;
+        String error;
+
+        long amountInCents;
+        long[] amountsInCents;
+
+        void addSplit(String user, String amount, boolean isPaid) {
+            if (splitCount == users.length) {
+                users = Arrays.copyOf(users, splitCount * 2);
+                amounts = Arrays.copyOf(amounts, splitCount * 2);
+                paid = Arrays.copyOf(paid, splitCount * 2);
+            }
+            users[splitCount] = user;
+            amounts[splitCount] = amount;
+            paid[splitCount] = isPaid;
+            splitCount++;
+        }
+    }
+
+    private final Connection connection;
+    private final int commitRows;
+    private final UserCache users;
+    private final EventLog eventLog;
+
+    private long importedExpenses;
+    private long importedSplits;
+    private long rejectedExpenses;
+
+    /**
+     * @param connection Connection with the current schema; auto-commit is restored afterwards
+     * @param commitRows Number of split rows per transaction
+     */
+    public ExpenseImporter(Connection connection, int commitRows) {
+        this.connection = connection;
+        this.commitRows = commitRows;
+        this.users = new UserCache(Math.max(RESOLVE_BATCH * 4, 1024));
+        this.eventLog = EventLog.forConnection(connection);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = ToolOptions.parse(args);
+        if (!options.containsKey("file")) {
+            System.out.println("Usage: ExpenseImporter --file path [--format csv|jsonl] [--commit-rows N] [--restart] [--db jdbc-url]");
+            System.exit(2);
+        }
+        Path file = Paths.get(options.get("file"));
+        Format format = options.containsKey("format")
+            ? Format.valueOf(options.get("format").toUpperCase())
+            : Format.of(file);
+
+        try (Connection connection = DriverManager.getConnection(options.getOrDefault("db", DatabaseHelper.getDatabaseUrl()))) {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("PRAGMA foreign_keys = ON");
+                stmt.execute("PRAGMA journal_mode = WAL");
+                stmt.execute("PRAGMA busy_timeout = 5000");
+                // Keep the hot pages of the split indexes in memory while appending
+                stmt.execute("PRAGMA cache_size = -262144");
+            }
+            SchemaMigrator.migrate(connection);
+
+            ExpenseImporter importer = new ExpenseImporter(connection,
+                ToolOptions.getInt(options, "commit-rows", DEFAULT_COMMIT_ROWS));
+            long start = System.nanoTime();
+            Result result = importer.importFile(file, format, options.containsKey("restart"));
+            if (result.isAlreadyCompleted()) {
+                System.out.println(file + " was already imported; pass --restart to import it again.");
+                return;
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Imported %d expenses and %d splits in %.1f s (%.0f splits/s); %d expenses rejected%n",
+                result.getExpenses(), result.getSplits(), seconds, result.getSplits() / seconds, result.getRejected());
+            if (result.getRejected() > 0) {
+                System.out.println("Rejected expenses were written to " + rejectFile(file, format));
+            }
+        }
+    }
+
+    /**
+     * Imports a file, resuming after the last committed position of an earlier run
+     * @param restart Ignore an earlier run's checkpoint and import the whole file again
+     */
+    public Result importFile(Path file, Format format, boolean restart) throws IOException, SQLException {
+        String sourceKey = file.toAbsolutePath().normalize().toString();
+        ImportCheckpoints.Checkpoint checkpoint = restart ? null : ImportCheckpoints.find(connection, sourceKey);
+        if (checkpoint != null && checkpoint.isCompleted()) {
+            return new Result(0, 0, 0, checkpoint.getPosition(), true);
+        }
+        long resumeFrom = checkpoint == null ? 0 : checkpoint.getPosition();
+        importedExpenses = 0;
+        importedSplits = 0;
+        rejectedExpenses = 0;
+
+        Path rejectFile = rejectFile(file, format);
+        EventBatch events = eventLog.newBatch();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+             BufferedWriter rejects = resumeFrom > 0
+                 ? Files.newBufferedWriter(rejectFile, StandardCharsets.UTF_8,
+                     StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+                 : Files.newBufferedWriter(rejectFile, StandardCharsets.UTF_8);
+             BulkExpenseWriter writer = new BulkExpenseWriter(connection, events)) {
+            Source source = format == Format.CSV ? new CsvSource(reader) : new JsonLinesSource(reader);
+            if (resumeFrom == 0) {
+                source.writeRejectHeader(rejects);
+            }
+            source.skip(resumeFrom);
+
+            connection.setAutoCommit(false);
+            try {
+                writer.beginTransaction();
+                List<PendingExpense> batch = new ArrayList<>(RESOLVE_BATCH);
+                long rowsInTransaction = 0;
+                PendingExpense expense;
+                while ((expense = source.next()) != null) {
+                    batch.add(expense);
+                    if (batch.size() == RESOLVE_BATCH) {
+                        rowsInTransaction += writeBatch(batch, writer, source, rejects);
+                        batch.clear();
+                        if (rowsInTransaction >= commitRows) {
+                            commit(writer, events, rejects, sourceKey, source.getPosition(), false);
+                            rowsInTransaction = 0;
+                        }
+                    }
+                }
+                writeBatch(batch, writer, source, rejects);
+                commit(writer, events, rejects, sourceKey, source.getPosition(), true);
+            } catch (SQLException | IOException | RuntimeException e) {
+                writer.discard();
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+
+        if (rejectedExpenses == 0 && resumeFrom == 0) {
+            Files.deleteIfExists(rejectFile);
+        }
+        return new Result(importedExpenses, importedSplits, rejectedExpenses, resumeFrom, false);
+    }
+
+    /**
+     * @return The side file rejected expenses are written to, e.g. trips.rejects.csv for trips.csv
+     */
+    public static Path rejectFile(Path file, Format format) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        return file.resolveSibling(base + ".rejects." + (format == Format.CSV ? "csv" : "jsonl"));
+    }
+
+    private void commit(BulkExpenseWriter writer, EventBatch events, Writer rejects, String sourceKey,
+                        long position, boolean completed) throws SQLException, IOException {
+        writer.flush();
+        ImportCheckpoints.save(connection, sourceKey, position, completed);
+        // Rejects reach the disk before the checkpoint moves past them; a crash in
+        // between repeats a few rejects on resume rather than losing them
+        rejects.flush();
+        eventLog.commit(connection, events);
+        BalanceCache.forConnection(connection).invalidateAll();
+        if (!completed) {
+            writer.beginTransaction();
+            System.out.printf("Imported %d expenses, %d splits, %d rejected%n",
+                importedExpenses, importedSplits, rejectedExpenses);
+        }
+    }
+
+    /**
+     * Resolves the usernames of a batch with a few IN lookups and buffers the valid expenses
+     * @return Number of split rows buffered
+     */
+    private long writeBatch(List<PendingExpense> batch, BulkExpenseWriter writer, Source source, Writer rejects)
+            throws SQLException, IOException {
+        Map<String, Integer> resolved = new HashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+        for (PendingExpense expense : batch) {
+            if (expense.error == null) {
+                expense.error = validate(expense);
+            }
+            if (expense.error == null) {
+                collectMissing(expense.createdBy, resolved, missing);
+                for (int i = 0; i < expense.splitCount; i++) {
+                    collectMissing(expense.users[i], resolved, missing);
+                }
+            }
+        }
+        lookupUsers(missing, resolved);
+
+        long rows = 0;
+        int[] userIds = new int[8];
+        for (PendingExpense expense : batch) {
+            if (expense.error == null) {
+                Integer creatorId = resolved.get(expense.createdBy);
+                if (creatorId == null) {
+                    expense.error = "Unknown user: " + expense.createdBy;
+                }
+                if (userIds.length < expense.splitCount) {
+                    userIds = new int[expense.splitCount];
+                }
+                for (int i = 0; i < expense.splitCount && expense.error == null; i++) {
+                    Integer userId = resolved.get(expense.users[i]);
+                    if (userId == null) {
+                        expense.error = "Unknown user: " + expense.users[i];
+                    } else {
+                        userIds[i] = userId;
+                    }
+                }
+                if (expense.error == null) {
+                    writer.add(expense.description, expense.amountInCents, creatorId, expense.createdAt,
+                        userIds, expense.amountsInCents, expense.paid, expense.splitCount);
+                    importedExpenses++;
+                    importedSplits += expense.splitCount;
+                    rows += expense.splitCount;
+                    continue;
+                }
+            }
+            source.writeReject(rejects, expense);
+            rejectedExpenses++;
+        }
+        return rows;
+    }
+
+    private void collectMissing(String username, Map<String, Integer> resolved, Set<String> missing) {
+        if (resolved.containsKey(username) || missing.contains(username)) {
+            return;
+        }
+        User user = users.getByUsername(username);
+        if (user != null) {
+            resolved.put(username, user.getId());
+        } else {
+            missing.add(username);
+        }
+    }
+
+    private void lookupUsers(Set<String> usernames, Map<String, Integer> resolved) throws SQLException {
+        List<String> chunk = new ArrayList<>(LOOKUP_CHUNK);
+        for (String username : usernames) {
+            chunk.add(username);
+            if (chunk.size() == LOOKUP_CHUNK) {
+                lookupChunk(chunk, resolved);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            lookupChunk(chunk, resolved);
+        }
+    }
+
+    private void lookupChunk(List<String> usernames, Map<String, Integer> resolved) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT id, username, email FROM users WHERE username IN (");
+        for (int i = 0; i < usernames.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(')');
+        try (PreparedStatement pstmt = connection.prepareStatement(sql.toString())) {
+            for (int i = 0; i < usernames.size(); i++) {
+                pstmt.setString(i + 1, usernames.get(i));
+            }
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                User user = users.put(new User(rs.getInt("id"), rs.getString("username"), rs.getString("email")));
+                resolved.put(user.getUsername(), user.getId());
+            }
+        }
+    }
+
+    /**
+     * Checks amounts and the split total
+     * @return The reason to reject the expense, or null if it is valid
+     */
+    private static String validate(PendingExpense expense) {
+        if (expense.description == null || expense.description.isBlank()) {
+            return "Missing description";
+        }
+        if (expense.createdBy == null || expense.createdBy.isEmpty()) {
+            return "Missing creator";
+        }
+        if (expense.splitCount == 0) {
+            return "No splits";
+        }
+        try {
+            expense.amountInCents = parseAmount(expense.amount);
+            expense.amountsInCents = new long[expense.splitCount];
+            long total = 0;
+            for (int i = 0; i < expense.splitCount; i++) {
+                if (expense.users[i] == null || expense.users[i].isEmpty()) {
+                    return "Missing split user";
+                }
+                expense.amountsInCents[i] = parseAmount(expense.amounts[i]);
+                total = Math.addExact(total, expense.amountsInCents[i]);
+            }
+            if (total != expense.amountInCents) {
+                return "Splits total " + Money.ofCents(total) + " but the expense amount is " + Money.ofCents(expense.amountInCents);
+            }
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            return e.getMessage();
+        }
+        return null;
+    }
+
+    private static long parseAmount(String text) {
+        if (text == null || text.isBlank()) {
+            throw new IllegalArgumentException("Missing amount");
+        }
+        BigDecimal value;
+        try {
+            value = new BigDecimal(text.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid amount: " + text);
+        }
+        if (value.signum() < 0 || value.scale() > 2) {
+            throw new IllegalArgumentException("Invalid amount: " + text);
+        }
+        return Money.parse(text).getCents();
+    }
+
+    /**
+     * Reads expenses from one input format and writes rejects back in it
+     */
+    private abstract static class Source {
+        /**
+         * @return The next expense, or null at the end of the input
+         */
+        abstract PendingExpense next() throws IOException;
+
+        /**
+         * @return Number of source records consumed by the expenses returned so far
+         */
+        abstract long getPosition();
+
+        abstract void skip(long records) throws IOException;
+
+        abstract void writeRejectHeader(Writer out) throws IOException;
+
+        abstract void writeReject(Writer out, PendingExpense expense) throws IOException;
+    }
+
+    private static final class CsvSource extends Source {
+        private static final String[] REQUIRED = {"expense", "description", "amount", "created_by", "user", "split_amount"};
+
+        private final CsvReader csv;
+        private final String[] header;
+        private final int expenseColumn;
+        private final int descriptionColumn;
+        private final int amountColumn;
+        private final int createdByColumn;
+        private final int userColumn;
+        private final int splitAmountColumn;
+        private final int paidColumn;
+        private final int createdAtColumn;
+        private String[] lookahead;
+        private long position;
+
+        CsvSource(BufferedReader reader) throws IOException {
+            this.csv = new CsvReader(reader);
+            this.header = csv.readRecord();
+            if (header == null) {
+                throw new IOException("The CSV file is empty");
+            }
+            List<String> columns = new ArrayList<>();
+            for (String column : header) {
+                columns.add(column.replace("\uFEFF", "").trim().toLowerCase());
+            }
+            for (String column : REQUIRED) {
+                if (!columns.contains(column)) {
+                    throw new IOException("The CSV header is missing the " + column + " column");
+                }
+            }
+            expenseColumn = columns.indexOf("expense");
+            descriptionColumn = columns.indexOf("description");
+            amountColumn = columns.indexOf("amount");
+            createdByColumn = columns.indexOf("created_by");
+            userColumn = columns.indexOf("user");
+            splitAmountColumn = columns.indexOf("split_amount");
+            paidColumn = columns.indexOf("paid");
+            createdAtColumn = columns.indexOf("created_at");
+        }
+
+        @Override
+        PendingExpense next() throws IOException {
+            String[] record = lookahead != null ? lookahead : readNonBlank();
+            lookahead = null;
+            if (record == null) {
+                return null;
+            }
+
+            PendingExpense expense = new PendingExpense();
+            List<String[]> rows = new ArrayList<>(4);
+            expense.raw = rows;
+            String key = field(record, expenseColumn);
+            expense.description = field(record, descriptionColumn);
+            expense.amount = field(record, amountColumn);
+            expense.createdBy = field(record, createdByColumn);
+            expense.createdAt = emptyToNull(field(record, createdAtColumn));
+
+            while (record != null && key.equals(field(record, expenseColumn))) {
+                rows.add(record);
+                position++;
+                if (record.length < header.length) {
+                    expense.error = "Expected " + header.length + " columns but found " + record.length;
+                } else if (!expense.description.equals(field(record, descriptionColumn))
+                        || !expense.amount.equals(field(record, amountColumn))
+                        || !expense.createdBy.equals(field(record, createdByColumn))) {
+                    expense.error = "Rows of expense " + key + " disagree on description, amount or creator";
+                }
+                expense.addSplit(field(record, userColumn), field(record, splitAmountColumn),
+                    parsePaid(field(record, paidColumn)));
+                record = readNonBlank();
+            }
+            lookahead = record;
+            return expense;
+        }
+
+        @Override
+        long getPosition() {
+            return position;
+        }
+
+        @Override
+        void skip(long records) throws IOException {
+            for (long i = 0; i < records; i++) {
+                if (csv.readRecord() == null) {
+                    throw new IOException("The file is shorter than the saved import position " + records);
+                }
+            }
+            position = records;
+        }
+
+        @Override
+        void writeRejectHeader(Writer out) throws IOException {
+            String[] fields = Arrays.copyOf(header, header.length + 1);
+            fields[header.length] = "error";
+            new CsvWriter(out).writeRecord(fields);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void writeReject(Writer out, PendingExpense expense) throws IOException {
+            CsvWriter writer = new CsvWriter(out);
+            for (String[] record : (List<String[]>) expense.raw) {
+                String[] fields = Arrays.copyOf(record, header.length + 1);
+                fields[header.length] = expense.error;
+                writer.writeRecord(fields);
+            }
+        }
+
+        /**
+         * Blank lines still count towards the position, so resuming skips them too
+         */
+        private String[] readNonBlank() throws IOException {
+            String[] record;
+            while ((record = csv.readRecord()) != null && record.length == 1 && record[0].isEmpty()) {
+                position++;
+            }
+            return record;
+        }
+
+        private static String field(String[] record, int column) {
+            return column >= 0 && column < record.length ? record[column] : "";
+        }
+
+        private static boolean parsePaid(String value) {
+            return value.equalsIgnoreCase("true") || value.equals("1") || value.equalsIgnoreCase("yes");
+        }
+    }
+
+    private static final class JsonLinesSource extends Source {
+        private final BufferedReader reader;
+        private long position;
+
+        JsonLinesSource(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        PendingExpense next() throws IOException {
+            String line;
+            do {
+                line = reader.readLine();
+                if (line == null) {
+                    return null;
+                }
+                position++;
+            } while (line.isBlank());
+
+            PendingExpense expense = new PendingExpense();
+            expense.raw = line;
+            try {
+                Object parsed = Json.parse(line);
+                if (!(parsed instanceof Map) || ((Map<?, ?>) parsed).isEmpty()) {
+                    throw new IllegalArgumentException("Expected an expense object");
+                }
+                Map<?, ?> object = (Map<?, ?>) parsed;
+                expense.description = string(object.get("description"));
+                expense.amount = string(object.get("amount"));
+                expense.createdBy = string(object.get("createdBy"));
+                expense.createdAt = string(object.get("createdAt"));
+                Object splits = object.get("splits");
+                if (!(splits instanceof List)) {
+                    throw new IllegalArgumentException("splits must be an array");
+                }
+                for (Object item : (List<?>) splits) {
+                    if (!(item instanceof Map)) {
+                        throw new IllegalArgumentException("Each split must be an object");
+                    }
+                    Map<?, ?> split = (Map<?, ?>) item;
+                    expense.addSplit(string(split.get("user")), string(split.get("amount")),
+                        Boolean.TRUE.equals(split.get("paid")));
+                }
+            } catch (IllegalArgumentException e) {
+                expense.error = e.getMessage();
+                expense.wellFormed = false;
+            }
+            return expense;
+        }
+
+        @Override
+        long getPosition() {
+            return position;
+        }
+
+        @Override
+        void skip(long records) throws IOException {
+            for (long i = 0; i < records; i++) {
+                if (reader.readLine() == null) {
+                    throw new IOException("The file is shorter than the saved import position " + records);
+                }
+            }
+            position = records;
+        }
+
+        @Override
+        void writeRejectHeader(Writer out) {
+        }
+
+        @Override
+        void writeReject(Writer out, PendingExpense expense) throws IOException {
+            String line = ((String) expense.raw).trim();
+            String error = new Json.Writer().value(expense.error).toString();
+            if (expense.wellFormed) {
+                // Keep the original record and put the reason in front of its members
+                out.write("{\"error\":" + error + "," + line.substring(1));
+            } else {
+                out.write("{\"error\":" + error + ",\"raw\":" + new Json.Writer().value(line) + "}");
+            }
+            out.write('\n');
+        }
+
+        private static String string(Object value) {
+            return value == null ? null : value instanceof BigDecimal ? ((BigDecimal) value).toPlainString() : value.toString();
+        }
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+}
@@ -0,0 +1,663 @@
+package com.expensesplitter.memory;
+
+import com.expensesplitter.model.BalanceMap;
+import com.expensesplitter.model.Expense;
+import com.expensesplitter.model.Money;
+import com.expensesplitter.model.SettlementCursor;
+import com.expensesplitter.model.SettlementPage;
+import com.expensesplitter.model.SettlementPlan;
+import com.expensesplitter.model.Split;
+import com.expensesplitter.model.Transaction;
+import com.expensesplitter.model.User;
+import com.expensesplitter.repository.ExpenseRepository;
+import com.expensesplitter.repository.NetBalanceConsumer;
+import com.expensesplitter.repository.SettlementRepository;
+import com.expensesplitter.repository.SplitRepository;
+import com.expensesplitter.repository.Storage;
+import com.expensesplitter.repository.UserRepository;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * The in-memory backend: a heap-resident columnar engine for simulations and
+ * tests. Every table is a set of parallel arrays indexed by id - 1. Splits,
+ * the bulk of the data, live in SplitColumns with per-user indexes, so a
+ * balance is summed from the unpaid splits of one user instead of read from a
+ * maintained ledger. Nothing is persisted: the engine starts empty and its
+ * data is gone when the process exits.
+ *
+ * One read-write lock guards every table. Each write checks everything it
+ * references before changing anything, which makes it atomic, and rejects bad
+ * references and duplicates with the constraint error code SQLite reports.
+ * Timestamps have SQLite's CURRENT_TIMESTAMP format and never go backwards,
+ * so newest first is simply descending id.
+ */
+public final class ColumnarStorage implements Storage {
+    // SQLite's result code for constraint violations, which the API maps to 409
+    static final int CONSTRAINT = 19;
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private String[] usernames = new String[64];
+    private String[] passwords = new String[64];
+    private String[] emails = new String[64];
+    private final Map<String, Integer> userIdsByName = new HashMap<>();
+    private final Set<String> emailsInUse = new HashSet<>();
+    private int userCount;
+
+    private String[] descriptions = new String[1024];
+    private long[] expenseCents = new long[1024];
+    private int[] creatorIds = new int[1024];
+    private String[] expenseTimes = new String[1024];
+    private final BitSet deletedExpenses = new BitSet();
+    private final RowIndex expensesByCreator = new RowIndex();
+    private int expenseCount;
+
+    private final SplitColumns splits = new SplitColumns();
+
+    private int[] payerIds = new int[256];
+    private int[] receiverIds = new int[256];
+    private long[] settlementCents = new long[256];
+    private String[] settlementTimes = new String[256];
+    private final RowIndex settlementsByUser = new RowIndex();
+    private int settlementCount;
+
+    private long timestampSecond = -1;
+    private String timestamp;
+
+    private final Users users = new Users();
+    private final Expenses expenses = new Expenses();
+    private final Splits splitRepository = new Splits();
+    private final Settlements settlements = new Settlements();
+
+    @Override
+    public UserRepository getUsers() {
+        return users;
+    }
+
+    @Override
+    public ExpenseRepository getExpenses() {
+        return expenses;
+    }
+
+    @Override
+    public SplitRepository getSplits() {
+        return splitRepository;
+    }
+
+    @Override
+    public SettlementRepository getSettlements() {
+        return settlements;
+    }
+
+    /**
+     * Nothing to release: the data goes with the object
+     */
+    @Override
+    public void close() {}
+
+    private final class Users implements UserRepository {
+
+        @Override
+        public int insert(String username, String password, String email) throws SQLException {
+            lock.writeLock().lock();
+            try {
+                requireNotNull(username, "users.username");
+                requireNotNull(password, "users.password");
+                if (userIdsByName.containsKey(username)) {
+                    throw constraint("UNIQUE constraint failed: users.username");
+                }
+                if (email != null && emailsInUse.contains(email)) {
+                    throw constraint("UNIQUE constraint failed: users.email");
+                }
+                if (userCount == usernames.length) {
+                    usernames = Arrays.copyOf(usernames, userCount * 2);
+                    passwords = Arrays.copyOf(passwords, userCount * 2);
+                    emails = Arrays.copyOf(emails, userCount * 2);
+                }
+                int userId = ++userCount;
+                usernames[userId - 1] = username;
+                passwords[userId - 1] = password; // In a real app, hash this password
+                emails[userId - 1] = email;
+                userIdsByName.put(username, userId);
+                if (email != null) {
+                    emailsInUse.add(email);
+                }
+                return userId;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        @Override
+        public User findById(int userId) {
+            lock.readLock().lock();
+            try {
+                return isUser(userId) ? userAt(userId) : null;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public User findByUsername(String username) {
+            lock.readLock().lock();
+            try {
+                Integer userId = userIdsByName.get(username);
+                return userId != null ? userAt(userId) : null;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public User authenticate(String username, String password) {
+            lock.readLock().lock();
+            try {
+                Integer userId = userIdsByName.get(username);
+                return userId != null && passwords[userId - 1].equals(password) ? userAt(userId) : null;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public List<User> findAll() {
+            lock.readLock().lock();
+            try {
+                List<User> all = new ArrayList<>(userCount);
+                for (int userId = 1; userId <= userCount; userId++) {
+                    all.add(userAt(userId));
+                }
+                return all;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    private final class Expenses implements ExpenseRepository {
+
+        @Override
+        public int insert(String description, Money amount, int createdById) throws SQLException {
+            lock.writeLock().lock();
+            try {
+                requireNotNull(description, "expenses.description");
+                requireUser(createdById);
+                return addExpense(description, amount.getCents(), createdById);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        @Override
+        public Expense insert(Expense expense) throws SQLException {
+            lock.writeLock().lock();
+            try {
+                // Validate everything before the first append, so a rejected expense leaves nothing behind
+                requireNotNull(expense.getDescription(), "expenses.description");
+                requireNotNull(expense.getAmount(), "expenses.amount");
+                requireUser(expense.getCreatedById());
+                for (Split split : expense.getSplits()) {
+                    requireNotNull(split.getAmount(), "splits.amount");
+                    requireUser(split.getUserId());
+                }
+
+                int expenseId = addExpense(expense.getDescription(), expense.getAmount().getCents(),
+                    expense.getCreatedById());
+                expense.setId(expenseId);
+                for (Split split : expense.getSplits()) {
+                    int row = splits.add(expenseId, split.getUserId(), expense.getCreatedById(),
+                        split.getAmount().getCents());
+                    split.setId(SplitColumns.idOf(row));
+                    split.setExpenseId(expenseId);
+                    split.setPaid(false);
+                }
+                return expense;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        @Override
+        public Expense findById(int expenseId) {
+            lock.readLock().lock();
+            try {
+                return isExpense(expenseId) ? expenseAt(expenseId) : null;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public List<Expense> findByCreator(int userId) {
+            lock.readLock().lock();
+            try {
+                int[] rows = expensesByCreator.rows(userId);
+                List<Expense> created = new ArrayList<>();
+                for (int i = expensesByCreator.count(userId) - 1; i >= 0; i--) {
+                    if (!deletedExpenses.get(rows[i])) {
+                        created.add(expenseAt(rows[i] + 1));
+                    }
+                }
+                return created;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public int[] delete(int expenseId) {
+            lock.writeLock().lock();
+            try {
+                if (!isExpense(expenseId)) {
+                    return new int[0];
+                }
+                // The creator and every participant who still owed something
+                BalanceMap affected = new BalanceMap();
+                affected.add(creatorIds[expenseId - 1], 0);
+                int[] rows = splits.byExpense.rows(expenseId);
+                for (int i = 0; i < splits.byExpense.count(expenseId); i++) {
+                    if (!splits.paid.get(rows[i])) {
+                        affected.add(splits.userIds[rows[i]], 0);
+                    }
+                    splits.deleted.set(rows[i]);
+                }
+                deletedExpenses.set(expenseId - 1);
+                return affected.getUserIds();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private final class Splits implements SplitRepository {
+
+        @Override
+        public int insert(int expenseId, int userId, Money amount) throws SQLException {
+            lock.writeLock().lock();
+            try {
+                if (!isExpense(expenseId)) {
+                    throw constraint("FOREIGN KEY constraint failed");
+                }
+                requireUser(userId);
+                int creatorId = creatorIds[expenseId - 1];
+                splits.add(expenseId, userId, creatorId, amount.getCents());
+                return creatorId;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        @Override
+        public List<Split> findByExpense(int expenseId) {
+            lock.readLock().lock();
+            try {
+                return splitsOf(expenseId);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public BalanceMap getBalances(int userId) {
+            lock.readLock().lock();
+            try {
+                BalanceMap balances = new BalanceMap();
+                int[] rows = splits.byCreditor.rows(userId);
+                for (int i = 0; i < splits.byCreditor.count(userId); i++) {
+                    if (splits.isDebt(rows[i])) {
+                        balances.add(splits.userIds[rows[i]], splits.cents[rows[i]]);
+                    }
+                }
+                rows = splits.byDebtor.rows(userId);
+                for (int i = 0; i < splits.byDebtor.count(userId); i++) {
+                    if (splits.isDebt(rows[i])) {
+                        balances.add(splits.creditorIds[rows[i]], -splits.cents[rows[i]]);
+                    }
+                }
+                return balances;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public long[] getGroupNetPositions(int[] userIds) {
+            lock.readLock().lock();
+            try {
+                boolean[] members = membersOf(userIds);
+                long[] net = new long[members.length];
+                for (int debtorId = 0; debtorId < members.length; debtorId++) {
+                    if (!members[debtorId]) {
+                        continue;
+                    }
+                    int[] rows = splits.byDebtor.rows(debtorId);
+                    for (int i = 0; i < splits.byDebtor.count(debtorId); i++) {
+                        int creditorId = splits.creditorIds[rows[i]];
+                        if (creditorId < members.length && members[creditorId] && splits.isDebt(rows[i])) {
+                            net[debtorId] -= splits.cents[rows[i]];
+                            net[creditorId] += splits.cents[rows[i]];
+                        }
+                    }
+                }
+                return net;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * Streams the pairs in (low id, high id) order, like the SQLite backend.
+         * The read lock is held throughout, so the consumer must not write.
+         */
+        @Override
+        public void forEachNetBalance(NetBalanceConsumer consumer) {
+            lock.readLock().lock();
+            try {
+                // Per low id, net amounts against each higher id; positive means the low id owes
+                long[] net = new long[userCount + 1];
+                boolean[] touched = new boolean[userCount + 1];
+                int[] counterparties = new int[userCount + 1];
+                for (int lowId = 1; lowId <= userCount; lowId++) {
+                    int count = 0;
+                    int[] rows = splits.byDebtor.rows(lowId);
+                    for (int i = 0; i < splits.byDebtor.count(lowId); i++) {
+                        int highId = splits.creditorIds[rows[i]];
+                        if (highId > lowId && splits.isDebt(rows[i])) {
+                            if (!touched[highId]) {
+                                touched[highId] = true;
+                                counterparties[count++] = highId;
+                            }
+                            net[highId] += splits.cents[rows[i]];
+                        }
+                    }
+                    rows = splits.byCreditor.rows(lowId);
+                    for (int i = 0; i < splits.byCreditor.count(lowId); i++) {
+                        int highId = splits.userIds[rows[i]];
+                        if (highId > lowId && splits.isDebt(rows[i])) {
+                            if (!touched[highId]) {
+                                touched[highId] = true;
+                                counterparties[count++] = highId;
+                            }
+                            net[highId] -= splits.cents[rows[i]];
+                        }
+                    }
+
+                    Arrays.sort(counterparties, 0, count);
+                    for (int i = 0; i < count; i++) {
+                        int highId = counterparties[i];
+                        if (net[highId] > 0) {
+                            consumer.accept(lowId, highId, net[highId]);
+                        } else if (net[highId] < 0) {
+                            consumer.accept(highId, lowId, -net[highId]);
+                        }
+                        net[highId] = 0;
+                        touched[highId] = false;
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * Balances are summed from the splits on every read; there is nothing to rebuild
+         */
+        @Override
+        public void rebuildBalances() {}
+    }
+
+    private final class Settlements implements SettlementRepository {
+
+        @Override
+        public void settle(int payerId, int receiverId, Money amount) throws SQLException {
+            lock.writeLock().lock();
+            try {
+                requireUser(payerId);
+                requireUser(receiverId);
+                addSettlement(payerId, receiverId, amount.getCents());
+                splits.markPaid(payerId, receiverId);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        @Override
+        public void executePlan(int[] userIds, SettlementPlan plan) throws SQLException {
+            lock.writeLock().lock();
+            try {
+                boolean[] members = membersOf(userIds);
+                long[] net = splitRepository.getGroupNetPositions(userIds);
+
+                // The plan must bring the current positions exactly to zero
+                for (int i = 0; i < plan.size(); i++) {
+                    int payerId = plan.getPayerId(i);
+                    int receiverId = plan.getReceiverId(i);
+                    if (payerId < 0 || payerId >= members.length || !members[payerId]
+                            || receiverId < 0 || receiverId >= members.length || !members[receiverId]) {
+                        throw new SQLException("Settlement plan includes users outside the group");
+                    }
+                    net[payerId] += plan.getAmountInCents(i);
+                    net[receiverId] -= plan.getAmountInCents(i);
+                }
+                for (long position : net) {
+                    if (position != 0) {
+                        throw new SQLException("Balances changed since the settlement plan was created");
+                    }
+                }
+
+                for (int i = 0; i < plan.size(); i++) {
+                    addSettlement(plan.getPayerId(i), plan.getReceiverId(i), plan.getAmountInCents(i));
+                }
+                for (int debtorId = 0; debtorId < members.length; debtorId++) {
+                    if (!members[debtorId]) {
+                        continue;
+                    }
+                    int[] rows = splits.byDebtor.rows(debtorId);
+                    for (int i = 0; i < splits.byDebtor.count(debtorId); i++) {
+                        int creditorId = splits.creditorIds[rows[i]];
+                        if (creditorId < members.length && members[creditorId] && splits.isDebt(rows[i])) {
+                            splits.paid.set(rows[i]);
+                        }
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        @Override
+        public SettlementPage page(int userId, SettlementCursor after, int limit) {
+            if (limit < 1) {
+                throw new IllegalArgumentException("Page size must be positive: " + limit);
+            }
+            lock.readLock().lock();
+            try {
+                int[] rows = settlementsByUser.rows(userId);
+                int start = settlementsByUser.count(userId) - 1;
+                if (after != null) {
+                    // Rows are in id order and timestamps never decrease, so the
+                    // page starts at the last row whose id is below the cursor's
+                    int position = Arrays.binarySearch(rows, 0, start + 1, after.getId() - 1);
+                    start = (position >= 0 ? position : -position - 1) - 1;
+                }
+
+                List<Transaction> transactions = new ArrayList<>(Math.min(limit, 256));
+                int i = start;
+                for (; i >= 0 && transactions.size() < limit; i--) {
+                    transactions.add(settlementAt(rows[i]));
+                }
+                SettlementCursor next = i >= 0 ? SettlementCursor.after(transactions.get(limit - 1)) : null;
+                return new SettlementPage(transactions, next);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * The read lock is held throughout, so the consumer must not write
+         */
+        @Override
+        public void forEach(int userId, Consumer<Transaction> consumer) {
+            lock.readLock().lock();
+            try {
+                int[] rows = settlementsByUser.rows(userId);
+                for (int i = settlementsByUser.count(userId) - 1; i >= 0; i--) {
+                    consumer.accept(settlementAt(rows[i]));
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    private int addExpense(String description, long amountInCents, int createdById) {
+        if (expenseCount == descriptions.length) {
+            int capacity = expenseCount * 2;
+            descriptions = Arrays.copyOf(descriptions, capacity);
+            expenseCents = Arrays.copyOf(expenseCents, capacity);
+            creatorIds = Arrays.copyOf(creatorIds, capacity);
+            expenseTimes = Arrays.copyOf(expenseTimes, capacity);
+        }
+        int row = expenseCount++;
+        descriptions[row] = description;
+        expenseCents[row] = amountInCents;
+        creatorIds[row] = createdById;
+        expenseTimes[row] = now();
+        expensesByCreator.add(createdById, row);
+        return row + 1;
+    }
+
+    private void addSettlement(int payerId, int receiverId, long amountInCents) {
+        if (settlementCount == payerIds.length) {
+            int capacity = settlementCount * 2;
+            payerIds = Arrays.copyOf(payerIds, capacity);
+            receiverIds = Arrays.copyOf(receiverIds, capacity);
+            settlementCents = Arrays.copyOf(settlementCents, capacity);
+            settlementTimes = Arrays.copyOf(settlementTimes, capacity);
+        }
+        int row = settlementCount++;
+        payerIds[row] = payerId;
+        receiverIds[row] = receiverId;
+        settlementCents[row] = amountInCents;
+        settlementTimes[row] = now();
+        settlementsByUser.add(payerId, row);
+        // A settlement with oneself is only reported once
+        if (receiverId != payerId) {
+            settlementsByUser.add(receiverId, row);
+        }
+    }
+
+    private boolean isUser(int userId) {
+        return userId >= 1 && userId <= userCount;
+    }
+
+    private boolean isExpense(int expenseId) {
+        return expenseId >= 1 && expenseId <= expenseCount && !deletedExpenses.get(expenseId - 1);
+    }
+
+    private User userAt(int userId) {
+        return new User(userId, usernames[userId - 1], emails[userId - 1]);
+    }
+
+    private Expense expenseAt(int expenseId) {
+        int row = expenseId - 1;
+        Expense expense = new Expense();
+        expense.setId(expenseId);
+        expense.setDescription(descriptions[row]);
+        expense.setAmount(Money.ofCents(expenseCents[row]));
+        expense.setCreatedAt(expenseTimes[row]);
+        expense.setCreatedById(creatorIds[row]);
+        expense.setCreatedBy(usernames[creatorIds[row] - 1]);
+        expense.setSplits(splitsOf(expenseId));
+        return expense;
+    }
+
+    private List<Split> splitsOf(int expenseId) {
+        int[] rows = splits.byExpense.rows(expenseId);
+        int count = splits.byExpense.count(expenseId);
+        List<Split> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int row = rows[i];
+            if (splits.deleted.get(row)) {
+                continue;
+            }
+            Split split = new Split(splits.userIds[row], usernames[splits.userIds[row] - 1],
+                Money.ofCents(splits.cents[row]));
+            split.setId(SplitColumns.idOf(row));
+            split.setExpenseId(expenseId);
+            split.setPaid(splits.paid.get(row));
+            list.add(split);
+        }
+        return list;
+    }
+
+    private Transaction settlementAt(int row) {
+        Transaction transaction = new Transaction(
+            payerIds[row], usernames[payerIds[row] - 1],
+            receiverIds[row], usernames[receiverIds[row] - 1],
+            Money.ofCents(settlementCents[row]));
+        transaction.setId(row + 1);
+        transaction.setSettledAt(settlementTimes[row]);
+        return transaction;
+    }
+
+    /**
+     * @return Membership flags indexed by user id, sized to the largest id
+     */
+    private static boolean[] membersOf(int[] userIds) {
+        int maxId = 0;
+        for (int userId : userIds) {
+            maxId = Math.max(maxId, userId);
+        }
+        boolean[] members = new boolean[maxId + 1];
+        for (int userId : userIds) {
+            members[userId] = true;
+        }
+        return members;
+    }
+
+    /**
+     * @return The current time as SQLite's CURRENT_TIMESTAMP formats it, reusing
+     *         the string within a second and never going back in time
+     */
+    private String now() {
+        long second = System.currentTimeMillis() / 1000;
+        if (second > timestampSecond) {
+            timestampSecond = second;
+            timestamp = TIMESTAMP.format(LocalDateTime.ofEpochSecond(second, 0, ZoneOffset.UTC));
+        }
+        return timestamp;
+    }
+
+    private void requireUser(int userId) throws SQLException {
+        if (!isUser(userId)) {
+            throw constraint("FOREIGN KEY constraint failed");
+        }
+    }
+
+    private static void requireNotNull(Object value, String column) throws SQLException {
+        if (value == null) {
+            throw constraint("NOT NULL constraint failed: " + column);
+        }
+    }
+
+    private static SQLException constraint(String message) {
+        return new SQLException(message, null, CONSTRAINT);
+    }
+}
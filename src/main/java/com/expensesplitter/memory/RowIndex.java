@@ -0,0 +1,41 @@
+package com.expensesplitter.memory;
+
+import java.util.Arrays;
+
+/**
+ * Row numbers grouped by a small positive key such as a user or expense id,
+ * each key's rows kept in insertion order in a growable int array. Keys index
+ * the outer array directly, which suits ids handed out from 1 upwards.
+ */
+final class RowIndex {
+    private static final int[] NO_ROWS = new int[0];
+
+    private int[][] rows = new int[64][];
+    private int[] counts = new int[64];
+
+    void add(int key, int row) {
+        if (key >= rows.length) {
+            int capacity = Math.max(key + 1, rows.length * 2);
+            rows = Arrays.copyOf(rows, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+        int[] keyRows = rows[key];
+        if (keyRows == null) {
+            keyRows = rows[key] = new int[4];
+        } else if (counts[key] == keyRows.length) {
+            keyRows = rows[key] = Arrays.copyOf(keyRows, keyRows.length * 2);
+        }
+        keyRows[counts[key]++] = row;
+    }
+
+    /**
+     * @return The key's rows; only the first count(key) entries are valid
+     */
+    int[] rows(int key) {
+        return key >= 0 && key < rows.length && rows[key] != null ? rows[key] : NO_ROWS;
+    }
+
+    int count(int key) {
+        return key >= 0 && key < counts.length ? counts[key] : 0;
+    }
+}
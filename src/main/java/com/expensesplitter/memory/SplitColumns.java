@@ -0,0 +1,74 @@
+package com.expensesplitter.memory;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The splits table as parallel primitive columns: row r is split id r + 1.
+ * Each row also carries the creator of its expense, the creditor of the
+ * debt, so balance queries never have to look at the expenses. Rows are
+ * indexed by debtor, by creditor and by expense. Deleting an expense leaves
+ * its rows in place, marked in the deleted set, and every read skips them.
+ *
+ * Not thread-safe; ColumnarStorage guards it with its lock.
+ */
+final class SplitColumns {
+    int[] expenseIds = new int[1024];
+    int[] userIds = new int[1024];
+    int[] creditorIds = new int[1024];
+    long[] cents = new long[1024];
+    final BitSet paid = new BitSet();
+    final BitSet deleted = new BitSet();
+    final RowIndex byDebtor = new RowIndex();
+    final RowIndex byCreditor = new RowIndex();
+    final RowIndex byExpense = new RowIndex();
+    int size;
+
+    /**
+     * @return The new row
+     */
+    int add(int expenseId, int userId, int creditorId, long amountInCents) {
+        if (size == expenseIds.length) {
+            int capacity = size * 2;
+            expenseIds = Arrays.copyOf(expenseIds, capacity);
+            userIds = Arrays.copyOf(userIds, capacity);
+            creditorIds = Arrays.copyOf(creditorIds, capacity);
+            cents = Arrays.copyOf(cents, capacity);
+        }
+        int row = size++;
+        expenseIds[row] = expenseId;
+        userIds[row] = userId;
+        creditorIds[row] = creditorId;
+        cents[row] = amountInCents;
+        byDebtor.add(userId, row);
+        byCreditor.add(creditorId, row);
+        byExpense.add(expenseId, row);
+        return row;
+    }
+
+    /**
+     * @return Whether the row is an outstanding debt: unpaid, not deleted and
+     *         not the creator's own share
+     */
+    boolean isDebt(int row) {
+        return !paid.get(row) && !deleted.get(row) && userIds[row] != creditorIds[row];
+    }
+
+    /**
+     * Marks every unpaid split the debtor owes the creditor as paid
+     */
+    void markPaid(int debtorId, int creditorId) {
+        int[] rows = byDebtor.rows(debtorId);
+        int count = byDebtor.count(debtorId);
+        for (int i = 0; i < count; i++) {
+            int row = rows[i];
+            if (creditorIds[row] == creditorId && !deleted.get(row)) {
+                paid.set(row);
+            }
+        }
+    }
+
+    static int idOf(int row) {
+        return row + 1;
+    }
+}
@@ -0,0 +1,37 @@
+package com.expensesplitter.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram that any number of threads record into at once, in the
+ * manner of HdrHistogram's AtomicHistogram: the bucket layout of
+ * LatencyHistogram, with each count in an AtomicLongArray. Recording is one
+ * atomic increment, plus a compare-and-set only when the maximum grows, and
+ * never blocks. Snapshots are read while recording goes on, so a value
+ * recorded during a snapshot may or may not be part of it.
+ */
+public final class LatencyRecorder {
+    private final AtomicLongArray counts = new AtomicLongArray(LatencyHistogram.BUCKETS);
+    private final AtomicLong maxValue = new AtomicLong();
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.getAndIncrement(LatencyHistogram.bucketOf(value));
+        long max = maxValue.get();
+        while (value > max && !maxValue.compareAndSet(max, value)) {
+            max = maxValue.get();
+        }
+    }
+
+    /**
+     * @return A copy of the counts recorded so far
+     */
+    public LatencyHistogram snapshot() {
+        long[] copy = new long[LatencyHistogram.BUCKETS];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = counts.get(i);
+        }
+        return LatencyHistogram.of(copy, maxValue.get());
+    }
+}
@@ -0,0 +1,53 @@
+package com.expensesplitter.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide registry of instrumented operations. Each operation is created
+ * once, usually into a static field of the class it measures, and published
+ * as the MXBean com.expensesplitter:type=Operation,component=...,name=...
+ * for jconsole, VisualVM or any other JMX client.
+ */
+public final class OperationMetrics {
+    public static final String DOMAIN = "com.expensesplitter";
+
+    private static final Map<String, OperationStats> OPERATIONS = new ConcurrentHashMap<>();
+
+    private OperationMetrics() {}
+
+    /**
+     * @return The operation's stats, created and registered with JMX on first use
+     */
+    public static OperationStats operation(String component, String operation) {
+        return OPERATIONS.computeIfAbsent(component + "." + operation,
+            key -> register(new OperationStats(component, operation)));
+    }
+
+    /**
+     * @return Every operation, sorted by component and name
+     */
+    public static List<OperationStats> all() {
+        List<OperationStats> all = new ArrayList<>(OPERATIONS.values());
+        all.sort(Comparator.comparing(OperationStats::getComponent).thenComparing(OperationStats::getOperation));
+        return all;
+    }
+
+    private static OperationStats register(OperationStats stats) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(stats, new ObjectName(DOMAIN + ":type=Operation,component="
+                + stats.getComponent() + ",name=" + stats.getOperation()));
+        } catch (JMException e) {
+            System.out.println("Error registering metrics MBean: " + e.getMessage());
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,182 @@
+package com.expensesplitter.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency, errors and rows returned of one operation, recorded lock-free from
+ * any thread. Callers take System.nanoTime() on entry and pass it to record()
+ * or recordError() on the way out. Callers that also emit a JFR event per call
+ * start it with begin() and hand it to record() or recordError() to commit.
+ *
+ * The JMX percentiles all come from one histogram snapshot, which is reused
+ * for SNAPSHOT_MILLIS so that a poll reading every attribute copies the
+ * histogram once and sees values that agree with each other.
+ */
+public final class OperationStats implements OperationStatsMXBean {
+    static final long SNAPSHOT_MILLIS = 1_000;
+
+    /**
+     * Percentiles of one histogram snapshot, in nanoseconds
+     */
+    private static final class Percentiles {
+        final long takenAt;
+        final long p50;
+        final long p99;
+        final long p999;
+        final long max;
+
+        Percentiles(long takenAt, LatencyHistogram histogram) {
+            this.takenAt = takenAt;
+            this.p50 = histogram.getValueAtPercentile(50);
+            this.p99 = histogram.getValueAtPercentile(99);
+            this.p999 = histogram.getValueAtPercentile(99.9);
+            this.max = histogram.getMaxValue();
+        }
+    }
+
+    private final String component;
+    private final String operation;
+    private final LatencyRecorder latency = new LatencyRecorder();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private volatile Percentiles percentiles;
+
+    OperationStats(String component, String operation) {
+        this.component = component;
+        this.operation = operation;
+    }
+
+    /**
+     * Records a call that succeeded
+     * @param start System.nanoTime() when the call began
+     * @param rowCount Rows, entries or items it returned
+     */
+    public void record(long start, long rowCount) {
+        long nanos = System.nanoTime() - start;
+        latency.record(nanos);
+        calls.increment();
+        totalNanos.add(nanos);
+        if (rowCount != 0) {
+            rows.add(rowCount);
+        }
+    }
+
+    /**
+     * Records a call that failed
+     * @param start System.nanoTime() when the call began
+     */
+    public void recordError(long start) {
+        record(start, 0);
+        errors.increment();
+    }
+
+    /**
+     * Starts the JFR event of a call
+     * @param userId The user the call is for, 0 if it is not about one user
+     * @return The event, or null unless a recording has service call events enabled
+     */
+    public ServiceCallEvent begin(long userId) {
+        if (!ServiceCallEvent.enabled()) {
+            return null;
+        }
+        ServiceCallEvent event = new ServiceCallEvent();
+        event.component = component;
+        event.operation = operation;
+        event.userId = userId;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Records a call that succeeded and commits its event, if it has one
+     */
+    public void record(long start, long rowCount, ServiceCallEvent event) {
+        record(start, rowCount);
+        if (event != null) {
+            event.rows = rowCount;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records a call that failed and commits its event, if it has one
+     */
+    public void recordError(long start, ServiceCallEvent event) {
+        recordError(start);
+        if (event != null) {
+            event.failed = true;
+            event.commit();
+        }
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency.snapshot();
+    }
+
+    @Override
+    public String getComponent() {
+        return component;
+    }
+
+    @Override
+    public String getOperation() {
+        return operation;
+    }
+
+    @Override
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getRowsReturned() {
+        return rows.sum();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        long calls = getCalls();
+        return calls == 0 ? 0 : totalNanos.sum() / 1e6 / calls;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return percentiles().p50 / 1e6;
+    }
+
+    @Override
+    public double getP99Millis() {
+        return percentiles().p99 / 1e6;
+    }
+
+    @Override
+    public double getP999Millis() {
+        return percentiles().p999 / 1e6;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return percentiles().max / 1e6;
+    }
+
+    /**
+     * @return The percentiles of a snapshot at most SNAPSHOT_MILLIS old
+     */
+    private Percentiles percentiles() {
+        long now = System.nanoTime();
+        Percentiles current = percentiles;
+        if (current == null || now - current.takenAt > TimeUnit.MILLISECONDS.toNanos(SNAPSHOT_MILLIS)) {
+            current = new Percentiles(now, latency.snapshot());
+            percentiles = current;
+        }
+        return current;
+    }
+}
@@ -0,0 +1,31 @@
+package com.expensesplitter.metrics;
+
+/**
+ * JMX view of one instrumented operation. Latencies are in milliseconds and
+ * cover every call since startup, failed ones included.
+ */
+public interface OperationStatsMXBean {
+
+    String getComponent();
+
+    String getOperation();
+
+    long getCalls();
+
+    long getErrors();
+
+    /**
+     * @return Total rows, entries or items the successful calls returned
+     */
+    long getRowsReturned();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP99Millis();
+
+    double getP999Millis();
+
+    double getMaxMillis();
+}
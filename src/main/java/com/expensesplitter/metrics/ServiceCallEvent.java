@@ -0,0 +1,44 @@
+package com.expensesplitter.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event spanning one service call. Created by OperationStats.begin() only
+ * while a recording has the event enabled, so disabled calls allocate nothing.
+ */
+@Name("com.expensesplitter.ServiceCall")
+@Label("Service Call")
+@Category({"Expense Splitter", "Service"})
+@Description("A call to a UserService, ExpenseService or BalanceService method")
+@Enabled(false)
+@StackTrace(false)
+public final class ServiceCallEvent extends Event {
+    private static final ServiceCallEvent PROBE = new ServiceCallEvent();
+
+    @Label("Component")
+    String component;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("User Id")
+    @Description("The user the call was made for, 0 if it was not about one user")
+    long userId;
+
+    @Label("Rows")
+    @Description("Rows, entries or items the call returned")
+    long rows;
+
+    @Label("Failed")
+    boolean failed;
+
+    static boolean enabled() {
+        return PROBE.isEnabled();
+    }
+}
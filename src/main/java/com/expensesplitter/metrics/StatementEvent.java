@@ -0,0 +1,69 @@
+package com.expensesplitter.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event spanning the execution of one statement, emitted by the connection
+ * wrapper in SlowQueryLog whether or not the statement cache is on. For a query
+ * that is the first step, which is where SQLite sorts and aggregates; reading
+ * the remaining rows falls inside the enclosing service call.
+ */
+@Name("com.expensesplitter.Statement")
+@Label("SQL Statement")
+@Category({"Expense Splitter", "JDBC"})
+@Description("Execution of a SQL statement")
+@Enabled(false)
+public final class StatementEvent extends Event {
+    private static final StatementEvent PROBE = new StatementEvent();
+
+    @Label("SQL")
+    String sql;
+
+    @Label("Method")
+    @Description("The execute method called")
+    String method;
+
+    @Label("Update Count")
+    @Description("Rows changed, or -1 for a query")
+    long updateCount = -1;
+
+    /**
+     * @param method The statement method being called
+     * @return A started event, or null if no recording has the event enabled
+     *         or the method does not execute the statement
+     */
+    public static StatementEvent begin(String method, String sql) {
+        if (!PROBE.isEnabled() || !method.startsWith("execute")) {
+            return null;
+        }
+        StatementEvent event = new StatementEvent();
+        event.sql = sql;
+        event.method = method;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Commits the event, if there is one, with the result of the execute method
+     */
+    public static void end(StatementEvent event, Object result) {
+        if (event == null) {
+            return;
+        }
+        if (result instanceof Integer || result instanceof Long) {
+            event.updateCount = ((Number) result).longValue();
+        } else if (result instanceof int[]) {
+            long total = 0;
+            for (int count : (int[]) result) {
+                total += Math.max(count, 0);
+            }
+            event.updateCount = total;
+        }
+        event.commit();
+    }
+}
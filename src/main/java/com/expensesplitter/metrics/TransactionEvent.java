@@ -0,0 +1,86 @@
+package com.expensesplitter.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event spanning one write transaction, from its first attempt until it
+ * committed or was given up
+ */
+@Name("com.expensesplitter.Transaction")
+@Label("Write Transaction")
+@Category({"Expense Splitter", "JDBC"})
+@Description("A write transaction, with the time its commit took or the cause of its rollback")
+@Enabled(false)
+@StackTrace(false)
+public final class TransactionEvent extends Event {
+    private static final TransactionEvent PROBE = new TransactionEvent();
+
+    @Label("Writer")
+    @Description("ConnectionManager or WritePipeline")
+    String writer;
+
+    @Label("Commands")
+    @Description("Writes committed together, more than one in a WritePipeline group commit")
+    int commands;
+
+    @Label("Attempts")
+    @Description("Times the transaction ran, more than one if the database was busy")
+    int attempts;
+
+    @Label("Committed")
+    boolean committed;
+
+    @Label("Commit Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long commitTime;
+
+    @Label("Rollback Cause")
+    String rollbackCause;
+
+    /**
+     * @return A started event, or null if no recording has the event enabled
+     */
+    public static TransactionEvent begin(String writer, int commands) {
+        if (!PROBE.isEnabled()) {
+            return null;
+        }
+        TransactionEvent event = new TransactionEvent();
+        event.writer = writer;
+        event.commands = commands;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @return System.nanoTime() if there is an event to time the commit for, otherwise 0
+     */
+    public static long commitStarted(TransactionEvent event) {
+        return event == null ? 0 : System.nanoTime();
+    }
+
+    public static void committed(TransactionEvent event, int attempts, long commitStarted) {
+        if (event == null) {
+            return;
+        }
+        event.attempts = attempts;
+        event.committed = true;
+        event.commitTime = System.nanoTime() - commitStarted;
+        event.commit();
+    }
+
+    public static void rolledBack(TransactionEvent event, int attempts, Throwable cause) {
+        if (event == null) {
+            return;
+        }
+        event.attempts = attempts;
+        event.rollbackCause = cause.getClass().getSimpleName() + ": " + cause.getMessage();
+        event.commit();
+    }
+}
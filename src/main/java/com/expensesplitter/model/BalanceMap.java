@@ -0,0 +1,199 @@
+package com.expensesplitter.model;
+
+import java.util.Arrays;
+
+
+/**
+ * Net balances of one user, keyed by counterparty user id. Amounts are in cents;
+ * positive values are owed to the user, negative values are owed by the user.
+ *
+ * Backed by an open-addressing table of parallel int and long arrays, so adding
+ * and reading balances never boxes. Counterparties are kept as ids only; their
+ * usernames are looked up by whoever renders the balances. User ids are
+ * positive, which lets 0 mark a free slot.
+ */
+public class BalanceMap {
+    private static final int FREE = 0;
+
+    /**
+     * Receives one balance at a time from forEach
+     */
+    @FunctionalInterface
+    public interface BalanceConsumer {
+        void accept(int userId, long amountInCents);
+    }
+
+    private int[] userIds;
+    private long[] amountsInCents;
+    private int size;
+    private boolean frozen;
+
+    public BalanceMap() {
+        this(8);
+    }
+
+    /**
+     * @param expectedSize Number of counterparties expected, to avoid resizing
+     */
+    public BalanceMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize) * 2 - 1) << 1;
+        this.userIds = new int[capacity];
+        this.amountsInCents = new long[capacity];
+    }
+
+    /**
+     * Adds an amount to the balance with a counterparty, creating it if needed
+     */
+    public void add(int userId, long amountInCents) {
+        if (frozen) {
+            throw new UnsupportedOperationException("Balance map is read-only");
+        }
+        if (userId <= FREE) {
+            throw new IllegalArgumentException("User ids must be positive: " + userId);
+        }
+        int slot = slotOf(userIds, userId);
+        if (userIds[slot] == userId) {
+            amountsInCents[slot] += amountInCents;
+            return;
+        }
+        userIds[slot] = userId;
+        amountsInCents[slot] = amountInCents;
+        size++;
+        if (size * 2 > userIds.length) {
+            resize();
+        }
+    }
+
+    /**
+     * @return Net amount in cents with the counterparty, 0 if there is none
+     */
+    public long getAmountInCents(int userId) {
+        if (userId <= FREE) {
+            return 0;
+        }
+        int slot = slotOf(userIds, userId);
+        return userIds[slot] == userId ? amountsInCents[slot] : 0;
+    }
+
+    public Money getAmount(int userId) {
+        return Money.ofCents(getAmountInCents(userId));
+    }
+
+    public boolean containsUser(int userId) {
+        return userId > FREE && userIds[slotOf(userIds, userId)] == userId;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void forEach(BalanceConsumer consumer) {
+        for (int slot = 0; slot < userIds.length; slot++) {
+            if (userIds[slot] != FREE) {
+                consumer.accept(userIds[slot], amountsInCents[slot]);
+            }
+        }
+    }
+
+    /**
+     * @return Counterparty ids in ascending order
+     */
+    public int[] getUserIds() {
+        int[] ids = new int[size];
+        int count = 0;
+        for (int userId : userIds) {
+            if (userId != FREE) {
+                ids[count++] = userId;
+            }
+        }
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    /**
+     * Makes the map read-only so it can be shared, for example by a cache
+     * @return This map
+     */
+    public BalanceMap freeze() {
+        frozen = true;
+        return this;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    private void resize() {
+        int[] oldIds = userIds;
+        long[] oldAmounts = amountsInCents;
+        userIds = new int[oldIds.length * 2];
+        amountsInCents = new long[oldIds.length * 2];
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldIds[i] != FREE) {
+                int slot = slotOf(userIds, oldIds[i]);
+                userIds[slot] = oldIds[i];
+                amountsInCents[slot] = oldAmounts[i];
+            }
+        }
+    }
+
+    // Linear probing from a Fibonacci hash; returns the key's slot or the free slot where it belongs
+    private static int slotOf(int[] table, int userId) {
+        int mask = table.length - 1;
+        // Top bits of the product, as many as the table has index bits
+        int slot = (userId * 0x9E3779B9) >>> (Integer.numberOfLeadingZeros(table.length) + 1);
+        while (table[slot] != FREE && table[slot] != userId) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof BalanceMap)) {
+            return false;
+        }
+        BalanceMap other = (BalanceMap) o;
+        if (size != other.size) {
+            return false;
+        }
+        for (int slot = 0; slot < userIds.length; slot++) {
+            int userId = userIds[slot];
+            if (userId != FREE && (!other.containsUser(userId) || other.getAmountInCents(userId) != amountsInCents[slot])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int slot = 0; slot < userIds.length; slot++) {
+            if (userIds[slot] != FREE) {
+                hash += userIds[slot] ^ Long.hashCode(amountsInCents[slot]);
+            }
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("BalanceMap{");
+        int[] ids = getUserIds();
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(ids[i]).append('=').append(getAmountInCents(ids[i]));
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -7,13 +7,14 @@ import java.util.List;
 public class Expense {
     private int id;
     private String description;
-    private double amount;
+    private Money amount;
     private String createdAt;
     private String createdBy;
     private int createdById;
     private List<Split> splits;
 
     public Expense() {
+        this.amount = Money.ZERO;
         this.splits = new ArrayList<>();
     }
 
@@ -33,11 +34,11 @@ public class Expense {
         this.description = description;
     }
 
-    public double getAmount() {
+    public Money getAmount() {
         return amount;
     }
 
-    public void setAmount(double amount) {
+    public void setAmount(Money amount) {
         this.amount = amount;
     }
 
@@ -81,12 +82,12 @@ public class Expense {
      * Calculate the total of all splits
      * @return Sum of all split amounts
      */
-    public double getTotalSplitAmount() {
-        double total = 0;
+    public Money getTotalSplitAmount() {
+        long total = 0;
         for (Split split : splits) {
-            total += split.getAmount();
+            total += split.getAmount().getCents();
         }
-        return total;
+        return Money.ofCents(total);
     }
 
     @Override
@@ -0,0 +1,108 @@
+package com.expensesplitter.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+
+/**
+ * An exact amount of money stored as a whole number of cents. All arithmetic
+ * is integer arithmetic, so sums never drift the way double amounts do.
+ */
+public final class Money implements Comparable<Money> {
+    public static final Money ZERO = new Money(0);
+
+    private final long cents;
+
+    private Money(long cents) {
+        this.cents = cents;
+    }
+
+    public static Money ofCents(long cents) {
+        return cents == 0 ? ZERO : new Money(cents);
+    }
+
+    /**
+     * Parse a decimal amount such as "12.5" or "-3.99", rounding half up to whole cents
+     * @throws NumberFormatException if the text is not a number
+     */
+    public static Money parse(String text) {
+        BigDecimal value = new BigDecimal(text.trim());
+        return ofCents(value.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact());
+    }
+
+    public long getCents() {
+        return cents;
+    }
+
+    public Money plus(Money other) {
+        return ofCents(Math.addExact(cents, other.cents));
+    }
+
+    public Money minus(Money other) {
+        return ofCents(Math.subtractExact(cents, other.cents));
+    }
+
+    public Money negate() {
+        return ofCents(-cents);
+    }
+
+    public Money abs() {
+        return cents < 0 ? negate() : this;
+    }
+
+    public boolean isZero() {
+        return cents == 0;
+    }
+
+    public boolean isPositive() {
+        return cents > 0;
+    }
+
+    public boolean isNegative() {
+        return cents < 0;
+    }
+
+    /**
+     * Split the amount into equal parts. Leftover cents go to the first parts,
+     * so the parts always add up to exactly this amount.
+     * @param parts Number of parts, at least 1
+     */
+    public Money[] split(int parts) {
+        if (parts < 1) {
+            throw new IllegalArgumentException("Cannot split into " + parts + " parts");
+        }
+        Money[] result = new Money[parts];
+        long share = cents / parts;
+        long remainder = cents % parts;
+        for (int i = 0; i < parts; i++) {
+            long extra = i < Math.abs(remainder) ? Long.signum(remainder) : 0;
+            result[i] = ofCents(share + extra);
+        }
+        return result;
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(cents, other.cents);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Money && ((Money) o).cents == cents;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(cents);
+    }
+
+    /**
+     * @return The amount with two decimals and no currency symbol, e.g. "-12.05"
+     */
+    @Override
+    public String toString() {
+        long abs = Math.abs(cents);
+        String fraction = abs % 100 < 10 ? "0" + abs % 100 : String.valueOf(abs % 100);
+        return (cents < 0 ? "-" : "") + abs / 100 + "." + fraction;
+    }
+}
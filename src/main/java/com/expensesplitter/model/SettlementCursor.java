@@ -0,0 +1,37 @@
+package com.expensesplitter.model;
+
+
+/**
+ * Position in a user's settlement history. History is ordered newest first by
+ * settlement time and then id, so a cursor holding the last row's (settled_at, id)
+ * identifies exactly where the next page starts, however many rows precede it.
+ */
+public class SettlementCursor {
+    private final String settledAt;
+    private final int id;
+
+    public SettlementCursor(String settledAt, int id) {
+        this.settledAt = settledAt;
+        this.id = id;
+    }
+
+    /**
+     * @return Cursor pointing just past the given settlement
+     */
+    public static SettlementCursor after(Transaction transaction) {
+        return new SettlementCursor(transaction.getSettledAt(), transaction.getId());
+    }
+
+    public String getSettledAt() {
+        return settledAt;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return settledAt + "#" + id;
+    }
+}
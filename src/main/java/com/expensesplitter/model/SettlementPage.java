@@ -0,0 +1,37 @@
+package com.expensesplitter.model;
+
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * One page of a user's settlement history, newest first
+ */
+public class SettlementPage {
+    private final List<Transaction> transactions;
+    private final SettlementCursor nextCursor;
+
+    public SettlementPage(List<Transaction> transactions, SettlementCursor nextCursor) {
+        this.transactions = transactions;
+        this.nextCursor = nextCursor;
+    }
+
+    public static SettlementPage empty() {
+        return new SettlementPage(Collections.emptyList(), null);
+    }
+
+    public List<Transaction> getTransactions() {
+        return transactions;
+    }
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+
+    /**
+     * @return Cursor to pass when requesting the following page, or null on the last page
+     */
+    public SettlementCursor getNextCursor() {
+        return nextCursor;
+    }
+}
@@ -0,0 +1,62 @@
+package com.expensesplitter.model;
+
+
+/**
+ * A list of transfers that settles the debts of a group of users. Transfers are
+ * stored in parallel primitive arrays; amounts are in cents.
+ */
+public class SettlementPlan {
+    private final int[] payerIds;
+    private final int[] receiverIds;
+    private final long[] amountsInCents;
+    private int size;
+
+    public SettlementPlan(int capacity) {
+        this.payerIds = new int[capacity];
+        this.receiverIds = new int[capacity];
+        this.amountsInCents = new long[capacity];
+    }
+
+    public void addTransfer(int payerId, int receiverId, long amountInCents) {
+        payerIds[size] = payerId;
+        receiverIds[size] = receiverId;
+        amountsInCents[size] = amountInCents;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getPayerId(int index) {
+        return payerIds[index];
+    }
+
+    public int getReceiverId(int index) {
+        return receiverIds[index];
+    }
+
+    public long getAmountInCents(int index) {
+        return amountsInCents[index];
+    }
+
+    public Money getAmount(int index) {
+        return Money.ofCents(amountsInCents[index]);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("SettlementPlan{");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(payerIds[i]).append("->").append(receiverIds[i]).append('=').append(amountsInCents[i]);
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -6,12 +6,12 @@ public class Split {
     private int expenseId;
     private int userId;
     private String username;
-    private double amount;
+    private Money amount;
     private boolean isPaid;
 
     public Split() {}
 
-    public Split(int userId, String username, double amount) {
+    public Split(int userId, String username, Money amount) {
         this.userId = userId;
         this.username = username;
         this.amount = amount;
@@ -50,11 +50,11 @@ public class Split {
         this.username = username;
     }
 
-    public double getAmount() {
+    public Money getAmount() {
         return amount;
     }
 
-    public void setAmount(double amount) {
+    public void setAmount(Money amount) {
         this.amount = amount;
     }
 
@@ -7,12 +7,12 @@ public class Transaction {
     private String payerName;
     private int receiverId;
     private String receiverName;
-    private double amount;
+    private Money amount;
     private String settledAt;
 
     public Transaction() {}
 
-    public Transaction(int payerId, String payerName, int receiverId, String receiverName, double amount) {
+    public Transaction(int payerId, String payerName, int receiverId, String receiverName, Money amount) {
         this.payerId = payerId;
         this.payerName = payerName;
         this.receiverId = receiverId;
@@ -60,11 +60,11 @@ public class Transaction {
         this.receiverName = receiverName;
     }
 
-    public double getAmount() {
+    public Money getAmount() {
         return amount;
     }
 
-    public void setAmount(double amount) {
+    public void setAmount(Money amount) {
         this.amount = amount;
     }
 
@@ -0,0 +1,44 @@
+package com.expensesplitter.repository;
+
+import com.expensesplitter.model.Expense;
+import com.expensesplitter.model.Money;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Stores expenses together with their splits. Every write is atomic: it either
+ * applies completely, balances included, or fails without effect. Referencing
+ * an unknown user fails with SQLite's constraint error code (19).
+ */
+public interface ExpenseRepository {
+
+    /**
+     * Inserts an expense without splits
+     * @return The generated expense id
+     */
+    int insert(String description, Money amount, int createdById) throws SQLException;
+
+    /**
+     * Inserts an expense and all of its splits
+     * @param expense Expense with description, amount, creator id and splits (user id and amount)
+     * @return The same expense with the generated expense and split ids filled in
+     */
+    Expense insert(Expense expense) throws SQLException;
+
+    /**
+     * @return The expense with its splits, or null if it does not exist
+     */
+    Expense findById(int expenseId) throws SQLException;
+
+    /**
+     * @return The expenses the user created, newest first, each with its splits
+     */
+    List<Expense> findByCreator(int userId) throws SQLException;
+
+    /**
+     * Deletes an expense and its splits; deleting an unknown expense does nothing
+     * @return Ids of the users whose balances changed
+     */
+    int[] delete(int expenseId) throws SQLException;
+}
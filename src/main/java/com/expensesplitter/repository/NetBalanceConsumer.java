@@ -0,0 +1,9 @@
+package com.expensesplitter.repository;
+
+/**
+ * Receives one net debt at a time from SplitRepository.forEachNetBalance
+ */
+@FunctionalInterface
+public interface NetBalanceConsumer {
+    void accept(int debtorId, int creditorId, long amountInCents);
+}
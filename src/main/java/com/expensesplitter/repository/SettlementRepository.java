@@ -0,0 +1,43 @@
+package com.expensesplitter.repository;
+
+import com.expensesplitter.model.Money;
+import com.expensesplitter.model.SettlementCursor;
+import com.expensesplitter.model.SettlementPage;
+import com.expensesplitter.model.SettlementPlan;
+import com.expensesplitter.model.Transaction;
+
+import java.sql.SQLException;
+import java.util.function.Consumer;
+
+/**
+ * Records settlements, marking the debts they pay off, and reads them back as
+ * each user's history, newest first.
+ */
+public interface SettlementRepository {
+
+    /**
+     * Records the settlement and marks every unpaid split the payer owes on the
+     * receiver's expenses as paid
+     */
+    void settle(int payerId, int receiverId, Money amount) throws SQLException;
+
+    /**
+     * Records every transfer of the plan as a settlement and marks all debts
+     * inside the group as paid. Fails if the balances have changed since the
+     * plan was computed.
+     * @param userIds Members of the group the plan was computed for
+     */
+    void executePlan(int[] userIds, SettlementPlan plan) throws SQLException;
+
+    /**
+     * Reads one page of the settlements a user paid or received
+     * @param after Cursor returned with the previous page, or null for the newest settlements
+     * @param limit Maximum number of settlements on the page
+     */
+    SettlementPage page(int userId, SettlementCursor after, int limit) throws SQLException;
+
+    /**
+     * Streams every settlement a user paid or received
+     */
+    void forEach(int userId, Consumer<Transaction> consumer) throws SQLException;
+}
@@ -0,0 +1,48 @@
+package com.expensesplitter.repository;
+
+import com.expensesplitter.model.BalanceMap;
+import com.expensesplitter.model.Money;
+import com.expensesplitter.model.Split;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Stores splits and answers the balance queries derived from the unpaid ones:
+ * every unpaid split is a debt from its user to the expense creator, and a
+ * creator's own share is no debt at all.
+ */
+public interface SplitRepository {
+
+    /**
+     * Adds a split to an existing expense
+     * @return Id of the expense creator the split is owed to
+     */
+    int insert(int expenseId, int userId, Money amount) throws SQLException;
+
+    List<Split> findByExpense(int expenseId) throws SQLException;
+
+    /**
+     * Reads the net balance between a user and each counterparty. Positive values
+     * are owed to the user, negative values are owed by the user.
+     */
+    BalanceMap getBalances(int userId) throws SQLException;
+
+    /**
+     * Computes the net position of every group member from the debts whose
+     * debtor and creditor both belong to the group
+     * @return Net position in cents indexed by user id; positive means the user is owed money
+     */
+    long[] getGroupNetPositions(int[] userIds) throws SQLException;
+
+    /**
+     * Streams the net debt between every pair of users, debts in both directions
+     * netted into one tuple and pairs that cancel out skipped
+     */
+    void forEachNetBalance(NetBalanceConsumer consumer) throws SQLException;
+
+    /**
+     * Regenerates whatever the backend derives from the splits to answer balance queries
+     */
+    void rebuildBalances() throws SQLException;
+}
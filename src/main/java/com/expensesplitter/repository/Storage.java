@@ -0,0 +1,52 @@
+package com.expensesplitter.repository;
+
+import com.expensesplitter.db.DatabaseHelper;
+import com.expensesplitter.db.SqliteStorage;
+import com.expensesplitter.memory.ColumnarStorage;
+
+import java.sql.SQLException;
+
+/**
+ * The repositories of one storage backend. The backend is picked at startup
+ * with -Dexpensesplitter.storage: "sqlite", the default, keeps everything in
+ * the database file; "memory" keeps everything on the heap in a columnar
+ * engine that starts empty and is lost on exit, for simulations and tests.
+ */
+public interface Storage extends AutoCloseable {
+    String BACKEND_PROPERTY = "expensesplitter.storage";
+    String SQLITE = "sqlite";
+    String MEMORY = "memory";
+
+    UserRepository getUsers();
+
+    ExpenseRepository getExpenses();
+
+    SplitRepository getSplits();
+
+    SettlementRepository getSettlements();
+
+    @Override
+    void close();
+
+    /**
+     * Opens the backend named by the system property, on the configured database for SQLite
+     */
+    static Storage open() throws SQLException {
+        return open(System.getProperty(BACKEND_PROPERTY, SQLITE), DatabaseHelper.getDatabaseUrl());
+    }
+
+    /**
+     * @param backend "sqlite" or "memory"
+     * @param dbUrl Database the SQLite backend opens; ignored by the memory backend
+     */
+    static Storage open(String backend, String dbUrl) throws SQLException {
+        switch (backend) {
+            case SQLITE:
+                return SqliteStorage.open(dbUrl);
+            case MEMORY:
+                return new ColumnarStorage();
+            default:
+                throw new IllegalArgumentException("Unknown storage backend: " + backend);
+        }
+    }
+}
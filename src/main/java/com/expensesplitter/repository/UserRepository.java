@@ -0,0 +1,33 @@
+package com.expensesplitter.repository;
+
+import com.expensesplitter.model.User;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Stores user accounts. Lookups return null for unknown users and never expose
+ * the password. A taken username or email fails with an SQLException carrying
+ * SQLite's constraint error code (19), whichever backend is in use.
+ */
+public interface UserRepository {
+
+    /**
+     * @return The generated user id
+     */
+    int insert(String username, String password, String email) throws SQLException;
+
+    User findById(int userId) throws SQLException;
+
+    User findByUsername(String username) throws SQLException;
+
+    /**
+     * @return The user if the password matches, otherwise null
+     */
+    User authenticate(String username, String password) throws SQLException;
+
+    /**
+     * @return Every user, in id order
+     */
+    List<User> findAll() throws SQLException;
+}
@@ -1,166 +1,206 @@
 package com.expensesplitter.service;
 
 import com.expensesplitter.db.DatabaseHelper;
+import com.expensesplitter.db.SqliteStorage;
+import com.expensesplitter.metrics.OperationMetrics;
+import com.expensesplitter.metrics.OperationStats;
+import com.expensesplitter.metrics.ServiceCallEvent;
+import com.expensesplitter.model.BalanceMap;
+import com.expensesplitter.model.Money;
+import com.expensesplitter.model.SettlementCursor;
+import com.expensesplitter.model.SettlementPage;
+import com.expensesplitter.model.SettlementPlan;
+import com.expensesplitter.model.Transaction;
+import com.expensesplitter.repository.NetBalanceConsumer;
+import com.expensesplitter.repository.SettlementRepository;
+import com.expensesplitter.repository.SplitRepository;
+import com.expensesplitter.repository.Storage;
 
 import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.function.Consumer;
 
 
 public class BalanceService {
-    private Connection connection;
+    private static final OperationStats BALANCES = OperationMetrics.operation("BalanceService", "getUserBalances");
+    private static final OperationStats REBUILD = OperationMetrics.operation("BalanceService", "rebuildLedger");
+    private static final OperationStats SETTLE = OperationMetrics.operation("BalanceService", "settleDebt");
+    private static final OperationStats NET_BALANCES = OperationMetrics.operation("BalanceService", "forEachNetBalance");
+    private static final OperationStats SIMPLIFY = OperationMetrics.operation("BalanceService", "simplifyDebts");
+    private static final OperationStats EXECUTE_PLAN = OperationMetrics.operation("BalanceService", "executeSettlementPlan");
+    private static final OperationStats HISTORY = OperationMetrics.operation("BalanceService", "getSettlementHistory");
+    private static final OperationStats FOR_EACH_SETTLEMENT = OperationMetrics.operation("BalanceService", "forEachSettlement");
+
+    private final SplitRepository splits;
+    private final SettlementRepository settlements;
 
     public BalanceService() {
-        this.connection = DatabaseHelper.getConnection();
+        this(new SqliteStorage(DatabaseHelper.getConnectionManager()));
+    }
+
+    public BalanceService(Connection connection) {
+        this(new SqliteStorage(connection));
     }
 
-    public Map<String, Double> getUserBalances(int userId) {
-        Map<String, Double> balances = new HashMap<>();
-        
-        // Get what others owe the user
-        String sql1 = "SELECT u.username, SUM(s.amount) as amount " +
-                     "FROM splits s " +
-                     "JOIN expenses e ON s.expense_id = e.id " +
-                     "JOIN users u ON s.user_id = u.id " +
-                     "WHERE e.created_by = ? AND s.user_id != ? AND s.is_paid = 0 " +
-                     "GROUP BY s.user_id";
-        
-        try (PreparedStatement pstmt = connection.prepareStatement(sql1)) {
-            pstmt.setInt(1, userId);
-            pstmt.setInt(2, userId);
-            ResultSet rs = pstmt.executeQuery();
-            
-            while (rs.next()) {
-                balances.put(rs.getString("username"), rs.getDouble("amount"));
-            }
+    public BalanceService(Storage storage) {
+        this.splits = storage.getSplits();
+        this.settlements = storage.getSettlements();
+    }
+
+    public BalanceMap getUserBalances(int userId) {
+        long start = System.nanoTime();
+        ServiceCallEvent call = BALANCES.begin(userId);
+        try {
+            BalanceMap balances = splits.getBalances(userId);
+            BALANCES.record(start, balances.size(), call);
+            return balances;
         } catch (SQLException e) {
-            System.out.println("Error retrieving balances (owed to user): " + e.getMessage());
+            System.out.println("Error retrieving balances: " + e.getMessage());
+            BALANCES.recordError(start, call);
+            return new BalanceMap();
         }
-        
-        String sql2 = "SELECT u.username, SUM(s.amount) as amount " +
-                     "FROM splits s " +
-                     "JOIN expenses e ON s.expense_id = e.id " +
-                     "JOIN users u ON e.created_by = u.id " +
-                     "WHERE s.user_id = ? AND e.created_by != ? AND s.is_paid = 0 " +
-                     "GROUP BY e.created_by";
-        
-        try (PreparedStatement pstmt = connection.prepareStatement(sql2)) {
-            pstmt.setInt(1, userId);
-            pstmt.setInt(2, userId);
-            ResultSet rs = pstmt.executeQuery();
-            
-            while (rs.next()) {
-                String username = rs.getString("username");
-                double amount = rs.getDouble("amount");
-                
-                if (balances.containsKey(username)) {
-                    balances.put(username, balances.get(username) - amount);
-                } else {
-                    balances.put(username, -amount);
-                }
-            }
+    }
+
+
+    /**
+     * Regenerates the balance ledger from the raw splits
+     * @return true if the ledger was rebuilt
+     */
+    public boolean rebuildLedger() {
+        long start = System.nanoTime();
+        ServiceCallEvent call = REBUILD.begin(0);
+        try {
+            splits.rebuildBalances();
+            REBUILD.record(start, 0, call);
+            return true;
         } catch (SQLException e) {
-            System.out.println("Error retrieving balances (user owes): " + e.getMessage());
+            System.out.println("Error rebuilding balance ledger: " + e.getMessage());
+            REBUILD.recordError(start, call);
+            return false;
         }
-        
-        return balances;
     }
 
 
-    public boolean settleDebt(int payerId, int receiverId, double amount) {
-        // Start a transaction
+    public boolean settleDebt(int payerId, int receiverId, Money amount) {
+        long start = System.nanoTime();
+        ServiceCallEvent call = SETTLE.begin(payerId);
         try {
-            connection.setAutoCommit(false);
-            
-            // Record the settlement
-            String sql1 = "INSERT INTO settlements (payer_id, receiver_id, amount) VALUES (?, ?, ?)";
-            PreparedStatement pstmt1 = connection.prepareStatement(sql1);
-            pstmt1.setInt(1, payerId);
-            pstmt1.setInt(2, receiverId);
-            pstmt1.setDouble(3, amount);
-            pstmt1.executeUpdate();
-            
-            // Update splits where user owes to the receiver
-            String sql2 = "UPDATE splits SET is_paid = 1 " +
-                         "WHERE user_id = ? AND expense_id IN (SELECT id FROM expenses WHERE created_by = ?) " +
-                         "AND is_paid = 0";
-            PreparedStatement pstmt2 = connection.prepareStatement(sql2);
-            pstmt2.setInt(1, payerId);
-            pstmt2.setInt(2, receiverId);
-            pstmt2.executeUpdate();
-            
-            connection.commit();
-            connection.setAutoCommit(true);
+            settlements.settle(payerId, receiverId, amount);
+            SETTLE.record(start, 0, call);
             return true;
         } catch (SQLException e) {
-            try {
-                connection.rollback();
-                connection.setAutoCommit(true);
-            } catch (SQLException ex) {
-                System.out.println("Error during rollback: " + ex.getMessage());
-            }
             System.out.println("Error settling debt: " + e.getMessage());
+            SETTLE.recordError(start, call);
             return false;
         }
     }
 
 
-    public Map<String, List<Map<String, Object>>> getSettlementHistory(int userId) {
-        Map<String, List<Map<String, Object>>> history = new HashMap<>();
-        history.put("paid", new ArrayList<>());
-        history.put("received", new ArrayList<>());
-        
-        // Get settlements where user paid
-        String sql1 = "SELECT s.id, s.amount, s.settled_at, u.username as receiver " +
-                     "FROM settlements s " +
-                     "JOIN users u ON s.receiver_id = u.id " +
-                     "WHERE s.payer_id = ? " +
-                     "ORDER BY s.settled_at DESC";
-        
-        try (PreparedStatement pstmt = connection.prepareStatement(sql1)) {
-            pstmt.setInt(1, userId);
-            ResultSet rs = pstmt.executeQuery();
-            
-            while (rs.next()) {
-                Map<String, Object> settlement = new HashMap<>();
-                settlement.put("id", rs.getInt("id"));
-                settlement.put("amount", rs.getDouble("amount"));
-                settlement.put("settled_at", rs.getString("settled_at"));
-                settlement.put("other_user", rs.getString("receiver"));
-                history.get("paid").add(settlement);
-            }
+    /**
+     * Streams the net debt between every pair of users, computed from the splits
+     * in one pass, for reconciliation and reporting
+     * @return true if every pair was streamed
+     */
+    public boolean forEachNetBalance(NetBalanceConsumer consumer) {
+        long start = System.nanoTime();
+        ServiceCallEvent call = NET_BALANCES.begin(0);
+        long[] pairs = new long[1];
+        try {
+            splits.forEachNetBalance((debtorId, creditorId, amountInCents) -> {
+                pairs[0]++;
+                consumer.accept(debtorId, creditorId, amountInCents);
+            });
+            NET_BALANCES.record(start, pairs[0], call);
+            return true;
         } catch (SQLException e) {
-            System.out.println("Error retrieving paid settlements: " + e.getMessage());
+            System.out.println("Error computing net balances: " + e.getMessage());
+            NET_BALANCES.recordError(start, call);
+            return false;
         }
-        
-        // Get settlements where user received
-        String sql2 = "SELECT s.id, s.amount, s.settled_at, u.username as payer " +
-                     "FROM settlements s " +
-                     "JOIN users u ON s.payer_id = u.id " +
-                     "WHERE s.receiver_id = ? " +
-                     "ORDER BY s.settled_at DESC";
-        
-        try (PreparedStatement pstmt = connection.prepareStatement(sql2)) {
-            pstmt.setInt(1, userId);
-            ResultSet rs = pstmt.executeQuery();
-            
-            while (rs.next()) {
-                Map<String, Object> settlement = new HashMap<>();
-                settlement.put("id", rs.getInt("id"));
-                settlement.put("amount", rs.getDouble("amount"));
-                settlement.put("settled_at", rs.getString("settled_at"));
-                settlement.put("other_user", rs.getString("payer"));
-                history.get("received").add(settlement);
-            }
+    }
+
+
+    /**
+     * Computes a short list of transfers that settles every debt inside a group
+     * @param userIds Members of the group
+     * @return Settlement plan, empty if nobody in the group owes anything
+     */
+    public SettlementPlan simplifyDebts(int[] userIds) {
+        long start = System.nanoTime();
+        ServiceCallEvent call = SIMPLIFY.begin(0);
+        try {
+            SettlementPlan plan = DebtSimplifier.simplify(splits.getGroupNetPositions(userIds));
+            SIMPLIFY.record(start, plan.size(), call);
+            return plan;
         } catch (SQLException e) {
-            System.out.println("Error retrieving received settlements: " + e.getMessage());
+            System.out.println("Error simplifying debts: " + e.getMessage());
+            SIMPLIFY.recordError(start, call);
+            return new SettlementPlan(0);
+        }
+    }
+
+
+    /**
+     * Records a settlement plan as settlements and marks the group's debts as paid
+     * @param userIds Members of the group the plan was computed for
+     * @param plan Plan returned by simplifyDebts
+     * @return true if the plan was applied
+     */
+    public boolean executeSettlementPlan(int[] userIds, SettlementPlan plan) {
+        long start = System.nanoTime();
+        ServiceCallEvent call = EXECUTE_PLAN.begin(0);
+        try {
+            settlements.executePlan(userIds, plan);
+            EXECUTE_PLAN.record(start, 0, call);
+            return true;
+        } catch (SQLException e) {
+            System.out.println("Error executing settlement plan: " + e.getMessage());
+            EXECUTE_PLAN.recordError(start, call);
+            return false;
+        }
+    }
+
+
+    /**
+     * Reads one page of the settlements a user paid or received, newest first
+     * @param after Cursor from the previous page, or null for the first page
+     * @param limit Maximum number of settlements on the page
+     * @return The page, empty if the history could not be read
+     */
+    public SettlementPage getSettlementHistory(int userId, SettlementCursor after, int limit) {
+        long start = System.nanoTime();
+        ServiceCallEvent call = HISTORY.begin(userId);
+        try {
+            SettlementPage page = settlements.page(userId, after, limit);
+            HISTORY.record(start, page.getTransactions().size(), call);
+            return page;
+        } catch (SQLException e) {
+            System.out.println("Error retrieving settlement history: " + e.getMessage());
+            HISTORY.recordError(start, call);
+            return SettlementPage.empty();
+        }
+    }
+
+
+    /**
+     * Streams every settlement a user paid or received, newest first, for exports
+     * @return true if the whole history was streamed
+     */
+    public boolean forEachSettlement(int userId, Consumer<Transaction> consumer) {
+        long start = System.nanoTime();
+        ServiceCallEvent call = FOR_EACH_SETTLEMENT.begin(userId);
+        long[] streamed = new long[1];
+        try {
+            settlements.forEach(userId, transaction -> {
+                streamed[0]++;
+                consumer.accept(transaction);
+            });
+            FOR_EACH_SETTLEMENT.record(start, streamed[0], call);
+            return true;
+        } catch (SQLException e) {
+            System.out.println("Error streaming settlement history: " + e.getMessage());
+            FOR_EACH_SETTLEMENT.recordError(start, call);
+            return false;
         }
-        
-        return history;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,66 @@
+package com.expensesplitter.service;
+
+import com.expensesplitter.model.SettlementPlan;
+
+
+/**
+ * Turns the net positions of a group of users into a short list of transfers.
+ * Every debtor is matched greedily against creditors until their position is
+ * zero, so the plan never has more than (debtors + creditors - 1) transfers,
+ * compared to one transfer per pairwise debt. Runs in linear time over
+ * primitive arrays.
+ */
+public final class DebtSimplifier {
+
+    private DebtSimplifier() {}
+
+    /**
+     * Build a settlement plan from net positions
+     * @param netInCents Net position per user id in cents; positive means the user is owed money.
+     *                   The positions must sum to zero.
+     * @return Transfers that bring every position to zero
+     */
+    public static SettlementPlan simplify(long[] netInCents) {
+        int[] debtors = new int[netInCents.length];
+        int[] creditors = new int[netInCents.length];
+        int debtorCount = 0;
+        int creditorCount = 0;
+        long total = 0;
+
+        for (int userId = 0; userId < netInCents.length; userId++) {
+            long net = netInCents[userId];
+            if (net < 0) {
+                debtors[debtorCount++] = userId;
+            } else if (net > 0) {
+                creditors[creditorCount++] = userId;
+            }
+            total += net;
+        }
+
+        if (total != 0) {
+            throw new IllegalArgumentException("Net positions must sum to zero but sum to " + total);
+        }
+
+        SettlementPlan plan = new SettlementPlan(Math.max(0, debtorCount + creditorCount - 1));
+        int d = 0;
+        int c = 0;
+        long owed = debtorCount > 0 ? -netInCents[debtors[0]] : 0;
+        long due = creditorCount > 0 ? netInCents[creditors[0]] : 0;
+
+        while (d < debtorCount && c < creditorCount) {
+            long amount = Math.min(owed, due);
+            plan.addTransfer(debtors[d], creditors[c], amount);
+            owed -= amount;
+            due -= amount;
+
+            if (owed == 0 && ++d < debtorCount) {
+                owed = -netInCents[debtors[d]];
+            }
+            if (due == 0 && ++c < creditorCount) {
+                due = netInCents[creditors[c]];
+            }
+        }
+
+        return plan;
+    }
+}
@@ -1,172 +1,155 @@
 package com.expensesplitter.service;
 
 import com.expensesplitter.db.DatabaseHelper;
+import com.expensesplitter.db.SqliteStorage;
+import com.expensesplitter.metrics.OperationMetrics;
+import com.expensesplitter.metrics.OperationStats;
+import com.expensesplitter.metrics.ServiceCallEvent;
 import com.expensesplitter.model.Expense;
+import com.expensesplitter.model.Money;
 import com.expensesplitter.model.Split;
+import com.expensesplitter.repository.ExpenseRepository;
+import com.expensesplitter.repository.SplitRepository;
+import com.expensesplitter.repository.Storage;
 
-import java.sql.*;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 
 
 public class ExpenseService {
-    private Connection connection;
+    private static final OperationStats ADD_EXPENSE = OperationMetrics.operation("ExpenseService", "addExpense");
+    private static final OperationStats ADD_SPLIT = OperationMetrics.operation("ExpenseService", "addSplit");
+    private static final OperationStats ADD_WITH_SPLITS = OperationMetrics.operation("ExpenseService", "addExpenseWithSplits");
+    private static final OperationStats USER_EXPENSES = OperationMetrics.operation("ExpenseService", "getUserExpenses");
+    private static final OperationStats EXPENSE_SPLITS = OperationMetrics.operation("ExpenseService", "getExpenseSplits");
+    private static final OperationStats BY_ID = OperationMetrics.operation("ExpenseService", "getExpenseById");
+    private static final OperationStats DELETE = OperationMetrics.operation("ExpenseService", "deleteExpense");
+
+    private final ExpenseRepository expenses;
+    private final SplitRepository splits;
 
     public ExpenseService() {
-        this.connection = DatabaseHelper.getConnection();
+        this(new SqliteStorage(DatabaseHelper.getConnectionManager()));
+    }
+
+    public ExpenseService(Connection connection) {
+        this(new SqliteStorage(connection));
+    }
+
+    public ExpenseService(Storage storage) {
+        this.expenses = storage.getExpenses();
+        this.splits = storage.getSplits();
     }
 
 
-    public int addExpense(String description, double amount, int createdById) {
-        String sql = "INSERT INTO expenses (description, amount, created_by) VALUES (?, ?, ?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            pstmt.setString(1, description);
-            pstmt.setDouble(2, amount);
-            pstmt.setInt(3, createdById);
-            pstmt.executeUpdate();
-            
-            ResultSet rs = pstmt.getGeneratedKeys();
-            if (rs.next()) {
-                return rs.getInt(1);
-            }
+    public int addExpense(String description, Money amount, int createdById) {
+        long start = System.nanoTime();
+        ServiceCallEvent call = ADD_EXPENSE.begin(createdById);
+        try {
+            int expenseId = expenses.insert(description, amount, createdById);
+            ADD_EXPENSE.record(start, 0, call);
+            return expenseId;
         } catch (SQLException e) {
             System.out.println("Failed to add expense: " + e.getMessage());
+            ADD_EXPENSE.recordError(start, call);
+            return -1;
         }
-        return -1;
     }
 
 
-    public boolean addSplit(int expenseId, int userId, double amount) {
-        String sql = "INSERT INTO splits (expense_id, user_id, amount) VALUES (?, ?, ?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setInt(1, expenseId);
-            pstmt.setInt(2, userId);
-            pstmt.setDouble(3, amount);
-            pstmt.executeUpdate();
+    public boolean addSplit(int expenseId, int userId, Money amount) {
+        long start = System.nanoTime();
+        ServiceCallEvent call = ADD_SPLIT.begin(userId);
+        try {
+            splits.insert(expenseId, userId, amount);
+            ADD_SPLIT.record(start, 0, call);
             return true;
         } catch (SQLException e) {
             System.out.println("Failed to add split: " + e.getMessage());
+            ADD_SPLIT.recordError(start, call);
             return false;
         }
     }
 
 
+    /**
+     * Inserts an expense and all of its splits in a single transaction
+     * @param expense Expense with description, amount, creator id and splits (user id and amount)
+     * @return The persisted expense with ids filled in, or null if nothing was written
+     */
+    public Expense addExpenseWithSplits(Expense expense) {
+        long start = System.nanoTime();
+        ServiceCallEvent call = ADD_WITH_SPLITS.begin(expense.getCreatedById());
+        try {
+            Expense added = expenses.insert(expense);
+            ADD_WITH_SPLITS.record(start, 0, call);
+            return added;
+        } catch (SQLException e) {
+            System.out.println("Failed to add expense: " + e.getMessage());
+            ADD_WITH_SPLITS.recordError(start, call);
+            return null;
+        }
+    }
+
+
     public List<Expense> getUserExpenses(int userId) {
-        String sql = "SELECT e.id, e.description, e.amount, e.created_at, u.username " +
-                     "FROM expenses e JOIN users u ON e.created_by = u.id " +
-                     "WHERE e.created_by = ? ORDER BY e.created_at DESC";
-        List<Expense> expenses = new ArrayList<>();
-        
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setInt(1, userId);
-            ResultSet rs = pstmt.executeQuery();
-            
-            while (rs.next()) {
-                Expense expense = new Expense();
-                expense.setId(rs.getInt("id"));
-                expense.setDescription(rs.getString("description"));
-                expense.setAmount(rs.getDouble("amount"));
-                expense.setCreatedAt(rs.getString("created_at"));
-                expense.setCreatedBy(rs.getString("username"));
-                
-                // Get splits for this expense
-                expense.setSplits(getExpenseSplits(expense.getId()));
-                
-                expenses.add(expense);
-            }
+        long start = System.nanoTime();
+        ServiceCallEvent call = USER_EXPENSES.begin(userId);
+        try {
+            List<Expense> created = expenses.findByCreator(userId);
+            USER_EXPENSES.record(start, created.size(), call);
+            return created;
         } catch (SQLException e) {
             System.out.println("Error retrieving expenses: " + e.getMessage());
+            USER_EXPENSES.recordError(start, call);
+            return new ArrayList<>();
         }
-        
-        return expenses;
     }
 
 
     public List<Split> getExpenseSplits(int expenseId) {
-        String sql = "SELECT s.id, s.user_id, s.amount, s.is_paid, u.username " +
-                     "FROM splits s JOIN users u ON s.user_id = u.id " +
-                     "WHERE s.expense_id = ?";
-        List<Split> splits = new ArrayList<>();
-        
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setInt(1, expenseId);
-            ResultSet rs = pstmt.executeQuery();
-            
-            while (rs.next()) {
-                Split split = new Split();
-                split.setId(rs.getInt("id"));
-                split.setUserId(rs.getInt("user_id"));
-                split.setUsername(rs.getString("username"));
-                split.setAmount(rs.getDouble("amount"));
-                split.setPaid(rs.getBoolean("is_paid"));
-                splits.add(split);
-            }
+        long start = System.nanoTime();
+        ServiceCallEvent call = EXPENSE_SPLITS.begin(0);
+        try {
+            List<Split> found = splits.findByExpense(expenseId);
+            EXPENSE_SPLITS.record(start, found.size(), call);
+            return found;
         } catch (SQLException e) {
             System.out.println("Error retrieving splits: " + e.getMessage());
+            EXPENSE_SPLITS.recordError(start, call);
+            return new ArrayList<>();
         }
-        
-        return splits;
     }
 
 
     public Expense getExpenseById(int expenseId) {
-        String sql = "SELECT e.id, e.description, e.amount, e.created_at, u.username " +
-                     "FROM expenses e JOIN users u ON e.created_by = u.id " +
-                     "WHERE e.id = ?";
-        
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setInt(1, expenseId);
-            ResultSet rs = pstmt.executeQuery();
-            
-            if (rs.next()) {
-                Expense expense = new Expense();
-                expense.setId(rs.getInt("id"));
-                expense.setDescription(rs.getString("description"));
-                expense.setAmount(rs.getDouble("amount"));
-                expense.setCreatedAt(rs.getString("created_at"));
-                expense.setCreatedBy(rs.getString("username"));
-                
-                // Get splits for this expense
-                expense.setSplits(getExpenseSplits(expense.getId()));
-                
-                return expense;
-            }
+        long start = System.nanoTime();
+        ServiceCallEvent call = BY_ID.begin(0);
+        try {
+            Expense expense = expenses.findById(expenseId);
+            BY_ID.record(start, expense != null ? 1 : 0, call);
+            return expense;
         } catch (SQLException e) {
             System.out.println("Error retrieving expense: " + e.getMessage());
+            BY_ID.recordError(start, call);
+            return null;
         }
-        
-        return null;
     }
 
+
     public boolean deleteExpense(int expenseId) {
-        // Start a transaction
+        long start = System.nanoTime();
+        ServiceCallEvent call = DELETE.begin(0);
         try {
-            connection.setAutoCommit(false);
-            
-            // First delete all splits for this expense
-            String deleteSplits = "DELETE FROM splits WHERE expense_id = ?";
-            PreparedStatement pstmt1 = connection.prepareStatement(deleteSplits);
-            pstmt1.setInt(1, expenseId);
-            pstmt1.executeUpdate();
-            
-            // Then delete the expense
-            String deleteExpense = "DELETE FROM expenses WHERE id = ?";
-            PreparedStatement pstmt2 = connection.prepareStatement(deleteExpense);
-            pstmt2.setInt(1, expenseId);
-            pstmt2.executeUpdate();
-            
-            connection.commit();
-            connection.setAutoCommit(true);
+            expenses.delete(expenseId);
+            DELETE.record(start, 0, call);
             return true;
         } catch (SQLException e) {
-            try {
-                connection.rollback();
-                connection.setAutoCommit(true);
-            } catch (SQLException ex) {
-                System.out.println("Error during rollback: " + ex.getMessage());
-            }
             System.out.println("Error deleting expense: " + e.getMessage());
+            DELETE.recordError(start, call);
             return false;
         }
     }
-}
\ No newline at end of file
+}
@@ -1,98 +1,136 @@
 package com.expensesplitter.service;
 
 import com.expensesplitter.db.DatabaseHelper;
+import com.expensesplitter.db.SqliteStorage;
+import com.expensesplitter.db.UserCache;
+import com.expensesplitter.metrics.OperationMetrics;
+import com.expensesplitter.metrics.OperationStats;
+import com.expensesplitter.metrics.ServiceCallEvent;
 import com.expensesplitter.model.User;
+import com.expensesplitter.repository.Storage;
+import com.expensesplitter.repository.UserRepository;
 
 import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 
 
 public class UserService {
-    private Connection connection;
+    private static final OperationStats REGISTER = OperationMetrics.operation("UserService", "registerUser");
+    private static final OperationStats AUTHENTICATE = OperationMetrics.operation("UserService", "authenticateUser");
+    private static final OperationStats BY_USERNAME = OperationMetrics.operation("UserService", "getUserByUsername");
+    private static final OperationStats BY_ID = OperationMetrics.operation("UserService", "getUserById");
+    private static final OperationStats ALL_USERS = OperationMetrics.operation("UserService", "getAllUsers");
+
+    private final UserRepository users;
+    private final UserCache userCache = new UserCache();
 
     public UserService() {
-        this.connection = DatabaseHelper.getConnection();
+        this(new SqliteStorage(DatabaseHelper.getConnectionManager()));
+    }
+
+    public UserService(Connection connection) {
+        this(new SqliteStorage(connection));
+    }
+
+    public UserService(Storage storage) {
+        this.users = storage.getUsers();
     }
 
 
     public boolean registerUser(String username, String password, String email) {
-        String sql = "INSERT INTO users (username, password, email) VALUES (?, ?, ?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, username);
-            pstmt.setString(2, password); // In a real app, hash this password
-            pstmt.setString(3, email);
-            pstmt.executeUpdate();
+        long start = System.nanoTime();
+        ServiceCallEvent call = REGISTER.begin(0);
+        try {
+            int userId = users.insert(username, password, email);
+            userCache.put(new User(userId, username, email));
+            REGISTER.record(start, 0, call);
             return true;
         } catch (SQLException e) {
             System.out.println("Registration failed: " + e.getMessage());
+            REGISTER.recordError(start, call);
             return false;
         }
     }
 
 
     public User authenticateUser(String username, String password) {
-        String sql = "SELECT * FROM users WHERE username = ? AND password = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, username);
-            pstmt.setString(2, password); // In a real app, verify against hashed password
-            ResultSet rs = pstmt.executeQuery();
-            
-            if (rs.next()) {
-                User user = new User();
-                user.setId(rs.getInt("id"));
-                user.setUsername(rs.getString("username"));
-                user.setEmail(rs.getString("email"));
-                return user;
-            }
+        long start = System.nanoTime();
+        ServiceCallEvent call = AUTHENTICATE.begin(0);
+        try {
+            User user = users.authenticate(username, password);
+            AUTHENTICATE.record(start, user != null ? 1 : 0, call);
+            return user != null ? userCache.put(user) : null;
         } catch (SQLException e) {
             System.out.println("Authentication error: " + e.getMessage());
+            AUTHENTICATE.recordError(start, call);
+            return null;
         }
-        return null;
     }
 
 
     public User getUserByUsername(String username) {
-        String sql = "SELECT * FROM users WHERE username = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, username);
-            ResultSet rs = pstmt.executeQuery();
-            
-            if (rs.next()) {
-                User user = new User();
-                user.setId(rs.getInt("id"));
-                user.setUsername(rs.getString("username"));
-                user.setEmail(rs.getString("email"));
-                return user;
-            }
+        long start = System.nanoTime();
+        ServiceCallEvent call = BY_USERNAME.begin(0);
+        User cached = userCache.getByUsername(username);
+        if (cached != null) {
+            BY_USERNAME.record(start, 1, call);
+            return cached;
+        }
+
+        try {
+            User user = users.findByUsername(username);
+            BY_USERNAME.record(start, user != null ? 1 : 0, call);
+            return user != null ? userCache.put(user) : null;
+        } catch (SQLException e) {
+            System.out.println("Error finding user: " + e.getMessage());
+            BY_USERNAME.recordError(start, call);
+            return null;
+        }
+    }
+
+
+    public User getUserById(int userId) {
+        long start = System.nanoTime();
+        ServiceCallEvent call = BY_ID.begin(userId);
+        User cached = userCache.getById(userId);
+        if (cached != null) {
+            BY_ID.record(start, 1, call);
+            return cached;
+        }
+
+        try {
+            User user = users.findById(userId);
+            BY_ID.record(start, user != null ? 1 : 0, call);
+            return user != null ? userCache.put(user) : null;
         } catch (SQLException e) {
             System.out.println("Error finding user: " + e.getMessage());
+            BY_ID.recordError(start, call);
+            return null;
         }
-        return null;
     }
 
 
     public List<User> getAllUsers() {
-        String sql = "SELECT * FROM users";
-        List<User> users = new ArrayList<>();
-        
-        try (PreparedStatement pstmt = connection.prepareStatement(sql);
-             ResultSet rs = pstmt.executeQuery()) {
-            
-            while (rs.next()) {
-                User user = new User();
-                user.setId(rs.getInt("id"));
-                user.setUsername(rs.getString("username"));
-                user.setEmail(rs.getString("email"));
-                users.add(user);
-            }
+        long start = System.nanoTime();
+        ServiceCallEvent call = ALL_USERS.begin(0);
+        try {
+            List<User> all = users.findAll();
+            ALL_USERS.record(start, all.size(), call);
+            return all;
         } catch (SQLException e) {
             System.out.println("Error retrieving users: " + e.getMessage());
+            ALL_USERS.recordError(start, call);
+            return new ArrayList<>();
         }
-        
-        return users;
     }
-}
\ No newline at end of file
+
+
+    /**
+     * @return The user directory cache, for its hit and miss counters
+     */
+    public UserCache getUserCache() {
+        return userCache;
+    }
+}
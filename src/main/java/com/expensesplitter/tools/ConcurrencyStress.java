@@ -0,0 +1,235 @@
+package com.expensesplitter.tools;
+
+import com.expensesplitter.db.BalanceCache;
+import com.expensesplitter.db.ConnectionManager;
+import com.expensesplitter.db.DatabaseHelper;
+import com.expensesplitter.db.BalanceLedger;
+import com.expensesplitter.db.SchemaMigrator;
+import com.expensesplitter.db.SqliteStorage;
+import com.expensesplitter.model.Expense;
+import com.expensesplitter.model.Money;
+import com.expensesplitter.model.Split;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stress test of the connection manager: one SqliteStorage shared by every
+ * thread, with writers adding expenses and settling without pause while a
+ * growing number of readers (1, 2, 4, ... up to --max-readers) query balances
+ * and expense history. Each step reports read throughput, its speedup over a
+ * single reader against the ideal of one reader per core, and the write
+ * throughput sustained next to the readers. The balance cache is disabled so
+ * every balance read reaches the database.
+ *
+ * Afterwards the balance ledger is compared with one rebuilt from the splits,
+ * inside a transaction that is rolled back; the check is skipped while
+ * another process holds the database. The run fails if any operation failed,
+ * a step made no write progress or the ledger does not match. That reads run
+ * on the pool while a write holds the writer is checked by
+ * ConnectionManagerTest at every build; this tool measures how far it scales.
+ *
+ * Usage: java -cp expense-splitter.jar com.expensesplitter.tools.ConcurrencyStress
+ *            [--db jdbc-url] [--writers W] [--max-readers R] [--duration seconds]
+ *            [--seed --users N --expenses M]
+ */
+public class ConcurrencyStress {
+    private final SqliteStorage storage;
+    private final int userCount;
+    private final int writers;
+    private final int durationSeconds;
+
+    public ConcurrencyStress(SqliteStorage storage, int userCount, int writers, int durationSeconds) {
+        this.storage = storage;
+        this.userCount = userCount;
+        this.writers = writers;
+        this.durationSeconds = durationSeconds;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = ToolOptions.parse(args);
+        String url = options.getOrDefault("db", DatabaseHelper.getDatabaseUrl());
+        int cores = Runtime.getRuntime().availableProcessors();
+        int maxReaders = ToolOptions.getInt(options, "max-readers", 2 * cores);
+
+        // Measure the database, not the cache
+        System.setProperty(BalanceCache.SIZE_PROPERTY, "0");
+
+        if (options.containsKey("seed")) {
+            DataGenerator generator = new DataGenerator(
+                ToolOptions.getInt(options, "users", 1_000),
+                ToolOptions.getInt(options, "expenses", 10_000),
+                4, 42);
+            long start = System.nanoTime();
+            generator.seed(url);
+            System.out.printf("Seeded database in %.1f s%n", (System.nanoTime() - start) / 1e9);
+        }
+
+        ConnectionManager connections = ConnectionManager.open(url, maxReaders);
+        boolean passed;
+        try (SqliteStorage storage = new SqliteStorage(connections)) {
+            connections.withWriter(SchemaMigrator::migrate);
+            int userCount = storage.getUsers().findAll().size();
+            if (userCount < 2) {
+                throw new IllegalStateException("The database needs at least two users; run with --seed");
+            }
+            ConcurrencyStress stress = new ConcurrencyStress(storage, userCount,
+                ToolOptions.getInt(options, "writers", 1), ToolOptions.getInt(options, "duration", 10));
+            passed = stress.run(maxReaders, cores) & stress.checkLedger();
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * Runs one step per reader count and prints a row for each
+     * @return false if an operation failed or a step wrote nothing
+     */
+    public boolean run(int maxReaders, int cores) throws InterruptedException {
+        System.out.printf("%nCores: %d, writers: %d, %d s per step%n%n", cores, writers, durationSeconds);
+        System.out.printf("%8s %12s %9s %11s %12s %8s%n",
+            "readers", "reads/s", "speedup", "efficiency", "writes/s", "errors");
+
+        boolean passed = true;
+        double singleReader = 0;
+        for (int readers = 1; ; readers = Math.min(readers * 2, maxReaders)) {
+            Step step = step(readers);
+            double readRate = step.reads.sum() / step.elapsedSeconds;
+            double writeRate = step.writes.sum() / step.elapsedSeconds;
+            if (readers == 1) {
+                singleReader = readRate;
+            }
+            double speedup = readRate / singleReader;
+            System.out.printf("%8d %12.1f %8.2fx %10.0f%% %12.1f %8d%n", readers, readRate, speedup,
+                100 * speedup / Math.min(readers, cores), writeRate, step.errors.sum());
+
+            passed &= step.errors.sum() == 0 && step.writes.sum() > 0;
+            if (readers == maxReaders) {
+                break;
+            }
+        }
+        return passed;
+    }
+
+    private static final class Step {
+        final LongAdder reads = new LongAdder();
+        final LongAdder writes = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        double elapsedSeconds;
+    }
+
+    private Step step(int readers) throws InterruptedException {
+        Step step = new Step();
+        long deadline = System.nanoTime() + durationSeconds * 1_000_000_000L;
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < writers; i++) {
+            threads.add(new Thread(() -> write(step, deadline), "stress-writer-" + i));
+        }
+        for (int i = 0; i < readers; i++) {
+            threads.add(new Thread(() -> read(step, deadline), "stress-reader-" + i));
+        }
+
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        step.elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        return step;
+    }
+
+    private void read(Step step, long deadline) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < deadline) {
+            int userId = 1 + random.nextInt(userCount);
+            try {
+                if (random.nextBoolean()) {
+                    storage.getSplits().getBalances(userId);
+                } else {
+                    storage.getExpenses().findByCreator(userId);
+                }
+                step.reads.increment();
+            } catch (SQLException e) {
+                step.errors.increment();
+                System.out.println("Read failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void write(Step step, long deadline) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < deadline) {
+            int userId = 1 + random.nextInt(userCount);
+            try {
+                if (random.nextInt(10) == 0) {
+                    storage.getSettlements().settle(userId, 1 + random.nextInt(userCount), Money.ZERO);
+                } else {
+                    long share = 100 + random.nextInt(10_000);
+                    Expense expense = new Expense();
+                    expense.setDescription("Stress test");
+                    expense.setAmount(Money.ofCents(share * 4));
+                    expense.setCreatedById(userId);
+                    for (int i = 0; i < 4; i++) {
+                        expense.addSplit(new Split(1 + random.nextInt(userCount), null, Money.ofCents(share)));
+                    }
+                    storage.getExpenses().insert(expense);
+                }
+                step.writes.increment();
+            } catch (SQLException e) {
+                step.errors.increment();
+                System.out.println("Write failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Compares the ledger the writers maintained with one rebuilt from the splits
+     * @return true if they hold the same rows
+     */
+    public boolean checkLedger() throws SQLException {
+        // Order-independent fingerprint of the non-zero rows
+        String sql = "SELECT COUNT(*), " +
+                     "SUM((debtor_id * 1000003 + creditor_id) % 1000000007 * (net_amount % 1000000007) % 1000000007), " +
+                     "SUM(net_amount) FROM balance_ledger WHERE net_amount != 0";
+        boolean matches;
+        try {
+            matches = storage.getConnectionManager().withWriter(connection -> {
+                connection.setAutoCommit(false);
+                try {
+                    String maintained = summarize(connection, sql);
+                    BalanceLedger.rebuild(connection);
+                    String rebuilt = summarize(connection, sql);
+                    System.out.printf("%nLedger rows/fingerprint/total: %s maintained, %s rebuilt%n", maintained, rebuilt);
+                    return maintained.equals(rebuilt);
+                } finally {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+            });
+        } catch (SQLException e) {
+            if (!ConnectionManager.isBusy(e)) {
+                throw e;
+            }
+            System.out.println("Another process is writing to the database; skipped the ledger check.");
+            return true;
+        }
+        System.out.println(matches ? "Balance ledger is consistent." : "Balance ledger does not match the splits.");
+        return matches;
+    }
+
+    private static String summarize(Connection connection, String sql) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1) + "/" + rs.getLong(2) + "/" + rs.getLong(3);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.expensesplitter.tools;
+
+import com.expensesplitter.db.BalanceLedger;
+import com.expensesplitter.db.DatabaseHelper;
+import com.expensesplitter.db.DatabaseManager;
+import com.expensesplitter.model.Expense;
+import com.expensesplitter.model.Money;
+import com.expensesplitter.model.Split;
+import com.expensesplitter.repository.Storage;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Seeds a database with synthetic users, expenses and splits using batched
+ * inserts. Rows are appended after whatever the database already contains.
+ *
+ * Usage: java -cp expense-splitter.jar com.expensesplitter.tools.DataGenerator
+ *            [--users N] [--expenses M] [--fanout F] [--db jdbc-url]
+ */
+public class DataGenerator {
+    private static final int BATCH_SIZE = 10_000;
+    private static final int COMMIT_INTERVAL = 500_000;
+
+    private final int users;
+    private final int expenses;
+    private final int fanout;
+    private final Random random;
+
+    public DataGenerator(int users, int expenses, int fanout, long seed) {
+        this.users = users;
+        this.expenses = expenses;
+        this.fanout = fanout;
+        this.random = new Random(seed);
+    }
+
+    public static void main(String[] args) throws SQLException {
+        Map<String, String> options = ToolOptions.parse(args);
+        String url = options.getOrDefault("db", DatabaseHelper.getDatabaseUrl());
+        DataGenerator generator = new DataGenerator(
+            ToolOptions.getInt(options, "users", 1_000),
+            ToolOptions.getInt(options, "expenses", 10_000),
+            ToolOptions.getInt(options, "fanout", 4),
+            ToolOptions.getInt(options, "seed", 42));
+
+        long start = System.nanoTime();
+        generator.seed(url);
+        System.out.printf("Seeded %d users, %d expenses and %d splits in %.1f s%n",
+            generator.users, generator.expenses, (long) generator.expenses * generator.fanout,
+            (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Creates the schema if needed and appends the generated rows
+     * @param url JDBC URL of the database to seed
+     */
+    public void seed(String url) throws SQLException {
+        DatabaseManager schema = new DatabaseManager(url);
+        schema.initializeDatabase();
+        schema.closeConnection();
+
+        try (Connection connection = DriverManager.getConnection(url)) {
+            seed(connection);
+        }
+    }
+
+    /**
+     * Appends the generated rows on an open connection and rebuilds the balance ledger
+     */
+    public void seed(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            // Durability is irrelevant while bulk loading synthetic data
+            stmt.execute("PRAGMA synchronous = OFF");
+        }
+        connection.setAutoCommit(false);
+
+        try {
+            int firstUserId = maxId(connection, "users") + 1;
+            int firstExpenseId = maxId(connection, "expenses") + 1;
+
+            try (PreparedStatement pstmt = connection.prepareStatement(
+                    "INSERT INTO users (id, username, password, email) VALUES (?, ?, ?, ?)")) {
+                for (int i = 0; i < users; i++) {
+                    int id = firstUserId + i;
+                    pstmt.setInt(1, id);
+                    pstmt.setString(2, "user" + id);
+                    pstmt.setString(3, "password");
+                    pstmt.setString(4, "user" + id + "@example.com");
+                    pstmt.addBatch();
+                    if ((i + 1) % BATCH_SIZE == 0) {
+                        pstmt.executeBatch();
+                    }
+                }
+                pstmt.executeBatch();
+            }
+
+            int userCount = firstUserId - 1 + users;
+            long rows = 0;
+            try (PreparedStatement expense = connection.prepareStatement(
+                    "INSERT INTO expenses (id, description, amount, created_by) VALUES (?, ?, ?, ?)");
+                 PreparedStatement split = connection.prepareStatement(
+                    "INSERT INTO splits (expense_id, user_id, amount, is_paid) VALUES (?, ?, ?, ?)")) {
+                for (int i = 0; i < expenses; i++) {
+                    int id = firstExpenseId + i;
+                    long share = 100 + random.nextInt(10_000);
+                    expense.setInt(1, id);
+                    expense.setString(2, "Expense " + id);
+                    expense.setLong(3, share * fanout);
+                    expense.setInt(4, 1 + random.nextInt(userCount));
+                    expense.addBatch();
+
+                    for (int s = 0; s < fanout; s++) {
+                        split.setInt(1, id);
+                        split.setInt(2, 1 + random.nextInt(userCount));
+                        split.setLong(3, share);
+                        split.setBoolean(4, random.nextInt(4) == 0);
+                        split.addBatch();
+                    }
+                    rows += 1 + fanout;
+
+                    if ((i + 1) % BATCH_SIZE == 0) {
+                        expense.executeBatch();
+                        split.executeBatch();
+                    }
+                    if (rows >= COMMIT_INTERVAL) {
+                        expense.executeBatch();
+                        split.executeBatch();
+                        connection.commit();
+                        rows = 0;
+                    }
+                }
+                expense.executeBatch();
+                split.executeBatch();
+            }
+
+            BalanceLedger.rebuild(connection);
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Appends the generated rows through a storage backend's repositories, for
+     * backends without SQL. The repositories cannot insert paid splits, so every
+     * split starts unpaid.
+     */
+    public void seed(Storage storage) throws SQLException {
+        int firstUserId = storage.getUsers().findAll().size() + 1;
+        for (int i = 0; i < users; i++) {
+            int id = firstUserId + i;
+            storage.getUsers().insert("user" + id, "password", "user" + id + "@example.com");
+        }
+
+        int userCount = firstUserId - 1 + users;
+        for (int i = 0; i < expenses; i++) {
+            long share = 100 + random.nextInt(10_000);
+            Expense expense = new Expense();
+            expense.setDescription("Expense " + (i + 1));
+            expense.setAmount(Money.ofCents(share * fanout));
+            expense.setCreatedById(1 + random.nextInt(userCount));
+            for (int s = 0; s < fanout; s++) {
+                expense.addSplit(new Split(1 + random.nextInt(userCount), null, Money.ofCents(share)));
+            }
+            storage.getExpenses().insert(expense);
+        }
+    }
+
+    private static int maxId(Connection connection, String table) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) FROM " + table)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+}
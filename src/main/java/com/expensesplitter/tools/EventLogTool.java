@@ -0,0 +1,445 @@
+package com.expensesplitter.tools;
+
+import com.expensesplitter.db.DatabaseHelper;
+import com.expensesplitter.events.BalanceSnapshot;
+import com.expensesplitter.events.EventHandler;
+import com.expensesplitter.events.EventLog;
+import com.expensesplitter.events.EventLogReader;
+import com.expensesplitter.events.LedgerReplay;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maintenance commands for the event log of a database file.
+ *
+ * --check replays the log from its oldest snapshot and compares the result with
+ * the SQLite tables: the replayed ledger against balance_ledger row by row, and
+ * every expense the log added or deleted against the expenses and splits
+ * tables, including expenses the database has but the log never saw. Run it
+ * while nothing writes, or writes made during the check show up as differences.
+ *
+ * --recover rewrites balance_ledger from the latest snapshot and the events
+ * after it; --snapshot writes a snapshot now; --replay times recovery from the
+ * latest snapshot against replaying everything from the oldest one. --recover
+ * and --snapshot need the application to be stopped.
+ *
+ * Usage: java -cp expense-splitter.jar com.expensesplitter.tools.EventLogTool
+ *            --check | --recover | --snapshot | --replay [--db jdbc-url]
+ */
+public class EventLogTool {
+    private static final int MAX_REPORTED = 10;
+    private static final int BATCH_SIZE = 1_000;
+
+    private final Connection connection;
+    private final EventLog eventLog;
+    private final Path directory;
+
+    public EventLogTool(Connection connection) {
+        this.connection = connection;
+        this.eventLog = EventLog.forConnection(connection);
+        this.directory = eventLog.getDirectory();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = ToolOptions.parse(args);
+        try (Connection connection = DriverManager.getConnection(options.getOrDefault("db", DatabaseHelper.getDatabaseUrl()))) {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("PRAGMA busy_timeout = 5000");
+            }
+            EventLogTool tool = new EventLogTool(connection);
+            if (!tool.eventLog.isEnabled()) {
+                System.out.println("In-memory databases have no event log.");
+                System.exit(2);
+            }
+            if (options.containsKey("check")) {
+                System.exit(tool.check() ? 0 : 1);
+            } else if (options.containsKey("recover")) {
+                tool.recover();
+            } else if (options.containsKey("snapshot")) {
+                long seq = tool.eventLog.snapshot();
+                System.out.println("Snapshot taken at sequence number " + seq);
+                tool.eventLog.close();
+            } else if (options.containsKey("replay")) {
+                tool.replay();
+            } else {
+                System.out.println("Usage: EventLogTool --check | --recover | --snapshot | --replay [--db jdbc-url]");
+                System.exit(2);
+            }
+        }
+    }
+
+    /**
+     * Compares the replayed log with the database and prints every kind of difference found
+     * @return true if the log and the database agree
+     */
+    public boolean check() throws IOException, SQLException {
+        List<BalanceSnapshot> snapshots = BalanceSnapshot.list(directory);
+        if (snapshots.isEmpty()) {
+            System.out.println("No event log snapshot in " + directory);
+            return false;
+        }
+        BalanceSnapshot oldest = snapshots.get(0);
+        LedgerReplay ledger = new LedgerReplay(oldest);
+        ExpenseFacts expenses = new ExpenseFacts(oldest.getExpenseSeq());
+        EventLogReader reader = new EventLogReader(directory);
+        long lastSeq = reader.replay(oldest.getSeq(), new EventHandler() {
+            @Override
+            public void expenseAdded(long seq, int expenseId, int creatorId, long amountInCents, String description) {
+                expenses.expenseAdded(seq, expenseId, creatorId, amountInCents, description);
+            }
+
+            @Override
+            public void splitAdded(long seq, int expenseId, int userId, int creatorId, long amountInCents, boolean paid) {
+                ledger.splitAdded(seq, expenseId, userId, creatorId, amountInCents, paid);
+                expenses.splitAdded(seq, expenseId, userId, creatorId, amountInCents, paid);
+            }
+
+            @Override
+            public void debtSettled(long seq, int payerId, int receiverId, long amountInCents) {
+                ledger.debtSettled(seq, payerId, receiverId, amountInCents);
+            }
+
+            @Override
+            public void expenseDeleted(long seq, int expenseId, int creatorId,
+                                       int[] debtorIds, long[] unpaidAmountsInCents, int count) {
+                ledger.expenseDeleted(seq, expenseId, creatorId, debtorIds, unpaidAmountsInCents, count);
+                expenses.expenseDeleted(seq, expenseId, creatorId, debtorIds, unpaidAmountsInCents, count);
+            }
+        });
+        System.out.printf("Replayed %,d events (sequence %d to %d) onto the snapshot at %d%n",
+            reader.getEventCount(), oldest.getSeq() + 1, lastSeq, oldest.getSeq());
+
+        List<String> problems = new ArrayList<>();
+        long[] differences = new long[2];
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            differences[0] = checkLedger(ledger, problems);
+            differences[1] = expenses.check(connection, problems);
+        } finally {
+            connection.rollback();
+            connection.setAutoCommit(autoCommit);
+        }
+
+        for (String problem : problems) {
+            System.out.println("  " + problem);
+        }
+        System.out.printf("Ledger rows that differ: %,d%n", differences[0]);
+        System.out.printf("Expenses that differ:    %,d (%,d logged since the snapshot)%n",
+            differences[1], expenses.loggedCount());
+        boolean consistent = differences[0] == 0 && differences[1] == 0;
+        System.out.println(consistent ? "The event log matches the database." : "The event log does not match the database.");
+        return consistent;
+    }
+
+    /**
+     * Rewrites balance_ledger from the latest snapshot and the events after it
+     */
+    public void recover() throws IOException, SQLException {
+        long start = System.nanoTime();
+        LedgerReplay replay = LedgerReplay.recover(directory);
+        long replayed = System.nanoTime();
+
+        long[] rows = new long[1];
+        try (Statement stmt = connection.createStatement()) {
+            // Rows arrive in primary key order, but the creditor index is written at
+            // random; keeping it in cache avoids re-reading its pages for every row
+            stmt.execute("PRAGMA cache_size = -262144");
+        }
+        connection.setAutoCommit(false);
+        try (Statement stmt = connection.createStatement();
+             PreparedStatement insert = connection.prepareStatement(
+                 "INSERT INTO balance_ledger (debtor_id, creditor_id, net_amount) VALUES (?, ?, ?)")) {
+            stmt.executeUpdate("DELETE FROM balance_ledger");
+            SQLException[] failure = new SQLException[1];
+            replay.forEachBalance((debtorId, creditorId, amountInCents) -> {
+                if (failure[0] != null) {
+                    return;
+                }
+                try {
+                    insert.setInt(1, debtorId);
+                    insert.setInt(2, creditorId);
+                    insert.setLong(3, amountInCents);
+                    insert.addBatch();
+                    if (++rows[0] % BATCH_SIZE == 0) {
+                        insert.executeBatch();
+                    }
+                } catch (SQLException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            insert.executeBatch();
+            connection.commit();
+        } catch (SQLException | IOException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        System.out.printf("Loaded the snapshot at %d and replayed %,d changed pairs up to %d in %.1f ms%n",
+            replay.getSnapshot() == null ? 0 : replay.getSnapshot().getSeq(), replay.getChangedPairCount(),
+            replay.getLastSeq(), (replayed - start) / 1e6);
+        System.out.printf("Wrote %,d ledger rows in %.1f s%n", rows[0], (System.nanoTime() - replayed) / 1e9);
+    }
+
+    /**
+     * Times a restart's recovery from the latest snapshot against a replay of
+     * everything from the oldest one, streaming the ledger without writing it
+     */
+    public void replay() throws IOException {
+        List<BalanceSnapshot> snapshots = BalanceSnapshot.list(directory);
+        if (snapshots.isEmpty()) {
+            System.out.println("No event log snapshot in " + directory);
+            return;
+        }
+        time("latest snapshot + tail", snapshots.get(snapshots.size() - 1));
+        if (snapshots.size() > 1) {
+            time("oldest snapshot + all", snapshots.get(0));
+        }
+    }
+
+    private void time(String label, BalanceSnapshot snapshot) throws IOException {
+        long start = System.nanoTime();
+        LedgerReplay replay = new LedgerReplay(snapshot);
+        EventLogReader reader = new EventLogReader(directory);
+        replay.replayTail(reader);
+        long replayed = System.nanoTime();
+        long rows = replay.forEachBalance((debtorId, creditorId, amountInCents) -> {});
+        long merged = System.nanoTime();
+        System.out.printf("%-24s %,12d events in %8.1f ms (%,.0f events/s), %,d ledger rows merged in %.1f ms%n",
+            label, reader.getEventCount(), (replayed - start) / 1e6,
+            reader.getEventCount() / Math.max(1e-9, (replayed - start) / 1e9), rows, (merged - replayed) / 1e6);
+    }
+
+    /**
+     * Streams balance_ledger in key order alongside the replayed ledger
+     * @return Number of rows that differ
+     */
+    private long checkLedger(LedgerReplay ledger, List<String> problems) throws IOException, SQLException {
+        String sql = "SELECT debtor_id, creditor_id, net_amount FROM balance_ledger " +
+                     "WHERE net_amount != 0 ORDER BY debtor_id, creditor_id";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql);
+             ResultSet rs = pstmt.executeQuery()) {
+            LedgerComparison comparison = new LedgerComparison(rs, problems);
+            ledger.forEachBalance(comparison);
+            comparison.finish();
+            return comparison.differences;
+        }
+    }
+
+    private static void report(List<String> problems, long differences, String problem) {
+        if (differences <= MAX_REPORTED) {
+            problems.add(problem);
+        }
+    }
+
+    /**
+     * Walks the database rows while the replayed rows are pushed in the same order
+     */
+    private static final class LedgerComparison implements BalanceSnapshot.RowConsumer {
+        private final ResultSet rs;
+        private final List<String> problems;
+        private boolean hasRow;
+        long differences;
+
+        LedgerComparison(ResultSet rs, List<String> problems) throws SQLException {
+            this.rs = rs;
+            this.problems = problems;
+            this.hasRow = rs.next();
+        }
+
+        @Override
+        public void accept(int debtorId, int creditorId, long amountInCents) {
+            try {
+                long key = key(debtorId, creditorId);
+                while (hasRow && key(rs.getInt(1), rs.getInt(2)) < key) {
+                    databaseOnly();
+                }
+                if (hasRow && key(rs.getInt(1), rs.getInt(2)) == key) {
+                    if (rs.getLong(3) != amountInCents) {
+                        report(problems, ++differences, String.format("Ledger %d -> %d: log %d, database %d",
+                            debtorId, creditorId, amountInCents, rs.getLong(3)));
+                    }
+                    hasRow = rs.next();
+                } else {
+                    report(problems, ++differences, String.format("Ledger %d -> %d: log %d, database has no row",
+                        debtorId, creditorId, amountInCents));
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void finish() throws SQLException {
+            while (hasRow) {
+                databaseOnly();
+            }
+        }
+
+        private void databaseOnly() throws SQLException {
+            report(problems, ++differences, String.format("Ledger %d -> %d: database %d, log has no row",
+                rs.getInt(1), rs.getInt(2), rs.getLong(3)));
+            hasRow = rs.next();
+        }
+
+        private static long key(int debtorId, int creditorId) {
+            return ((long) debtorId << 32) | creditorId;
+        }
+    }
+
+    /**
+     * What the log says about every expense created after the snapshot, indexed
+     * by expense id minus the snapshot's expense sequence
+     */
+    private static final class ExpenseFacts implements EventHandler {
+        private static final byte ADDED = 1;
+        private static final byte DELETED = 2;
+
+        private final long baseId;
+        private byte[] states = new byte[1024];
+        private int[] creatorIds = new int[1024];
+        private long[] amounts = new long[1024];
+        private int[] splitCounts = new int[1024];
+        private long[] splitSums = new long[1024];
+        private int maxIndex = -1;
+        // Expenses from before the snapshot that the log deleted
+        private int[] olderDeleted = new int[16];
+        private int olderDeletedCount;
+
+        ExpenseFacts(long baseId) {
+            this.baseId = baseId;
+        }
+
+        @Override
+        public void expenseAdded(long seq, int expenseId, int creatorId, long amountInCents, String description) {
+            int index = index(expenseId);
+            if (index >= 0) {
+                states[index] = ADDED;
+                creatorIds[index] = creatorId;
+                amounts[index] = amountInCents;
+            }
+        }
+
+        @Override
+        public void splitAdded(long seq, int expenseId, int userId, int creatorId, long amountInCents, boolean paid) {
+            int index = index(expenseId);
+            if (index >= 0) {
+                splitCounts[index]++;
+                splitSums[index] += amountInCents;
+            }
+        }
+
+        @Override
+        public void expenseDeleted(long seq, int expenseId, int creatorId,
+                                   int[] debtorIds, long[] unpaidAmountsInCents, int count) {
+            int index = index(expenseId);
+            if (index >= 0) {
+                states[index] = DELETED;
+            } else {
+                if (olderDeletedCount == olderDeleted.length) {
+                    olderDeleted = Arrays.copyOf(olderDeleted, olderDeletedCount * 2);
+                }
+                olderDeleted[olderDeletedCount++] = expenseId;
+            }
+        }
+
+        long loggedCount() {
+            long count = 0;
+            for (int i = 0; i <= maxIndex; i++) {
+                if (states[i] != 0) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * @return Number of expenses that differ
+         */
+        long check(Connection connection, List<String> problems) throws SQLException {
+            long differences = 0;
+            String sql = "SELECT e.id, e.created_by, e.amount, COUNT(s.id), COALESCE(SUM(s.amount), 0) " +
+                         "FROM expenses e LEFT JOIN splits s ON s.expense_id = e.id " +
+                         "WHERE e.id > ? GROUP BY e.id ORDER BY e.id";
+            int next = 0;
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setLong(1, baseId);
+                ResultSet rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    int index = (int) (rs.getLong(1) - baseId - 1);
+                    for (; next < index && next <= maxIndex; next++) {
+                        if (states[next] == ADDED) {
+                            report(problems, ++differences, "Expense " + id(next) + " is in the log but not in the database");
+                        }
+                    }
+                    next = Math.max(next, index + 1);
+                    if (index > maxIndex || states[index] == 0) {
+                        report(problems, ++differences, "Expense " + rs.getLong(1) + " is in the database but not in the log");
+                    } else if (states[index] == DELETED) {
+                        report(problems, ++differences, "Expense " + rs.getLong(1) + " was deleted in the log but is in the database");
+                    } else if (creatorIds[index] != rs.getInt(2) || amounts[index] != rs.getLong(3)
+                            || splitCounts[index] != rs.getInt(4) || splitSums[index] != rs.getLong(5)) {
+                        report(problems, ++differences, String.format(
+                            "Expense %d: log has creator %d, %d cents, %d splits of %d; database %d, %d, %d, %d",
+                            rs.getLong(1), creatorIds[index], amounts[index], splitCounts[index], splitSums[index],
+                            rs.getInt(2), rs.getLong(3), rs.getInt(4), rs.getLong(5)));
+                    }
+                }
+            }
+            for (; next <= maxIndex; next++) {
+                if (states[next] == ADDED) {
+                    report(problems, ++differences, "Expense " + id(next) + " is in the log but not in the database");
+                }
+            }
+
+            try (PreparedStatement pstmt = connection.prepareStatement("SELECT 1 FROM expenses WHERE id = ?")) {
+                for (int i = 0; i < olderDeletedCount; i++) {
+                    pstmt.setInt(1, olderDeleted[i]);
+                    if (pstmt.executeQuery().next()) {
+                        report(problems, ++differences, "Expense " + olderDeleted[i] + " was deleted in the log but is in the database");
+                    }
+                }
+            }
+            return differences;
+        }
+
+        private long id(int index) {
+            return baseId + 1 + index;
+        }
+
+        /**
+         * @return The array index of an expense created after the snapshot, growing the arrays as needed, or -1
+         */
+        private int index(int expenseId) {
+            long offset = expenseId - baseId - 1;
+            if (offset < 0) {
+                return -1;
+            }
+            int index = (int) offset;
+            if (index >= states.length) {
+                int capacity = Math.max(states.length * 2, index + 1);
+                states = Arrays.copyOf(states, capacity);
+                creatorIds = Arrays.copyOf(creatorIds, capacity);
+                amounts = Arrays.copyOf(amounts, capacity);
+                splitCounts = Arrays.copyOf(splitCounts, capacity);
+                splitSums = Arrays.copyOf(splitSums, capacity);
+            }
+            maxIndex = Math.max(maxIndex, index);
+            return index;
+        }
+    }
+}
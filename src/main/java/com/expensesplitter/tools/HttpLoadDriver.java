@@ -0,0 +1,253 @@
+package com.expensesplitter.tools;
+
+import com.expensesplitter.db.DatabaseHelper;
+import com.expensesplitter.http.ApiServer;
+import com.expensesplitter.metrics.LatencyHistogram;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Drives the HTTP API with the same operation mix as LoadDriver from many
+ * concurrent clients, each on its own virtual thread, and reports requests per
+ * second and latency percentiles per operation. Latency is measured at the
+ * client, so it includes HTTP parsing and JSON on both sides.
+ *
+ * Either targets a running server with --url, or starts an embedded ApiServer
+ * on a free port against --db (seeding it first with --seed).
+ *
+ * Usage: java -cp expense-splitter.jar com.expensesplitter.tools.HttpLoadDriver
+ *            [--url http://host:port --users N] [--db jdbc-url] [--read-connections R]
+ *            [--threads K] [--duration seconds] [--fanout F]
+ *            [--mix add,balances,history,settle] [--seed --users N --expenses M]
+ */
+public class HttpLoadDriver {
+
+    enum Operation {
+        ADD_EXPENSE, VIEW_BALANCES, VIEW_HISTORY, SETTLE
+    }
+
+    private final String baseUrl;
+    private final int userCount;
+    private final int threads;
+    private final int durationSeconds;
+    private final int fanout;
+    private final int[] weights;
+    private final HttpClient client = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_1_1)
+        .connectTimeout(Duration.ofSeconds(5))
+        .build();
+
+    public HttpLoadDriver(String baseUrl, int userCount, int threads, int durationSeconds, int fanout, int[] weights) {
+        this.baseUrl = baseUrl;
+        this.userCount = userCount;
+        this.threads = threads;
+        this.durationSeconds = durationSeconds;
+        this.fanout = fanout;
+        this.weights = weights;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = ToolOptions.parse(args);
+        int fanout = ToolOptions.getInt(options, "fanout", 4);
+        int threads = ToolOptions.getInt(options, "threads", 64);
+        int duration = ToolOptions.getInt(options, "duration", 30);
+
+        String[] mix = options.getOrDefault("mix", "20,40,30,10").split(",");
+        int[] weights = new int[Operation.values().length];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = Integer.parseInt(mix[i].trim());
+        }
+
+        if (options.containsKey("url")) {
+            new HttpLoadDriver(options.get("url"), ToolOptions.getInt(options, "users", 1_000),
+                threads, duration, fanout, weights).run();
+            return;
+        }
+
+        String url = options.getOrDefault("db", DatabaseHelper.getDatabaseUrl());
+        if (options.containsKey("seed")) {
+            DataGenerator generator = new DataGenerator(
+                ToolOptions.getInt(options, "users", 1_000),
+                ToolOptions.getInt(options, "expenses", 10_000),
+                fanout, 42);
+            long start = System.nanoTime();
+            generator.seed(url);
+            System.out.printf("Seeded database in %.1f s%n", (System.nanoTime() - start) / 1e9);
+        }
+
+        int userCount;
+        try (Connection connection = DriverManager.getConnection(url);
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) FROM users")) {
+            userCount = rs.next() ? rs.getInt(1) : 0;
+        }
+        if (userCount < 2) {
+            throw new IllegalStateException("The database needs at least two users; run with --seed");
+        }
+
+        int readConnections = ToolOptions.getInt(options, "read-connections", Runtime.getRuntime().availableProcessors());
+        try (ApiServer server = new ApiServer(url, 0, readConnections)) {
+            server.start();
+            new HttpLoadDriver("http://localhost:" + server.getPort(), userCount,
+                threads, duration, fanout, weights).run();
+        }
+    }
+
+    public void run() throws InterruptedException {
+        long deadline = System.nanoTime() + durationSeconds * 1_000_000_000L;
+        List<Worker> workers = new ArrayList<>();
+        List<Thread> running = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Worker worker = new Worker(deadline);
+            workers.add(worker);
+            running.add(Thread.ofVirtual().name("http-load-driver-" + i).unstarted(worker));
+        }
+
+        long start = System.nanoTime();
+        for (Thread thread : running) {
+            thread.start();
+        }
+        for (Thread thread : running) {
+            thread.join();
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        report(workers, elapsedSeconds);
+    }
+
+    private void report(List<Worker> workers, double elapsedSeconds) {
+        System.out.printf("%nClients: %d, duration: %.1f s%n%n", threads, elapsedSeconds);
+        System.out.printf("%-14s %10s %10s %10s %10s %10s %10s %8s%n",
+            "operation", "count", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms", "errors");
+
+        long totalCount = 0;
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram histogram = new LatencyHistogram();
+            long errors = 0;
+            for (Worker worker : workers) {
+                histogram.add(worker.histograms[operation.ordinal()]);
+                errors += worker.errors[operation.ordinal()];
+            }
+            totalCount += histogram.getTotalCount();
+
+            System.out.printf("%-14s %10d %10.1f %10.3f %10.3f %10.3f %10.3f %8d%n",
+                operation.name().toLowerCase(),
+                histogram.getTotalCount(),
+                histogram.getTotalCount() / elapsedSeconds,
+                histogram.getValueAtPercentile(50) / 1e6,
+                histogram.getValueAtPercentile(99) / 1e6,
+                histogram.getValueAtPercentile(99.9) / 1e6,
+                histogram.getMaxValue() / 1e6,
+                errors);
+        }
+        System.out.printf("%nTotal throughput: %.1f req/s%n", totalCount / elapsedSeconds);
+    }
+
+    private Operation pick(ThreadLocalRandom random) {
+        int total = 0;
+        for (int weight : weights) {
+            total += weight;
+        }
+        int roll = random.nextInt(total);
+        for (Operation operation : Operation.values()) {
+            roll -= weights[operation.ordinal()];
+            if (roll < 0) {
+                return operation;
+            }
+        }
+        return Operation.VIEW_BALANCES;
+    }
+
+    private class Worker implements Runnable {
+        final LatencyHistogram[] histograms = new LatencyHistogram[Operation.values().length];
+        final long[] errors = new long[Operation.values().length];
+        private final long deadline;
+
+        Worker(long deadline) {
+            this.deadline = deadline;
+            for (int i = 0; i < histograms.length; i++) {
+                histograms[i] = new LatencyHistogram();
+            }
+        }
+
+        @Override
+        public void run() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (System.nanoTime() < deadline) {
+                Operation operation = pick(random);
+                long start = System.nanoTime();
+                boolean success;
+                try {
+                    int status = client.send(request(operation, random), HttpResponse.BodyHandlers.discarding()).statusCode();
+                    success = status < 400;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    success = false;
+                }
+                histograms[operation.ordinal()].record(System.nanoTime() - start);
+                if (!success) {
+                    errors[operation.ordinal()]++;
+                }
+            }
+        }
+
+        private HttpRequest request(Operation operation, ThreadLocalRandom random) {
+            int userId = 1 + random.nextInt(userCount);
+            switch (operation) {
+                case ADD_EXPENSE: {
+                    long share = 100 + random.nextInt(10_000);
+                    StringBuilder body = new StringBuilder()
+                        .append("{\"description\":\"Load test\",\"amount\":\"").append(cents(share * fanout))
+                        .append("\",\"createdBy\":").append(userId).append(",\"splits\":[");
+                    for (int i = 0; i < fanout; i++) {
+                        if (i > 0) {
+                            body.append(',');
+                        }
+                        body.append("{\"userId\":").append(1 + random.nextInt(userCount))
+                            .append(",\"amount\":\"").append(cents(share)).append("\"}");
+                    }
+                    return post("/expenses", body.append("]}").toString());
+                }
+                case VIEW_BALANCES:
+                    return get("/users/" + userId + "/balances");
+                case VIEW_HISTORY:
+                    return get("/users/" + userId + "/expenses");
+                case SETTLE:
+                default: {
+                    int receiverId = 1 + random.nextInt(userCount);
+                    return post("/settlements", "{\"payerId\":" + userId + ",\"receiverId\":" + receiverId
+                        + ",\"amount\":\"0.00\"}");
+                }
+            }
+        }
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build();
+    }
+
+    private HttpRequest post(String path, String json) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(json))
+            .build();
+    }
+
+    private static String cents(long cents) {
+        return cents / 100 + "." + String.format("%02d", cents % 100);
+    }
+}
@@ -0,0 +1,335 @@
+package com.expensesplitter.tools;
+
+import com.expensesplitter.db.DatabaseHelper;
+import com.expensesplitter.db.SlowQueryLog;
+import com.expensesplitter.db.StatementCache;
+import com.expensesplitter.db.WritePipeline;
+import com.expensesplitter.memory.ColumnarStorage;
+import com.expensesplitter.metrics.LatencyHistogram;
+import com.expensesplitter.model.BalanceMap;
+import com.expensesplitter.model.Expense;
+import com.expensesplitter.model.Money;
+import com.expensesplitter.model.Split;
+import com.expensesplitter.repository.Storage;
+import com.expensesplitter.service.BalanceService;
+import com.expensesplitter.service.ExpenseService;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Replays a mixed workload of adding expenses, reading balances, reading
+ * history and settling against the services from several threads, then
+ * reports throughput and latency percentiles per operation. Each thread uses
+ * its own connection and service instances. With --group-commit, writes go
+ * through a shared WritePipeline instead. With --storage memory, every thread
+ * shares one in-memory columnar store, seeded first, and no database is used.
+ *
+ * Usage: java -cp expense-splitter.jar com.expensesplitter.tools.LoadDriver
+ *            [--db jdbc-url] [--threads K] [--duration seconds] [--fanout F]
+ *            [--mix add,balances,history,settle] [--group-commit]
+ *            [--seed --users N --expenses M] [--storage sqlite|memory]
+ */
+public class LoadDriver {
+
+    enum Operation {
+        ADD_EXPENSE, VIEW_BALANCES, VIEW_HISTORY, SETTLE
+    }
+
+    private final String url;
+    private final int threads;
+    private final int durationSeconds;
+    private final int fanout;
+    private final int[] weights;
+    private final boolean groupCommit;
+    private final Storage storage;
+    private WritePipeline pipeline;
+
+    public LoadDriver(String url, int threads, int durationSeconds, int fanout, int[] weights, boolean groupCommit) {
+        this.url = url;
+        this.threads = threads;
+        this.durationSeconds = durationSeconds;
+        this.fanout = fanout;
+        this.weights = weights;
+        this.groupCommit = groupCommit;
+        this.storage = null;
+    }
+
+    /**
+     * Drives the workload against an already seeded storage backend shared by every thread
+     */
+    public LoadDriver(Storage storage, int threads, int durationSeconds, int fanout, int[] weights) {
+        this.url = null;
+        this.threads = threads;
+        this.durationSeconds = durationSeconds;
+        this.fanout = fanout;
+        this.weights = weights;
+        this.groupCommit = false;
+        this.storage = storage;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = ToolOptions.parse(args);
+        String url = options.getOrDefault("db", DatabaseHelper.getDatabaseUrl());
+        int fanout = ToolOptions.getInt(options, "fanout", 4);
+        boolean inMemory = options.getOrDefault("storage", Storage.SQLITE).equals(Storage.MEMORY);
+
+        String[] mix = options.getOrDefault("mix", "20,40,30,10").split(",");
+        int[] weights = new int[Operation.values().length];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = Integer.parseInt(mix[i].trim());
+        }
+        int threads = ToolOptions.getInt(options, "threads", Runtime.getRuntime().availableProcessors());
+        int duration = ToolOptions.getInt(options, "duration", 30);
+
+        // The in-memory store starts empty, so it is always seeded
+        if (inMemory) {
+            DataGenerator generator = new DataGenerator(
+                ToolOptions.getInt(options, "users", 1_000),
+                ToolOptions.getInt(options, "expenses", 10_000),
+                fanout, 42);
+            Storage storage = new ColumnarStorage();
+            long start = System.nanoTime();
+            generator.seed(storage);
+            System.out.printf("Seeded in-memory storage in %.1f s%n", (System.nanoTime() - start) / 1e9);
+            new LoadDriver(storage, threads, duration, fanout, weights).run();
+            return;
+        }
+
+        if (options.containsKey("seed")) {
+            DataGenerator generator = new DataGenerator(
+                ToolOptions.getInt(options, "users", 1_000),
+                ToolOptions.getInt(options, "expenses", 10_000),
+                fanout, 42);
+            long start = System.nanoTime();
+            generator.seed(url);
+            System.out.printf("Seeded database in %.1f s%n", (System.nanoTime() - start) / 1e9);
+        }
+
+        new LoadDriver(url, threads, duration, fanout, weights, options.containsKey("group-commit")).run();
+    }
+
+    public void run() throws Exception {
+        int userCount = storage != null ? storage.getUsers().findAll().size() : countUsers();
+        if (userCount < 2) {
+            throw new IllegalStateException("The database needs at least two users; run with --seed");
+        }
+
+        Connection writeConnection = null;
+        if (groupCommit) {
+            writeConnection = SlowQueryLog.wrap(StatementCache.wrap(DriverManager.getConnection(url)));
+            try (Statement stmt = writeConnection.createStatement()) {
+                stmt.execute("PRAGMA foreign_keys = ON");
+                stmt.execute("PRAGMA busy_timeout = 5000");
+            }
+            pipeline = new WritePipeline(writeConnection);
+        }
+
+        long deadline = System.nanoTime() + durationSeconds * 1_000_000_000L;
+        List<Worker> workers = new ArrayList<>();
+        List<Thread> running = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Worker worker = new Worker(userCount, deadline);
+            Thread thread = new Thread(worker, "load-driver-" + i);
+            workers.add(worker);
+            running.add(thread);
+        }
+
+        long start = System.nanoTime();
+        for (Thread thread : running) {
+            thread.start();
+        }
+        for (Thread thread : running) {
+            thread.join();
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        if (pipeline != null) {
+            pipeline.close();
+            writeConnection.close();
+        }
+
+        report(workers, elapsedSeconds);
+    }
+
+    private int countUsers() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url);
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) FROM users")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private void report(List<Worker> workers, double elapsedSeconds) {
+        System.out.printf("%nThreads: %d, duration: %.1f s%n%n", threads, elapsedSeconds);
+        System.out.printf("%-14s %10s %10s %10s %10s %10s %10s %8s%n",
+            "operation", "count", "ops/s", "p50 ms", "p99 ms", "p999 ms", "max ms", "errors");
+
+        long totalCount = 0;
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram histogram = new LatencyHistogram();
+            long errors = 0;
+            for (Worker worker : workers) {
+                histogram.add(worker.histograms[operation.ordinal()]);
+                errors += worker.errors[operation.ordinal()];
+            }
+            totalCount += histogram.getTotalCount();
+
+            System.out.printf("%-14s %10d %10.1f %10.3f %10.3f %10.3f %10.3f %8d%n",
+                operation.name().toLowerCase(),
+                histogram.getTotalCount(),
+                histogram.getTotalCount() / elapsedSeconds,
+                histogram.getValueAtPercentile(50) / 1e6,
+                histogram.getValueAtPercentile(99) / 1e6,
+                histogram.getValueAtPercentile(99.9) / 1e6,
+                histogram.getMaxValue() / 1e6,
+                errors);
+        }
+        System.out.printf("%nTotal throughput: %.1f ops/s%n", totalCount / elapsedSeconds);
+    }
+
+    private Operation pick(ThreadLocalRandom random) {
+        int total = 0;
+        for (int weight : weights) {
+            total += weight;
+        }
+        int roll = random.nextInt(total);
+        for (Operation operation : Operation.values()) {
+            roll -= weights[operation.ordinal()];
+            if (roll < 0) {
+                return operation;
+            }
+        }
+        return Operation.VIEW_BALANCES;
+    }
+
+    private class Worker implements Runnable {
+        final LatencyHistogram[] histograms = new LatencyHistogram[Operation.values().length];
+        final long[] errors = new long[Operation.values().length];
+        private final int userCount;
+        private final long deadline;
+
+        Worker(int userCount, long deadline) {
+            this.userCount = userCount;
+            this.deadline = deadline;
+            for (int i = 0; i < histograms.length; i++) {
+                histograms[i] = new LatencyHistogram();
+            }
+        }
+
+        @Override
+        public void run() {
+            if (storage != null) {
+                drive(new ExpenseService(storage), new BalanceService(storage));
+                return;
+            }
+            try (Connection connection = SlowQueryLog.wrap(StatementCache.wrap(DriverManager.getConnection(url)))) {
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute("PRAGMA foreign_keys = ON");
+                    // Wait for the single SQLite writer instead of failing immediately
+                    stmt.execute("PRAGMA busy_timeout = 5000");
+                }
+                drive(new ExpenseService(connection), new BalanceService(connection));
+            } catch (SQLException e) {
+                System.out.println("Load driver thread failed: " + e.getMessage());
+            }
+        }
+
+        private void drive(ExpenseService expenseService, BalanceService balanceService) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (System.nanoTime() < deadline) {
+                Operation operation = pick(random);
+                long start = System.nanoTime();
+                Boolean success = execute(operation, expenseService, balanceService, random);
+                if (success == null) {
+                    continue;
+                }
+                histograms[operation.ordinal()].record(System.nanoTime() - start);
+                if (!success) {
+                    errors[operation.ordinal()]++;
+                }
+            }
+        }
+
+        /**
+         * @return Whether the operation succeeded, or null if it was skipped
+         */
+        private Boolean execute(Operation operation, ExpenseService expenseService,
+                                BalanceService balanceService, ThreadLocalRandom random) {
+            int userId = 1 + random.nextInt(userCount);
+            switch (operation) {
+                case ADD_EXPENSE: {
+                    long share = 100 + random.nextInt(10_000);
+                    Expense expense = new Expense();
+                    expense.setDescription("Load test");
+                    expense.setAmount(Money.ofCents(share * fanout));
+                    expense.setCreatedById(userId);
+                    for (int i = 0; i < fanout; i++) {
+                        expense.addSplit(new Split(1 + random.nextInt(userCount), null, Money.ofCents(share)));
+                    }
+                    if (pipeline != null) {
+                        return submit(() -> pipeline.addExpenseWithSplits(expense)) != null;
+                    }
+                    return expenseService.addExpenseWithSplits(expense) != null;
+                }
+                case VIEW_BALANCES:
+                    balanceService.getUserBalances(userId);
+                    return true;
+                case VIEW_HISTORY:
+                    expenseService.getUserExpenses(userId);
+                    return true;
+                case SETTLE: {
+                    // Pay back one of the user's creditors in full; users who owe nothing have nothing to settle
+                    BalanceMap balances = balanceService.getUserBalances(userId);
+                    int[] creditorIds = new int[balances.size()];
+                    int creditors = 0;
+                    for (int counterpartyId : balances.getUserIds()) {
+                        if (balances.getAmountInCents(counterpartyId) < 0) {
+                            creditorIds[creditors++] = counterpartyId;
+                        }
+                    }
+                    if (creditors == 0) {
+                        return null;
+                    }
+                    int receiverId = creditorIds[random.nextInt(creditors)];
+                    Money amount = balances.getAmount(receiverId).abs();
+                    if (pipeline != null) {
+                        return submit(() -> pipeline.settleDebt(userId, receiverId, amount)) != null;
+                    }
+                    return balanceService.settleDebt(userId, receiverId, amount);
+                }
+                default:
+                    return false;
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface Submission<T> {
+        CompletableFuture<T> submit() throws InterruptedException;
+    }
+
+    /**
+     * Submits a write to the pipeline and waits for its batch to commit
+     * @return The command's result, or null if it failed
+     */
+    private static <T> T submit(Submission<T> submission) {
+        try {
+            return submission.submit().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.expensesplitter.tools;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Minimal "--name value" command line parsing shared by the tools.
+ */
+public final class ToolOptions {
+
+    private ToolOptions() {}
+
+    public static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            String name = args[i].substring(2);
+            if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                options.put(name, args[++i]);
+            } else {
+                options.put(name, "true");
+            }
+        }
+        return options;
+    }
+
+    public static int getInt(Map<String, String> options, String name, int defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+}
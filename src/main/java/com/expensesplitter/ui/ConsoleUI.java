@@ -1,23 +1,38 @@
 package com.expensesplitter.ui;
 
-import com.expensesplitter.db.DatabaseManager;
+import com.expensesplitter.db.SlowQueryLog;
+import com.expensesplitter.metrics.LatencyHistogram;
+import com.expensesplitter.metrics.OperationMetrics;
+import com.expensesplitter.metrics.OperationStats;
+import com.expensesplitter.model.BalanceMap;
 import com.expensesplitter.model.Expense;
+import com.expensesplitter.model.Money;
+import com.expensesplitter.model.SettlementPlan;
 import com.expensesplitter.model.Split;
 import com.expensesplitter.model.User;
+import com.expensesplitter.repository.Storage;
+import com.expensesplitter.service.BalanceService;
+import com.expensesplitter.service.ExpenseService;
+import com.expensesplitter.service.UserService;
 
 import java.util.List;
-import java.util.Map;
 import java.util.Scanner;
 import java.util.concurrent.TimeUnit;
 
 public class ConsoleUI {
-    private final DatabaseManager dbManager;
+    private final Storage storage;
+    private final UserService userService;
+    private final ExpenseService expenseService;
+    private final BalanceService balanceService;
     private final Scanner scanner;
     private User currentUser;
     private static final int CONSOLE_WIDTH = 80; // Assumed console width
 
-    public ConsoleUI(DatabaseManager dbManager) {
-        this.dbManager = dbManager;
+    public ConsoleUI(Storage storage) {
+        this.storage = storage;
+        this.userService = new UserService(storage);
+        this.expenseService = new ExpenseService(storage);
+        this.balanceService = new BalanceService(storage);
         this.scanner = new Scanner(System.in);
     }
 
@@ -71,8 +86,9 @@ public class ConsoleUI {
         System.out.println("                         2. View Balances");
         System.out.println("                         3. Settle Debts");
         System.out.println("                         4. View Expense History");
-        System.out.println("                         5. Logout");
-        System.out.println("                         6. Exit");
+        System.out.println("                         5. Simplify Group Debts");
+        System.out.println("                         6. Logout");
+        System.out.println("                         7. Exit");
         System.out.println();
         System.out.print("                    Choose an option: ");
         
@@ -91,11 +107,18 @@ public class ConsoleUI {
                 viewExpenseHistory();
                 break;
             case 5:
-                logout();
+                simplifyGroupDebts();
                 break;
             case 6:
+                logout();
+                break;
+            case 7:
                 exit();
                 break;
+            case 99:
+                // Not on the menu: latency of every instrumented operation
+                showDiagnostics();
+                break;
             default:
                 System.out.println("              Invalid option. Please try again.");
                 sleep(1);
@@ -113,7 +136,7 @@ public class ConsoleUI {
         String password = scanner.nextLine();
         System.out.println();
         
-        User user = dbManager.authenticateUser(username, password);
+        User user = userService.authenticateUser(username, password);
         if (user != null) {
             currentUser = user;
             System.out.println("                      Login successful!");
@@ -137,7 +160,7 @@ public class ConsoleUI {
         String email = scanner.nextLine();
         System.out.println();
         
-        boolean success = dbManager.registerUser(username, password, email);
+        boolean success = userService.registerUser(username, password, email);
         if (success) {
             System.out.println("               Registration successful! Please login.");
             sleep(2);
@@ -157,7 +180,7 @@ public class ConsoleUI {
         String description = scanner.nextLine();
         
         System.out.print("                       Amount: $");
-        double amount = getDoubleInput();
+        Money amount = getMoneyInput();
         
         // Split type
         System.out.println("                       Split type:");
@@ -176,7 +199,7 @@ public class ConsoleUI {
         }
         
         // Add splits
-        double[] splits = new double[numUsers];
+        Money[] splits = new Money[numUsers];
         String[] usernames = new String[numUsers];
         int[] userIds = new int[numUsers];
         
@@ -185,11 +208,8 @@ public class ConsoleUI {
         userIds[0] = currentUser.getId();
         
         if (splitType == 1) {
-            // Equal split
-            double splitAmount = amount / numUsers;
-            for (int i = 0; i < numUsers; i++) {
-                splits[i] = splitAmount;
-            }
+            // Equal split; leftover cents go to the first shares, starting with yours
+            splits = amount.split(numUsers);
             
             // Get other users
             for (int i = 1; i < numUsers; i++) {
@@ -198,7 +218,7 @@ public class ConsoleUI {
                     System.out.print("                       Enter username " + (i + 1) + ": ");
                     String username = scanner.nextLine();
                     
-                    User user = dbManager.getUserByUsername(username);
+                    User user = userService.getUserByUsername(username);
                     if (user != null) {
                         usernames[i] = username;
                         userIds[i] = user.getId();
@@ -211,7 +231,7 @@ public class ConsoleUI {
         } else if (splitType == 2) {
             // Custom split
             // Get other users and their splits
-            double totalSplit = 0;
+            Money totalSplit = Money.ZERO;
             
             for (int i = 0; i < numUsers; i++) {
                 if (i == 0) {
@@ -222,7 +242,7 @@ public class ConsoleUI {
                         System.out.print("                       Enter username " + (i + 1) + ": ");
                         String username = scanner.nextLine();
                         
-                        User user = dbManager.getUserByUsername(username);
+                        User user = userService.getUserByUsername(username);
                         if (user != null) {
                             usernames[i] = username;
                             userIds[i] = user.getId();
@@ -235,12 +255,12 @@ public class ConsoleUI {
                     System.out.print("                       Amount for " + usernames[i] + ": $");
                 }
                 
-                splits[i] = getDoubleInput();
-                totalSplit += splits[i];
+                splits[i] = getMoneyInput();
+                totalSplit = totalSplit.plus(splits[i]);
             }
             
-            // Validate total split with a small tolerance for floating-point errors
-            if (Math.abs(totalSplit - amount) > 0.01) {
+            // Amounts are exact cents, so the total must match exactly
+            if (!totalSplit.equals(amount)) {
                 System.out.println("\n                       Error: Total split ($" + totalSplit + ") does not match expense amount ($" + amount + ")");
                 
                 // Give user options to fix the issue
@@ -252,28 +272,32 @@ public class ConsoleUI {
                 int choice = getIntInput();
                 
                 if (choice == 1) {
-                    // Adjust the split proportionally
-                    double adjustment = amount / totalSplit;
-                    for (int i = 0; i < numUsers; i++) {
-                        splits[i] = Math.round(splits[i] * adjustment * 100) / 100.0; // Round to 2 decimal places
+                    // Adjust the split proportionally, or equally if nothing was entered
+                    if (totalSplit.isZero()) {
+                        splits = amount.split(numUsers);
+                    } else {
+                        double adjustment = (double) amount.getCents() / totalSplit.getCents();
+                        for (int i = 0; i < numUsers; i++) {
+                            splits[i] = Money.ofCents(Math.round(splits[i].getCents() * adjustment));
+                        }
                     }
                     
                     // Display adjusted splits
                     System.out.println("\n                       Adjusted splits:");
-                    double adjustedTotal = 0;
+                    Money adjustedTotal = Money.ZERO;
                     for (int i = 0; i < numUsers; i++) {
-                        System.out.printf("                       %s: $%.2f\n", usernames[i], splits[i]);
-                        adjustedTotal += splits[i];
+                        System.out.printf("                       %s: $%s\n", usernames[i], splits[i]);
+                        adjustedTotal = adjustedTotal.plus(splits[i]);
                     }
                     
                     // Handle any remaining cents due to rounding
-                    if (Math.abs(adjustedTotal - amount) > 0.01) {
-                        double diff = amount - adjustedTotal;
-                        splits[0] += diff;
-                        System.out.printf("                       Added $%.2f to %s's share to fix rounding\n", diff, usernames[0]);
+                    if (!adjustedTotal.equals(amount)) {
+                        Money diff = amount.minus(adjustedTotal);
+                        splits[0] = splits[0].plus(diff);
+                        System.out.printf("                       Added $%s to %s's share to fix rounding\n", diff, usernames[0]);
                     }
                     
-                    System.out.printf("                       Total: $%.2f\n", amount);
+                    System.out.printf("                       Total: $%s\n", amount);
                 } else if (choice == 2) {
                     addExpense(); // Restart expense entry
                     return;
@@ -289,32 +313,24 @@ public class ConsoleUI {
             return;
         }
         
-        // Now create the expense in the database
-        int expenseId = dbManager.addExpense(description, amount, currentUser.getId());
-        if (expenseId == -1) {
-            System.out.println("                       Failed to create expense. Please try again.");
-            sleep(2);
-            return;
-        }
-        
-        // Save splits to database
-        boolean allSplitsAdded = true;
+        // Build the expense with all of its splits
+        Expense expense = new Expense();
+        expense.setDescription(description);
+        expense.setAmount(amount);
+        expense.setCreatedById(currentUser.getId());
         for (int i = 0; i < numUsers; i++) {
             // Skip adding a split for the expense creator for equal splits
             if (splitType == 1 && i == 0) {
                 continue;
             }
-            
-            boolean success = dbManager.addSplit(expenseId, userIds[i], splits[i]);
-            if (!success) {
-                allSplitsAdded = false;
-            }
+            expense.addSplit(new Split(userIds[i], usernames[i], splits[i]));
         }
         
-        if (allSplitsAdded) {
+        // Save the expense and its splits in a single transaction
+        if (expenseService.addExpenseWithSplits(expense) != null) {
             System.out.println("                       Expense added successfully!");
         } else {
-            System.out.println("                       Some splits could not be added. Please check your expense history.");
+            System.out.println("                       Failed to create expense. Please try again.");
         }
         sleep(2);
     }
@@ -324,7 +340,7 @@ public class ConsoleUI {
         displayMainTitle();
         displaySubtitle("BALANCES");
         
-        Map<String, Double> balances = dbManager.getUserBalances(currentUser.getId());
+        BalanceMap balances = balanceService.getUserBalances(currentUser.getId());
         
         if (balances.isEmpty()) {
             System.out.println("                       You don't have any outstanding balances.");
@@ -335,14 +351,13 @@ public class ConsoleUI {
         
         System.out.println("                       Your current balances:");
         System.out.println();
-        for (Map.Entry<String, Double> entry : balances.entrySet()) {
-            String username = entry.getKey();
-            double amount = entry.getValue();
+        for (int userId : balances.getUserIds()) {
+            Money amount = balances.getAmount(userId);
             
-            if (amount > 0) {
-                System.out.printf("                       %s owes you $%.2f\n", username, amount);
-            } else if (amount < 0) {
-                System.out.printf("                       You owe %s $%.2f\n", username, Math.abs(amount));
+            if (amount.isPositive()) {
+                System.out.printf("                       %s owes you $%s\n", usernameOf(userId), amount);
+            } else if (amount.isNegative()) {
+                System.out.printf("                       You owe %s $%s\n", usernameOf(userId), amount.abs());
             }
         }
         
@@ -355,7 +370,7 @@ public class ConsoleUI {
         displayMainTitle();
         displaySubtitle("SETTLE DEBTS");
         
-        Map<String, Double> balances = dbManager.getUserBalances(currentUser.getId());
+        BalanceMap balances = balanceService.getUserBalances(currentUser.getId());
         
         if (balances.isEmpty()) {
             System.out.println("                       You don't have any outstanding balances to settle.");
@@ -368,18 +383,19 @@ public class ConsoleUI {
         System.out.println("                       Your debts:");
         System.out.println();
         int index = 1;
+        int[] creditorIds = new int[balances.size()];
         String[] usernames = new String[balances.size()];
-        double[] amounts = new double[balances.size()];
+        Money[] amounts = new Money[balances.size()];
         int count = 0;
         
-        for (Map.Entry<String, Double> entry : balances.entrySet()) {
-            String username = entry.getKey();
-            double amount = entry.getValue();
+        for (int userId : balances.getUserIds()) {
+            Money amount = balances.getAmount(userId);
             
-            if (amount < 0) {
-                usernames[count] = username;
-                amounts[count] = Math.abs(amount);
-                System.out.printf("                       %d. You owe %s $%.2f\n", index++, username, Math.abs(amount));
+            if (amount.isNegative()) {
+                creditorIds[count] = userId;
+                usernames[count] = usernameOf(userId);
+                amounts[count] = amount.abs();
+                System.out.printf("                       %d. You owe %s $%s\n", index++, usernames[count], amount.abs());
                 hasDebts = true;
                 count++;
             }
@@ -402,15 +418,14 @@ public class ConsoleUI {
         }
         
         String selectedUsername = usernames[choice - 1];
-        double selectedAmount = amounts[choice - 1];
+        Money selectedAmount = amounts[choice - 1];
         
-        System.out.printf("                       You are about to settle $%.2f with %s\n", selectedAmount, selectedUsername);
+        System.out.printf("                       You are about to settle $%s with %s\n", selectedAmount, selectedUsername);
         System.out.print("                       Confirm? (Y/N): ");
         String confirm = scanner.nextLine();
         
         if (confirm.equalsIgnoreCase("Y")) {
-            User receiver = dbManager.getUserByUsername(selectedUsername);
-            boolean success = dbManager.settleDebt(currentUser.getId(), receiver.getId(), selectedAmount);
+            boolean success = balanceService.settleDebt(currentUser.getId(), creditorIds[choice - 1], selectedAmount);
             
             if (success) {
                 System.out.println("                       Debt settled successfully!");
@@ -424,12 +439,100 @@ public class ConsoleUI {
         }
     }
 
+    private void simplifyGroupDebts() {
+        clearScreen();
+        displayMainTitle();
+        displaySubtitle("SIMPLIFY GROUP DEBTS");
+        
+        System.out.print("                       Number of users in the group (including you): ");
+        int numUsers = getIntInput();
+        
+        if (numUsers < 2) {
+            System.out.println("                       At least 2 users are required to simplify debts.");
+            sleep(2);
+            return;
+        }
+        
+        String[] usernames = new String[numUsers];
+        int[] userIds = new int[numUsers];
+        usernames[0] = currentUser.getUsername();
+        userIds[0] = currentUser.getId();
+        
+        for (int i = 1; i < numUsers; i++) {
+            boolean validUser = false;
+            while (!validUser) {
+                System.out.print("                       Enter username " + (i + 1) + ": ");
+                String username = scanner.nextLine();
+                
+                User user = userService.getUserByUsername(username);
+                if (user != null) {
+                    usernames[i] = username;
+                    userIds[i] = user.getId();
+                    validUser = true;
+                } else {
+                    System.out.println("                       User not found. Please try again.");
+                }
+            }
+        }
+        
+        SettlementPlan plan = balanceService.simplifyDebts(userIds);
+        
+        if (plan.isEmpty()) {
+            System.out.println("                       Nobody in this group owes anything.");
+            sleep(2);
+            return;
+        }
+        
+        System.out.println();
+        System.out.println("                       Suggested transfers:");
+        System.out.println();
+        for (int i = 0; i < plan.size(); i++) {
+            System.out.printf("                       %d. %s pays %s $%s\n", i + 1,
+                usernameFor(plan.getPayerId(i), userIds, usernames),
+                usernameFor(plan.getReceiverId(i), userIds, usernames),
+                plan.getAmount(i));
+        }
+        
+        System.out.println();
+        System.out.print("                       Record these transfers as settlements? (Y/N): ");
+        String confirm = scanner.nextLine();
+        
+        if (confirm.equalsIgnoreCase("Y")) {
+            boolean success = balanceService.executeSettlementPlan(userIds, plan);
+            
+            if (success) {
+                System.out.println("                       Group debts settled successfully!");
+            } else {
+                System.out.println("                       Failed to settle group debts. Please try again.");
+            }
+            sleep(2);
+        } else {
+            System.out.println("                       Operation cancelled.");
+            sleep(1);
+        }
+    }
+
+    private String usernameFor(int userId, int[] userIds, String[] usernames) {
+        for (int i = 0; i < userIds.length; i++) {
+            if (userIds[i] == userId) {
+                return usernames[i];
+            }
+        }
+        return "user #" + userId;
+    }
+
+    // Balances only carry counterparty ids; resolve names when displaying them
+    private String usernameOf(int userId) {
+        User user = userService.getUserById(userId);
+        return user != null ? user.getUsername() : "user #" + userId;
+    }
+
     private void viewExpenseHistory() {
         clearScreen();
         displayMainTitle();
         displaySubtitle("EXPENSE HISTORY");
         
-        List<Expense> expenses = dbManager.getUserExpenses(currentUser.getId());
+        List<Expense> expenses = expenseService.getUserExpenses(currentUser.getId());
         
         if (expenses.isEmpty()) {
             System.out.println("                       You don't have any expenses yet.");
@@ -440,13 +543,13 @@ public class ConsoleUI {
         
         for (Expense expense : expenses) {
             System.out.println("\n                       Expense: " + expense.getDescription());
-            System.out.printf("                       Amount: $%.2f\n", expense.getAmount());
+            System.out.printf("                       Amount: $%s\n", expense.getAmount());
             System.out.println("                       Date: " + expense.getCreatedAt());
             System.out.println("                       Created by: " + expense.getCreatedBy());
             
             System.out.println("                       Splits:");
             for (Split split : expense.getSplits()) {
-                System.out.printf("                       - %s: $%.2f (%s)\n", 
+                System.out.printf("                       - %s: $%s (%s)\n", 
                     split.getUsername(), 
                     split.getAmount(), 
                     split.isPaid() ? "Paid" : "Unpaid");
@@ -458,6 +561,41 @@ public class ConsoleUI {
         scanner.nextLine();
     }
 
+    private void showDiagnostics() {
+        clearScreen();
+        displayMainTitle();
+        displaySubtitle("DIAGNOSTICS");
+
+        System.out.printf("  %-40s %8s %6s %8s %9s %9s %9s%n",
+            "Operation", "Calls", "Errors", "Rows", "p50 ms", "p99 ms", "Max ms");
+        for (OperationStats stats : OperationMetrics.all()) {
+            LatencyHistogram latency = stats.getLatency();
+            if (latency.getTotalCount() == 0) {
+                continue;
+            }
+            System.out.printf("  %-40s %8d %6d %8d %9.3f %9.3f %9.3f%n",
+                stats.getComponent() + "." + stats.getOperation(), latency.getTotalCount(),
+                stats.getErrors(), stats.getRowsReturned(), latency.getValueAtPercentile(50) / 1e6,
+                latency.getValueAtPercentile(99) / 1e6, latency.getMaxValue() / 1e6);
+        }
+
+        SlowQueryLog slowQueries = SlowQueryLog.getInstance();
+        if (slowQueries != null) {
+            System.out.printf("%n  Slow statements (over %.1f ms, logged to %s)%n",
+                slowQueries.getThresholdMillis(), slowQueries.getFile());
+            List<SlowQueryLog.Shape> shapes = slowQueries.getShapes();
+            for (SlowQueryLog.Shape shape : shapes.subList(0, Math.min(10, shapes.size()))) {
+                String sql = shape.getSql();
+                System.out.printf("  %-60s %8d %11.1f ms total %9.1f ms max%n",
+                    sql.length() > 60 ? sql.substring(0, 57) + "..." : sql,
+                    shape.getCount(), shape.getTotalMillis(), shape.getMaxMillis());
+            }
+        }
+
+        System.out.println("\n                       Press Enter to continue...");
+        scanner.nextLine();
+    }
+
     private void logout() {
         currentUser = null;
         System.out.println("Logged out successfully.");
@@ -471,7 +609,7 @@ public class ConsoleUI {
         System.out.println();
         System.out.println("           Thank you for using Expense Splitter. Goodbye!");
         System.out.println();
-        dbManager.closeConnection();
+        storage.close();
         sleep(2);
         System.exit(0);
     }
@@ -487,13 +625,13 @@ public class ConsoleUI {
         }
     }
 
-    private double getDoubleInput() {
+    private Money getMoneyInput() {
         while (true) {
             try {
                 String input = scanner.nextLine();
-                return Double.parseDouble(input);
-            } catch (NumberFormatException e) {
-                System.out.print("Please enter a valid number: ");
+                return Money.parse(input);
+            } catch (NumberFormatException | ArithmeticException e) {
+                System.out.print("Please enter a valid amount: ");
             }
         }
     }
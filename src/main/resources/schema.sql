@@ -37,4 +37,16 @@ CREATE TABLE IF NOT EXISTS settlements (
     settled_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     FOREIGN KEY (payer_id) REFERENCES users(id),
     FOREIGN KEY (receiver_id) REFERENCES users(id)
-);
\ No newline at end of file
+);
+
+-- Balance ledger: outstanding unpaid amount each debtor owes each creditor
+CREATE TABLE IF NOT EXISTS balance_ledger (
+    debtor_id INTEGER NOT NULL,
+    creditor_id INTEGER NOT NULL,
+    net_amount REAL NOT NULL DEFAULT 0,
+    PRIMARY KEY (debtor_id, creditor_id),
+    FOREIGN KEY (debtor_id) REFERENCES users(id),
+    FOREIGN KEY (creditor_id) REFERENCES users(id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_balance_ledger_creditor ON balance_ledger (creditor_id);
@@ -0,0 +1,170 @@
+package com.expensesplitter.db;
+
+import com.expensesplitter.model.BalanceMap;
+import com.expensesplitter.model.Expense;
+import com.expensesplitter.model.Money;
+import com.expensesplitter.model.Split;
+import com.expensesplitter.service.BalanceService;
+import com.expensesplitter.service.ExpenseService;
+import com.expensesplitter.tools.DataGenerator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Mixes writes through two services on separate connections and a
+ * WritePipeline with cached balance reads, and compares every read with the
+ * ledger read directly, bypassing the cache.
+ */
+public class BalanceCacheTest {
+    private static final int USERS = 12;
+    private static final int STEPS = 2_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<AutoCloseable> resources = new ArrayList<>();
+    private final List<Integer> expenseIds = new ArrayList<>();
+    private final Random random = new Random(42);
+    private Connection oracle;
+    private ExpenseService[] expenseServices;
+    private BalanceService[] balanceServices;
+    private WritePipeline pipeline;
+
+    @Before
+    public void setUp() throws Exception {
+        String url = "jdbc:sqlite:" + folder.newFile("cache.db");
+        new DataGenerator(USERS, 100, 3, 42).seed(url);
+
+        oracle = open(url);
+        SqliteStorage first = new SqliteStorage(open(url));
+        SqliteStorage second = new SqliteStorage(open(url));
+        resources.add(first);
+        resources.add(second);
+        expenseServices = new ExpenseService[] {new ExpenseService(first), new ExpenseService(second)};
+        balanceServices = new BalanceService[] {new BalanceService(first), new BalanceService(second)};
+        pipeline = new WritePipeline(open(url));
+        resources.add(0, pipeline);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (AutoCloseable resource : resources) {
+            resource.close();
+        }
+    }
+
+    @Test
+    public void cachedReadsMatchTheLedger() throws Exception {
+        for (int step = 0; step < STEPS; step++) {
+            write(random.nextInt(3));
+            for (int read = 0; read < 3; read++) {
+                int userId = user();
+                BalanceMap cached = balanceServices[random.nextInt(2)].getUserBalances(userId);
+                assertEquals("Balances of user " + userId + " after step " + step,
+                    BalanceLedger.getBalances(oracle, userId), cached);
+            }
+        }
+    }
+
+    @Test
+    public void readOverlappingAnInvalidationIsNotCached() throws SQLException {
+        BalanceCache cache = new BalanceCache(100);
+        BalanceMap stale = new BalanceMap();
+        stale.add(2, 100);
+        assertSame(stale, cache.get(1, userId -> {
+            cache.invalidate(userId);
+            return stale;
+        }));
+
+        BalanceMap fresh = new BalanceMap();
+        assertSame(fresh, cache.get(1, userId -> fresh));
+        assertSame(fresh, cache.get(1, userId -> stale));
+        assertEquals(1, cache.getHits());
+    }
+
+    /**
+     * @param path 0 and 1 write through a service, 2 through the pipeline
+     */
+    private void write(int path) throws Exception {
+        switch (random.nextInt(4)) {
+            case 0:
+            case 1: {
+                Expense expense = newExpense();
+                Expense added = path < 2
+                    ? expenseServices[path].addExpenseWithSplits(expense)
+                    : pipeline.addExpenseWithSplits(expense).get();
+                assertNotNull(added);
+                expenseIds.add(added.getId());
+                break;
+            }
+            case 2: {
+                int payerId = user();
+                int receiverId = user();
+                Money amount = Money.ofCents(1 + random.nextInt(1_000));
+                assertTrue(path < 2
+                    ? balanceServices[path].settleDebt(payerId, receiverId, amount)
+                    : pipeline.settleDebt(payerId, receiverId, amount).get());
+                break;
+            }
+            default: {
+                if (expenseIds.isEmpty()) {
+                    return;
+                }
+                int expenseId = expenseIds.remove(random.nextInt(expenseIds.size()));
+                if (random.nextBoolean()) {
+                    Money amount = Money.ofCents(1 + random.nextInt(1_000));
+                    int userId = user();
+                    expenseIds.add(expenseId);
+                    assertTrue(path < 2
+                        ? expenseServices[path].addSplit(expenseId, userId, amount)
+                        : pipeline.addSplit(expenseId, userId, amount).get());
+                } else {
+                    assertTrue(path < 2
+                        ? expenseServices[path].deleteExpense(expenseId)
+                        : pipeline.deleteExpense(expenseId).get());
+                }
+                break;
+            }
+        }
+    }
+
+    private Expense newExpense() {
+        int parts = 1 + random.nextInt(4);
+        Money[] shares = Money.ofCents(100 + random.nextInt(10_000)).split(parts);
+        Expense expense = new Expense();
+        expense.setDescription("Cache test");
+        expense.setCreatedById(user());
+        Money total = Money.ZERO;
+        for (Money share : shares) {
+            expense.addSplit(new Split(user(), null, share));
+            total = total.plus(share);
+        }
+        expense.setAmount(total);
+        return expense;
+    }
+
+    private int user() {
+        return 1 + random.nextInt(USERS);
+    }
+
+    private Connection open(String url) throws SQLException {
+        Connection connection = DriverManager.getConnection(url);
+        resources.add(connection);
+        return connection;
+    }
+}
@@ -0,0 +1,153 @@
+package com.expensesplitter.db;
+
+import com.expensesplitter.model.Expense;
+import com.expensesplitter.model.Split;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * A failed write leaves nothing behind for the next one, and reads are served
+ * by the read pool, side by side, while a write transaction holds the writer.
+ */
+public class ConnectionManagerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SqliteStorage storage;
+    private ConnectionManager connections;
+
+    @Before
+    public void setUp() throws Exception {
+        connections = ConnectionManager.open("jdbc:sqlite:" + folder.newFile("manager.db"), 2);
+        connections.withWriter(SchemaMigrator::migrate);
+        storage = new SqliteStorage(connections);
+        storage.getUsers().insert("alice", "secret", null);
+        storage.getUsers().insert("bob", "secret", null);
+    }
+
+    @After
+    public void tearDown() {
+        storage.close();
+    }
+
+    @Test
+    public void uncheckedFailureRollsTheWriteBack() throws Exception {
+        Expense expense = new Expense();
+        expense.setDescription("Half written");
+        expense.setCreatedById(1);
+        expense.addSplit(new Split(2, null, null));
+        try {
+            storage.getExpenses().insert(expense);
+            fail("A split without an amount was inserted");
+        } catch (RuntimeException expected) {
+            // The expense row was written before the split failed
+        }
+        assertTrue(connections.getWriteConnection().getAutoCommit());
+
+        // The next write must not commit what the failed one left behind
+        storage.getUsers().insert("carol", "secret", null);
+        assertEquals(0, count("expenses"));
+        assertEquals(3, count("users"));
+    }
+
+    @Test
+    public void errorInATaskRollsTheWriteBack() throws Exception {
+        try {
+            connections.write((connection, events) -> {
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute("INSERT INTO users (username, password) VALUES ('dave', 'secret')");
+                }
+                throw new AssertionError("Task failed");
+            });
+            fail("The task's error was swallowed");
+        } catch (AssertionError expected) {
+            assertEquals("Task failed", expected.getMessage());
+        }
+        connections.write((connection, events) -> null);
+        assertEquals(2, count("users"));
+    }
+
+    @Test
+    public void readsUseThePoolWhileAWriteHoldsTheWriter() throws Exception {
+        CountDownLatch written = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Future<Integer> write = executor.submit(() -> connections.write((connection, events) -> {
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute("INSERT INTO users (username, password) VALUES ('carol', 'secret')");
+                }
+                // A read inside the write runs on the writer and sees its changes
+                int inside = count("users");
+                written.countDown();
+                try {
+                    assertTrue(release.await(10, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    throw new SQLException("Interrupted while holding the writer", e);
+                }
+                return inside;
+            }));
+            assertTrue(written.await(10, TimeUnit.SECONDS));
+
+            // Two reads that only finish once both hold a pooled connection at the same time
+            CyclicBarrier together = new CyclicBarrier(2);
+            List<Future<Integer>> reads = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                reads.add(executor.submit(() -> connections.read(connection -> {
+                    assertTrue(connections.getReadPool().getConnections().contains(connection));
+                    try {
+                        together.await(10, TimeUnit.SECONDS);
+                    } catch (Exception e) {
+                        throw new SQLException("Reads did not run side by side", e);
+                    }
+                    return countOn(connection, "users");
+                })));
+            }
+            for (Future<Integer> read : reads) {
+                // The uncommitted user is not visible outside the write
+                assertEquals(2, (int) read.get(10, TimeUnit.SECONDS));
+            }
+            assertFalse(write.isDone());
+
+            release.countDown();
+            assertEquals(3, (int) write.get(10, TimeUnit.SECONDS));
+            assertEquals(3, count("users"));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private int count(String table) throws SQLException {
+        return connections.read(connection -> countOn(connection, table));
+    }
+
+    private static int countOn(Connection connection, String table) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.expensesplitter.db;
+
+import com.expensesplitter.model.Expense;
+import com.expensesplitter.model.Money;
+import com.expensesplitter.model.Split;
+import com.expensesplitter.service.ExpenseService;
+import com.expensesplitter.tools.RoundTripCounter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Expense history loads the splits of every listed expense with one query, so
+ * the number of statements does not depend on how many expenses a user has.
+ */
+public class ExpenseHistoryTest {
+    private static final int USERS = 4;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final RoundTripCounter counter = new RoundTripCounter();
+    private SqliteStorage storage;
+    private ExpenseService expenseService;
+
+    @Before
+    public void setUp() throws Exception {
+        String url = "jdbc:sqlite:" + folder.newFile("history.db");
+        SqliteStorage.open(url).close();
+        Connection connection = DriverManager.getConnection(url);
+        storage = new SqliteStorage(counter.wrap(connection));
+        for (int i = 1; i <= USERS; i++) {
+            storage.getUsers().insert("user" + i, "secret", null);
+        }
+        expenseService = new ExpenseService(storage);
+    }
+
+    @After
+    public void tearDown() {
+        storage.close();
+    }
+
+    @Test
+    public void historyTakesTwoStatementsAtAnySize() {
+        // User 2 creates one expense, user 1 fifty
+        addExpenses(2, 1);
+        addExpenses(1, 50);
+
+        counter.reset();
+        assertEquals(1, expenseService.getUserExpenses(2).size());
+        long one = counter.getStatements();
+
+        counter.reset();
+        List<Expense> fifty = expenseService.getUserExpenses(1);
+        assertEquals(50, fifty.size());
+        assertEquals(2, one);
+        assertEquals(one, counter.getStatements());
+
+        for (Expense expense : fifty) {
+            assertSplits(expense);
+        }
+    }
+
+    @Test
+    public void expenseByIdLoadsItsSplits() {
+        int expenseId = addExpenses(3, 1);
+
+        counter.reset();
+        Expense expense = expenseService.getExpenseById(expenseId);
+        assertNotNull(expense);
+        assertEquals(2, counter.getStatements());
+        assertSplits(expense);
+    }
+
+    /**
+     * Adds expenses split between every other user, in shares of 1, 2, ... cents
+     * @return The id of the last one
+     */
+    private int addExpenses(int creatorId, int count) {
+        int expenseId = 0;
+        for (int i = 0; i < count; i++) {
+            Expense expense = new Expense();
+            expense.setDescription("History " + i);
+            expense.setCreatedById(creatorId);
+            long total = 0;
+            for (int userId = 1; userId <= USERS; userId++) {
+                if (userId != creatorId) {
+                    expense.addSplit(new Split(userId, null, Money.ofCents(userId)));
+                    total += userId;
+                }
+            }
+            expense.setAmount(Money.ofCents(total));
+            Expense added = expenseService.addExpenseWithSplits(expense);
+            assertNotNull(added);
+            expenseId = added.getId();
+        }
+        return expenseId;
+    }
+
+    private static void assertSplits(Expense expense) {
+        List<Split> splits = expense.getSplits();
+        assertEquals("Splits of expense " + expense.getId(), USERS - 1, splits.size());
+        for (Split split : splits) {
+            assertEquals(Money.ofCents(split.getUserId()), split.getAmount());
+        }
+    }
+}
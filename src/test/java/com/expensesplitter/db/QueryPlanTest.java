@@ -0,0 +1,160 @@
+package com.expensesplitter.db;
+
+import com.expensesplitter.model.BalanceMap;
+import com.expensesplitter.model.Money;
+import com.expensesplitter.model.SettlementCursor;
+import com.expensesplitter.service.BalanceService;
+import com.expensesplitter.service.ExpenseService;
+import com.expensesplitter.tools.DataGenerator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs EXPLAIN QUERY PLAN on every statement the hot service calls prepare and
+ * fails if any of them scans splits, expenses or settlements instead of
+ * searching an index.
+ */
+public class QueryPlanTest {
+    private static final Pattern SCANNED_TABLE = Pattern.compile(
+        "\\b(splits|expenses|settlements)\\b(?:\\s+AS)?\\s+(\\w+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern SCAN = Pattern.compile("^SCAN (?:TABLE )?(\\w+)");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Set<String> prepared = new LinkedHashSet<>();
+    private Connection connection;
+    private SqliteStorage storage;
+    private ExpenseService expenseService;
+    private BalanceService balanceService;
+
+    @Before
+    public void setUp() throws Exception {
+        String url = "jdbc:sqlite:" + folder.newFile("plans.db");
+        new DataGenerator(20, 500, 4, 42).seed(url);
+        connection = DriverManager.getConnection(url);
+        storage = new SqliteStorage(recording(connection));
+        expenseService = new ExpenseService(storage);
+        balanceService = new BalanceService(storage);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        storage.close();
+    }
+
+    @Test
+    public void balancesSearchTheLedger() throws SQLException {
+        balanceService.getUserBalances(1);
+        assertNoScans();
+    }
+
+    @Test
+    public void expensesByCreatorSearchTheIndexes() throws SQLException {
+        assertFalse(expenseService.getUserExpenses(1).isEmpty());
+        assertNoScans();
+    }
+
+    @Test
+    public void settleUsesThePartialIndexOfUnpaidSplits() throws SQLException {
+        int creditorId = creditorOf(1);
+        prepared.clear();
+        assertTrue(balanceService.settleDebt(1, creditorId, Money.ofCents(1)));
+        List<String> plans = assertNoScans();
+        assertTrue("idx_splits_user_unpaid unused: " + plans,
+            plans.stream().anyMatch(plan -> plan.contains("idx_splits_user_unpaid")));
+    }
+
+    @Test
+    public void settlementHistoryPagesSearchTheIndexes() throws SQLException {
+        for (int i = 0; i < 3; i++) {
+            assertTrue(balanceService.settleDebt(1, 2, Money.ofCents(1)));
+        }
+        prepared.clear();
+        SettlementCursor cursor = balanceService.getSettlementHistory(1, null, 2).getNextCursor();
+        balanceService.getSettlementHistory(1, cursor, 2);
+        assertNoScans();
+    }
+
+    private int creditorOf(int userId) throws SQLException {
+        BalanceMap balances = storage.getSplits().getBalances(userId);
+        for (int counterpartyId : balances.getUserIds()) {
+            if (balances.getAmountInCents(counterpartyId) < 0) {
+                return counterpartyId;
+            }
+        }
+        fail("User " + userId + " owes nobody in the seeded data");
+        return 0;
+    }
+
+    /**
+     * @return Every plan line of the prepared statements, prefixed with its SQL
+     */
+    private List<String> assertNoScans() throws SQLException {
+        assertFalse("No statements were prepared", prepared.isEmpty());
+        List<String> plans = new ArrayList<>();
+        for (String sql : prepared) {
+            if (!sql.trim().matches("(?is)(SELECT|UPDATE|DELETE|INSERT|WITH)\\b.*")) {
+                continue;
+            }
+            Set<String> names = new LinkedHashSet<>();
+            Matcher tables = SCANNED_TABLE.matcher(sql);
+            while (tables.find()) {
+                names.add(tables.group(1).toLowerCase());
+                names.add(tables.group(2).toLowerCase());
+            }
+            try (PreparedStatement explain = connection.prepareStatement("EXPLAIN QUERY PLAN " + sql);
+                 ResultSet rs = explain.executeQuery()) {
+                while (rs.next()) {
+                    String detail = rs.getString("detail");
+                    plans.add(sql + " -> " + detail);
+                    Matcher scan = SCAN.matcher(detail);
+                    if (scan.find() && names.contains(scan.group(1).toLowerCase())) {
+                        fail("Full scan in the plan of " + sql + ": " + detail);
+                    }
+                }
+            }
+        }
+        return plans;
+    }
+
+    /**
+     * @return A connection that records the SQL of every prepared statement
+     */
+    private Connection recording(Connection target) {
+        return (Connection) Proxy.newProxyInstance(
+            QueryPlanTest.class.getClassLoader(),
+            new Class<?>[] {Connection.class},
+            (proxy, method, args) -> {
+                if (method.getName().equals("prepareStatement")) {
+                    prepared.add((String) args[0]);
+                }
+                try {
+                    return method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+    }
+}
@@ -0,0 +1,90 @@
+package com.expensesplitter.db;
+
+import com.expensesplitter.model.BalanceMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Upgrades a database created before schema versioning, with REAL amounts
+ * written by double arithmetic, and checks the version 3 conversion to cents.
+ */
+public class SchemaMigratorTest {
+    private Connection connection;
+
+    @Before
+    public void setUp() throws SQLException, IOException {
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        try (InputStream in = SchemaMigrator.class.getResourceAsStream("/schema.sql");
+             Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            for (int id = 1; id <= 3; id++) {
+                stmt.executeUpdate("INSERT INTO users (id, username, password) VALUES (" + id + ", 'user" + id + "', 'pw')");
+            }
+            // 100 split three ways, and amounts that are not exact in binary
+            stmt.executeUpdate("INSERT INTO expenses (id, description, amount, created_by) VALUES (1, 'Dinner', 100.0, 1)");
+            stmt.executeUpdate("INSERT INTO splits (expense_id, user_id, amount) VALUES (1, 2, 100.0 / 3), (1, 3, 100.0 / 3)");
+            stmt.executeUpdate("INSERT INTO expenses (id, description, amount, created_by) VALUES (2, 'Taxi', 19.99, 2)");
+            stmt.executeUpdate("INSERT INTO splits (expense_id, user_id, amount) VALUES (2, 1, 19.99)");
+            stmt.executeUpdate("INSERT INTO settlements (payer_id, receiver_id, amount) VALUES (3, 1, 0.1 + 0.2)");
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    public void legacyDatabaseIsMigratedToTheLatestVersion() throws SQLException {
+        assertEquals(0, SchemaMigrator.currentVersion(connection));
+        assertEquals(SchemaMigrator.LATEST_VERSION, SchemaMigrator.migrate(connection));
+        assertEquals(SchemaMigrator.LATEST_VERSION, SchemaMigrator.currentVersion(connection));
+        assertEquals(0, SchemaMigrator.migrate(connection));
+    }
+
+    @Test
+    public void amountsAreRoundedToTheNearestCent() throws SQLException {
+        SchemaMigrator.migrate(connection);
+
+        assertEquals("10000,1999", column("SELECT amount FROM expenses ORDER BY id"));
+        assertEquals("3333,3333,1999", column("SELECT amount FROM splits ORDER BY id"));
+        assertEquals("30", column("SELECT amount FROM settlements"));
+        assertEquals("integer", column("SELECT DISTINCT typeof(amount) FROM splits"));
+    }
+
+    @Test
+    public void ledgerIsRegeneratedInCents() throws SQLException {
+        SchemaMigrator.migrate(connection);
+
+        assertEquals("integer", column("SELECT DISTINCT typeof(net_amount) FROM balance_ledger"));
+        BalanceMap balances = BalanceLedger.getBalances(connection, 1);
+        assertEquals(3333 - 1999, balances.getAmountInCents(2));
+        assertEquals(3333, balances.getAmountInCents(3));
+    }
+
+    /**
+     * @return The first column of every row, comma separated
+     */
+    private String column(String sql) throws SQLException {
+        StringBuilder values = new StringBuilder();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                values.append(values.length() > 0 ? "," : "").append(rs.getString(1));
+            }
+        }
+        return values.toString();
+    }
+}
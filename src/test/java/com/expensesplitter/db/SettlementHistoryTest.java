@@ -0,0 +1,154 @@
+package com.expensesplitter.db;
+
+import com.expensesplitter.model.SettlementCursor;
+import com.expensesplitter.model.SettlementPage;
+import com.expensesplitter.model.Transaction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Keyset pagination of the settlement history at its boundaries: ties on
+ * settled_at, pages that end exactly on the last row, and rows added ahead of
+ * a cursor while paging.
+ */
+public class SettlementHistoryTest {
+    private static final int USER_ID = 1;
+
+    private Connection connection;
+
+    @Before
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        SchemaMigrator.migrate(connection);
+        try (Statement stmt = connection.createStatement()) {
+            for (int id = 1; id <= 3; id++) {
+                stmt.executeUpdate("INSERT INTO users (id, username, password) VALUES (" + id + ", 'user" + id + "', 'pw')");
+            }
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    public void emptyHistoryHasOneEmptyPage() throws SQLException {
+        SettlementPage page = SettlementHistory.page(connection, USER_ID, null, 10);
+        assertTrue(page.getTransactions().isEmpty());
+        assertFalse(page.hasMore());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void pageSizeMustBePositive() throws SQLException {
+        SettlementHistory.page(connection, USER_ID, null, 0);
+    }
+
+    @Test
+    public void lastFullPageHasNoCursor() throws SQLException {
+        for (int i = 0; i < 6; i++) {
+            settle(USER_ID, 2, "2024-01-0" + (i + 1) + " 10:00:00");
+        }
+        SettlementPage first = SettlementHistory.page(connection, USER_ID, null, 3);
+        assertEquals(3, first.getTransactions().size());
+        assertTrue(first.hasMore());
+
+        SettlementPage second = SettlementHistory.page(connection, USER_ID, first.getNextCursor(), 3);
+        assertEquals(3, second.getTransactions().size());
+        assertNull(second.getNextCursor());
+    }
+
+    @Test
+    public void tiesOnSettledAtAreOrderedById() throws SQLException {
+        // Settlements within the same second share settled_at; paging must neither repeat nor skip them
+        for (int i = 0; i < 7; i++) {
+            settle(i % 2 == 0 ? USER_ID : 2, i % 2 == 0 ? 3 : USER_ID, "2024-02-01 12:00:00");
+        }
+        settle(2, 3, "2024-02-01 12:00:00");
+        settle(USER_ID, USER_ID, "2024-02-01 12:00:00");
+
+        List<Transaction> expected = new ArrayList<>();
+        SettlementHistory.forEach(connection, USER_ID, expected::add);
+        assertEquals(8, expected.size());
+        for (int i = 1; i < expected.size(); i++) {
+            assertTrue(expected.get(i - 1).getId() > expected.get(i).getId());
+        }
+
+        for (int limit = 1; limit <= 9; limit++) {
+            assertEquals("Page size " + limit, ids(expected), ids(allPages(limit)));
+        }
+    }
+
+    @Test
+    public void rowsAddedAheadOfTheCursorDoNotShiftLaterPages() throws SQLException {
+        for (int day = 1; day <= 9; day++) {
+            settle(USER_ID, 2, "2024-03-0" + day + " 08:00:00");
+        }
+        SettlementPage first = SettlementHistory.page(connection, USER_ID, null, 4);
+        assertEquals("2024-03-06 08:00:00", first.getNextCursor().getSettledAt());
+
+        settle(USER_ID, 3, "2024-03-10 08:00:00");
+        settle(2, USER_ID, "2024-03-11 08:00:00");
+
+        SettlementPage second = SettlementHistory.page(connection, USER_ID, first.getNextCursor(), 4);
+        assertEquals("2024-03-05 08:00:00", second.getTransactions().get(0).getSettledAt());
+        assertEquals("2024-03-02 08:00:00", second.getTransactions().get(3).getSettledAt());
+        SettlementPage third = SettlementHistory.page(connection, USER_ID, second.getNextCursor(), 4);
+        assertEquals(1, third.getTransactions().size());
+        assertFalse(third.hasMore());
+    }
+
+    @Test
+    public void otherUsersSettlementsAreExcluded() throws SQLException {
+        settle(2, 3, "2024-04-01 09:00:00");
+        settle(3, USER_ID, "2024-04-02 09:00:00");
+        List<Transaction> page = SettlementHistory.page(connection, USER_ID, null, 10).getTransactions();
+        assertEquals(1, page.size());
+        assertEquals(3, page.get(0).getPayerId());
+        assertEquals("user3", page.get(0).getPayerName());
+    }
+
+    private List<Transaction> allPages(int limit) throws SQLException {
+        List<Transaction> transactions = new ArrayList<>();
+        SettlementCursor cursor = null;
+        do {
+            SettlementPage page = SettlementHistory.page(connection, USER_ID, cursor, limit);
+            assertTrue(page.getTransactions().size() <= limit);
+            transactions.addAll(page.getTransactions());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return transactions;
+    }
+
+    private static List<Integer> ids(List<Transaction> transactions) {
+        List<Integer> ids = new ArrayList<>();
+        for (Transaction transaction : transactions) {
+            ids.add(transaction.getId());
+        }
+        return ids;
+    }
+
+    private void settle(int payerId, int receiverId, String settledAt) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "INSERT INTO settlements (payer_id, receiver_id, amount, settled_at) VALUES (?, ?, 100, ?)")) {
+            pstmt.setInt(1, payerId);
+            pstmt.setInt(2, receiverId);
+            pstmt.setString(3, settledAt);
+            pstmt.executeUpdate();
+        }
+    }
+}
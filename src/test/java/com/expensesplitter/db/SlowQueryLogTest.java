@@ -0,0 +1,177 @@
+package com.expensesplitter.db;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Logs every statement with a zero threshold and checks the entries written,
+ * the shapes they are aggregated by and the rolling of the file.
+ */
+public class SlowQueryLogTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<Connection> connections = new ArrayList<>();
+    private Path file;
+    private String url;
+
+    @Before
+    public void setUp() throws Exception {
+        file = folder.getRoot().toPath().resolve("slow.log");
+        url = "jdbc:sqlite:" + folder.newFile("slow.db");
+        try (Connection connection = DriverManager.getConnection(url);
+             Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE accounts (id INTEGER PRIMARY KEY, username TEXT, password TEXT)");
+            stmt.execute("CREATE INDEX idx_accounts_username ON accounts (username)");
+            stmt.execute("INSERT INTO accounts (username, password) VALUES ('alice', 'secret'), ('bob', 'hunter2')");
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        for (Connection connection : connections) {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void entryHasTheStatementParametersAndPlan() throws Exception {
+        Connection connection = open(new SlowQueryLog(file, 0, 60, 1 << 20, 2));
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT id\n  FROM accounts WHERE username = ?")) {
+            stmt.setString(1, "alice");
+            try (ResultSet rs = stmt.executeQuery()) {
+                assertTrue(rs.next());
+                assertFalse(rs.next());
+            }
+        }
+
+        String log = read(file);
+        assertEquals(1, entries(log));
+        assertTrue(log, log.contains(" slow statement ") && log.contains("(threshold 0.000 ms)"));
+        assertTrue(log, log.contains("  SQL: SELECT id FROM accounts WHERE username = ?\n"));
+        assertTrue(log, log.contains("  Parameters: ['alice']\n"));
+        assertTrue(log, log.contains("  Shape: 1 slow executions, "));
+        assertTrue(log, log.contains("  Plan:\n    SEARCH accounts USING COVERING INDEX idx_accounts_username (username=?)\n"));
+    }
+
+    @Test
+    public void statementWithoutAPlanSaysSo() throws Exception {
+        Connection connection = open(new SlowQueryLog(file, 0, 60, 1 << 20, 2));
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE notes (text TEXT)");
+        }
+
+        String log = read(file);
+        assertTrue(log, log.contains("  SQL: CREATE TABLE notes (text TEXT)\n"));
+        assertTrue(log, log.contains("  Plan:\n    (no plan for this statement)\n"));
+    }
+
+    @Test
+    public void passwordParametersAreMasked() throws Exception {
+        Connection connection = open(new SlowQueryLog(file, 0, 60, 1 << 20, 2));
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "SELECT id FROM accounts WHERE username = ? AND password = ?")) {
+            stmt.setString(1, "alice");
+            stmt.setString(2, "secret");
+            stmt.executeQuery().close();
+        }
+
+        String log = read(file);
+        assertTrue(log, log.contains("  Parameters: ['***', '***']\n"));
+        assertFalse(log, log.contains("secret"));
+    }
+
+    @Test
+    public void normalizeReplacesLiteralsAndPlaceholderLists() {
+        assertEquals("SELECT * FROM accounts WHERE username = ? AND id IN (?...) AND balance > ?",
+            SlowQueryLog.normalize("SELECT *\n FROM accounts WHERE username = 'o''brien'"
+                + " AND id IN (?, ?,?) AND balance > 12.50"));
+        // A single placeholder is not a list
+        assertEquals("INSERT INTO accounts (username) VALUES (?)",
+            SlowQueryLog.normalize("INSERT INTO accounts\t(username)  VALUES (?)"));
+        // Digits inside identifiers are kept
+        assertEquals("SELECT t2.x FROM t2", SlowQueryLog.normalize("SELECT t2.x FROM t2"));
+    }
+
+    @Test
+    public void executionsOfOneShapeAreLoggedOncePerInterval() throws Exception {
+        SlowQueryLog log = new SlowQueryLog(file, 0, 60, 1 << 20, 2);
+        Connection connection = open(log);
+        try (Statement stmt = connection.createStatement()) {
+            for (String username : new String[] {"alice", "bob", "carol"}) {
+                stmt.executeQuery("SELECT id FROM accounts WHERE username = '" + username + "'").close();
+            }
+        }
+
+        assertEquals(1, entries(read(file)));
+        assertEquals(1, log.getShapes().size());
+        assertEquals("SELECT id FROM accounts WHERE username = ?", log.getShapes().get(0).getSql());
+        assertEquals(3, log.getShapes().get(0).getCount());
+    }
+
+    @Test
+    public void entryAfterTheIntervalCountsTheFoldedExecutions() throws Exception {
+        Connection connection = open(new SlowQueryLog(file, 0, 0, 1 << 20, 2));
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeQuery("SELECT id FROM accounts WHERE id = 1").close();
+            stmt.executeQuery("SELECT id FROM accounts WHERE id = 2").close();
+        }
+
+        String log = read(file);
+        assertEquals(2, entries(log));
+        assertTrue(log, log.contains("  Shape: 2 slow executions, "));
+    }
+
+    @Test
+    public void fileRollsOverKeepingTheConfiguredNumber() throws Exception {
+        Connection connection = open(new SlowQueryLog(file, 0, 0, 1, 3));
+        try (Statement stmt = connection.createStatement()) {
+            for (int i = 1; i <= 5; i++) {
+                stmt.executeQuery("SELECT id FROM accounts WHERE id = " + i).close();
+            }
+        }
+
+        // Every entry fills the file, so each is rolled as soon as it is written
+        assertFalse(Files.exists(file));
+        Path newest = file.resolveSibling("slow.log.1");
+        Path oldest = file.resolveSibling("slow.log.2");
+        assertTrue(read(newest).contains("WHERE id = 5"));
+        assertTrue(read(oldest).contains("WHERE id = 4"));
+        assertFalse(Files.exists(file.resolveSibling("slow.log.3")));
+    }
+
+    private Connection open(SlowQueryLog log) throws SQLException {
+        Connection connection = log.wrapConnection(DriverManager.getConnection(url));
+        connections.add(connection);
+        return connection;
+    }
+
+    private static String read(Path path) throws IOException {
+        return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+    }
+
+    private static int entries(String log) {
+        return log.split(" slow statement ", -1).length - 1;
+    }
+}
@@ -0,0 +1,16 @@
+package com.expensesplitter.db;
+
+import com.expensesplitter.repository.Storage;
+import com.expensesplitter.repository.StorageContractTest;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+
+public class SqliteStorageTest extends StorageContractTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Override
+    protected Storage openStorage() throws Exception {
+        return SqliteStorage.open("jdbc:sqlite:" + folder.newFile("storage.db"));
+    }
+}
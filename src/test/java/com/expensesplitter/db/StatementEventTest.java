@@ -0,0 +1,89 @@
+package com.expensesplitter.db;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Records the statement events of connections wrapped as ConnectionManager
+ * wraps them, with the statement cache on and off.
+ */
+public class StatementEventTest {
+    private static final String EVENT = "com.expensesplitter.Statement";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void uncachedStatementsAreReported() throws Exception {
+        List<RecordedEvent> events = record(0);
+        assertEquals(4, events.size());
+        assertEquals("CREATE TABLE t (x INTEGER)", events.get(0).getString("sql"));
+        assertEquals("executeUpdate", events.get(1).getString("method"));
+        assertEquals(1, events.get(1).getLong("updateCount"));
+        assertEquals(2, events.get(2).getLong("updateCount"));
+        assertEquals("SELECT COUNT(*) FROM t WHERE x > ?", events.get(3).getString("sql"));
+        assertEquals(-1, events.get(3).getLong("updateCount"));
+    }
+
+    @Test
+    public void cachedStatementsAreReportedOnce() throws Exception {
+        assertEquals(4, record(StatementCache.DEFAULT_MAX_SIZE).size());
+    }
+
+    private List<RecordedEvent> record(int cacheSize) throws Exception {
+        String url = "jdbc:sqlite:" + folder.newFile("events.db").getAbsolutePath();
+        Path dump = folder.getRoot().toPath().resolve("events.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(EVENT);
+            recording.start();
+            try (Connection connection = SlowQueryLog.wrap(
+                    StatementCache.wrap(DriverManager.getConnection(url), cacheSize))) {
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute("CREATE TABLE t (x INTEGER)");
+                }
+                try (PreparedStatement stmt = connection.prepareStatement("INSERT INTO t (x) VALUES (?)")) {
+                    stmt.setInt(1, 1);
+                    stmt.executeUpdate();
+                    stmt.setInt(1, 2);
+                    stmt.addBatch();
+                    stmt.setInt(1, 3);
+                    stmt.addBatch();
+                    stmt.executeBatch();
+                }
+                try (PreparedStatement stmt = connection.prepareStatement("SELECT COUNT(*) FROM t WHERE x > ?")) {
+                    stmt.setInt(1, 1);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        rs.next();
+                        assertEquals(2, rs.getInt(1));
+                    }
+                }
+            }
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        List<RecordedEvent> events = new ArrayList<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(dump)) {
+            if (event.getEventType().getName().equals(EVENT)) {
+                events.add(event);
+            }
+        }
+        events.sort((a, b) -> a.getStartTime().compareTo(b.getStartTime()));
+        return events;
+    }
+}
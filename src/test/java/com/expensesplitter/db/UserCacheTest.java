@@ -0,0 +1,133 @@
+package com.expensesplitter.db;
+
+import com.expensesplitter.model.User;
+import com.expensesplitter.service.UserService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.sql.SQLException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Looks users up through a UserService and checks what its cache serves and
+ * counts, after registrations that commit and writes that roll back.
+ */
+public class UserCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SqliteStorage storage;
+    private ConnectionManager connections;
+    private UserService users;
+    private UserCache cache;
+    private int aliceId;
+
+    @Before
+    public void setUp() throws Exception {
+        connections = ConnectionManager.open("jdbc:sqlite:" + folder.newFile("users.db"), 2);
+        connections.withWriter(SchemaMigrator::migrate);
+        storage = new SqliteStorage(connections);
+        aliceId = storage.getUsers().insert("alice", "secret", "alice@example.com");
+        users = new UserService(storage);
+        cache = users.getUserCache();
+    }
+
+    @After
+    public void tearDown() {
+        storage.close();
+    }
+
+    @Test
+    public void repeatedLookupsShareOneCachedUser() {
+        User first = users.getUserByUsername("alice");
+        assertNotNull(first);
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        assertSame(first, users.getUserByUsername("alice"));
+        assertSame(first, users.getUserById(aliceId));
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertNull(first.getPassword());
+
+        // Authentication reads the row again but hands back the cached instance
+        assertSame(first, users.authenticateUser("alice", "secret"));
+    }
+
+    @Test
+    public void registeredUserIsServedWithoutAMiss() {
+        assertNull(users.getUserByUsername("carol"));
+        assertEquals(0, cache.size());
+
+        assertTrue(users.registerUser("carol", "secret", "carol@example.com"));
+        long misses = cache.getMisses();
+        User carol = users.getUserByUsername("carol");
+        assertNotNull(carol);
+        assertEquals("carol@example.com", carol.getEmail());
+        assertSame(carol, users.getUserById(carol.getId()));
+        assertEquals(misses, cache.getMisses());
+        assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    public void rejectedRegistrationLeavesTheCachedUser() {
+        User alice = users.getUserByUsername("alice");
+
+        assertFalse(users.registerUser("alice", "other", "other@example.com"));
+        assertEquals(1, cache.size());
+        assertSame(alice, users.getUserByUsername("alice"));
+        assertEquals("alice@example.com", alice.getEmail());
+        assertNull(users.authenticateUser("alice", "other"));
+    }
+
+    @Test
+    public void userWrittenByARolledBackTransactionIsNotServed() throws Exception {
+        try {
+            connections.write((connection, events) -> {
+                UserWriter.insert(connection, "dave", "secret", null);
+                throw new SQLException("Abandoned");
+            });
+            fail("The write was committed");
+        } catch (SQLException expected) {
+            // The insert was rolled back with the rest of the transaction
+        }
+
+        assertNull(users.getUserByUsername("dave"));
+        assertEquals(0, cache.size());
+
+        // The username is free again, and the new row is the one cached
+        assertTrue(users.registerUser("dave", "secret", "dave@example.com"));
+        User dave = users.getUserByUsername("dave");
+        assertEquals("dave@example.com", dave.getEmail());
+        assertEquals(dave.getId(), storage.getUsers().findByUsername("dave").getId());
+    }
+
+    @Test
+    public void removeAndEvictionDropBothKeys() {
+        UserCache small = new UserCache(2);
+        small.put(new User(1, "alice", null));
+        small.put(new User(2, "bob", null));
+        small.getById(1);
+        small.put(new User(3, "carol", null));
+
+        // bob was the least recently used, counting the lookup by id
+        assertNull(small.getByUsername("bob"));
+        assertNull(small.getById(2));
+        assertNotNull(small.getByUsername("alice"));
+
+        small.remove(1);
+        assertNull(small.getByUsername("alice"));
+        assertNull(small.getById(1));
+        assertEquals(1, small.size());
+    }
+}
@@ -0,0 +1,91 @@
+package com.expensesplitter.db;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Batches of the pipeline commit through ConnectionManager: a batch waits out
+ * another process holding the database, and a failing command is rolled back
+ * on its own without taking the rest of its batch with it.
+ */
+public class WritePipelineTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String url;
+    private ConnectionManager connections;
+    private WritePipeline pipeline;
+
+    @Before
+    public void setUp() throws Exception {
+        url = "jdbc:sqlite:" + folder.newFile("pipeline.db");
+        connections = ConnectionManager.open(url, 1);
+        connections.withWriter(SchemaMigrator::migrate);
+        pipeline = new WritePipeline(connections);
+    }
+
+    @After
+    public void tearDown() {
+        pipeline.close();
+        connections.close();
+    }
+
+    @Test
+    public void batchIsRetriedWhileAnotherConnectionHoldsTheDatabase() throws Exception {
+        CompletableFuture<Integer> registered;
+        try (Connection other = DriverManager.getConnection(url);
+             Statement stmt = other.createStatement()) {
+            stmt.execute("BEGIN IMMEDIATE");
+            stmt.execute("INSERT INTO users (username, password) VALUES ('other', 'secret')");
+            registered = pipeline.registerUser("alice", "secret", null);
+            Thread.sleep(300);
+            assertFalse("Committed while the database was held", registered.isDone());
+            stmt.execute("COMMIT");
+        }
+        assertTrue(registered.get() > 0);
+        assertEquals(2, countUsers());
+    }
+
+    @Test
+    public void failedCommandIsRolledBackAlone() throws Exception {
+        CompletableFuture<Integer> first = pipeline.registerUser("alice", "secret", null);
+        CompletableFuture<Integer> duplicate = pipeline.registerUser("alice", "secret", null);
+        CompletableFuture<Integer> second = pipeline.registerUser("bob", "secret", null);
+
+        assertTrue(first.get() > 0);
+        assertTrue(second.get() > 0);
+        try {
+            duplicate.get();
+            fail("Duplicate username was registered");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SQLException);
+        }
+        assertEquals(2, countUsers());
+    }
+
+    private int countUsers() throws SQLException {
+        return connections.read(connection -> {
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM users")) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        });
+    }
+}
@@ -0,0 +1,117 @@
+package com.expensesplitter.http;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Maps outcomes to HTTP statuses: created, no content, bad input, failed
+ * login, unknown ids and routes, constraint violations and failed reads.
+ */
+public class ApiServerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private String url;
+    private ApiServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        url = "jdbc:sqlite:" + folder.getRoot().toPath().resolve("api.db");
+        server = new ApiServer(url, 0, 2);
+        server.start();
+        assertEquals(201, post("/users", "{\"username\":\"alice\",\"password\":\"secret\"}").statusCode());
+        assertEquals(201, post("/users", "{\"username\":\"bob\",\"password\":\"secret\"}").statusCode());
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void takenUsernameIsAConflict() throws Exception {
+        assertEquals(409, post("/users", "{\"username\":\"alice\",\"password\":\"other\"}").statusCode());
+    }
+
+    @Test
+    public void unknownIdsAndRoutesAreNotFound() throws Exception {
+        assertEquals(404, get("/users/99").statusCode());
+        assertEquals(404, get("/expenses/99").statusCode());
+        assertEquals(404, get("/no-such-endpoint").statusCode());
+    }
+
+    @Test
+    public void invalidInputIsABadRequest() throws Exception {
+        assertEquals(400, post("/users", "{\"username\":\"carol\"}").statusCode());
+        assertEquals(400, post("/users", "not json").statusCode());
+        assertEquals(400, post("/expenses", "{\"description\":\"Dinner\",\"amount\":\"10.00\",\"createdBy\":1,"
+            + "\"splits\":[{\"userId\":2,\"amount\":\"4.00\"}]}").statusCode());
+        assertEquals(400, get("/users/1/settlements?limit=100000").statusCode());
+    }
+
+    @Test
+    public void wrongPasswordIsUnauthorized() throws Exception {
+        assertEquals(401, post("/login", "{\"username\":\"alice\",\"password\":\"wrong\"}").statusCode());
+        assertEquals(200, post("/login", "{\"username\":\"alice\",\"password\":\"secret\"}").statusCode());
+    }
+
+    @Test
+    public void readThatFailsIsAServerError() throws Exception {
+        // Without its table, every user lookup fails instead of finding nothing
+        try (Connection connection = DriverManager.getConnection(url);
+             Statement stmt = connection.createStatement()) {
+            stmt.execute("ALTER TABLE users RENAME TO users_gone");
+        }
+        assertEquals(500, get("/users").statusCode());
+        assertEquals(500, get("/users/1").statusCode());
+        assertEquals(500, get("/users?username=alice").statusCode());
+    }
+
+    @Test
+    public void expenseIsCreatedReadAndDeleted() throws Exception {
+        HttpResponse<String> created = post("/expenses", "{\"description\":\"Dinner\",\"amount\":\"10.00\","
+            + "\"createdBy\":1,\"splits\":[{\"userId\":2,\"amount\":\"10.00\"}]}");
+        assertEquals(201, created.statusCode());
+        String id = created.body().replaceAll("(?s).*?\"id\":(\\d+).*", "$1");
+
+        assertEquals(200, get("/expenses/" + id).statusCode());
+        HttpResponse<String> balances = get("/users/2/balances");
+        assertEquals(200, balances.statusCode());
+        assertTrue(balances.body(), balances.body().contains("10.00"));
+
+        assertEquals(204, send(HttpRequest.newBuilder(uri("/expenses/" + id)).DELETE()).statusCode());
+        assertEquals(404, get("/expenses/" + id).statusCode());
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        return send(HttpRequest.newBuilder(uri(path)).GET());
+    }
+
+    private HttpResponse<String> post(String path, String body) throws IOException, InterruptedException {
+        return send(HttpRequest.newBuilder(uri(path)).POST(HttpRequest.BodyPublishers.ofString(body)));
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + server.getPort() + path);
+    }
+}
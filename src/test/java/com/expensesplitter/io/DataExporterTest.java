@@ -0,0 +1,113 @@
+package com.expensesplitter.io;
+
+import com.expensesplitter.model.Money;
+import com.expensesplitter.service.BalanceService;
+import com.expensesplitter.tools.DataGenerator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Every exported file holds one line per row of its table, plus the header of
+ * a CSV file, and the balances file one row per pair of users with a net debt.
+ */
+public class DataExporterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Connection connection;
+    private Map<DataExporter.Table, Long> expected;
+
+    @Before
+    public void setUp() throws Exception {
+        String url = "jdbc:sqlite:" + folder.newFile("export.db");
+        new DataGenerator(20, 500, 3, 42).seed(url);
+        connection = DriverManager.getConnection(url);
+        BalanceService balances = new BalanceService(connection);
+        for (int payerId = 1; payerId < 10; payerId += 2) {
+            assertTrue(balances.settleDebt(payerId, payerId + 1, Money.ofCents(100)));
+        }
+
+        expected = new HashMap<>();
+        expected.put(DataExporter.Table.USERS, count("SELECT COUNT(*) FROM users"));
+        expected.put(DataExporter.Table.EXPENSES, count("SELECT COUNT(*) FROM expenses"));
+        expected.put(DataExporter.Table.SPLITS, count("SELECT COUNT(*) FROM splits"));
+        expected.put(DataExporter.Table.SETTLEMENTS, count("SELECT COUNT(*) FROM settlements"));
+        expected.put(DataExporter.Table.BALANCES, count(
+            "SELECT COUNT(*) FROM (SELECT MIN(debtor_id, creditor_id) AS a, MAX(debtor_id, creditor_id) AS b, "
+            + "SUM(CASE WHEN debtor_id < creditor_id THEN net_amount ELSE -net_amount END) AS net "
+            + "FROM balance_ledger GROUP BY a, b) WHERE net != 0"));
+        assertEquals(5, (long) expected.get(DataExporter.Table.SETTLEMENTS));
+        assertTrue(expected.get(DataExporter.Table.BALANCES) > 0);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    public void csvHasAHeaderAndOneLinePerRow() throws Exception {
+        Path directory = folder.getRoot().toPath().resolve("csv");
+        Map<DataExporter.Table, Long> counts = exportAll(directory, DataExporter.Format.CSV, false);
+        for (DataExporter.Table table : DataExporter.Table.values()) {
+            assertEquals(table.name(), expected.get(table), counts.get(table));
+            assertEquals(table.name(), expected.get(table) + 1,
+                lines(directory.resolve(table.fileName(DataExporter.Format.CSV, false)), false));
+        }
+    }
+
+    @Test
+    public void gzippedJsonLinesHaveOneLinePerRow() throws Exception {
+        Path directory = folder.getRoot().toPath().resolve("jsonl");
+        Map<DataExporter.Table, Long> counts = exportAll(directory, DataExporter.Format.JSONL, true);
+        for (DataExporter.Table table : DataExporter.Table.values()) {
+            assertEquals(table.name(), expected.get(table), counts.get(table));
+            assertEquals(table.name(), (long) expected.get(table),
+                lines(directory.resolve(table.fileName(DataExporter.Format.JSONL, true)), true));
+        }
+    }
+
+    private Map<DataExporter.Table, Long> exportAll(Path directory, DataExporter.Format format, boolean gzip)
+            throws IOException, SQLException {
+        return new DataExporter(connection, format, gzip)
+            .export(directory, Arrays.asList(DataExporter.Table.values()));
+    }
+
+    private long count(String sql) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private static long lines(Path file, boolean gzip) throws IOException {
+        try (InputStream in = gzip ? new GZIPInputStream(Files.newInputStream(file)) : Files.newInputStream(file);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            return reader.lines().count();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.expensesplitter.io;
+
+import com.expensesplitter.db.SchemaMigrator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Interrupts an import at a commit and resumes it from its checkpoint, then
+ * compares the database with one that imported the same file in one run.
+ */
+public class ExpenseImporterTest {
+    private static final int USERS = 20;
+    private static final int EXPENSES = 5_000;
+    private static final String[] REJECTED = {"1500", "3500"};
+    // Expenses are resolved and committed in batches of 1000 once commitRows is reached
+    private static final int COMMIT_ROWS = 1;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<Connection> connections = new ArrayList<>();
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = folder.getRoot().toPath().resolve("expenses.csv");
+        StringBuilder csv = new StringBuilder("expense,description,amount,created_by,user,split_amount\n");
+        for (int i = 1; i <= EXPENSES; i++) {
+            String creator = "user" + (i % USERS + 1);
+            String first = i == 1500 || i == 3500 ? "nobody" : "user" + (i * 7 % USERS + 1);
+            String row = i + ",Expense " + i + ",10.00," + creator + ",";
+            csv.append(row).append(first).append(",4.99\n");
+            csv.append(row).append("user").append(i * 13 % USERS + 1).append(",5.01\n");
+        }
+        Files.write(file, csv.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        for (Connection connection : connections) {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void resumedImportMatchesAnUninterruptedOne() throws Exception {
+        Connection reference = database("reference.db");
+        ExpenseImporter.Result complete = new ExpenseImporter(reference, COMMIT_ROWS)
+            .importFile(file, ExpenseImporter.Format.CSV, false);
+        assertEquals(EXPENSES - REJECTED.length, complete.getExpenses());
+        assertEquals(REJECTED.length, complete.getRejected());
+
+        Connection connection = database("resumed.db");
+        try {
+            new ExpenseImporter(failingOnCommit(connection, 3), COMMIT_ROWS)
+                .importFile(file, ExpenseImporter.Format.CSV, false);
+            fail("The import should have failed at its third commit");
+        } catch (SQLException expected) {
+            // Two batches of 1000 expenses, two source records each, were committed
+        }
+        // Expense 1500 was rejected
+        assertEquals("1999", query(connection, "SELECT COUNT(*) FROM expenses"));
+
+        ExpenseImporter.Result resumed = new ExpenseImporter(connection, COMMIT_ROWS)
+            .importFile(file, ExpenseImporter.Format.CSV, false);
+        assertEquals(4_000, resumed.getResumedFrom());
+        assertEquals(EXPENSES - 2_000 - 1, resumed.getExpenses());
+
+        for (String sql : new String[] {
+                "SELECT COUNT(*), SUM(amount), SUM(id) FROM expenses",
+                "SELECT COUNT(*), SUM(amount), SUM(expense_id * user_id) FROM splits",
+                "SELECT COUNT(*), SUM(net_amount), SUM(debtor_id * creditor_id * net_amount) FROM balance_ledger"}) {
+            assertEquals(sql, query(reference, sql), query(connection, sql));
+        }
+        assertEquals("1", query(connection, "SELECT completed FROM import_checkpoints"));
+
+        String rejects = new String(Files.readAllBytes(
+            ExpenseImporter.rejectFile(file, ExpenseImporter.Format.CSV)), StandardCharsets.UTF_8);
+        for (String expense : REJECTED) {
+            assertTrue("Reject of expense " + expense, rejects.contains("\n" + expense + ",Expense " + expense + ","));
+        }
+    }
+
+    @Test
+    public void completedFileIsOnlyImportedAgainOnRestart() throws Exception {
+        Connection connection = database("twice.db");
+        new ExpenseImporter(connection, COMMIT_ROWS).importFile(file, ExpenseImporter.Format.CSV, false);
+
+        ExpenseImporter.Result again = new ExpenseImporter(connection, COMMIT_ROWS)
+            .importFile(file, ExpenseImporter.Format.CSV, false);
+        assertTrue(again.isAlreadyCompleted());
+        assertEquals(0, again.getExpenses());
+        assertEquals(String.valueOf(EXPENSES - REJECTED.length), query(connection, "SELECT COUNT(*) FROM expenses"));
+
+        ExpenseImporter.Result restarted = new ExpenseImporter(connection, COMMIT_ROWS)
+            .importFile(file, ExpenseImporter.Format.CSV, true);
+        assertEquals(EXPENSES - REJECTED.length, restarted.getExpenses());
+        assertEquals(String.valueOf(2 * (EXPENSES - REJECTED.length)), query(connection, "SELECT COUNT(*) FROM expenses"));
+    }
+
+    private Connection database(String name) throws SQLException {
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + folder.getRoot().toPath().resolve(name));
+        connections.add(connection);
+        SchemaMigrator.migrate(connection);
+        try (Statement stmt = connection.createStatement()) {
+            for (int id = 1; id <= USERS; id++) {
+                stmt.executeUpdate("INSERT INTO users (username, password) VALUES ('user" + id + "', 'pw')");
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * @return A connection whose commit fails on the given call, as if the process died there
+     */
+    private static Connection failingOnCommit(Connection connection, int failingCommit) {
+        int[] commits = new int[1];
+        return (Connection) Proxy.newProxyInstance(
+            ExpenseImporterTest.class.getClassLoader(),
+            new Class<?>[] {Connection.class},
+            (proxy, method, args) -> {
+                if (method.getName().equals("commit") && ++commits[0] == failingCommit) {
+                    throw new SQLException("Simulated crash");
+                }
+                try {
+                    return method.invoke(connection, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+    }
+
+    private static String query(Connection connection, String sql) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            StringBuilder row = new StringBuilder();
+            rs.next();
+            for (int i = 1; i <= rs.getMetaData().getColumnCount(); i++) {
+                row.append(i > 1 ? "," : "").append(rs.getString(i));
+            }
+            return row.toString();
+        }
+    }
+}
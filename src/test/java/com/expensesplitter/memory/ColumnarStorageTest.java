@@ -0,0 +1,11 @@
+package com.expensesplitter.memory;
+
+import com.expensesplitter.repository.Storage;
+import com.expensesplitter.repository.StorageContractTest;
+
+public class ColumnarStorageTest extends StorageContractTest {
+    @Override
+    protected Storage openStorage() {
+        return new ColumnarStorage();
+    }
+}
@@ -0,0 +1,45 @@
+package com.expensesplitter.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OperationStatsTest {
+    private final OperationStats stats = new OperationStats("Test", "op");
+
+    @Test
+    public void countsCallsAndErrors() {
+        long start = System.nanoTime();
+        stats.record(start, 3);
+        stats.record(start, 0);
+        stats.recordError(start);
+
+        assertEquals(3, stats.getCalls());
+        assertEquals(1, stats.getErrors());
+        assertEquals(3, stats.getRowsReturned());
+        assertEquals(3, stats.getLatency().getTotalCount());
+    }
+
+    @Test
+    public void percentilesOfOnePollComeFromOneSnapshot() {
+        record(TimeUnit.MILLISECONDS.toNanos(1), 100);
+        double p50 = stats.getP50Millis();
+        double max = stats.getMaxMillis();
+        assertTrue(p50 <= stats.getP99Millis() && stats.getP999Millis() <= max);
+
+        // Slower calls recorded mid-poll do not change the values it reads
+        record(TimeUnit.SECONDS.toNanos(1), 1_000);
+        assertEquals(p50, stats.getP50Millis(), 0);
+        assertEquals(max, stats.getMaxMillis(), 0);
+        assertEquals(1_100, stats.getCalls());
+    }
+
+    private void record(long nanos, int calls) {
+        for (int i = 0; i < calls; i++) {
+            stats.record(System.nanoTime() - nanos, 0);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.expensesplitter.model;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BalanceMapTest {
+
+    @Test
+    public void matchesAHashMapThroughManyResizes() {
+        Random random = new Random(42);
+        for (int round = 0; round < 50; round++) {
+            BalanceMap balances = new BalanceMap(1);
+            Map<Integer, Long> expected = new HashMap<>();
+            int range = 1 + random.nextInt(2_000);
+            for (int i = 0; i < 5_000; i++) {
+                // Mostly small ids, sometimes very large ones
+                int userId = random.nextInt(10) == 0 ? Integer.MAX_VALUE - random.nextInt(range) : 1 + random.nextInt(range);
+                long amount = random.nextInt(20_001) - 10_000;
+                balances.add(userId, amount);
+                expected.merge(userId, amount, Long::sum);
+            }
+            assertMatches(expected, balances);
+        }
+    }
+
+    @Test
+    public void idsSharingAHashPrefixProbeToFreeSlots() {
+        // Multiples of a power of two collide in the low bits; the Fibonacci hash must still spread them
+        BalanceMap balances = new BalanceMap(4);
+        Map<Integer, Long> expected = new HashMap<>();
+        for (int i = 1; i <= 1_000; i++) {
+            balances.add(i << 16, i);
+            expected.put(i << 16, (long) i);
+        }
+        assertMatches(expected, balances);
+        assertFalse(balances.containsUser(1_001 << 16));
+        assertEquals(0, balances.getAmountInCents(1_001 << 16));
+    }
+
+    @Test
+    public void addingToAnExistingCounterpartyKeepsOneEntry() {
+        BalanceMap balances = new BalanceMap();
+        balances.add(7, 500);
+        balances.add(7, -500);
+        assertEquals(1, balances.size());
+        assertTrue(balances.containsUser(7));
+        assertEquals(Money.ZERO, balances.getAmount(7));
+    }
+
+    @Test
+    public void equalityIgnoresInsertionOrderAndCapacity() {
+        BalanceMap small = new BalanceMap(1);
+        BalanceMap large = new BalanceMap(1_000);
+        for (int i = 1; i <= 100; i++) {
+            small.add(i, i * 10L);
+            large.add(101 - i, (101 - i) * 10L);
+        }
+        assertEquals(small, large);
+        assertEquals(small.hashCode(), large.hashCode());
+
+        large.add(50, 1);
+        assertNotEquals(small, large);
+    }
+
+    @Test
+    public void getUserIdsIsSorted() {
+        BalanceMap balances = new BalanceMap();
+        for (int userId : new int[] {42, 3, 1_000_000, 17, 1}) {
+            balances.add(userId, 1);
+        }
+        assertArrayEquals(new int[] {1, 3, 17, 42, 1_000_000}, balances.getUserIds());
+        assertEquals("BalanceMap{1=1, 3=1, 17=1, 42=1, 1000000=1}", balances.toString());
+    }
+
+    @Test
+    public void nonPositiveIdsAreNeverStored() {
+        BalanceMap balances = new BalanceMap();
+        assertFalse(balances.containsUser(0));
+        assertEquals(0, balances.getAmountInCents(-1));
+        try {
+            balances.add(0, 1);
+            throw new AssertionError("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(balances.isEmpty());
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void frozenMapRejectsWrites() {
+        BalanceMap balances = new BalanceMap();
+        balances.add(1, 1);
+        assertTrue(balances.freeze().isFrozen());
+        balances.add(2, 1);
+    }
+
+    private static void assertMatches(Map<Integer, Long> expected, BalanceMap balances) {
+        assertEquals(expected.size(), balances.size());
+        for (Map.Entry<Integer, Long> entry : expected.entrySet()) {
+            assertTrue(balances.containsUser(entry.getKey()));
+            assertEquals(entry.getValue().longValue(), balances.getAmountInCents(entry.getKey()));
+        }
+        int[] ids = expected.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        assertArrayEquals(ids, balances.getUserIds());
+
+        long[] sum = new long[1];
+        balances.forEach((userId, amount) -> sum[0] += amount);
+        assertEquals(Arrays.stream(ids).mapToLong(expected::get).sum(), sum[0]);
+    }
+}
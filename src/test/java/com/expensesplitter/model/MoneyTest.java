@@ -0,0 +1,67 @@
+package com.expensesplitter.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class MoneyTest {
+
+    @Test
+    public void parseRoundsHalfUpToWholeCents() {
+        assertEquals(1250, Money.parse("12.5").getCents());
+        assertEquals(123, Money.parse("1.234").getCents());
+        assertEquals(124, Money.parse("1.235").getCents());
+        assertEquals(1, Money.parse("0.005").getCents());
+        assertEquals(-1, Money.parse("-0.005").getCents());
+        assertEquals(-399, Money.parse(" -3.99 ").getCents());
+        assertSame(Money.ZERO, Money.parse("0.004"));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void parseRejectsText() {
+        Money.parse("twelve");
+    }
+
+    @Test
+    public void sumsAreExact() {
+        Money total = Money.ZERO;
+        for (int i = 0; i < 10; i++) {
+            total = total.plus(Money.parse("0.1"));
+        }
+        assertEquals(Money.ofCents(100), total);
+        assertEquals(Money.ofCents(-30), Money.parse("0.1").minus(Money.parse("0.4")));
+    }
+
+    @Test
+    public void splitGivesLeftoverCentsToTheFirstParts() {
+        assertSplit(Money.ofCents(1000), 3, 334, 333, 333);
+        assertSplit(Money.ofCents(1001), 4, 251, 250, 250, 250);
+        assertSplit(Money.ofCents(-1000), 3, -334, -333, -333);
+        assertSplit(Money.ofCents(2), 3, 1, 1, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void splitRejectsZeroParts() {
+        Money.ofCents(100).split(0);
+    }
+
+    @Test
+    public void toStringHasTwoDecimals() {
+        assertEquals("-12.05", Money.ofCents(-1205).toString());
+        assertEquals("0.07", Money.ofCents(7).toString());
+        assertEquals("0.00", Money.ZERO.toString());
+        assertEquals("1234.50", Money.ofCents(123450).toString());
+    }
+
+    private static void assertSplit(Money amount, int parts, long... expectedCents) {
+        Money[] shares = amount.split(parts);
+        assertEquals(expectedCents.length, shares.length);
+        long total = 0;
+        for (int i = 0; i < shares.length; i++) {
+            assertEquals(expectedCents[i], shares[i].getCents());
+            total += shares[i].getCents();
+        }
+        assertEquals(amount.getCents(), total);
+    }
+}
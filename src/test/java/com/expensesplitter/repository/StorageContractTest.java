@@ -0,0 +1,323 @@
+package com.expensesplitter.repository;
+
+import com.expensesplitter.model.BalanceMap;
+import com.expensesplitter.model.Expense;
+import com.expensesplitter.model.Money;
+import com.expensesplitter.model.SettlementCursor;
+import com.expensesplitter.model.SettlementPage;
+import com.expensesplitter.model.SettlementPlan;
+import com.expensesplitter.model.Split;
+import com.expensesplitter.model.Transaction;
+import com.expensesplitter.model.User;
+import com.expensesplitter.service.DebtSimplifier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The contract every storage backend must meet. Each backend has a subclass
+ * that opens a fresh, empty store; every test starts with the same four users.
+ */
+public abstract class StorageContractTest {
+    // SQLite's result code for constraint violations, which every backend reports
+    private static final int CONSTRAINT = 19;
+
+    @FunctionalInterface
+    private interface Action {
+        void run() throws SQLException;
+    }
+
+    protected Storage storage;
+    private int alice;
+    private int bob;
+    private int carol;
+    private int dave;
+
+    /**
+     * @return A new, empty store of the backend under test
+     */
+    protected abstract Storage openStorage() throws Exception;
+
+    @Before
+    public void setUp() throws Exception {
+        storage = openStorage();
+        alice = storage.getUsers().insert("alice", "secret", "alice@example.com");
+        bob = storage.getUsers().insert("bob", "secret", "bob@example.com");
+        carol = storage.getUsers().insert("carol", "secret", null);
+        dave = storage.getUsers().insert("dave", "secret", "dave@example.com");
+    }
+
+    @After
+    public void tearDown() {
+        storage.close();
+    }
+
+    @Test
+    public void userIdsStartAtOne() {
+        assertArrayEquals(new int[] {1, 2, 3, 4}, new int[] {alice, bob, carol, dave});
+    }
+
+    @Test
+    public void invalidUsersAreConstraintViolations() throws SQLException {
+        assertConstraint(() -> storage.getUsers().insert("alice", "other", "other@example.com"), "duplicate username");
+        assertConstraint(() -> storage.getUsers().insert("erin", "other", "bob@example.com"), "duplicate email");
+        assertConstraint(() -> storage.getUsers().insert("erin", null, null), "missing password");
+        assertNull(storage.getUsers().findByUsername("erin"));
+        assertEquals(4, storage.getUsers().findAll().size());
+    }
+
+    @Test
+    public void findsAndAuthenticatesUsers() throws SQLException {
+        assertEquals(bob, storage.getUsers().findByUsername("bob").getId());
+        assertEquals("carol", storage.getUsers().findById(carol).getUsername());
+        assertNull(storage.getUsers().findById(99));
+        assertNotNull(storage.getUsers().authenticate("alice", "secret"));
+        assertNull(storage.getUsers().authenticate("alice", "wrong"));
+
+        List<User> all = storage.getUsers().findAll();
+        assertEquals(4, all.size());
+        assertEquals(dave, all.get(3).getId());
+    }
+
+    @Test
+    public void expenseFillsInIdsAndChangesBalances() throws SQLException {
+        Expense dinner = storage.getExpenses().insert(expense("Dinner", alice, 3000, alice, bob, carol));
+        assertTrue(dinner.getId() > 0);
+        assertTrue(dinner.getSplits().get(1).getId() > 0);
+        assertEquals(dinner.getId(), dinner.getSplits().get(1).getExpenseId());
+        assertEquals(3000, balance(alice, bob));
+        assertEquals(3000, balance(alice, carol));
+        assertEquals(-3000, balance(bob, alice));
+    }
+
+    @Test
+    public void splitInsertReturnsTheCreator() throws SQLException {
+        storage.getExpenses().insert(expense("Dinner", alice, 3000, alice, bob, carol));
+        int taxi = storage.getExpenses().insert("Taxi", Money.ofCents(2000), bob);
+        assertEquals(bob, storage.getSplits().insert(taxi, carol, Money.ofCents(1000)));
+        assertEquals(-1000, balance(carol, bob));
+        assertEquals(-3000, balance(carol, alice));
+    }
+
+    @Test
+    public void failedWritesChangeNothing() throws SQLException {
+        storage.getExpenses().insert(expense("Dinner", alice, 3000, alice, bob, carol));
+        BalanceMap before = storage.getSplits().getBalances(alice);
+
+        assertConstraint(() -> storage.getExpenses().insert(expense("Ghost", alice, 500, bob, 99)), "split for unknown user");
+        assertConstraint(() -> storage.getExpenses().insert(expense("Ghost", 99, 500, bob)), "expense by unknown user");
+        assertConstraint(() -> storage.getSplits().insert(9999, bob, Money.ofCents(500)), "split for unknown expense");
+        assertConstraint(() -> storage.getSettlements().settle(alice, 99, Money.ofCents(500)), "settlement with unknown user");
+
+        assertEquals(before, storage.getSplits().getBalances(alice));
+        assertEquals(1, storage.getExpenses().findByCreator(alice).size());
+    }
+
+    @Test
+    public void expenseWithAnInvalidSplitIsNotStored() throws SQLException {
+        Expense ghost = expense("Ghost", alice, 500, bob, carol);
+        ghost.getSplits().get(1).setAmount(null);
+        try {
+            storage.getExpenses().insert(ghost);
+            fail("split without an amount was accepted");
+        } catch (SQLException | RuntimeException expected) {
+            // Backends may reject it either way, as long as nothing is kept
+        }
+
+        // A later write must not bring a half-written expense to light
+        storage.getExpenses().insert("Taxi", Money.ofCents(2000), bob);
+        assertTrue(storage.getExpenses().findByCreator(alice).isEmpty());
+        assertEquals(0, storage.getSplits().getBalances(bob).size());
+    }
+
+    @Test
+    public void readsExpensesAndSplits() throws SQLException {
+        Expense dinner = storage.getExpenses().insert(expense("Dinner", alice, 3000, alice, bob, carol));
+        int taxi = storage.getExpenses().insert("Taxi", Money.ofCents(2000), bob);
+        storage.getSplits().insert(taxi, carol, Money.ofCents(1000));
+
+        Expense found = storage.getExpenses().findById(dinner.getId());
+        assertEquals("Dinner", found.getDescription());
+        assertEquals(9000, found.getAmount().getCents());
+        assertEquals("alice", found.getCreatedBy());
+        assertNotNull(found.getCreatedAt());
+        assertEquals(3, found.getSplits().size());
+        assertNull(storage.getExpenses().findById(9999));
+
+        List<Expense> bobs = storage.getExpenses().findByCreator(bob);
+        assertEquals(1, bobs.size());
+        assertEquals(taxi, bobs.get(0).getId());
+        assertEquals(1, bobs.get(0).getSplits().size());
+
+        List<Split> splits = storage.getSplits().findByExpense(dinner.getId());
+        assertEquals(3, splits.size());
+        assertEquals(alice, splits.get(0).getUserId());
+        assertEquals(carol, splits.get(2).getUserId());
+        assertEquals("bob", splits.get(1).getUsername());
+        assertFalse(splits.get(1).isPaid());
+    }
+
+    @Test
+    public void settlingPaysTheSplitsOfOnePair() throws SQLException {
+        Expense dinner = storage.getExpenses().insert(expense("Dinner", alice, 3000, alice, bob, carol));
+        storage.getSettlements().settle(bob, alice, Money.ofCents(3000));
+        assertEquals(0, balance(alice, bob));
+        assertEquals(3000, balance(alice, carol));
+        assertTrue(storage.getSplits().findByExpense(dinner.getId()).get(1).isPaid());
+    }
+
+    @Test
+    public void groupPlanSettlesTheGroupOnce() throws SQLException {
+        SettlementPlan plan = settleGroup();
+        int[] group = {alice, carol, dave};
+        assertEquals(0, balance(alice, carol));
+        assertEquals(0, balance(dave, carol));
+        assertEquals(-1000, balance(carol, bob));
+        assertFailure(() -> storage.getSettlements().executePlan(group, plan), "stale plan");
+        assertFailure(() -> storage.getSettlements().executePlan(new int[] {alice}, plan), "plan outside the group");
+
+        List<String> net = new ArrayList<>();
+        storage.getSplits().forEachNetBalance((debtorId, creditorId, amount) ->
+            net.add(debtorId + "->" + creditorId + ":" + amount));
+        assertEquals(List.of("3->2:1000"), net);
+    }
+
+    @Test
+    public void historyPagesMatchTheFullHistory() throws SQLException {
+        SettlementPlan plan = settleGroup();
+
+        List<Integer> history = new ArrayList<>();
+        storage.getSettlements().forEach(alice, transaction -> history.add(transaction.getId()));
+        assertEquals(1 + plan.size() - countWithout(plan, alice), history.size());
+        for (int i = 1; i < history.size(); i++) {
+            assertTrue("Newest first: " + history, history.get(i - 1) > history.get(i));
+        }
+
+        List<Integer> paged = new ArrayList<>();
+        SettlementCursor cursor = null;
+        do {
+            SettlementPage page = storage.getSettlements().page(alice, cursor, 1);
+            for (Transaction transaction : page.getTransactions()) {
+                paged.add(transaction.getId());
+            }
+            cursor = page.getNextCursor();
+        } while (cursor != null && paged.size() <= history.size());
+        assertEquals(history, paged);
+
+        try {
+            storage.getSettlements().page(alice, null, 0);
+            fail("An empty page size was accepted");
+        } catch (IllegalArgumentException expected) {
+            // Rejected before reading
+        }
+    }
+
+    @Test
+    public void deletingAnExpenseRemovesItsSplitsAndBalances() throws SQLException {
+        int taxi = storage.getExpenses().insert("Taxi", Money.ofCents(2000), bob);
+        storage.getSplits().insert(taxi, carol, Money.ofCents(1000));
+
+        int[] affected = storage.getExpenses().delete(taxi);
+        Arrays.sort(affected);
+        assertArrayEquals(new int[] {bob, carol}, affected);
+        assertNull(storage.getExpenses().findById(taxi));
+        assertTrue(storage.getExpenses().findByCreator(bob).isEmpty());
+        assertTrue(storage.getSplits().findByExpense(taxi).isEmpty());
+        assertEquals(0, balance(carol, bob));
+        assertEquals(0, storage.getExpenses().delete(9999).length);
+    }
+
+    @Test
+    public void rebuildingKeepsBalances() throws SQLException {
+        settleGroup();
+        storage.getExpenses().insert(expense("Lunch", dave, 1500, alice, bob));
+        BalanceMap[] before = new BalanceMap[dave + 1];
+        for (int userId = alice; userId <= dave; userId++) {
+            before[userId] = storage.getSplits().getBalances(userId);
+        }
+        storage.getSplits().rebuildBalances();
+        for (int userId = alice; userId <= dave; userId++) {
+            assertEquals("Balances of " + userId, before[userId], storage.getSplits().getBalances(userId));
+        }
+    }
+
+    /**
+     * Bob pays back his dinner share, then alice, carol and dave settle their
+     * net positions with a simplified plan, leaving carol's taxi debt to bob
+     * @return The executed plan
+     */
+    private SettlementPlan settleGroup() throws SQLException {
+        storage.getExpenses().insert(expense("Dinner", alice, 3000, alice, bob, carol));
+        int taxi = storage.getExpenses().insert("Taxi", Money.ofCents(2000), bob);
+        storage.getSplits().insert(taxi, carol, Money.ofCents(1000));
+        storage.getSettlements().settle(bob, alice, Money.ofCents(3000));
+        storage.getExpenses().insert(expense("Tickets", carol, 4000, dave));
+
+        int[] group = {alice, carol, dave};
+        long[] positions = storage.getSplits().getGroupNetPositions(group);
+        assertEquals(dave + 1, positions.length);
+        assertEquals(3000, positions[alice]);
+        assertEquals(1000, positions[carol]);
+        assertEquals(-4000, positions[dave]);
+
+        SettlementPlan plan = DebtSimplifier.simplify(positions);
+        storage.getSettlements().executePlan(group, plan);
+        return plan;
+    }
+
+    private static Expense expense(String description, int createdById, long shareInCents, int... userIds) {
+        Expense expense = new Expense();
+        expense.setDescription(description);
+        expense.setAmount(Money.ofCents(shareInCents * userIds.length));
+        expense.setCreatedById(createdById);
+        for (int userId : userIds) {
+            expense.addSplit(new Split(userId, null, Money.ofCents(shareInCents)));
+        }
+        return expense;
+    }
+
+    private static int countWithout(SettlementPlan plan, int userId) {
+        int count = 0;
+        for (int i = 0; i < plan.size(); i++) {
+            if (plan.getPayerId(i) != userId && plan.getReceiverId(i) != userId) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private long balance(int userId, int counterpartyId) throws SQLException {
+        return storage.getSplits().getBalances(userId).getAmountInCents(counterpartyId);
+    }
+
+    private static void assertConstraint(Action action, String description) {
+        try {
+            action.run();
+            fail(description + " was accepted");
+        } catch (SQLException e) {
+            assertEquals(description + " error code", CONSTRAINT, e.getErrorCode());
+        }
+    }
+
+    private static void assertFailure(Action action, String description) {
+        try {
+            action.run();
+            fail(description + " was accepted");
+        } catch (SQLException expected) {
+            // Any failure will do
+        }
+    }
+}
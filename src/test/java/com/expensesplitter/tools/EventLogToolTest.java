@@ -0,0 +1,94 @@
+package com.expensesplitter.tools;
+
+import com.expensesplitter.db.SqliteStorage;
+import com.expensesplitter.model.Expense;
+import com.expensesplitter.model.Money;
+import com.expensesplitter.model.Split;
+import com.expensesplitter.service.BalanceService;
+import com.expensesplitter.service.ExpenseService;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * --check agrees with a database written through the services, and finds a
+ * ledger or expense changed behind the log's back; --recover repairs the ledger.
+ */
+public class EventLogToolTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String url;
+
+    @Before
+    public void setUp() throws Exception {
+        url = "jdbc:sqlite:" + folder.newFile("events.db");
+        try (SqliteStorage storage = SqliteStorage.open(url)) {
+            for (String username : new String[] {"alice", "bob", "carol"}) {
+                storage.getUsers().insert(username, "secret", null);
+            }
+            ExpenseService expenses = new ExpenseService(storage);
+            BalanceService balances = new BalanceService(storage);
+            Expense kept = expenses.addExpenseWithSplits(expense(1, 2, 3));
+            Expense deleted = expenses.addExpenseWithSplits(expense(2, 1, 3));
+            assertNotNull(kept);
+            assertNotNull(deleted);
+            assertTrue(balances.settleDebt(2, 1, Money.ofCents(500)));
+            assertTrue(expenses.deleteExpense(deleted.getId()));
+            assertNotNull(expenses.addExpenseWithSplits(expense(3, 1, 2)));
+        }
+    }
+
+    @Test
+    public void logWrittenThroughTheServicesMatchesTheDatabase() throws Exception {
+        try (Connection connection = DriverManager.getConnection(url)) {
+            assertTrue(new EventLogTool(connection).check());
+        }
+    }
+
+    @Test
+    public void ledgerChangedBehindTheLogIsFoundAndRecovered() throws Exception {
+        try (Connection connection = DriverManager.getConnection(url)) {
+            execute(connection, "UPDATE balance_ledger SET net_amount = net_amount + 1 "
+                + "WHERE rowid = (SELECT MIN(rowid) FROM balance_ledger)");
+            EventLogTool tool = new EventLogTool(connection);
+            assertFalse(tool.check());
+
+            tool.recover();
+            assertTrue(tool.check());
+        }
+    }
+
+    @Test
+    public void expenseChangedBehindTheLogIsFound() throws Exception {
+        try (Connection connection = DriverManager.getConnection(url)) {
+            execute(connection, "UPDATE splits SET amount = amount + 1 WHERE id = (SELECT MIN(id) FROM splits)");
+            assertFalse(new EventLogTool(connection).check());
+        }
+    }
+
+    private static Expense expense(int creatorId, int firstId, int secondId) {
+        Expense expense = new Expense();
+        expense.setDescription("Event log test");
+        expense.setCreatedById(creatorId);
+        expense.setAmount(Money.ofCents(3_000));
+        expense.addSplit(new Split(firstId, null, Money.ofCents(1_000)));
+        expense.addSplit(new Split(secondId, null, Money.ofCents(2_000)));
+        return expense;
+    }
+
+    private static void execute(Connection connection, String sql) throws Exception {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.expensesplitter.tools;
+
+import com.expensesplitter.db.BalanceCache;
+import com.expensesplitter.db.SqliteStorage;
+import com.expensesplitter.db.StatementCache;
+import com.expensesplitter.model.BalanceMap;
+import com.expensesplitter.model.Expense;
+import com.expensesplitter.model.Money;
+import com.expensesplitter.model.Split;
+import com.expensesplitter.service.BalanceService;
+import com.expensesplitter.service.ExpenseService;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Round-trip budgets of the service calls behind the console's screens. Each
+ * operation runs on databases seeded with a growing number of expenses for
+ * the same users, through a connection that counts statements, rows read and
+ * commits. An operation fails if it needs more statements or commits than its
+ * budget, or more statements on a larger database than on the smallest one,
+ * which is how an N+1 query pattern shows up. Rows read are printed but not
+ * limited, since a screen such as the expense history lists everything the
+ * user has.
+ *
+ * The balance cache is disabled so every call reaches the database. Larger
+ * databases can be measured with -Droundtrips.expenses=1000,10000,100000.
+ */
+public class RoundTripBudgetTest {
+    private static final String SIZES_PROPERTY = "roundtrips.expenses";
+    private static final int USERS = 100;
+    private static final int FANOUT = 4;
+    // The measured user; a second user warms up statements and caches first
+    private static final int USER_ID = 1;
+    private static final int WARM_UP_USER_ID = 2;
+
+    /**
+     * One user-facing operation. prepare() runs uncounted and returns the
+     * call that is measured.
+     */
+    @FunctionalInterface
+    private interface Operation {
+        Action prepare(int userId) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface Action {
+        void run() throws SQLException;
+    }
+
+    private static final class Budget {
+        final String name;
+        final int statements;
+        final int commits;
+        final Operation operation;
+        final List<long[]> counts = new ArrayList<>();
+
+        Budget(String name, int statements, int commits, Operation operation) {
+            this.name = name;
+            this.statements = statements;
+            this.commits = commits;
+            this.operation = operation;
+        }
+    }
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private static final RoundTripCounter counter = new RoundTripCounter();
+    private static final List<Integer> sizes = new ArrayList<>();
+    private static String cacheSize;
+    private static SqliteStorage storage;
+    private static ExpenseService expenseService;
+    private static BalanceService balanceService;
+
+    private static final Budget ADD_EXPENSE = new Budget("add expense", 4, 1, userId -> {
+        Expense expense = new Expense();
+        expense.setDescription("Round trip");
+        expense.setAmount(Money.ofCents(FANOUT * 1_000));
+        expense.setCreatedById(userId);
+        for (int i = 1; i <= FANOUT; i++) {
+            expense.addSplit(new Split(USER_ID + i, null, Money.ofCents(1_000)));
+        }
+        return () -> check(expenseService.addExpenseWithSplits(expense) != null, "add expense");
+    });
+    private static final Budget VIEW_BALANCES = new Budget("view balances", 1, 0, userId ->
+        () -> balanceService.getUserBalances(userId));
+    private static final Budget EXPENSE_HISTORY = new Budget("view expense history", 2, 0, userId ->
+        () -> expenseService.getUserExpenses(userId));
+    private static final Budget SETTLE = new Budget("settle debt", 3, 1, userId -> {
+        int creditorId = largestDebt(userId);
+        return () -> check(balanceService.settleDebt(userId, creditorId, Money.ofCents(1)), "settle debt");
+    });
+    private static final Budget SETTLEMENT_PAGE = new Budget("settlement history page", 1, 0, userId ->
+        () -> check(balanceService.getSettlementHistory(userId, null, 20) != null, "settlement history"));
+    private static final Budget[] BUDGETS = {ADD_EXPENSE, VIEW_BALANCES, EXPENSE_HISTORY, SETTLE, SETTLEMENT_PAGE};
+
+    @BeforeClass
+    public static void measure() throws Exception {
+        // Measure the database, not the cache
+        cacheSize = System.getProperty(BalanceCache.SIZE_PROPERTY);
+        System.setProperty(BalanceCache.SIZE_PROPERTY, "0");
+
+        for (String size : System.getProperty(SIZES_PROPERTY, "1000,10000").split(",")) {
+            sizes.add(Integer.parseInt(size.trim()));
+        }
+        for (int expenses : sizes) {
+            measure(expenses);
+        }
+        print();
+    }
+
+    @AfterClass
+    public static void restoreCacheSize() {
+        if (cacheSize == null) {
+            System.clearProperty(BalanceCache.SIZE_PROPERTY);
+        } else {
+            System.setProperty(BalanceCache.SIZE_PROPERTY, cacheSize);
+        }
+    }
+
+    @Test
+    public void addExpense() {
+        assertWithinBudget(ADD_EXPENSE);
+    }
+
+    @Test
+    public void viewBalances() {
+        assertWithinBudget(VIEW_BALANCES);
+    }
+
+    @Test
+    public void viewExpenseHistory() {
+        assertWithinBudget(EXPENSE_HISTORY);
+    }
+
+    @Test
+    public void settleDebt() {
+        assertWithinBudget(SETTLE);
+    }
+
+    @Test
+    public void settlementHistoryPage() {
+        assertWithinBudget(SETTLEMENT_PAGE);
+    }
+
+    /**
+     * Seeds a database of the given size and counts every operation on it
+     */
+    private static void measure(int expenses) throws Exception {
+        String url = "jdbc:sqlite:" + folder.newFile("budget-" + expenses + ".db");
+        new DataGenerator(USERS, expenses, FANOUT, 42).seed(url);
+
+        Connection connection = DriverManager.getConnection(url);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA foreign_keys = ON");
+            stmt.execute("PRAGMA journal_mode = WAL");
+        }
+        storage = new SqliteStorage(counter.wrap(StatementCache.wrap(connection)));
+        try {
+            expenseService = new ExpenseService(storage);
+            balanceService = new BalanceService(storage);
+            for (Budget budget : BUDGETS) {
+                budget.operation.prepare(WARM_UP_USER_ID).run();
+                Action action = budget.operation.prepare(USER_ID);
+                counter.reset();
+                action.run();
+                budget.counts.add(new long[] {counter.getStatements(), counter.getRows(), counter.getCommits()});
+            }
+        } finally {
+            storage.close();
+        }
+    }
+
+    /**
+     * Prints statements/rows/commits of each operation at each size
+     */
+    private static void print() {
+        System.out.printf("%nStatements/rows/commits per call, by number of expenses%n%n%-24s %8s",
+            "Operation", "budget");
+        for (int expenses : sizes) {
+            System.out.printf(" %14d", expenses);
+        }
+        System.out.println();
+        for (Budget budget : BUDGETS) {
+            System.out.printf("%-24s %8s", budget.name, budget.statements + "/-/" + budget.commits);
+            for (long[] counts : budget.counts) {
+                System.out.printf(" %14s", counts[0] + "/" + counts[1] + "/" + counts[2]);
+            }
+            System.out.println();
+        }
+    }
+
+    /**
+     * Fails unless the operation stayed within its budget at every size and
+     * needed no more statements as the data grew
+     */
+    private static void assertWithinBudget(Budget budget) {
+        long smallest = budget.counts.get(0)[0];
+        for (int i = 0; i < budget.counts.size(); i++) {
+            long[] counts = budget.counts.get(i);
+            String at = " at " + sizes.get(i) + " expenses";
+            assertTrue(budget.name + ": " + counts[0] + " statements" + at + ", budget " + budget.statements,
+                counts[0] <= budget.statements);
+            assertTrue(budget.name + ": " + counts[0] + " statements" + at
+                    + " against " + smallest + " at " + sizes.get(0) + ", grows with the data",
+                counts[0] <= smallest);
+            assertTrue(budget.name + ": " + counts[2] + " commits" + at + ", budget " + budget.commits,
+                counts[2] <= budget.commits);
+        }
+    }
+
+    /**
+     * @return The counterparty the user owes the most, or another user if the user owes nobody
+     */
+    private static int largestDebt(int userId) throws SQLException {
+        BalanceMap balances = storage.getSplits().getBalances(userId);
+        int creditorId = userId == USER_ID ? WARM_UP_USER_ID : USER_ID;
+        long largest = 0;
+        for (int counterpartyId : balances.getUserIds()) {
+            long amount = balances.getAmountInCents(counterpartyId);
+            if (amount < largest) {
+                largest = amount;
+                creditorId = counterpartyId;
+            }
+        }
+        return creditorId;
+    }
+
+    private static void check(boolean succeeded, String operation) throws SQLException {
+        if (!succeeded) {
+            throw new SQLException(operation + " failed");
+        }
+    }
+}
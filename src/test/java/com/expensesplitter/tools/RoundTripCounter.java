@@ -0,0 +1,153 @@
+package com.expensesplitter.tools;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * Counts the work a connection does for its callers: statements executed,
+ * rows read from their result sets and transactions committed, either with
+ * commit() or by a write in auto-commit mode. A batch counts as one statement.
+ * Meant for one thread at a time, like the connection it wraps.
+ */
+public final class RoundTripCounter {
+    private long statements;
+    private long rows;
+    private long commits;
+    private boolean autoCommit = true;
+
+    /**
+     * @return A connection that counts into this counter and otherwise behaves like the original
+     */
+    public Connection wrap(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(
+            RoundTripCounter.class.getClassLoader(),
+            new Class<?>[] {Connection.class},
+            new ConnectionHandler(connection));
+    }
+
+    public void reset() {
+        statements = 0;
+        rows = 0;
+        commits = 0;
+    }
+
+    public long getStatements() {
+        return statements;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getCommits() {
+        return commits;
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private Object proxy(Class<?> type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(RoundTripCounter.class.getClassLoader(), new Class<?>[] {type}, handler);
+    }
+
+    private final class ConnectionHandler implements InvocationHandler {
+        private final Connection connection;
+
+        ConnectionHandler(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "prepareStatement":
+                    return RoundTripCounter.this.proxy(PreparedStatement.class,
+                        new StatementHandler(RoundTripCounter.invoke(connection, method, args)));
+                case "createStatement":
+                    return RoundTripCounter.this.proxy(Statement.class,
+                        new StatementHandler(RoundTripCounter.invoke(connection, method, args)));
+                case "commit":
+                    commits++;
+                    break;
+                case "setAutoCommit":
+                    autoCommit = (Boolean) args[0];
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            return RoundTripCounter.invoke(connection, method, args);
+        }
+    }
+
+    private final class StatementHandler implements InvocationHandler {
+        private final Object statement;
+
+        StatementHandler(Object statement) {
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            Object result = RoundTripCounter.invoke(statement, method, args);
+            if (method.getName().startsWith("execute")) {
+                statements++;
+                boolean write = !(result instanceof ResultSet) && !Boolean.TRUE.equals(result);
+                if (autoCommit && write) {
+                    commits++;
+                }
+            }
+            if (result instanceof ResultSet) {
+                return RoundTripCounter.this.proxy(ResultSet.class, new ResultSetHandler((ResultSet) result));
+            }
+            return result;
+        }
+    }
+
+    private final class ResultSetHandler implements InvocationHandler {
+        private final ResultSet resultSet;
+
+        ResultSetHandler(ResultSet resultSet) {
+            this.resultSet = resultSet;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            Object result = RoundTripCounter.invoke(resultSet, method, args);
+            if (method.getName().equals("next") && (Boolean) result) {
+                rows++;
+            }
+            return result;
+        }
+    }
+}